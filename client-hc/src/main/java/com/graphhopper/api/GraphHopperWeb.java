@@ -27,6 +27,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.protobuf.ResponsePathProtobuf;
 import com.graphhopper.util.CustomModel;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.Parameters;
@@ -63,6 +64,7 @@ public class GraphHopperWeb {
     private boolean elevation = false;
     private String optimize = "false";
     private boolean postRequest = true;
+    private boolean protobuf = false;
     private int maxUnzippedLength = 1000;
     private final Set<String> ignoreSetForGet;
     private final Set<String> ignoreSetForPost;
@@ -145,6 +147,15 @@ public class GraphHopperWeb {
         return this;
     }
 
+    /**
+     * If true the route response is requested in the compact binary format application/x-protobuf instead of JSON,
+     * which is faster to parse and smaller. The default is false.
+     */
+    public GraphHopperWeb setProtobuf(boolean protobuf) {
+        this.protobuf = protobuf;
+        return this;
+    }
+
     /**
      * Enable or disable calculating points for the way. The default is true.
      */
@@ -190,11 +201,22 @@ public class GraphHopperWeb {
             ghRequest.getHints().remove("turn_description"); // do not include in request
 
             Request okRequest = postRequest ? createPostRequest(ghRequest) : createGetRequest(ghRequest);
+            if (protobuf)
+                okRequest = okRequest.newBuilder().header("Accept", ResponsePathProtobuf.MEDIA_TYPE).build();
             Response rsp = getClientForRequest(ghRequest).newCall(okRequest).execute();
             rspBody = rsp.body();
-            JsonNode json = objectMapper.reader().readTree(rspBody.byteStream());
 
             GHResponse res = new GHResponse();
+            for (Map.Entry<String, List<String>> entry : rsp.headers().toMultimap().entrySet()) {
+                res.getHints().putObject(entry.getKey(), entry.getValue());
+            }
+
+            // errors that are not specific to the route endpoint are still JSON
+            MediaType contentType = rspBody.contentType();
+            if (contentType != null && ResponsePathProtobuf.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype()))
+                return ResponsePathProtobuf.read(rspBody.bytes(), res, tmpTurnDescription);
+
+            JsonNode json = objectMapper.reader().readTree(rspBody.byteStream());
             res.addErrors(ResponsePathDeserializerHelper.readErrors(objectMapper, json));
             if (res.hasErrors())
                 return res;
@@ -205,9 +227,6 @@ public class GraphHopperWeb {
                 res.add(altRsp);
             }
 
-            for (Map.Entry<String, List<String>> entry : rsp.headers().toMultimap().entrySet()) {
-                res.getHints().putObject(entry.getKey(), entry.getValue());
-            }
             JsonNode b = json.get("hints");
             b.fields().forEachRemaining(f -> res.getHints().putObject(f.getKey(), Helper.toObject(f.getValue().asText())));
 
@@ -50,6 +50,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.NameValidator;
+import com.graphhopper.search.KVStorage;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
@@ -101,6 +102,8 @@ public class GraphHopper {
     protected EncodingManager encodingManager;
     private OSMParsers osmParsers;
     private int defaultSegmentSize = -1;
+    private int kvStringPoolSize = KVStorage.DEFAULT_STRING_POOL_SIZE;
+    private int kvDecodeCacheSize = KVStorage.DEFAULT_DECODE_CACHE_SIZE;
     private String ghLocation = "";
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
@@ -131,6 +134,13 @@ public class GraphHopper {
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
     private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    // lazy loading of existing preparations
+    private boolean lazyLoadPreparations = false;
+    private long preparationsMemoryBudget = Long.MAX_VALUE;
+    private boolean waitForPreparations = true;
+    private PreparationCache preparationCache;
+    // caching of route responses
+    private RouteCache routeCache;
 
     // for data reader
     private String osmFile;
@@ -389,18 +399,44 @@ public class GraphHopper {
 
     /**
      * @return a mapping between profile names and according CH preparations. The map will be empty before loading
-     * or import.
+     * or import. With routing.preparations.lazy_load a preparation is loaded when it is retrieved from this map and
+     * then stays loaded, see {@link PreparationCache#getCHGraphs(Map)}.
      */
     public Map<String, RoutingCHGraph> getCHGraphs() {
-        return chGraphs;
+        return preparationCache == null || preparationCache.isEmpty() ? chGraphs : preparationCache.getCHGraphs(chGraphs);
     }
 
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
-     * or import.
+     * or import. With routing.preparations.lazy_load a preparation is loaded when it is retrieved from this map and
+     * then stays loaded, see {@link PreparationCache#getLandmarks(Map)}.
      */
     public Map<String, LandmarkStorage> getLandmarks() {
-        return landmarks;
+        return preparationCache == null || preparationCache.isEmpty() ? landmarks : preparationCache.getLandmarks(landmarks);
+    }
+
+    /**
+     * @return the cache of the CH and LM preparations that are loaded on demand or null if
+     * routing.preparations.lazy_load is not enabled
+     */
+    public PreparationCache getPreparationCache() {
+        return preparationCache;
+    }
+
+    /**
+     * @return the cache of the route responses or null if routing.cache.memory_mb is not set. Call
+     * {@link RouteCache#invalidate()} after modifying the graph.
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Enables caching of route responses, use null to disable it.
+     */
+    public GraphHopper setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
     }
 
     /**
@@ -504,6 +540,8 @@ public class GraphHopper {
         customAreasDirectory = ghConfig.getString("custom_areas.directory", customAreasDirectory);
 
         defaultSegmentSize = ghConfig.getInt("graph.dataaccess.segment_size", defaultSegmentSize);
+        kvStringPoolSize = ghConfig.getInt("kv_storage.string_pool_size", kvStringPoolSize);
+        kvDecodeCacheSize = ghConfig.getInt("kv_storage.decode_cache_size", kvDecodeCacheSize);
 
         String daTypeString = ghConfig.getString("graph.dataaccess.default_type", ghConfig.getString("graph.dataaccess", "RAM_STORE"));
         dataAccessDefaultType = DAType.fromString(daTypeString);
@@ -609,6 +647,12 @@ public class GraphHopper {
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
                     + " should be less or equal to landmark count of " + lmPreparationHandler.getLandmarks());
         routerConfig.setActiveLandmarkCount(activeLandmarkCount);
+        lazyLoadPreparations = ghConfig.getBool("routing.preparations.lazy_load", lazyLoadPreparations);
+        long preparationsMemoryBudgetMB = ghConfig.getLong("routing.preparations.memory_budget_mb", 0);
+        preparationsMemoryBudget = preparationsMemoryBudgetMB > 0 ? preparationsMemoryBudgetMB * Helper.MB : Long.MAX_VALUE;
+        waitForPreparations = ghConfig.getBool("routing.preparations.wait_for_loading", waitForPreparations);
+        long routeCacheMB = ghConfig.getLong("routing.cache.memory_mb", 0);
+        routeCache = routeCacheMB > 0 ? new RouteCache(routeCacheMB * Helper.MB, ghConfig.getLong("routing.cache.ttl_ms", 60_000)) : null;
 
         calcChecksums = ghConfig.getBool("graph.calc_checksums", false);
 
@@ -828,6 +872,7 @@ public class GraphHopper {
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
                 .setSegmentSize(defaultSegmentSize)
+                .setKVStorageCacheSizes(kvStringPoolSize, kvDecodeCacheSize)
                 .build();
         properties = new StorableProperties(directory);
         checkProfilesConsistency();
@@ -1095,7 +1140,8 @@ public class GraphHopper {
     }
 
     /**
-     * Load from existing graph folder.
+     * Load from existing graph folder. The graph location can also be a single graph container file, see
+     * {@link GraphContainer}, in which case the graph is mapped read-only from this file.
      */
     public boolean load() {
         if (isEmpty(ghLocation))
@@ -1105,8 +1151,12 @@ public class GraphHopper {
             throw new IllegalStateException("graph is already successfully loaded");
 
         File tmpFileOrFolder = new File(ghLocation);
-        if (!tmpFileOrFolder.isDirectory() && tmpFileOrFolder.exists()) {
-            throw new IllegalArgumentException("GraphHopperLocation cannot be an existing file. Has to be either non-existing or a folder.");
+        boolean container = GraphContainer.isContainer(tmpFileOrFolder);
+        if (container) {
+            // the DataAccess objects are mapped read-only from the container file
+            dataAccessDefaultType = DAType.MMAP_RO;
+        } else if (!tmpFileOrFolder.isDirectory() && tmpFileOrFolder.exists()) {
+            throw new IllegalArgumentException("GraphHopperLocation cannot be an existing file. Has to be either non-existing, a folder or a graph container.");
         } else {
             File compressed = new File(ghLocation + ".ghz");
             if (compressed.exists() && !compressed.isDirectory()) {
@@ -1133,23 +1183,27 @@ public class GraphHopper {
         try {
             // create locks only if writes are allowed, if they are not allowed a lock cannot be created
             // (e.g. on a read only filesystem locks would fail)
-            if (directory.getDefaultType().isStoring() && isAllowWrites()) {
+            if (directory.getDefaultType().isStoring() && isAllowWrites() && !container) {
                 lockFactory.setLockDir(new File(ghLocation));
                 lock = lockFactory.create(fileLockName, false);
                 if (!lock.tryLock())
                     throw new RuntimeException("To avoid reading partial data we need to obtain the read lock but it failed. In " + ghLocation, lock.getObtainFailedReason());
             }
             properties = new StorableProperties(directory);
-            if (!properties.loadExisting())
+            if (!properties.loadExisting()) {
+                if (container)
+                    throw new IllegalStateException("The graph container " + ghLocation + " does not contain the properties file");
                 // the -gh folder exists, but there is no properties file. it might be just empty, so let's act as if
                 // the import did not run yet or is not complete for some reason
                 return false;
+            }
             encodingManager = EncodingManager.fromProperties(properties);
             baseGraph = new BaseGraph.Builder(encodingManager)
                     .setDir(directory)
                     .set3D(hasElevation())
                     .withTurnCosts(encodingManager.needsTurnCostsSupport())
                     .setSegmentSize(defaultSegmentSize)
+                    .setKVStorageCacheSizes(kvStringPoolSize, kvDecodeCacheSize)
                     .build();
             checkProfilesConsistency();
             baseGraph.loadExisting();
@@ -1287,6 +1341,9 @@ public class GraphHopper {
                 baseGraph.flushAndCloseGeometryAndNameStorage();
         }
 
+        if (lazyLoadPreparations && !closeEarly && baseGraph.getDirectory().getDefaultType().isStoring())
+            preparationCache = new PreparationCache(baseGraph.getDirectory(), preparationsMemoryBudget, waitForPreparations);
+
         if (lmPreparationHandler.isEnabled())
             loadOrPrepareLM(closeEarly);
 
@@ -1331,10 +1388,15 @@ public class GraphHopper {
     }
 
     public GHResponse route(GHRequest request) {
-        return createRouter().route(request);
+        if (preparationCache == null || preparationCache.isEmpty())
+            return createRouter(chGraphs, landmarks).route(request);
+        try (PreparationCache.Lease lease = preparationCache.acquire(request, chGraphs, landmarks)) {
+            return createRouter(lease.getCHGraphs(), lease.getLandmarks())
+                    .setPreparationsEnabled(lease.isCHEnabled(), lease.isLMEnabled()).route(request);
+        }
     }
 
-    private Router createRouter() {
+    private Router createRouter(Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
         if (baseGraph == null || !fullyLoaded)
             throw new IllegalStateException("Do a successful call to load or importOrLoad before routing");
         if (baseGraph.isClosed())
@@ -1343,7 +1405,7 @@ public class GraphHopper {
             throw new IllegalStateException("Location index not initialized");
 
         return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks).setRouteCache(routeCache);
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
@@ -1429,15 +1491,23 @@ public class GraphHopper {
                     && !getCHProfileVersion(profile.getProfile()).equals("" + getProfileHash(profilesByName.get(profile.getProfile()))))
                 throw new IllegalArgumentException("CH preparation of " + profile.getProfile() + " already exists in storage and doesn't match configuration");
 
+        List<CHProfile> chProfiles = chPreparationHandler.getCHProfiles();
+        if (preparationCache != null) {
+            // existing preparations are loaded only when they are requested for the first time
+            List<CHProfile> lazyProfiles = chProfiles.stream().filter(p -> !getCHProfileVersion(p.getProfile()).isEmpty()).toList();
+            createCHConfigs(lazyProfiles).forEach(c -> preparationCache.addCH(baseGraph.getBaseGraph(), c));
+            chProfiles = chProfiles.stream().filter(p -> !lazyProfiles.contains(p)).toList();
+        }
+
         // we load ch graphs that already exist and prepare the other ones
-        List<CHConfig> chConfigs = createCHConfigs(chPreparationHandler.getCHProfiles());
+        List<CHConfig> chConfigs = createCHConfigs(chProfiles);
         Map<String, RoutingCHGraph> loaded = chPreparationHandler.load(baseGraph.getBaseGraph(), chConfigs);
         List<CHConfig> configsToPrepare = chConfigs.stream().filter(c -> !loaded.containsKey(c.getName())).collect(Collectors.toList());
         Map<String, PrepareContractionHierarchies.Result> prepared = prepareCH(closeEarly, configsToPrepare);
 
         // we map all profile names for which there is CH support to the according CH graphs
         chGraphs = new LinkedHashMap<>();
-        for (CHProfile profile : chPreparationHandler.getCHProfiles()) {
+        for (CHProfile profile : chProfiles) {
             if (loaded.containsKey(profile.getProfile()) && prepared.containsKey(profile.getProfile()))
                 throw new IllegalStateException("CH graph should be either loaded or prepared, but not both: " + profile.getProfile());
             else if (prepared.containsKey(profile.getProfile())) {
@@ -1468,8 +1538,23 @@ public class GraphHopper {
                     && !getLMProfileVersion(profile.getProfile()).equals("" + getProfileHash(profilesByName.get(profile.getProfile()))))
                 throw new IllegalArgumentException("LM preparation of " + profile.getProfile() + " already exists in storage and doesn't match configuration");
 
+        List<LMProfile> lmProfiles = lmPreparationHandler.getLMProfiles();
+        if (preparationCache != null) {
+            // existing preparations are loaded only when they are requested for the first time
+            Set<String> lazyConfigs = new HashSet<>();
+            for (LMConfig lmConfig : createLMConfigs(lmProfiles)) {
+                if (getLMProfileVersion(lmConfig.getName()).isEmpty())
+                    continue;
+                List<String> profiles = lmProfiles.stream().filter(p -> getLMPreparationProfile(p).equals(lmConfig.getName()))
+                        .map(LMProfile::getProfile).toList();
+                preparationCache.addLM(baseGraph.getBaseGraph(), encodingManager, lmConfig, lmPreparationHandler.getLandmarks(), profiles);
+                lazyConfigs.add(lmConfig.getName());
+            }
+            lmProfiles = lmProfiles.stream().filter(p -> !lazyConfigs.contains(getLMPreparationProfile(p))).toList();
+        }
+
         // we load landmark storages that already exist and prepare the other ones
-        List<LMConfig> lmConfigs = createLMConfigs(lmPreparationHandler.getLMProfiles());
+        List<LMConfig> lmConfigs = createLMConfigs(lmProfiles);
         List<LandmarkStorage> loaded = lmPreparationHandler.load(lmConfigs, baseGraph, encodingManager);
         List<LMConfig> loadedConfigs = loaded.stream().map(LandmarkStorage::getLMConfig).toList();
         List<LMConfig> configsToPrepare = lmConfigs.stream().filter(c -> !loadedConfigs.contains(c)).collect(Collectors.toList());
@@ -1477,9 +1562,9 @@ public class GraphHopper {
 
         // we map all profile names for which there is LM support to the according LM storages
         landmarks = new LinkedHashMap<>();
-        for (LMProfile lmp : lmPreparationHandler.getLMProfiles()) {
+        for (LMProfile lmp : lmProfiles) {
             // cross-querying
-            String prepProfile = lmp.usesOtherPreparation() ? lmp.getPreparationProfile() : lmp.getProfile();
+            String prepProfile = getLMPreparationProfile(lmp);
             Optional<LandmarkStorage> loadedLMS = loaded.stream().filter(lms -> lms.getLMConfig().getName().equals(prepProfile)).findFirst();
             Optional<PrepareLandmarks> preparedLMS = prepared.stream().filter(pl -> pl.getLandmarkStorage().getLMConfig().getName().equals(prepProfile)).findFirst();
             if (loadedLMS.isPresent() && preparedLMS.isPresent())
@@ -1492,6 +1577,10 @@ public class GraphHopper {
         }
     }
 
+    private static String getLMPreparationProfile(LMProfile lmProfile) {
+        return lmProfile.usesOtherPreparation() ? lmProfile.getPreparationProfile() : lmProfile.getProfile();
+    }
+
     protected List<PrepareLandmarks> prepareLM(boolean closeEarly, List<LMConfig> configsToPrepare) {
         if (!configsToPrepare.isEmpty())
             ensureWriteAccess();
@@ -1535,6 +1624,8 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        if (routeCache != null)
+            routeCache.invalidate();
         if (baseGraph != null)
             baseGraph.close();
         if (properties != null)
@@ -1542,6 +1633,8 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        if (preparationCache != null)
+            preparationCache.close();
 
         if (locationIndex != null)
             locationIndex.close();
@@ -1576,6 +1669,9 @@ public class GraphHopper {
     }
 
     private void setFullyLoaded() {
+        // responses that were cached for a previous graph are no longer valid
+        if (routeCache != null)
+            routeCache.invalidate();
         fullyLoaded = true;
     }
 
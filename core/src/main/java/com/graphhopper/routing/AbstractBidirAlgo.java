@@ -45,6 +45,7 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
     protected int maxVisitedNodes = Integer.MAX_VALUE;
     protected long timeoutMillis = Long.MAX_VALUE;
     private long finishTimeMillis = Long.MAX_VALUE;
+    private int timeoutChecks;
     PriorityQueue<SPTEntry> pqOpenSetFrom;
     PriorityQueue<SPTEntry> pqOpenSetTo;
     protected boolean updateBestPath = true;
@@ -296,7 +297,8 @@ public abstract class AbstractBidirAlgo implements EdgeToEdgeRoutingAlgorithm {
     }
 
     protected boolean isTimeoutExceeded() {
-        return finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis;
+        // this is called for every polled node, so we read the clock only every 64th time
+        return finishTimeMillis < Long.MAX_VALUE && (++timeoutChecks & 63) == 0 && System.currentTimeMillis() > finishTimeMillis;
     }
 
 }
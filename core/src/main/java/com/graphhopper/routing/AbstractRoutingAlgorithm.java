@@ -39,6 +39,7 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm {
     protected int maxVisitedNodes = Integer.MAX_VALUE;
     protected long timeoutMillis = Long.MAX_VALUE;
     private long finishTimeMillis = Long.MAX_VALUE;
+    private int timeoutChecks;
     private boolean alreadyRun;
 
     /**
@@ -111,7 +112,8 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm {
     }
 
     protected boolean isTimeoutExceeded() {
-        return finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis;
+        // this is called for every polled node, so we read the clock only every 64th time
+        return finishTimeMillis < Long.MAX_VALUE && (++timeoutChecks & 63) == 0 && System.currentTimeMillis() > finishTimeMillis;
     }
 
 }
@@ -30,6 +30,7 @@ public class AlgorithmOptions {
     private TraversalMode traversalMode = TraversalMode.NODE_BASED;
     private int maxVisitedNodes = Integer.MAX_VALUE;
     private long timeoutMillis = Long.MAX_VALUE;
+    private long deadlineMillis = Long.MAX_VALUE;
 
     public AlgorithmOptions() {
     }
@@ -38,6 +39,8 @@ public class AlgorithmOptions {
         setAlgorithm(b.getAlgorithm());
         setTraversalMode(b.getTraversalMode());
         setMaxVisitedNodes(b.getMaxVisitedNodes());
+        setTimeoutMillis(b.getTimeoutMillis());
+        setDeadlineMillis(b.getDeadlineMillis());
         setHints(b.getHints());
     }
 
@@ -61,6 +64,15 @@ public class AlgorithmOptions {
         return this;
     }
 
+    /**
+     * Sets the point in time (milliseconds since the epoch) until which all path calculations of a request have to be
+     * finished. Unlike the timeout it is shared by the calculations of all legs of a request.
+     */
+    public AlgorithmOptions setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+        return this;
+    }
+
     public AlgorithmOptions setHints(PMap pMap) {
         this.hints = new PMap(pMap);
         return this;
@@ -82,6 +94,10 @@ public class AlgorithmOptions {
         return timeoutMillis;
     }
 
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
     public PMap getHints() {
         return hints;
     }
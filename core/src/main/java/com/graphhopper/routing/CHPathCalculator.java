@@ -21,19 +21,21 @@ package com.graphhopper.routing;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.DeadlineExceededException;
 import com.graphhopper.util.exceptions.MaximumNodesExceededException;
 
 import java.util.Collections;
 import java.util.List;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
-import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
+import static com.graphhopper.util.Parameters.Routing.*;
 
 public class CHPathCalculator implements PathCalculator {
     private final CHRoutingAlgorithmFactory algoFactory;
     private final PMap algoOpts;
     private String debug;
     private int visitedNodes;
+    private String algorithmName = "";
 
     public CHPathCalculator(CHRoutingAlgorithmFactory algoFactory, PMap algoOpts) {
         this.algoFactory = algoFactory;
@@ -51,6 +53,8 @@ public class CHPathCalculator implements PathCalculator {
     private EdgeToEdgeRoutingAlgorithm createAlgo() {
         StopWatch sw = new StopWatch().start();
         EdgeToEdgeRoutingAlgorithm algo = algoFactory.createAlgo(algoOpts);
+        if (algoOpts.has(DEADLINE))
+            algo.setTimeoutMillis(Math.min(algoOpts.getLong(TIMEOUT_MS, Long.MAX_VALUE), getRemainingMillis()));
         debug = ", algoInit:" + (sw.stop().getNanos() / 1000) + " μs";
         return algo;
     }
@@ -67,14 +71,27 @@ public class CHPathCalculator implements PathCalculator {
         }
         if (paths.isEmpty())
             throw new IllegalStateException("Path list was empty for " + from + " -> " + to);
+        if (!paths.get(0).isFound() && algoOpts.has(DEADLINE))
+            getRemainingMillis();
         int maxVisitedNodes = algoOpts.getInt(MAX_VISITED_NODES, Integer.MAX_VALUE);
         if (algo.getVisitedNodes() >= maxVisitedNodes)
             throw new MaximumNodesExceededException("No path found due to maximum nodes exceeded " + maxVisitedNodes, maxVisitedNodes);
         visitedNodes = algo.getVisitedNodes();
+        algorithmName = algo.getName();
         debug += ", " + algo.getName() + "-routing:" + sw.stop().getMillis() + " ms";
         return paths;
     }
 
+    /**
+     * @throws DeadlineExceededException if the deadline of the algorithm options has passed
+     */
+    private long getRemainingMillis() {
+        long remaining = algoOpts.getLong(DEADLINE, Long.MAX_VALUE) - System.currentTimeMillis();
+        if (remaining <= 0)
+            throw new DeadlineExceededException("No path found, the time budget of the request was used up");
+        return remaining;
+    }
+
     @Override
     public String getDebugString() {
         return debug;
@@ -85,4 +102,8 @@ public class CHPathCalculator implements PathCalculator {
         return visitedNodes;
     }
 
-}
\ No newline at end of file
+    @Override
+    public String getAlgorithmName() {
+        return algorithmName;
+    }
+}
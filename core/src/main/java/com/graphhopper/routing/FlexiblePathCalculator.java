@@ -23,6 +23,7 @@ import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.DeadlineExceededException;
 import com.graphhopper.util.exceptions.MaximumNodesExceededException;
 
 import java.util.Collections;
@@ -37,6 +38,7 @@ public class FlexiblePathCalculator implements PathCalculator {
     private final AlgorithmOptions algoOpts;
     private String debug;
     private int visitedNodes;
+    private String algorithmName = "";
 
     public FlexiblePathCalculator(QueryGraph queryGraph, RoutingAlgorithmFactory algoFactory, Weighting weighting, AlgorithmOptions algoOpts) {
         this.queryGraph = queryGraph;
@@ -54,6 +56,8 @@ public class FlexiblePathCalculator implements PathCalculator {
     private RoutingAlgorithm createAlgo() {
         StopWatch sw = new StopWatch().start();
         RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, weighting, algoOpts);
+        if (algoOpts.getDeadlineMillis() < Long.MAX_VALUE)
+            algo.setTimeoutMillis(Math.min(algoOpts.getTimeoutMillis(), getRemainingMillis()));
         debug = ", algoInit:" + (sw.stop().getNanos() / 1000) + " μs";
         return algo;
     }
@@ -84,13 +88,26 @@ public class FlexiblePathCalculator implements PathCalculator {
 
         if (paths.isEmpty())
             throw new IllegalStateException("Path list was empty for " + from + " -> " + to);
+        if (!paths.get(0).isFound() && algoOpts.getDeadlineMillis() < Long.MAX_VALUE)
+            getRemainingMillis();
         if (algo.getVisitedNodes() >= algoOpts.getMaxVisitedNodes())
             throw new MaximumNodesExceededException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes(), algoOpts.getMaxVisitedNodes());
         visitedNodes = algo.getVisitedNodes();
+        algorithmName = algo.getName();
         debug += ", " + algo.getName() + "-routing:" + sw.stop().getMillis() + " ms";
         return paths;
     }
 
+    /**
+     * @throws DeadlineExceededException if the deadline of the algorithm options has passed
+     */
+    private long getRemainingMillis() {
+        long remaining = algoOpts.getDeadlineMillis() - System.currentTimeMillis();
+        if (remaining <= 0)
+            throw new DeadlineExceededException("No path found, the time budget of the request was used up");
+        return remaining;
+    }
+
     @Override
     public String getDebugString() {
         return debug;
@@ -101,6 +118,11 @@ public class FlexiblePathCalculator implements PathCalculator {
         return visitedNodes;
     }
 
+    @Override
+    public String getAlgorithmName() {
+        return algorithmName;
+    }
+
     public Weighting getWeighting() {
         return weighting;
     }
@@ -108,4 +130,4 @@ public class FlexiblePathCalculator implements PathCalculator {
     public void setWeighting(Weighting weighting) {
         this.weighting = weighting;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+
+/**
+ * An edge-based Dijkstra that calculates the shortest paths from one source to several targets with a single search,
+ * which is much cheaper than one point-to-point search per target when the targets are close to each other, e.g. the
+ * candidates of two consecutive observations in map matching. Like
+ * {@link EdgeToEdgeRoutingAlgorithm#calcPath(int, int, int, int)} the first edge leaving the source and the last edge
+ * entering each target can be restricted.
+ */
+public class MultiTargetDijkstra extends Dijkstra {
+    private int fromOutEdge = ANY_EDGE;
+    private int[] toNodes;
+    private int[] toInEdges;
+    private SPTEntry[] targetEntries;
+    private int remainingTargets;
+    private double maxWeight = Double.POSITIVE_INFINITY;
+
+    public MultiTargetDijkstra(Graph graph, Weighting weighting) {
+        super(graph, weighting, TraversalMode.EDGE_BASED);
+    }
+
+    /**
+     * Stops the search once the weight of the settled entries exceeds maxWeight. The targets that are not settled
+     * until then are not found. Without this limit, a target that cannot be reached, e.g. because its toInEdge is a
+     * one-way road in the wrong direction, lets the search explore the whole connected component.
+     */
+    public MultiTargetDijkstra setMaxWeight(double maxWeight) {
+        this.maxWeight = maxWeight;
+        return this;
+    }
+
+    /**
+     * @param fromOutEdge the edge the path has to start with or {@link com.graphhopper.util.EdgeIterator#ANY_EDGE}
+     * @param toInEdges   the edge the path to toNodes[i] has to end with or ANY_EDGE, must have the length of toNodes
+     * @return one path per target in the order of toNodes. A path is not found if the target was not reached before
+     * the search was stopped, e.g. because of the maximum number of visited nodes or the maximum weight.
+     */
+    public List<Path> calcPaths(int from, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+        if (toNodes.length != toInEdges.length)
+            throw new IllegalArgumentException("toNodes and toInEdges must have the same length, " + toNodes.length + " vs. " + toInEdges.length);
+        checkAlreadyRun();
+        setupFinishTime();
+        this.fromOutEdge = fromOutEdge;
+        this.toNodes = toNodes;
+        this.toInEdges = toInEdges;
+        targetEntries = new SPTEntry[toNodes.length];
+        remainingTargets = toNodes.length;
+        if (remainingTargets > 0) {
+            fromHeap.add(new SPTEntry(from, 0));
+            runAlgo();
+        }
+
+        List<Path> paths = new ArrayList<>(toNodes.length);
+        for (SPTEntry entry : targetEntries) {
+            paths.add(entry == null ? createEmptyPath() : PathExtractor.extractPath(graph, weighting, entry));
+        }
+        return paths;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPaths(from, ANY_EDGE, new int[]{to}, new int[]{ANY_EDGE}).get(0);
+    }
+
+    @Override
+    protected boolean accept(EdgeIteratorState iter, int prevOrNextEdgeId) {
+        // the restriction only applies to the edges leaving the start entry, the search may pass the source again later
+        if (fromOutEdge != ANY_EDGE && currEdge.parent == null && iter.getEdge() != fromOutEdge)
+            return false;
+        return super.accept(iter, prevOrNextEdgeId);
+    }
+
+    /**
+     * Settles all targets that are reached by the current entry and stops the search once all targets are settled
+     * or the maximum weight is exceeded.
+     */
+    @Override
+    protected boolean finished() {
+        if (currEdge.weight > maxWeight)
+            return true;
+        boolean isStart = currEdge.parent == null;
+        for (int i = 0; i < toNodes.length; i++) {
+            if (targetEntries[i] != null || toNodes[i] != currEdge.adjNode)
+                continue;
+            if (isStart) {
+                // from=to yields an empty path, but only if no direction is restricted, like for the other algorithms
+                if (fromOutEdge != ANY_EDGE || toInEdges[i] != ANY_EDGE)
+                    continue;
+            } else if (toInEdges[i] != ANY_EDGE && toInEdges[i] != currEdge.edge) {
+                continue;
+            }
+            targetEntries[i] = currEdge;
+            remainingTargets--;
+        }
+        return remainingTargets == 0;
+    }
+
+    @Override
+    public String getName() {
+        return "multi_target_dijkstra";
+    }
+}
@@ -30,4 +30,9 @@ public interface PathCalculator {
 
     int getVisitedNodes();
 
+    /**
+     * @return the name of the algorithm used for the last calculation, e.g. dijkstrabi|ch
+     */
+    String getAlgorithmName();
+
 }
@@ -0,0 +1,431 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.routing.lm.LMConfig;
+import com.graphhopper.routing.lm.LandmarkStorage;
+import com.graphhopper.routing.ev.EncodedValueLookup;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Loads the CH and LM preparations of the profiles at their first request instead of at startup. If the memory of the
+ * loaded preparations exceeds the configured budget the least recently used ones are closed again. A preparation is
+ * never closed while a request is using it, see {@link #acquire}.
+ * <p>
+ * If a request arrives for a preparation that is not loaded yet it either waits until the preparation is loaded or,
+ * if waitForLoading is false, the preparation is loaded in the background and the request falls back to LM or
+ * flexible routing, see {@link Lease#isCHEnabled()}. The hints of the request are not modified.
+ * <p>
+ * Preparations that are used outside of {@link #acquire}, e.g. by map matching, are pinned via
+ * {@link #getCHGraphs(Map)} and {@link #getLandmarks(Map)} and stay loaded until this cache is closed.
+ */
+public class PreparationCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreparationCache.class);
+    private final Directory directory;
+    private final long memoryBudget;
+    private final boolean waitForLoading;
+    private final Map<String, Entry<RoutingCHGraph>> chEntries = new LinkedHashMap<>();
+    private final Map<String, Entry<LandmarkStorage>> lmEntries = new LinkedHashMap<>();
+    private final List<Entry<?>> entries = new ArrayList<>();
+    private final ExecutorService loadingExecutor;
+    private long clock;
+
+    /**
+     * @param memoryBudget the maximum bytes of all loaded preparations, use Long.MAX_VALUE to never close preparations
+     */
+    public PreparationCache(Directory directory, long memoryBudget, boolean waitForLoading) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("memory budget must be positive but was " + memoryBudget);
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+        this.waitForLoading = waitForLoading;
+        this.loadingExecutor = waitForLoading ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "preparation-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers the existing CH preparation for the profile of the given CHConfig without loading it.
+     */
+    public void addCH(BaseGraph baseGraph, CHConfig chConfig) {
+        String name = chConfig.getName();
+        Entry<RoutingCHGraph> entry = new Entry<>("CH " + name, Arrays.asList("nodes_ch_" + name, "shortcuts_" + name), () -> {
+            CHStorage chStorage = new CHStorage(directory, name, baseGraph.getSegmentSize(), chConfig.isEdgeBased());
+            if (!chStorage.loadExisting())
+                throw new IllegalStateException("Cannot load CH preparation for profile " + name);
+            return RoutingCHGraphImpl.fromGraph(baseGraph, chStorage, chConfig);
+        });
+        chEntries.put(name, entry);
+        entries.add(entry);
+    }
+
+    /**
+     * Registers the existing LM preparation of the given LMConfig without loading it. The preparation is used for all
+     * the specified profiles.
+     */
+    public void addLM(BaseGraph baseGraph, EncodedValueLookup lookup, LMConfig lmConfig, int landmarkCount, Collection<String> profiles) {
+        String name = lmConfig.getName();
+        Entry<LandmarkStorage> entry = new Entry<>("LM " + name, Arrays.asList("landmarks_" + name, "landmarks_subnetwork_" + name), () -> {
+            LandmarkStorage lms = new LandmarkStorage(baseGraph, lookup, directory, lmConfig, landmarkCount);
+            if (!lms.loadExisting())
+                throw new IllegalStateException("Cannot load LM preparation " + name);
+            return lms;
+        });
+        for (String profile : profiles)
+            lmEntries.put(profile, entry);
+        entries.add(entry);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Acquires the CH or LM preparation that will be used to route the specified request. The returned lease contains
+     * the given eagerly loaded preparations plus the acquired one and has to be closed after routing.
+     */
+    public Lease acquire(GHRequest request, Map<String, RoutingCHGraph> loadedCHGraphs, Map<String, LandmarkStorage> loadedLandmarks) {
+        Lease lease = new Lease(loadedCHGraphs, loadedLandmarks);
+        // the lazily loaded profiles count as well, otherwise the Router would not pick the right solver
+        lease.chEnabled = !loadedCHGraphs.isEmpty() || !chEntries.isEmpty();
+        lease.lmEnabled = !loadedLandmarks.isEmpty() || !lmEntries.isEmpty();
+
+        String profile = request.getProfile();
+        boolean disableCH = request.getHints().getBool(Parameters.CH.DISABLE, false);
+        if (lease.chEnabled && !disableCH && chEntries.containsKey(profile)) {
+            lease.chEntry = chEntries.get(profile);
+            RoutingCHGraph chGraph = acquire(lease.chEntry, waitForLoading);
+            if (chGraph == null) {
+                lease.chEntry = null;
+                lease.chEnabled = false;
+                // without an LM preparation for this profile we have to fall back to flexible routing
+                if (!loadedLandmarks.containsKey(profile) && !lmEntries.containsKey(profile))
+                    lease.lmEnabled = false;
+            } else {
+                lease.chGraphs.put(profile, chGraph);
+            }
+        }
+        boolean disableLM = request.getHints().getBool(Parameters.Landmark.DISABLE, false);
+        if ((!lease.chEnabled || disableCH) && lease.lmEnabled && !disableLM && lmEntries.containsKey(profile)) {
+            lease.lmEntry = lmEntries.get(profile);
+            LandmarkStorage lms = acquire(lease.lmEntry, waitForLoading);
+            if (lms == null) {
+                lease.lmEntry = null;
+                lease.lmEnabled = false;
+            } else {
+                lease.landmarks.put(profile, lms);
+            }
+        }
+        return lease;
+    }
+
+    /**
+     * @return the given eagerly loaded CH preparations plus the lazily loaded ones. A lazy preparation is loaded when
+     * it is retrieved from the returned map for the first time and is never closed afterwards, as it is not known
+     * when the caller stops using it.
+     */
+    public Map<String, RoutingCHGraph> getCHGraphs(Map<String, RoutingCHGraph> loadedCHGraphs) {
+        return new PinningMap<>(loadedCHGraphs, chEntries);
+    }
+
+    /**
+     * @return the given eagerly loaded LM preparations plus the lazily loaded ones, see {@link #getCHGraphs(Map)}
+     */
+    public Map<String, LandmarkStorage> getLandmarks(Map<String, LandmarkStorage> loadedLandmarks) {
+        return new PinningMap<>(loadedLandmarks, lmEntries);
+    }
+
+    /**
+     * @return the loaded value of the entry or null if wait is false and the entry is not yet loaded
+     */
+    private <T> T acquire(Entry<T> entry, boolean wait) {
+        while (true) {
+            CompletableFuture<T> future;
+            boolean startLoading = false;
+            synchronized (this) {
+                if (entry.value != null) {
+                    entry.users++;
+                    entry.lastUsed = ++clock;
+                    return entry.value;
+                }
+                if (entry.loading == null) {
+                    entry.loading = new CompletableFuture<>();
+                    startLoading = true;
+                }
+                future = entry.loading;
+            }
+            if (!wait) {
+                if (startLoading)
+                    loadingExecutor.execute(() -> load(entry, future));
+                return null;
+            }
+
+            if (startLoading)
+                load(entry, future);
+            try {
+                future.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+            }
+            // the value might have been closed already in the meantime, so we need to check again
+        }
+    }
+
+    private <T> void load(Entry<T> entry, CompletableFuture<T> future) {
+        StopWatch sw = new StopWatch().start();
+        T value;
+        try {
+            value = entry.loader.get();
+        } catch (RuntimeException ex) {
+            LOGGER.error("Could not load " + entry.name, ex);
+            synchronized (this) {
+                closeDataAccess(entry);
+                entry.loading = null;
+            }
+            future.completeExceptionally(ex);
+            return;
+        }
+
+        synchronized (this) {
+            entry.value = value;
+            entry.loading = null;
+            entry.bytes = 0;
+            for (String daName : entry.dataAccessNames) {
+                DataAccess da = directory.getDAs().get(daName);
+                if (da != null)
+                    entry.bytes += da.getCapacity();
+            }
+            entry.lastUsed = ++clock;
+            LOGGER.info("Loaded {} with {}MB, took: {}s, loaded preparations: {}MB", entry.name,
+                    entry.bytes / Helper.MB, sw.stop().getSeconds(), getLoadedBytes() / Helper.MB);
+            evict(entry);
+        }
+        future.complete(value);
+    }
+
+    private synchronized void release(Entry<?> entry) {
+        entry.users--;
+        evict(null);
+    }
+
+    /**
+     * Closes the least recently used preparations that are not in use until the loaded preparations fit into the
+     * memory budget. The given entry is kept even if it alone exceeds the budget.
+     */
+    private void evict(Entry<?> keep) {
+        long loadedBytes = getLoadedBytes();
+        while (loadedBytes > memoryBudget) {
+            Entry<?> lru = null;
+            for (Entry<?> entry : entries) {
+                if (entry.value != null && entry.users == 0 && entry != keep && (lru == null || entry.lastUsed < lru.lastUsed))
+                    lru = entry;
+            }
+            if (lru == null)
+                return;
+            closeDataAccess(lru);
+            lru.value = null;
+            loadedBytes -= lru.bytes;
+            LOGGER.info("Closed {} to free {}MB, loaded preparations: {}MB", lru.name, lru.bytes / Helper.MB, loadedBytes / Helper.MB);
+        }
+    }
+
+    private void closeDataAccess(Entry<?> entry) {
+        // we cannot use RoutingCHGraph.close as this would close the base graph as well
+        for (String daName : entry.dataAccessNames) {
+            if (directory.getDAs().containsKey(daName))
+                directory.close(daName);
+        }
+    }
+
+    public synchronized long getLoadedBytes() {
+        long bytes = 0;
+        for (Entry<?> entry : entries) {
+            if (entry.value != null)
+                bytes += entry.bytes;
+        }
+        return bytes;
+    }
+
+    public synchronized boolean isCHLoaded(String profile) {
+        Entry<RoutingCHGraph> entry = chEntries.get(profile);
+        return entry != null && entry.value != null;
+    }
+
+    public synchronized boolean isLMLoaded(String profile) {
+        Entry<LandmarkStorage> entry = lmEntries.get(profile);
+        return entry != null && entry.value != null;
+    }
+
+    public synchronized void close() {
+        if (loadingExecutor != null)
+            loadingExecutor.shutdownNow();
+        for (Entry<?> entry : entries) {
+            if (entry.value != null) {
+                closeDataAccess(entry);
+                entry.value = null;
+            }
+        }
+    }
+
+    /**
+     * A read-only view of the eagerly loaded preparations and the entries of the lazily loaded ones. The lazy entries
+     * are acquired without ever being released, so they stay loaded.
+     */
+    private class PinningMap<T> extends AbstractMap<String, T> {
+        private final Map<String, T> loaded;
+        private final Map<String, PreparationCache.Entry<T>> lazy;
+
+        PinningMap(Map<String, T> loaded, Map<String, PreparationCache.Entry<T>> lazy) {
+            this.loaded = loaded;
+            this.lazy = lazy;
+        }
+
+        @Override
+        public T get(Object key) {
+            T value = loaded.get(key);
+            if (value != null)
+                return value;
+            PreparationCache.Entry<T> entry = lazy.get(key);
+            return entry == null ? null : pin(entry);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return loaded.containsKey(key) || lazy.containsKey(key);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            Set<String> keys = new LinkedHashSet<>(loaded.keySet());
+            keys.addAll(lazy.keySet());
+            return Collections.unmodifiableSet(keys);
+        }
+
+        @Override
+        public int size() {
+            return keySet().size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, T>> entrySet() {
+            // iterating over all values loads all lazy preparations
+            Map<String, T> all = new LinkedHashMap<>();
+            for (String key : keySet())
+                all.put(key, get(key));
+            return Collections.unmodifiableMap(all).entrySet();
+        }
+
+        private T pin(PreparationCache.Entry<T> entry) {
+            synchronized (PreparationCache.this) {
+                if (entry.pinned && entry.value != null)
+                    return entry.value;
+            }
+            T value = acquire(entry, true);
+            synchronized (PreparationCache.this) {
+                if (entry.pinned)
+                    // another thread pinned it in the meantime
+                    entry.users--;
+                entry.pinned = true;
+            }
+            return value;
+        }
+    }
+
+    private static class Entry<T> {
+        final String name;
+        final List<String> dataAccessNames;
+        final Supplier<T> loader;
+        T value;
+        CompletableFuture<T> loading;
+        int users;
+        boolean pinned;
+        long lastUsed;
+        long bytes;
+
+        Entry(String name, List<String> dataAccessNames, Supplier<T> loader) {
+            this.name = name;
+            this.dataAccessNames = dataAccessNames;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * The preparations available for one request. Closing the lease allows closing the acquired preparation again.
+     */
+    public class Lease implements AutoCloseable {
+        private final Map<String, RoutingCHGraph> chGraphs;
+        private final Map<String, LandmarkStorage> landmarks;
+        private Entry<RoutingCHGraph> chEntry;
+        private Entry<LandmarkStorage> lmEntry;
+        private boolean chEnabled;
+        private boolean lmEnabled;
+
+        private Lease(Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+            this.chGraphs = new LinkedHashMap<>(chGraphs);
+            this.landmarks = new LinkedHashMap<>(landmarks);
+        }
+
+        public Map<String, RoutingCHGraph> getCHGraphs() {
+            return chGraphs;
+        }
+
+        public Map<String, LandmarkStorage> getLandmarks() {
+            return landmarks;
+        }
+
+        /**
+         * @return false if CH must not be used for this request, e.g. because its CH preparation is still loading.
+         * This overrides the Router's default that is derived from {@link #getCHGraphs()}.
+         */
+        public boolean isCHEnabled() {
+            return chEnabled;
+        }
+
+        /**
+         * @return false if LM must not be used for this request, see {@link #isCHEnabled()}
+         */
+        public boolean isLMEnabled() {
+            return lmEnabled;
+        }
+
+        @Override
+        public void close() {
+            if (chEntry != null)
+                release(chEntry);
+            if (lmEntry != null)
+                release(lmEntry);
+            chEntry = null;
+            lmEntry = null;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.exceptions.DeadlineExceededException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caches the responses of via and alternative route requests. The key is created after snapping, see
+ * {@link #createKey}, so requests with different coordinates that snap to the same position, e.g. the same junction,
+ * share an entry. The entries expire after a time to live and the least recently used entries are removed if the
+ * estimated memory of all entries exceeds the budget. Concurrent requests with the same key wait for the first one
+ * instead of calculating the same route again.
+ * <p>
+ * The cache must be invalidated whenever the graph changes, GraphHopper does this when the graph is loaded or closed.
+ * Call {@link #invalidate()} after modifying the graph in place.
+ */
+public class RouteCache {
+    // these hints do not change the calculated response
+    private static final Set<String> IGNORED_HINTS = new HashSet<>(Arrays.asList(Parameters.Routing.DEADLINE,
+            Parameters.Routing.TIMEOUT_MS, Parameters.Routing.TIMINGS, "points_encoded", "points_encoded_multiplier", "type"));
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final long memoryBudget;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<GHResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long bytes;
+    private long generation;
+
+    /**
+     * @param memoryBudget the maximum estimated bytes of all cached responses
+     * @param ttlMillis    the time after which an entry is no longer used
+     */
+    public RouteCache(long memoryBudget, long ttlMillis) {
+        this(memoryBudget, ttlMillis, System::nanoTime);
+    }
+
+    RouteCache(long memoryBudget, long ttlMillis, LongSupplier nanoClock) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("memory budget must be positive but was " + memoryBudget);
+        if (ttlMillis <= 0)
+            throw new IllegalArgumentException("time to live must be positive but was " + ttlMillis);
+        this.memoryBudget = memoryBudget;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns the response for the specified key. If it is cached or calculated by a concurrent request, its paths and
+     * hints are copied into target and target is returned. Otherwise, the calculator is called and its response is
+     * cached if it has no errors.
+     *
+     * @param deadlineMillis the time until this request waits for a concurrent calculation of the same key
+     */
+    public GHResponse get(String key, long deadlineMillis, GHResponse target, Supplier<GHResponse> calculator) {
+        GHResponse cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return copyHit(cached, target);
+        }
+
+        CompletableFuture<GHResponse> future = new CompletableFuture<>();
+        CompletableFuture<GHResponse> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // null means that the concurrent calculation failed or returned errors
+            cached = await(running, deadlineMillis);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return copyHit(cached, target);
+            }
+            // e.g. the concurrent calculation exceeded its own deadline, so we try it ourselves
+            misses.incrementAndGet();
+            return calculator.get();
+        }
+
+        misses.incrementAndGet();
+        long startGeneration = getGeneration();
+        GHResponse cacheable = null;
+        try {
+            GHResponse response = calculator.get();
+            if (!response.hasErrors()) {
+                // the caller might modify its response later, e.g. add a path
+                cacheable = copyInto(response, new GHResponse());
+                put(key, cacheable, startGeneration);
+            }
+            return response;
+        } finally {
+            inFlight.remove(key, future);
+            future.complete(cacheable);
+        }
+    }
+
+    private static GHResponse await(CompletableFuture<GHResponse> future, long deadlineMillis) {
+        try {
+            if (deadlineMillis == Long.MAX_VALUE)
+                return future.get();
+            long remaining = deadlineMillis - System.currentTimeMillis();
+            return future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new DeadlineExceededException("The time budget of the request was used up");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a concurrent route calculation", ex);
+        } catch (ExecutionException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The paths are shared with all requests that use the same entry and must not be modified.
+     */
+    private static GHResponse copyInto(GHResponse source, GHResponse target) {
+        target.getHints().putAll(source.getHints());
+        for (ResponsePath path : source.getAll()) {
+            target.add(path);
+        }
+        return target;
+    }
+
+    private static GHResponse copyHit(GHResponse cached, GHResponse target) {
+        copyInto(cached, target);
+        target.setAlgorithm("cache");
+        target.getHints().putObject("visited_nodes.sum", 0);
+        target.getHints().putObject("visited_nodes.average", 0);
+        return target;
+    }
+
+    private synchronized GHResponse lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (nanoClock.getAsLong() - entry.createdNanos > ttlNanos) {
+            remove(key);
+            return null;
+        }
+        return entry.response;
+    }
+
+    private synchronized void put(String key, GHResponse response, long startGeneration) {
+        // the response might have been calculated on the graph before an invalidation
+        if (startGeneration != generation)
+            return;
+        long entryBytes = ENTRY_OVERHEAD + 2L * key.length() + estimateBytes(response);
+        if (entryBytes > memoryBudget)
+            return;
+        remove(key);
+        entries.put(key, new Entry(response, entryBytes, nanoClock.getAsLong()));
+        bytes += entryBytes;
+        Iterator<Entry> iter = entries.values().iterator();
+        while (bytes > memoryBudget && iter.hasNext()) {
+            bytes -= iter.next().bytes;
+            iter.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            bytes -= entry.bytes;
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Removes all entries and makes sure that responses which are currently calculated are not added.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        bytes = 0;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Creates the key of a request from everything that influences the response: the profile, the solver, e.g. CH or
+     * LM, the snapped edges and positions of the points, the hints in sorted order and the custom model.
+     */
+    public static String createKey(GHRequest request, String solver, List<Snap> snaps) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getProfile()).append('|').append(solver).append('|').append(request.getAlgorithm());
+        sb.append('|').append(request.getLocale());
+        for (Snap snap : snaps) {
+            sb.append('|').append(snap.getClosestEdge().getEdgeKey()).append(',').append(snap.getWayIndex()).
+                    append(',').append(snap.getSnappedPosition()).
+                    append(',').append(snap.getSnappedPoint().lat).append(',').append(snap.getSnappedPoint().lon);
+        }
+        sb.append('|').append(request.getHeadings()).append('|').append(request.getCurbsides());
+        sb.append('|').append(request.getPathDetails());
+        TreeMap<String, Object> hints = new TreeMap<>(request.getHints().toMap());
+        hints.keySet().removeAll(IGNORED_HINTS);
+        sb.append('|').append(hints);
+        if (request.getCustomModel() != null)
+            sb.append('|').append(request.getCustomModel());
+        return sb.toString();
+    }
+
+    /**
+     * @return a rough estimate of the memory of the paths of the response
+     */
+    static long estimateBytes(GHResponse response) {
+        long result = 0;
+        for (ResponsePath path : response.getAll()) {
+            result += 512;
+            // we assume elevation, the points are not always calculated and then is3D is not available
+            result += 24L * (path.getPoints().size() + path.getWaypoints().size());
+            // the instructions are not always available, their number grows with the points, too
+            result += 32L * path.getPoints().size();
+            for (List<?> details : path.getPathDetails().values()) {
+                result += 48L * details.size();
+            }
+        }
+        return result;
+    }
+
+    private static class Entry {
+        final GHResponse response;
+        final long bytes;
+        final long createdNanos;
+
+        Entry(GHResponse response, long bytes, long createdNanos) {
+            this.response = response;
+            this.bytes = bytes;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -41,6 +41,7 @@ import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.DeadlineExceededException;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
@@ -48,6 +49,7 @@ import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
 import static com.graphhopper.util.Parameters.Algorithms.ALT_ROUTE;
@@ -66,8 +68,9 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
-    protected final boolean chEnabled;
-    protected final boolean lmEnabled;
+    protected boolean chEnabled;
+    protected boolean lmEnabled;
+    protected RouteCache routeCache;
 
     public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
@@ -94,6 +97,25 @@ public class Router {
         }
     }
 
+    /**
+     * Enables caching of the responses of via and alternative route requests, see {@link RouteCache}.
+     */
+    public Router setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    /**
+     * Overrides whether CH and LM are used for the requests of this Router, independent of the ch.disable and
+     * lm.disable hints. This is used if the chGraphs or landmarks do not contain all preparations, e.g. because they
+     * are still loading.
+     */
+    public Router setPreparationsEnabled(boolean chEnabled, boolean lmEnabled) {
+        this.chEnabled = chEnabled;
+        this.lmEnabled = lmEnabled;
+        return this;
+    }
+
     public GHResponse route(GHRequest request) {
         try {
             checkNoLegacyParameters(request);
@@ -108,6 +130,7 @@ public class Router {
             Solver solver = createSolver(request);
             solver.checkRequest();
             solver.init();
+            solver.checkDeadline();
 
             if (ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm())) {
                 if (!(solver instanceof FlexSolver))
@@ -223,15 +246,22 @@ public class Router {
         RoundTripRouting.Params params = new RoundTripRouting.Params(request.getHints(), startHeading, routerConfig.getMaxRoundTripRetries());
         List<Snap> snaps = RoundTripRouting.lookup(request.getPoints(), solver.createSnapFilter(), locationIndex, params);
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        solver.checkDeadline();
+        ghRsp.addTiming("snap", sw.getNanos());
 
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         FlexiblePathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        ghRsp.addTiming("query_graph", System.nanoTime() - start);
 
+        start = System.nanoTime();
         RoundTripRouting.Result result = RoundTripRouting.calcPaths(snaps, pathCalculator);
+        addAlgorithmTimings(ghRsp, start, result.paths, pathCalculator);
+        solver.checkDeadline();
         // we merge the different legs of the roundtrip into one response path
         // note that the waypoints are not just the snapped points of the snaps, as usual, because we do some kind of tweak
         // to avoid 'unnecessary tails' in the roundtrip algo
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, result.wayPoints);
+        ResponsePath responsePath = concatenatePaths(ghRsp, request, solver.weighting, queryGraph, result.paths, result.wayPoints);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
@@ -247,8 +277,16 @@ public class Router {
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
                 request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        solver.checkDeadline();
+        ghRsp.addTiming("snap", sw.getNanos());
+        return routeCached(request, solver, snaps, ghRsp, () -> calcAlt(request, solver, snaps, directedEdgeFilter, ghRsp));
+    }
+
+    private GHResponse calcAlt(GHRequest request, Solver solver, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter, GHResponse ghRsp) {
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        ghRsp.addTiming("query_graph", System.nanoTime() - start);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
         if (passThrough)
@@ -256,10 +294,13 @@ public class Router {
         if (!request.getCurbsides().isEmpty())
             throw new IllegalArgumentException("Alternative paths do not support the " + CURBSIDE + " parameter yet");
 
+        start = System.nanoTime();
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
         if (result.paths.isEmpty())
             throw new RuntimeException("Empty paths for alternative route calculation not expected");
+        addAlgorithmTimings(ghRsp, start, result.paths, pathCalculator);
+        solver.checkDeadline();
 
         // each path represents a different alternative and we do the path merging for each of them
         PathMerger pathMerger = createPathMerger(request, solver.weighting, queryGraph);
@@ -268,6 +309,7 @@ public class Router {
             ResponsePath responsePath = pathMerger.doWork(waypoints, Collections.singletonList(path), encodingManager, translationMap.getWithFallBack(request.getLocale()));
             ghRsp.add(responsePath);
         }
+        pathMerger.getTimings().forEach(ghRsp::addTiming);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
         ghRsp.getHints().putObject("visited_nodes.average", (float) result.visitedNodes / (snaps.size() - 1));
         return ghRsp;
@@ -280,20 +322,31 @@ public class Router {
         List<Snap> snaps = ViaRouting.lookup(encodingManager, request.getPoints(), solver.createSnapFilter(), locationIndex,
                 request.getSnapPreventions(), request.getPointHints(), directedEdgeFilter, request.getHeadings());
         ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+        solver.checkDeadline();
+        ghRsp.addTiming("snap", sw.getNanos());
+        return routeCached(request, solver, snaps, ghRsp, () -> calcVia(request, solver, snaps, directedEdgeFilter, ghRsp));
+    }
+
+    private GHResponse calcVia(GHRequest request, Solver solver, List<Snap> snaps, DirectedEdgeFilter directedEdgeFilter, GHResponse ghRsp) {
         // (base) query graph used to resolve headings, curbsides etc. this is not necessarily the same thing as
         // the (possibly implementation specific) query graph used by PathCalculator
+        long start = System.nanoTime();
         QueryGraph queryGraph = QueryGraph.create(graph, snaps);
         PathCalculator pathCalculator = solver.createPathCalculator(queryGraph);
+        ghRsp.addTiming("query_graph", System.nanoTime() - start);
         boolean passThrough = getPassThrough(request.getHints());
         String curbsideStrictness = getCurbsideStrictness(request.getHints());
+        start = System.nanoTime();
         ViaRouting.Result result = ViaRouting.calcPaths(request.getPoints(), queryGraph, snaps, directedEdgeFilter,
                 pathCalculator, request.getCurbsides(), curbsideStrictness, request.getHeadings(), passThrough);
+        addAlgorithmTimings(ghRsp, start, result.paths, pathCalculator);
+        solver.checkDeadline();
 
         if (request.getPoints().size() != result.paths.size() + 1)
             throw new RuntimeException("There should be exactly one more point than paths. points:" + request.getPoints().size() + ", paths:" + result.paths.size());
 
         // here each path represents one leg of the via-route and we merge them all together into one response path
-        ResponsePath responsePath = concatenatePaths(request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
+        ResponsePath responsePath = concatenatePaths(ghRsp, request, solver.weighting, queryGraph, result.paths, getWaypoints(snaps));
         responsePath.addDebugInfo(result.debug);
         ghRsp.add(responsePath);
         ghRsp.getHints().putObject("visited_nodes.sum", result.visitedNodes);
@@ -301,6 +354,13 @@ public class Router {
         return ghRsp;
     }
 
+    private GHResponse routeCached(GHRequest request, Solver solver, List<Snap> snaps, GHResponse ghRsp, Supplier<GHResponse> calculator) {
+        if (routeCache == null)
+            return calculator.get();
+        String key = RouteCache.createKey(request, solver.getClass().getSimpleName(), snaps);
+        return routeCache.get(key, solver.deadlineMillis, ghRsp, calculator);
+    }
+
     private PathMerger createPathMerger(GHRequest request, Weighting weighting, Graph graph) {
         boolean enableInstructions = request.getHints().getBool(Parameters.Routing.INSTRUCTIONS, routerConfig.isInstructionsEnabled());
         boolean calcPoints = request.getHints().getBool(Parameters.Routing.CALC_POINTS, routerConfig.isCalcPoints());
@@ -322,9 +382,26 @@ public class Router {
         return pathMerger;
     }
 
-    private ResponsePath concatenatePaths(GHRequest request, Weighting weighting, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
+    private ResponsePath concatenatePaths(GHResponse ghRsp, GHRequest request, Weighting weighting, QueryGraph queryGraph, List<Path> paths, PointList waypoints) {
         PathMerger pathMerger = createPathMerger(request, weighting, queryGraph);
-        return pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        ResponsePath responsePath = pathMerger.doWork(waypoints, paths, encodingManager, translationMap.getWithFallBack(request.getLocale()));
+        pathMerger.getTimings().forEach(ghRsp::addTiming);
+        return responsePath;
+    }
+
+    /**
+     * Adds the time since startNanos as the time of the algorithm. The path extraction is part of it, but it is reported
+     * as a separate phase.
+     */
+    private static void addAlgorithmTimings(GHResponse ghRsp, long startNanos, List<Path> paths, PathCalculator pathCalculator) {
+        long took = System.nanoTime() - startNanos;
+        long extractionNanos = 0;
+        for (Path path : paths) {
+            extractionNanos += path.getExtractionNanos();
+        }
+        ghRsp.addTiming("algorithm", took - extractionNanos);
+        ghRsp.addTiming("path_extraction", extractionNanos);
+        ghRsp.setAlgorithm(pathCalculator.getAlgorithmName());
     }
 
     private PointList getWaypoints(List<Snap> snaps) {
@@ -361,12 +438,33 @@ public class Router {
         protected Profile profile;
         protected Weighting weighting;
         protected final EncodedValueLookup lookup;
+        protected final long deadlineMillis;
 
         public Solver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup) {
             this.request = request;
             this.profilesByName = profilesByName;
             this.routerConfig = routerConfig;
             this.lookup = lookup;
+            this.deadlineMillis = createDeadline();
+        }
+
+        /**
+         * The timeout starts now and is shared by snapping and all path calculations of the request. An explicit
+         * deadline, e.g. set by the server when the request was received, can shorten it.
+         */
+        private long createDeadline() {
+            long deadline;
+            try {
+                deadline = Math.addExact(System.currentTimeMillis(), getTimeoutMillis(request.getHints()));
+            } catch (ArithmeticException e) {
+                deadline = Long.MAX_VALUE;
+            }
+            return Math.min(deadline, request.getHints().getLong(DEADLINE, Long.MAX_VALUE));
+        }
+
+        protected void checkDeadline() {
+            if (deadlineMillis < Long.MAX_VALUE && System.currentTimeMillis() > deadlineMillis)
+                throw new DeadlineExceededException("The time budget of the request was used up");
         }
 
         protected void checkRequest() {
@@ -486,6 +584,8 @@ public class Router {
             opts.putObject(ALGORITHM, request.getAlgorithm());
             opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
             opts.putObject(TIMEOUT_MS, getTimeoutMillis(request.getHints()));
+            if (deadlineMillis < Long.MAX_VALUE)
+                opts.putObject(DEADLINE, deadlineMillis);
             return new CHPathCalculator(new CHRoutingAlgorithmFactory(getRoutingCHGraph(profile.getName()), queryGraph), opts);
         }
 
@@ -539,6 +639,7 @@ public class Router {
                     setTraversalMode(profile.hasTurnCosts() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED).
                     setMaxVisitedNodes(getMaxVisitedNodes(request.getHints())).
                     setTimeoutMillis(getTimeoutMillis(request.getHints())).
+                    setDeadlineMillis(deadlineMillis).
                     setHints(request.getHints());
 
             // use A* for round trips
@@ -39,6 +39,17 @@ public class KVStorage {
     static final int MAX_UNIQUE_KEYS = (1 << 14);
     // Store string value as byte array and store the length into 1 byte
     private static final int MAX_LENGTH = (1 << 8) - 1;
+    // For String values the maximum length byte is reserved to mark a reference into the string pool
+    private static final int POOL_REF = MAX_LENGTH;
+    private static final int MAX_STRING_LENGTH = MAX_LENGTH - 1;
+    // A reference needs 1 byte for the marker and 4 bytes for the pointer, so only longer strings are deduplicated
+    private static final int MIN_POOLED_LENGTH = 5;
+    // The number of distinct strings remembered while writing. Strings that were evicted are stored again, but as
+    // street names are usually repeated in the neighbourhood of an edge this still catches most duplicates.
+    public static final int DEFAULT_STRING_POOL_SIZE = 100_000;
+    // The number of decoded String values cached while reading, 0 disables the cache.
+    public static final int DEFAULT_DECODE_CACHE_SIZE = 1 << 16;
+    private static final long MAX_POOL_POINTER = 0xFFFF_FFFFL;
 
     private final Directory dir;
     // It stores the mapping of "key to index" in the keys DataAccess. E.g. if your first key is "some" then we will
@@ -70,10 +81,17 @@ public class KVStorage {
     // int             (4 byte)
     //
     // Notes:
-    // 1. The key strings are limited MAX_UNIQUE_KEYS. A dynamic value has a maximum byte length of 255.
+    // 1. The key strings are limited MAX_UNIQUE_KEYS. A byte[] value has a maximum byte length of 255 and a String 254.
     // 2. Every key can store values only of the same type
     // 3. We need to loop through X entries to get the start val_x.
     // 4. The key index (14 bits) is stored along with the availability (2 bits), i.e. whether they KeyValue is available in forward and/or backward directions
+    // 5. A String value that was already stored before is not stored again. Instead the length byte is set to
+    //    POOL_REF (255) and is followed by the pointer (4 bytes) to the length byte of the first occurrence:
+    //    key_idx_2    (2 byte)
+    //    POOL_REF     (1 byte)
+    //    pointer      (4 byte)
+    //    This way the first occurrences form a shared string pool and a String value always has a single position
+    //    in vals, which is used as key for the decode cache.
     private final DataAccess vals;
     private final Map<String, Integer> keyToIndex = new HashMap<>();
     private final List<Class<?>> indexToClass = new ArrayList<>();
@@ -82,12 +100,35 @@ public class KVStorage {
     private long bytePointer = START_POINTER;
     private long lastEntryPointer = -1;
     private Map<String, KValue> lastEntries;
+    private final int stringPoolSize;
+    private final int decodeCacheSize;
+    // maps a String value to the pointer of its first occurrence. It is only needed while writing, so it is created
+    // on the first add and dropped in flush and close.
+    private Map<String, Long> stringPool;
+    // Street names and refs are decoded for every instruction and path detail. To avoid creating a new String for
+    // every access the decoded values are cached in a direct mapped array indexed by their pointer. Entries are
+    // immutable, so concurrent readers can replace them without further synchronization. The array is created on
+    // the first read to avoid the allocation for storages that are only written.
+    private volatile CachedString[] decodeCache;
+
+    public KVStorage(Directory dir, boolean edge) {
+        this(dir, edge, DEFAULT_STRING_POOL_SIZE, DEFAULT_DECODE_CACHE_SIZE);
+    }
 
     /**
-     * Specify a larger cacheSize to reduce disk usage. Note that this increases the memory usage of this object.
+     * @param stringPoolSize  the number of distinct String values remembered while writing to store repeated values
+     *                        only once. A larger pool reduces disk usage but needs more memory during the import.
+     * @param decodeCacheSize the number of decoded String values cached while reading, rounded up to a power of two.
+     *                        0 disables the cache.
      */
-    public KVStorage(Directory dir, boolean edge) {
+    public KVStorage(Directory dir, boolean edge, int stringPoolSize, int decodeCacheSize) {
+        if (stringPoolSize < 0)
+            throw new IllegalArgumentException("stringPoolSize must not be negative but was " + stringPoolSize);
+        if (decodeCacheSize < 0)
+            throw new IllegalArgumentException("decodeCacheSize must not be negative but was " + decodeCacheSize);
         this.dir = dir;
+        this.stringPoolSize = stringPoolSize;
+        this.decodeCacheSize = roundUpToPowerOfTwo(decodeCacheSize);
         if (edge) {
             this.keys = dir.create("edgekv_keys", 10 * 1024);
             this.vals = dir.create("edgekv_vals");
@@ -197,6 +238,25 @@ public class KVStorage {
         }
 
         final byte[] valueBytes = getBytesForValue(clazz, value);
+        if (clazz.equals(String.class) && valueBytes.length >= MIN_POOLED_LENGTH && stringPoolSize > 0) {
+            if (stringPool == null)
+                stringPool = new LinkedHashMap<>(16, 0.75f, true) {
+                    protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                        return size() > stringPoolSize;
+                    }
+                };
+            Long poolPointer = stringPool.get((String) value);
+            if (poolPointer != null) {
+                vals.ensureCapacity(currentPointer + 2 + 1 + 4);
+                vals.setShort(currentPointer, (short) (keyIndex << 2 | (fwd ? 2 : 0) | (bwd ? 1 : 0)));
+                vals.setByte(currentPointer + 2, (byte) POOL_REF);
+                vals.setBytes(currentPointer + 3, bitUtil.fromInt(BitUtil.toSignedInt(poolPointer)), 4);
+                return currentPointer + 2 + 1 + 4;
+            }
+            if (currentPointer + 2 <= MAX_POOL_POINTER)
+                stringPool.put((String) value, currentPointer + 2);
+        }
+
         vals.ensureCapacity(currentPointer + 2 + 1 + valueBytes.length);
         vals.setShort(currentPointer, (short) (keyIndex << 2 | (fwd ? 2 : 0) | (bwd ? 1 : 0)));
         currentPointer += 2;
@@ -334,8 +394,8 @@ public class KVStorage {
         byte[] bytes;
         if (clazz.equals(String.class)) {
             bytes = ((String) value).getBytes(Helper.UTF_CS);
-            if (bytes.length > MAX_LENGTH)
-                throw new IllegalArgumentException("bytes.length cannot be > " + MAX_LENGTH + " but was " + bytes.length + ". String:" + value);
+            if (bytes.length > MAX_STRING_LENGTH)
+                throw new IllegalArgumentException("bytes.length cannot be > " + MAX_STRING_LENGTH + " but was " + bytes.length + ". String:" + value);
         } else if (clazz.equals(byte[].class)) {
             bytes = (byte[]) value;
             if (bytes.length > MAX_LENGTH)
@@ -377,16 +437,24 @@ public class KVStorage {
      * This method creates an Object (type Class) which is located at the specified pointer
      */
     private Object deserializeObj(AtomicInteger sizeOfObject, long pointer, Class<?> clazz) {
-        if (hasDynLength(clazz)) {
+        if (clazz.equals(String.class)) {
+            int valueLength = vals.getByte(pointer) & 0xFF;
+            if (valueLength == POOL_REF) {
+                if (sizeOfObject != null) sizeOfObject.set(1 + 4);
+                pointer = Integer.toUnsignedLong(getInt(pointer + 1));
+                valueLength = vals.getByte(pointer) & 0xFF;
+            } else if (sizeOfObject != null) {
+                sizeOfObject.set(1 + valueLength);
+            }
+            return getString(pointer, valueLength);
+        } else if (clazz.equals(byte[].class)) {
             int valueLength = vals.getByte(pointer) & 0xFF;
             pointer++;
             byte[] valueBytes = new byte[valueLength];
             vals.getBytes(pointer, valueBytes, valueBytes.length);
             if (sizeOfObject != null)
                 sizeOfObject.set(1 + valueLength); // For String and byte[] we store the length and the value
-            if (clazz.equals(String.class)) return new String(valueBytes, Helper.UTF_CS);
-            else if (clazz.equals(byte[].class)) return valueBytes;
-            throw new IllegalArgumentException();
+            return valueBytes;
         } else {
             byte[] valueBytes = new byte[getFixLength(clazz)];
             vals.getBytes(pointer, valueBytes, valueBytes.length);
@@ -408,6 +476,50 @@ public class KVStorage {
         }
     }
 
+    /**
+     * Decodes the String with the specified length whose length byte is located at the specified pointer. As every
+     * String value has a single position in the storage the pointer can be used as key for the decode cache.
+     */
+    private String getString(long pointer, int valueLength) {
+        if (valueLength == 0) return "";
+        CachedString[] cache = decodeCache;
+        if (cache == null && decodeCacheSize > 0)
+            decodeCache = cache = new CachedString[decodeCacheSize];
+        int index = 0;
+        if (cache != null) {
+            long hash = pointer * 0x9E3779B97F4A7C15L;
+            index = (int) (hash ^ (hash >>> 32)) & (cache.length - 1);
+            CachedString cached = cache[index];
+            if (cached != null && cached.pointer == pointer) return cached.value;
+        }
+        byte[] valueBytes = new byte[valueLength];
+        vals.getBytes(pointer + 1, valueBytes, valueLength);
+        String value = new String(valueBytes, Helper.UTF_CS);
+        if (cache != null)
+            cache[index] = new CachedString(pointer, value);
+        return value;
+    }
+
+    private static int roundUpToPowerOfTwo(int size) {
+        return size <= 0 ? 0 : Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+    }
+
+    private int getInt(long pointer) {
+        byte[] bytes = new byte[4];
+        vals.getBytes(pointer, bytes, 4);
+        return bitUtil.toInt(bytes, 0);
+    }
+
+    /**
+     * @return the number of bytes the value at the specified pointer occupies in vals
+     */
+    private int getValueLength(long pointer, Class<?> clazz) {
+        if (!hasDynLength(clazz)) return getFixLength(clazz);
+        int valueLength = vals.getByte(pointer) & 0xFF;
+        if (valueLength == POOL_REF && clazz.equals(String.class)) return 1 + 4;
+        return 1 + valueLength;
+    }
+
     public Object get(final long entryPointer, String key, boolean reverse) {
         if (entryPointer < 0)
             throw new IllegalStateException("Pointer to access KVStorage cannot be negative:" + entryPointer);
@@ -434,9 +546,7 @@ public class KVStorage {
             }
 
             // skip to next entry of same edge via skipping the real value
-            Class<?> clazz = indexToClass.get(currentKeyIndex);
-            int valueLength = hasDynLength(clazz) ? 1 + vals.getByte(tmpPointer) & 0xFF : getFixLength(clazz);
-            tmpPointer += valueLength;
+            tmpPointer += getValueLength(tmpPointer, indexToClass.get(currentKeyIndex));
         }
 
         // value for specified key does not exist for the specified pointer
@@ -444,6 +554,8 @@ public class KVStorage {
     }
 
     public void flush() {
+        // usually nothing is added after flush, and if it is the pool is just built again
+        stringPool = null;
         keys.ensureCapacity(2);
         keys.setShort(0, (short) keyToIndex.size());
         long keyBytePointer = 2;
@@ -480,6 +592,7 @@ public class KVStorage {
     }
 
     public void close() {
+        stringPool = null;
         keys.close();
         vals.close();
     }
@@ -492,6 +605,16 @@ public class KVStorage {
         return vals.getCapacity() + keys.getCapacity();
     }
 
+    private static final class CachedString {
+        final long pointer;
+        final String value;
+
+        CachedString(long pointer, String value) {
+            this.pointer = pointer;
+            this.value = value;
+        }
+    }
+
     public static class KValue {
         private final Object fwdValue;
         private final Object bwdValue;
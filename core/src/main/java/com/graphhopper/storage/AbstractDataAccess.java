@@ -99,9 +99,16 @@ public abstract class AbstractDataAccess implements DataAccess {
     }
 
     protected long readHeader(RandomAccessFile raFile) throws IOException {
-        raFile.seek(0);
-        if (raFile.length() == 0)
+        return readHeader(raFile, 0);
+    }
+
+    /**
+     * Reads the header from the specified position, which is not 0 if the file contains more than one DataAccess.
+     */
+    protected long readHeader(RandomAccessFile raFile, long position) throws IOException {
+        if (raFile.length() <= position)
             return -1;
+        raFile.seek(position);
 
         String versionHint = raFile.readUTF();
         if (!"GH".equals(versionHint))
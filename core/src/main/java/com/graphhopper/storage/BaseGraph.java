@@ -64,10 +64,15 @@ public class BaseGraph implements Graph, Closeable {
     private final int eleBytesPerCoord;
 
     public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags, KVStorage.DEFAULT_STRING_POOL_SIZE, KVStorage.DEFAULT_DECODE_CACHE_SIZE);
+    }
+
+    public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags,
+                     int kvStringPoolSize, int kvDecodeCacheSize) {
         this.dir = dir;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
-        this.edgeKVStorage = new KVStorage(dir, true);
+        this.edgeKVStorage = new KVStorage(dir, true, kvStringPoolSize, kvDecodeCacheSize);
         this.store = new BaseGraphNodesAndEdges(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags);
         this.nodeAccess = new GHNodeAccess(store);
         this.segmentSize = segmentSize;
@@ -615,6 +620,8 @@ public class BaseGraph implements Graph, Closeable {
         private boolean withTurnCosts = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private int kvStringPoolSize = KVStorage.DEFAULT_STRING_POOL_SIZE;
+        private int kvDecodeCacheSize = KVStorage.DEFAULT_DECODE_CACHE_SIZE;
 
         public Builder(EncodingManager em) {
             this(em.getBytesForFlags());
@@ -653,8 +660,17 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        /**
+         * @see KVStorage#KVStorage(Directory, boolean, int, int)
+         */
+        public Builder setKVStorageCacheSizes(int stringPoolSize, int decodeCacheSize) {
+            this.kvStringPoolSize = stringPoolSize;
+            this.kvDecodeCacheSize = decodeCacheSize;
+            return this;
+        }
+
         public BaseGraph build() {
-            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags);
+            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags, kvStringPoolSize, kvDecodeCacheSize);
         }
 
         public BaseGraph create() {
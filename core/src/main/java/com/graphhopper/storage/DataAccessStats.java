@@ -0,0 +1,141 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * A snapshot of the memory used by a DataAccess: the heap it occupies or, for memory mapped files, how much of the
+ * mapping is resident in physical memory.
+ */
+public class DataAccessStats {
+    private final String name;
+    private final String type;
+    private final long capacity;
+    private final int segments;
+    private final int segmentSize;
+    private final long heapBytes;
+    private final long mappedBytes;
+    private final long residentBytes;
+
+    public DataAccessStats(String name, String type, long capacity, int segments, int segmentSize,
+                           long heapBytes, long mappedBytes, long residentBytes) {
+        this.name = name;
+        this.type = type;
+        this.capacity = capacity;
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.heapBytes = heapBytes;
+        this.mappedBytes = mappedBytes;
+        this.residentBytes = residentBytes;
+    }
+
+    /**
+     * @param maxSamplesPerSegment the maximum number of pages that are checked per segment to estimate the resident
+     *                             bytes of a memory mapped DataAccess, see {@link MMapDataAccess#getResidentBytes(int)}
+     */
+    public static DataAccessStats of(DataAccess da, int maxSamplesPerSegment) {
+        long capacity = da.isClosed() ? 0 : da.getCapacity();
+        if (da instanceof MMapDataAccess) {
+            long resident = da.isClosed() ? 0 : ((MMapDataAccess) da).getResidentBytes(maxSamplesPerSegment);
+            return new DataAccessStats(da.getName(), da.getType().toString(), capacity, da.getSegments(), da.getSegmentSize(),
+                    0, capacity, resident);
+        }
+        // in-memory DataAccess objects are always fully resident
+        return new DataAccessStats(da.getName(), da.getType().toString(), capacity, da.getSegments(), da.getSegmentSize(),
+                capacity, 0, capacity);
+    }
+
+    /**
+     * @return the statistics of all DataAccess objects of the specified directory sorted by name
+     */
+    public static List<DataAccessStats> of(Directory directory, int maxSamplesPerSegment) {
+        List<DataAccess> dataAccesses;
+        synchronized (directory.getDAs()) {
+            dataAccesses = new ArrayList<>(directory.getDAs().values());
+        }
+        List<DataAccessStats> result = new ArrayList<>(dataAccesses.size());
+        for (DataAccess da : dataAccesses) {
+            result.add(of(da, maxSamplesPerSegment));
+        }
+        result.sort(Comparator.comparing(DataAccessStats::getName));
+        return result;
+    }
+
+    /**
+     * Formats the specified statistics as a table with one line per DataAccess and a final line with the sums.
+     */
+    public static String toTable(List<DataAccessStats> stats) {
+        String format = "%-30s %-13s %8s %15s %15s %15s %15s%n";
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(format, "name", "type", "segments", "capacity", "heap", "mapped", "resident"));
+        long capacity = 0, heap = 0, mapped = 0, resident = 0;
+        for (DataAccessStats s : stats) {
+            sb.append(String.format(format, s.name, s.type, s.segments, nf(s.capacity), nf(s.heapBytes),
+                    nf(s.mappedBytes), nf(s.residentBytes)));
+            capacity += s.capacity;
+            heap += s.heapBytes;
+            mapped += s.mappedBytes;
+            resident += s.residentBytes;
+        }
+        sb.append(String.format(format, "total", "", "", nf(capacity), nf(heap), nf(mapped), nf(resident)));
+        return sb.toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + type + "), capacity: " + capacity + ", heap: " + heapBytes + ", mapped: " + mappedBytes
+                + ", resident: " + residentBytes;
+    }
+}
@@ -53,6 +53,12 @@ public interface Directory {
      */
     void remove(String name);
 
+    /**
+     * Releases the resources of the specified object and removes it from the directory, but keeps its backing file.
+     * Afterwards an object with the same name can be created again, e.g. to load it once more.
+     */
+    void close(String name);
+
     /**
      * @return the default type of a newly created DataAccess object
      */
@@ -36,7 +36,13 @@ public class GHDirectory implements Directory {
     private final Map<String, DAType> defaultTypes = new LinkedHashMap<>();
     private final Map<String, Integer> mmapPreloads = new LinkedHashMap<>();
     private final Map<String, DataAccess> map = Collections.synchronizedMap(new HashMap<>());
+    // not null if the location is a single graph container file instead of a folder
+    private final GraphContainer container;
 
+    /**
+     * @param _location the graph folder or a graph container file created via {@link GraphContainer#export}. For a
+     *                  container every DataAccess is mapped read-only as a slice of the container file.
+     */
     public GHDirectory(String _location, DAType defaultType) {
         this.typeFallback = defaultType;
         if (isEmpty(_location))
@@ -47,8 +53,13 @@ public class GHDirectory implements Directory {
 
         location = _location;
         File dir = new File(location);
-        if (dir.exists() && !dir.isDirectory())
-            throw new RuntimeException("file '" + dir + "' exists but is not a directory");
+        if (dir.exists() && !dir.isDirectory()) {
+            if (!GraphContainer.isContainer(dir))
+                throw new RuntimeException("file '" + dir + "' exists but is neither a directory nor a graph container");
+            container = GraphContainer.open(dir);
+        } else {
+            container = null;
+        }
     }
 
     /**
@@ -127,7 +138,12 @@ public class GHDirectory implements Directory {
             throw new IllegalStateException("DataAccess " + name + " has already been created");
 
         DataAccess da;
-        if (type.isInMemory()) {
+        GraphContainer.Entry entry = container == null ? null : container.getEntry(name);
+        if (entry != null || container != null && type.isStoring()) {
+            da = entry == null
+                    ? new MMapDataAccess(name, location, segmentSize, container.getFile(), 0, -1)
+                    : new MMapDataAccess(name, location, segmentSize, container.getFile(), entry.getOffset(), entry.getLength());
+        } else if (type.isInMemory()) {
             if (type.isInteg()) {
                 if (type.isStoring())
                     da = new RAMIntDataAccess(name, location, true, segmentSize);
@@ -174,8 +190,17 @@ public class GHDirectory implements Directory {
         removeBackingFile(old, name);
     }
 
+    @Override
+    public void close(String name) {
+        DataAccess old = map.remove(name);
+        if (old == null)
+            throw new IllegalStateException("Couldn't close DataAccess: " + name);
+
+        old.close();
+    }
+
     private void removeBackingFile(DataAccess da, String name) {
-        if (da.getType().isStoring())
+        if (container == null && da.getType().isStoring())
             removeDir(new File(location + name));
     }
 
@@ -199,9 +224,16 @@ public class GHDirectory implements Directory {
         return typeFallback.isStoring();
     }
 
+    /**
+     * @return the graph container this directory maps its DataAccess objects from or null if it is a folder
+     */
+    public GraphContainer getContainer() {
+        return container;
+    }
+
     @Override
     public Directory create() {
-        if (isStoring())
+        if (isStoring() && container == null)
             new File(location).mkdirs();
         return this;
     }
@@ -0,0 +1,339 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static com.graphhopper.storage.AbstractDataAccess.HEADER_OFFSET;
+
+/**
+ * A graph container stores all files of a graph folder in one file, so that a prepared graph can be copied to
+ * another host as a single file. The container does not need to be extracted: if the graph location points to a
+ * container the {@link GHDirectory} maps every DataAccess read-only as a slice of it.
+ * <p>
+ * The layout is:
+ * <pre>
+ * "GHC" marker (writeUTF), version (int), entry count (int)
+ * for every entry: name (writeUTF), offset (long), length (long), CRC32 of the content (long)
+ * CRC32 of the table of contents (long)
+ * the content of every entry at its offset
+ * </pre>
+ * The offsets are chosen such that the data of a DataAccess, i.e. the part after its header, starts at a page
+ * boundary. When opening a container only the table of contents is read and validated. The checksums of the content
+ * are checked in {@link #verify()} and {@link #extract(File)}.
+ */
+public class GraphContainer {
+    static final String MARKER = "GHC";
+    static final int VERSION = 1;
+    static final int ALIGNMENT = 4096;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final File file;
+    private final Map<String, Entry> entries;
+
+    private GraphContainer(File file, Map<String, Entry> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    /**
+     * @return true if the specified file exists and starts with the marker of a graph container
+     */
+    public static boolean isContainer(File file) {
+        if (!file.isFile())
+            return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            byte[] bytes = new byte[2 + MARKER.length()];
+            in.readFully(bytes);
+            return bytes[0] == 0 && bytes[1] == MARKER.length() && MARKER.equals(new String(bytes, 2, MARKER.length(), "US-ASCII"));
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes all files of the specified graph folder into the specified container file. Lock files and sub folders
+     * are skipped. The container is written to a temporary file first and then moved to the specified location.
+     */
+    public static GraphContainer export(File graphFolder, File containerFile) {
+        File[] files = graphFolder.listFiles(f -> f.isFile() && !f.getName().endsWith(".lock"));
+        if (files == null || files.length == 0)
+            throw new IllegalArgumentException("No files to export in " + graphFolder);
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        long offset = getTOCSize(files);
+        for (File f : files) {
+            offset = align(offset);
+            entries.put(f.getName(), new Entry(f.getName(), offset, f.length(), 0));
+            offset += f.length();
+        }
+
+        File tmpFile = new File(containerFile.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (File f : files) {
+                Entry entry = entries.get(f.getName());
+                CRC32 crc = new CRC32();
+                long position = entry.offset;
+                try (FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+                    long remaining = entry.length;
+                    while (remaining > 0) {
+                        buffer.clear();
+                        if (remaining < buffer.capacity())
+                            buffer.limit((int) remaining);
+                        int read = in.read(buffer);
+                        if (read < 0)
+                            throw new IllegalStateException("File " + f + " changed while exporting it");
+                        buffer.flip();
+                        crc.update(buffer.duplicate());
+                        while (buffer.hasRemaining())
+                            position += out.write(buffer, position);
+                        remaining -= read;
+                    }
+                }
+                entries.put(entry.name, new Entry(entry.name, entry.offset, entry.length, crc.getValue()));
+            }
+
+            ByteBuffer toc = ByteBuffer.wrap(toTOCBytes(entries.values()));
+            long position = 0;
+            while (toc.hasRemaining())
+                position += out.write(toc, position);
+            out.force(true);
+        } catch (IOException ex) {
+            tmpFile.delete();
+            throw new UncheckedIOException("Cannot export " + graphFolder + " to " + containerFile, ex);
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), containerFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot move " + tmpFile + " to " + containerFile, ex);
+        }
+        return new GraphContainer(containerFile, entries);
+    }
+
+    /**
+     * Reads and validates the table of contents of the specified container file.
+     */
+    public static GraphContainer open(File containerFile) {
+        if (!isContainer(containerFile))
+            throw new IllegalArgumentException("Not a graph container: " + containerFile);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(containerFile)))) {
+            in.readUTF();
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Graph container " + containerFile + " has version " + version + " but expected " + VERSION);
+            int count = in.readInt();
+            if (count < 0)
+                throw new IllegalStateException("Invalid entry count " + count + " in graph container " + containerFile);
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                if (entry.offset < 0 || entry.length < 0 || entry.offset + entry.length > containerFile.length())
+                    throw new IllegalStateException("Entry " + entry + " exceeds the graph container " + containerFile
+                            + " with " + containerFile.length() + " bytes. Was the file copied completely?");
+                entries.put(entry.name, entry);
+            }
+            long tocChecksum = in.readLong();
+            if (tocChecksum != getTOCChecksum(entries.values()))
+                throw new IllegalStateException("Table of contents of graph container " + containerFile + " is corrupt");
+            return new GraphContainer(containerFile, entries);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open graph container " + containerFile, ex);
+        }
+    }
+
+    /**
+     * Checks the checksums of all entries and throws an IllegalStateException if one does not match.
+     */
+    public void verify() {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (Entry entry : entries.values()) {
+                CRC32 crc = new CRC32();
+                copy(in, entry, buffer, crc, null);
+                checkCRC(entry, crc);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot verify graph container " + file, ex);
+        }
+    }
+
+    /**
+     * Writes all entries as separate files into the specified folder and checks their checksums.
+     */
+    public void extract(File graphFolder) {
+        if (!graphFolder.exists() && !graphFolder.mkdirs())
+            throw new IllegalArgumentException("Cannot create folder " + graphFolder);
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (Entry entry : entries.values()) {
+                CRC32 crc = new CRC32();
+                try (FileChannel out = FileChannel.open(new File(graphFolder, entry.name).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    copy(in, entry, buffer, crc, out);
+                }
+                checkCRC(entry, crc);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot extract graph container " + file + " to " + graphFolder, ex);
+        }
+    }
+
+    private static void copy(FileChannel in, Entry entry, ByteBuffer buffer, CRC32 crc, FileChannel out) throws IOException {
+        long position = entry.offset;
+        long end = entry.offset + entry.length;
+        while (position < end) {
+            buffer.clear();
+            if (end - position < buffer.capacity())
+                buffer.limit((int) (end - position));
+            int read = in.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Unexpected end of graph container while reading " + entry);
+            position += read;
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            if (out != null)
+                while (buffer.hasRemaining())
+                    out.write(buffer);
+        }
+    }
+
+    private void checkCRC(Entry entry, CRC32 crc) {
+        if (crc.getValue() != entry.checksum)
+            throw new IllegalStateException("Checksum mismatch for " + entry.name + " in graph container " + file);
+    }
+
+    private static long getTOCSize(File[] files) {
+        List<Entry> placeholders = new ArrayList<>(files.length);
+        for (File f : files) {
+            placeholders.add(new Entry(f.getName(), 0, 0, 0));
+        }
+        return toTOCBytes(placeholders).length;
+    }
+
+    private static byte[] toTOCBytes(Collection<Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeEntries(out, entries);
+            out.writeLong(getTOCChecksum(entries));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long getTOCChecksum(Collection<Entry> entries) {
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeEntries(out, entries);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        crc.update(bytes.toByteArray());
+        return crc.getValue();
+    }
+
+    private static void writeEntries(DataOutputStream out, Collection<Entry> entries) throws IOException {
+        out.writeUTF(MARKER);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeUTF(entry.name);
+            out.writeLong(entry.offset);
+            out.writeLong(entry.length);
+            out.writeLong(entry.checksum);
+        }
+    }
+
+    /**
+     * @return the smallest offset that is not smaller than the specified offset and for which the data following the
+     * DataAccess header starts at a page boundary
+     */
+    static long align(long offset) {
+        long dataStart = offset + HEADER_OFFSET;
+        long remainder = dataStart % ALIGNMENT;
+        return remainder == 0 ? offset : offset + ALIGNMENT - remainder;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the entry with the specified name or null if the container does not contain it
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    @Override
+    public String toString() {
+        return file + " (" + entries.size() + " entries)";
+    }
+
+    public static class Entry {
+        private final String name;
+        private final long offset;
+        private final long length;
+        private final long checksum;
+
+        Entry(String name, long offset, long length, long checksum) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [offset=" + offset + ", length=" + length + "]";
+        }
+    }
+}
@@ -48,13 +48,34 @@ import java.util.List;
  */
 public final class MMapDataAccess extends AbstractDataAccess {
 
+    // the typical page size, used only to estimate the resident memory
+    private static final int PAGE_SIZE = 4096;
     private final boolean allowWrites;
+    // if not null this DataAccess is the read-only slice [fileOffset, fileOffset + fileLength) of a GraphContainer
+    private final File containerFile;
+    private final long fileOffset;
+    private final long fileLength;
     private RandomAccessFile raFile;
     private final List<MappedByteBuffer> segments = new ArrayList<>();
 
     MMapDataAccess(String name, String location, boolean allowWrites, int segmentSize) {
         super(name, location, segmentSize);
         this.allowWrites = allowWrites;
+        this.containerFile = null;
+        this.fileOffset = 0;
+        this.fileLength = -1;
+    }
+
+    /**
+     * Creates a read-only DataAccess that maps the specified part of a {@link GraphContainer}. A negative fileLength
+     * means that the container does not contain this DataAccess and loadExisting will return false.
+     */
+    MMapDataAccess(String name, String location, int segmentSize, File containerFile, long fileOffset, long fileLength) {
+        super(name, location, segmentSize);
+        this.allowWrites = false;
+        this.containerFile = containerFile;
+        this.fileOffset = fileOffset;
+        this.fileLength = fileLength;
     }
 
     public static void cleanMappedByteBuffer(final ByteBuffer buffer) {
@@ -83,7 +104,7 @@ public final class MMapDataAccess extends AbstractDataAccess {
 
         try {
             // raFile necessary for loadExisting and create
-            raFile = new RandomAccessFile(getFullName(), allowWrites ? "rw" : "r");
+            raFile = new RandomAccessFile(containerFile == null ? getFullName() : containerFile.getPath(), allowWrites ? "rw" : "r");
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
@@ -94,6 +115,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
         if (!segments.isEmpty()) {
             throw new IllegalThreadStateException("already created");
         }
+        if (containerFile != null)
+            throw new IllegalStateException("Cannot create " + name + " in the read-only graph container " + containerFile);
         initRandomAccessFile();
         bytes = Math.max(10 * 4, bytes);
         ensureCapacity(bytes);
@@ -127,6 +150,9 @@ public final class MMapDataAccess extends AbstractDataAccess {
         int newSegments;
         int i = 0;
         long newFileLength = offset + segmentsToMap * longSegmentSize;
+        if (containerFile != null && newFileLength > fileLength)
+            throw new IllegalStateException("Cannot map " + newFileLength + " bytes of " + name + " as it only has "
+                    + fileLength + " bytes in the graph container " + containerFile);
         try {
             // ugly remapping
             // http://stackoverflow.com/q/14011919/194609
@@ -161,7 +187,7 @@ public final class MMapDataAccess extends AbstractDataAccess {
         for (int trial = 0; trial < 1; ) {
             try {
                 buf = raFile.getChannel().map(
-                        allowWrites ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, offset, byteCount);
+                        allowWrites ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, fileOffset + offset, byteCount);
                 break;
             } catch (IOException tmpex) {
                 ioex = tmpex;
@@ -193,13 +219,18 @@ public final class MMapDataAccess extends AbstractDataAccess {
         if (isClosed())
             throw new IllegalStateException("already closed");
 
-        File file = new File(getFullName());
-        if (!file.exists() || file.length() == 0)
-            return false;
+        if (containerFile != null) {
+            if (fileLength <= 0)
+                return false;
+        } else {
+            File file = new File(getFullName());
+            if (!file.exists() || file.length() == 0)
+                return false;
+        }
 
         initRandomAccessFile();
         try {
-            long byteCount = readHeader(raFile);
+            long byteCount = readHeader(raFile, fileOffset);
             if (byteCount < 0)
                 return false;
 
@@ -214,6 +245,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
     public void flush() {
         if (isClosed())
             throw new IllegalStateException("already closed");
+        if (containerFile != null)
+            throw new IllegalStateException("Cannot flush " + name + " into the read-only graph container " + containerFile);
 
         try {
             for (MappedByteBuffer bb : segments) {
@@ -242,8 +275,37 @@ public final class MMapDataAccess extends AbstractDataAccess {
         }
     }
 
+    /**
+     * Estimates how many bytes of the mapped file are currently resident in physical memory. For every segment at
+     * most maxSamplesPerSegment pages are checked via MappedByteBuffer.isLoaded, which uses mincore on most platforms.
+     * This method can be called concurrently to {@link #close()}, e.g. from a metrics reporter, and returns 0 for a
+     * closed DataAccess.
+     */
+    public synchronized long getResidentBytes(int maxSamplesPerSegment) {
+        if (maxSamplesPerSegment <= 0)
+            throw new IllegalArgumentException("maxSamplesPerSegment must be positive but was " + maxSamplesPerSegment);
+        if (isClosed())
+            return 0;
+        long residentBytes = 0;
+        for (MappedByteBuffer bb : segments) {
+            int capacity = bb.capacity();
+            int pages = (capacity + PAGE_SIZE - 1) / PAGE_SIZE;
+            int step = Math.max(1, pages / maxSamplesPerSegment);
+            int samples = 0, loaded = 0;
+            for (int page = 0; page < pages; page += step) {
+                int offset = page * PAGE_SIZE;
+                samples++;
+                if (bb.slice(offset, Math.min(PAGE_SIZE, capacity - offset)).isLoaded())
+                    loaded++;
+            }
+            if (samples > 0)
+                residentBytes += (long) capacity * loaded / samples;
+        }
+        return residentBytes;
+    }
+
     @Override
-    public void close() {
+    public synchronized void close() {
         super.close();
         clean(0, segments.size());
         segments.clear();
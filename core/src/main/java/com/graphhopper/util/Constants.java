@@ -67,7 +67,7 @@ public class Constants {
     public static final int VERSION_GEOMETRY = 7;
     public static final int VERSION_TURN_COSTS = 0;
     public static final int VERSION_LOCATION_IDX = 5;
-    public static final int VERSION_KV_STORAGE = 2;
+    public static final int VERSION_KV_STORAGE = 3;
     /**
      * The version without the snapshot string
      */
@@ -29,7 +29,9 @@ import com.graphhopper.util.exceptions.ConnectionNotFoundException;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class merges multiple {@link Path} objects into one continuous object that
@@ -56,6 +58,7 @@ public class PathMerger {
     private PathDetailsBuilderFactory pathBuilderFactory;
     private List<String> requestedPathDetails = Collections.emptyList();
     private double favoredHeading = Double.NaN;
+    private final Map<String, Long> timings = new LinkedHashMap<>();
 
     public PathMerger(Graph graph, Weighting weighting) {
         this.graph = graph;
@@ -111,6 +114,7 @@ public class PathMerger {
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
             if (enableInstructions) {
+                long start = System.nanoTime();
                 InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, evLookup, tr);
 
                 if (!il.isEmpty()) {
@@ -123,9 +127,10 @@ public class PathMerger {
                         fullInstructions.set(fullInstructions.size() - 1, newInstr);
                     }
                 }
-
+                addTiming("instructions", start);
             }
             if (calcPoints || enableInstructions) {
+                long start = System.nanoTime();
                 PointList tmpPoints = path.calcPoints();
                 if (fullPoints.isEmpty())
                     fullPoints = new PointList(tmpPoints.size(), tmpPoints.is3D());
@@ -136,7 +141,10 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
+                addTiming("points", start);
+                start = System.nanoTime();
                 responsePath.addPathDetails(PathDetailsFromEdges.calcDetails(path, evLookup, weighting, requestedPathDetails, pathBuilderFactory, origPoints, graph));
+                addTiming("path_details", start);
                 wayPointIndices.add(origPoints);
                 if (pathIndex == paths.size() - 1)
                     wayPointIndices.add(fullPoints.size() - 1);
@@ -150,8 +158,10 @@ public class PathMerger {
             calcAscendDescend(responsePath, fullPoints);
 
         if (enableInstructions) {
+            long start = System.nanoTime();
             fullInstructions = updateInstructionsWithContext(fullInstructions);
             responsePath.setInstructions(fullInstructions);
+            addTiming("instructions", start);
         }
 
         if (!allFound) {
@@ -176,11 +186,25 @@ public class PathMerger {
                 setWaypointIndices(wayPointIndices);
 
         if (allFound && simplifyResponse && (calcPoints || enableInstructions)) {
+            long start = System.nanoTime();
             PathSimplification.simplify(responsePath, ramerDouglasPeucker, enableInstructions);
+            addTiming("simplification", start);
         }
         return responsePath;
     }
 
+    private void addTiming(String phase, long startNanos) {
+        timings.merge(phase, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    /**
+     * @return the durations in nanoseconds of the instructions, points, path details and simplification of all
+     * {@link #doWork} calls so far
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
     /**
      * This method iterates over all instructions and uses the available context to improve the instructions.
      * If the requests contains a heading, this method can transform the first continue to a u-turn if the heading
@@ -23,6 +23,7 @@ import com.graphhopper.config.Profile;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
+import com.graphhopper.routing.RouteCache;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -138,7 +139,18 @@ public class GraphHopperTest {
         req.putHint(TIMEOUT_MS, -1);
         rsp = hopper.route(req);
         assertTrue(rsp.hasErrors());
-        assertTrue(rsp.getErrors().toString().contains("ConnectionNotFoundException"), rsp.getErrors().toString());
+        assertTrue(rsp.getErrors().toString().contains("DeadlineExceededException"), rsp.getErrors().toString());
+
+        // the same for a deadline in the past
+        req.getHints().remove(TIMEOUT_MS);
+        req.putHint(Routing.DEADLINE, System.currentTimeMillis() - 1);
+        rsp = hopper.route(req);
+        assertTrue(rsp.hasErrors());
+        assertTrue(rsp.getErrors().toString().contains("DeadlineExceededException"), rsp.getErrors().toString());
+
+        req.putHint(Routing.DEADLINE, System.currentTimeMillis() + 60_000);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
     }
 
     @Test
@@ -194,6 +206,83 @@ public class GraphHopperTest {
         assertEquals(131, res.getPoints().size());
     }
 
+    @Test
+    public void testTimings() {
+        final String profile = "profile";
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).
+                setProfile(profile).setPathDetails(List.of("street_name")));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals("dijkstrabi|ch", rsp.getAlgorithm());
+        assertEquals(List.of("snap", "query_graph", "algorithm", "path_extraction", "instructions", "points", "path_details", "simplification"),
+                new ArrayList<>(rsp.getTimings().keySet()));
+        for (long nanos : rsp.getTimings().values())
+            assertTrue(nanos >= 0);
+
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).
+                setProfile(profile).setAlgorithm(ASTAR_BI).putHint(CH.DISABLE, true).
+                putHint(Parameters.Routing.INSTRUCTIONS, false));
+        assertEquals("astarbi|beeline", rsp.getAlgorithm());
+        assertFalse(rsp.getTimings().containsKey("instructions"));
+        assertTrue(rsp.getTimings().containsKey("algorithm"));
+    }
+
+    @Test
+    public void testRouteCache() {
+        final String profile = "profile";
+        RouteCache routeCache = new RouteCache(Helper.MB, 60_000);
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car")).
+                setRouteCache(routeCache).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals("dijkstrabi|ch", rsp.getAlgorithm());
+        assertEquals(1, routeCache.size());
+
+        GHResponse cached = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile));
+        assertFalse(cached.hasErrors(), cached.getErrors().toString());
+        assertEquals("cache", cached.getAlgorithm());
+        assertEquals(rsp.getBest().getDistance(), cached.getBest().getDistance(), 1.e-6);
+        assertEquals(rsp.getBest().getPoints(), cached.getBest().getPoints());
+        assertEquals(List.of("snap"), new ArrayList<>(cached.getTimings().keySet()));
+        assertEquals(1, routeCache.getHits());
+
+        // other hints, algorithms or a custom model are different entries
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile).
+                putHint(Parameters.Routing.INSTRUCTIONS, false));
+        assertEquals("dijkstrabi|ch", rsp.getAlgorithm());
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile).
+                putHint(CH.DISABLE, true));
+        assertEquals("astarbi|beeline", rsp.getAlgorithm());
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile).
+                putHint(CH.DISABLE, true).setCustomModel(new CustomModel().setDistanceInfluence(100d)));
+        assertEquals("astarbi|beeline", rsp.getAlgorithm());
+        assertEquals(4, routeCache.size());
+        // the timeout is not part of the key
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile).
+                putHint(Parameters.Routing.TIMEOUT_MS, 10_000));
+        assertEquals("cache", rsp.getAlgorithm());
+
+        routeCache.invalidate();
+        rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile));
+        assertEquals("dijkstrabi|ch", rsp.getAlgorithm());
+    }
+
     @Test
     public void withoutInstructions() {
         final String profile = "profile";
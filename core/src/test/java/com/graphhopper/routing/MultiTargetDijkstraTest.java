@@ -0,0 +1,178 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.TurnCostStorage;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiTargetDijkstraTest {
+    private DecimalEncodedValue speedEnc;
+    private DecimalEncodedValue turnCostEnc;
+    private BaseGraph graph;
+    private TurnCostStorage turnCostStorage;
+
+    @BeforeEach
+    public void setup() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager encodingManager = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        graph = new BaseGraph.Builder(encodingManager).withTurnCosts(true).create();
+        turnCostStorage = graph.getTurnCostStorage();
+    }
+
+    @Test
+    public void restrictedEdges() {
+        // 0-1-2
+        //   | |
+        //   3-4
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 3).setDistance(150).set(speedEnc, 10, 10);
+        graph.edge(2, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(3, 4).setDistance(100).set(speedEnc, 10, 10);
+        Weighting weighting = new SpeedWeighting(speedEnc, turnCostEnc, turnCostStorage, Double.POSITIVE_INFINITY);
+
+        List<Path> paths = new MultiTargetDijkstra(graph, weighting).calcPaths(1, ANY_EDGE,
+                new int[]{1, 4, 4, 0, 1}, new int[]{ANY_EDGE, ANY_EDGE, 4, ANY_EDGE, 1});
+        assertEquals(5, paths.size());
+        assertTrue(paths.get(0).isFound());
+        assertEquals(0, paths.get(0).getWeight(), 1.e-6);
+        assertEquals(IntArrayList.from(1, 2, 4), paths.get(1).calcNodes());
+        assertEquals(IntArrayList.from(1, 3, 4), paths.get(2).calcNodes());
+        assertEquals(IntArrayList.from(1, 0), paths.get(3).calcNodes());
+        // returning to the start via the edge 2-1 requires the loop around the block, since u-turns are forbidden
+        assertEquals(IntArrayList.from(1, 3, 4, 2, 1), paths.get(4).calcNodes());
+
+        // the first edge is restricted, so 1->1 is no longer the empty path
+        paths = new MultiTargetDijkstra(graph, weighting).calcPaths(1, 2,
+                new int[]{1, 2, 0}, new int[]{ANY_EDGE, ANY_EDGE, ANY_EDGE});
+        assertEquals(IntArrayList.from(1, 3, 4, 2, 1), paths.get(0).calcNodes());
+        assertEquals(IntArrayList.from(1, 3, 4, 2), paths.get(1).calcNodes());
+        assertEquals(IntArrayList.from(1, 3, 4, 2, 1, 0), paths.get(2).calcNodes());
+
+        paths = new MultiTargetDijkstra(graph, weighting).calcPaths(1, NO_EDGE, new int[]{1, 2}, new int[]{ANY_EDGE, ANY_EDGE});
+        assertFalse(paths.get(0).isFound());
+        assertFalse(paths.get(1).isFound());
+    }
+
+    @Test
+    public void maxVisitedNodes() {
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        Weighting weighting = new SpeedWeighting(speedEnc, turnCostEnc, turnCostStorage, Double.POSITIVE_INFINITY);
+        MultiTargetDijkstra algo = new MultiTargetDijkstra(graph, weighting);
+        algo.setMaxVisitedNodes(2);
+        List<Path> paths = algo.calcPaths(0, ANY_EDGE, new int[]{1, 3}, new int[]{ANY_EDGE, ANY_EDGE});
+        assertTrue(paths.get(0).isFound());
+        assertFalse(paths.get(1).isFound());
+    }
+
+    @Test
+    public void maxWeightStopsSearchForUnreachableTarget() {
+        // a long chain 0-1-2-...-99, the target 2 can only be entered via the one-way edge 2->3 in the wrong direction
+        for (int i = 0; i < 99; i++) {
+            if (i == 2)
+                graph.edge(i, i + 1).setDistance(100).set(speedEnc, 10, 0);
+            else
+                graph.edge(i, i + 1).setDistance(100).set(speedEnc, 10, 10);
+        }
+        Weighting weighting = new SpeedWeighting(speedEnc, turnCostEnc, turnCostStorage, Double.POSITIVE_INFINITY);
+        int[] targets = {2, 2};
+        int[] targetInEdges = {1, 2};
+
+        // every edge has the weight 10. Without a limit the unreachable target makes the search visit the entire chain
+        MultiTargetDijkstra algo = new MultiTargetDijkstra(graph, weighting);
+        List<Path> paths = algo.calcPaths(0, ANY_EDGE, targets, targetInEdges);
+        assertTrue(paths.get(0).isFound());
+        assertFalse(paths.get(1).isFound());
+        assertTrue(algo.getVisitedNodes() > 90, "visited nodes: " + algo.getVisitedNodes());
+
+        algo = new MultiTargetDijkstra(graph, weighting).setMaxWeight(50);
+        paths = algo.calcPaths(0, ANY_EDGE, targets, targetInEdges);
+        assertTrue(paths.get(0).isFound());
+        assertEquals(IntArrayList.from(0, 1, 2), paths.get(0).calcNodes());
+        assertFalse(paths.get(1).isFound());
+        assertTrue(algo.getVisitedNodes() <= 12, "visited nodes: " + algo.getVisitedNodes());
+    }
+
+    @RepeatedTest(10)
+    public void randomGraph() {
+        final long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, turnCostStorage);
+        graph.freeze();
+        double uTurnCosts = rnd.nextBoolean() ? Double.POSITIVE_INFINITY : 40;
+        Weighting weighting = new SpeedWeighting(speedEnc, turnCostEnc, turnCostStorage, uTurnCosts);
+        for (int i = 0; i < 20; i++) {
+            int source = rnd.nextInt(graph.getNodes());
+            int sourceOutEdge = getAdjEdge(rnd, source);
+            int[] targets = new int[5];
+            int[] targetInEdges = new int[targets.length];
+            for (int j = 0; j < targets.length; j++) {
+                // include the source itself from time to time
+                targets[j] = j == 0 && rnd.nextBoolean() ? source : rnd.nextInt(graph.getNodes());
+                targetInEdges[j] = getAdjEdge(rnd, targets[j]);
+            }
+            List<Path> paths = new MultiTargetDijkstra(graph, weighting).calcPaths(source, sourceOutEdge, targets, targetInEdges);
+            for (int j = 0; j < targets.length; j++) {
+                Path refPath = new DijkstraBidirectionRef(graph, weighting, TraversalMode.EDGE_BASED)
+                        .calcPath(source, targets[j], sourceOutEdge, targetInEdges[j]);
+                String msg = "seed: " + seed + ", " + source + "(" + sourceOutEdge + ") -> " + targets[j] + "(" + targetInEdges[j] + ")";
+                assertEquals(refPath.isFound(), paths.get(j).isFound(), msg);
+                assertEquals(refPath.getWeight(), paths.get(j).getWeight(), 1.e-3, msg);
+            }
+        }
+    }
+
+    private int getAdjEdge(Random rnd, int node) {
+        if (rnd.nextDouble() < 0.3)
+            return ANY_EDGE;
+        if (rnd.nextDouble() < 0.05)
+            return NO_EDGE;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        List<Integer> edgeIds = new ArrayList<>();
+        while (iter.next())
+            edgeIds.add(iter.getEdge());
+        return edgeIds.isEmpty() ? ANY_EDGE : edgeIds.get(rnd.nextInt(edgeIds.size()));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.Parameters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreparationCacheTest {
+    private static final String GH_LOCATION = "target/preparation-cache-test-gh";
+
+    @BeforeEach
+    @AfterEach
+    public void setup() {
+        Helper.removeDir(new File(GH_LOCATION));
+    }
+
+    private static GraphHopperConfig createConfig() {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("graph.location", GH_LOCATION).
+                putObject("datareader.file", "../core/files/monaco.osm.gz").
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("import.osm.ignored_highways", "").
+                putObject("prepare.min_network_size", 0).
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car", "car"), TestProfiles.accessAndSpeed("car2", "car")));
+        config.setCHProfiles(List.of(new CHProfile("car"), new CHProfile("car2")));
+        config.setLMProfiles(List.of(new LMProfile("car")));
+        return config;
+    }
+
+    private static double route(GraphHopper hopper, String profile, boolean disableCH) {
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile);
+        req.putHint(Parameters.CH.DISABLE, disableCH);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        return rsp.getBest().getDistance();
+    }
+
+    @Test
+    public void testLoadOnDemandAndEvict() {
+        new GraphHopper().init(createConfig()).importAndClose();
+
+        // every preparation of the monaco graph has one segment of 1MB per DataAccess, so only one fits into 3MB
+        GraphHopper hopper = new GraphHopper().init(createConfig().
+                putObject("routing.preparations.lazy_load", true).
+                putObject("routing.preparations.memory_budget_mb", 3));
+        assertTrue(hopper.load());
+        PreparationCache cache = hopper.getPreparationCache();
+        assertFalse(cache.isCHLoaded("car"));
+        assertEquals(0, cache.getLoadedBytes());
+
+        assertEquals(3587.6, route(hopper, "car", false), .1);
+        assertTrue(cache.isCHLoaded("car"));
+        assertEquals(2 * Helper.MB, cache.getLoadedBytes());
+
+        assertEquals(3587.6, route(hopper, "car2", false), .1);
+        assertTrue(cache.isCHLoaded("car2"));
+        assertFalse(cache.isCHLoaded("car"));
+
+        assertEquals(3587.6, route(hopper, "car", true), .1);
+        assertTrue(cache.isLMLoaded("car"));
+        assertFalse(cache.isCHLoaded("car2"));
+
+        // loaded again after it was closed
+        assertEquals(3587.6, route(hopper, "car2", false), .1);
+        assertTrue(cache.isCHLoaded("car2"));
+        assertFalse(cache.isLMLoaded("car"));
+        hopper.close();
+    }
+
+    @Test
+    public void testFallbackWhileLoading() throws InterruptedException {
+        new GraphHopper().init(createConfig()).importAndClose();
+
+        GraphHopper hopper = new GraphHopper().init(createConfig().
+                putObject("routing.preparations.lazy_load", true).
+                putObject("routing.preparations.wait_for_loading", false));
+        assertTrue(hopper.load());
+        PreparationCache cache = hopper.getPreparationCache();
+
+        // the first request is calculated without CH while the CH preparation is loaded in the background
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car2");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), .1);
+        assertTrue(rsp.getDebugInfo().contains("astarbi|beeline"), rsp.getDebugInfo());
+        assertFalse(req.getHints().has(Parameters.CH.DISABLE));
+        assertFalse(req.getHints().has(Parameters.Landmark.DISABLE));
+
+        for (int i = 0; i < 100 && !cache.isCHLoaded("car2"); i++)
+            Thread.sleep(50);
+        assertTrue(cache.isCHLoaded("car2"));
+        assertEquals(3587.6, route(hopper, "car2", false), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testPinnedByGetters() {
+        new GraphHopper().init(createConfig()).importAndClose();
+
+        GraphHopper hopper = new GraphHopper().init(createConfig().
+                putObject("routing.preparations.lazy_load", true).
+                putObject("routing.preparations.memory_budget_mb", 3));
+        assertTrue(hopper.load());
+        PreparationCache cache = hopper.getPreparationCache();
+        assertEquals(Set.of("car", "car2"), hopper.getCHGraphs().keySet());
+        assertFalse(cache.isCHLoaded("car"));
+
+        RoutingCHGraph chGraph = hopper.getCHGraphs().get("car");
+        assertNotNull(chGraph);
+        assertTrue(cache.isCHLoaded("car"));
+        assertSame(chGraph, hopper.getCHGraphs().get("car"));
+
+        // routing with the other profile would normally evict car, but it is pinned
+        assertEquals(3587.6, route(hopper, "car2", false), .1);
+        assertTrue(cache.isCHLoaded("car"));
+        assertTrue(chGraph.getNodes() > 0);
+        hopper.close();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteCacheTest {
+
+    // a response with a single empty path, i.e. 256 + 2 + 512 bytes for a key of length 1
+    private static final long ENTRY_BYTES = 770;
+
+    private static GHResponse createResponse(double distance) {
+        GHResponse rsp = new GHResponse();
+        rsp.add(new ResponsePath().setDistance(distance));
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        return rsp;
+    }
+
+    private static GHResponse get(RouteCache cache, String key, double distance) {
+        return cache.get(key, Long.MAX_VALUE, new GHResponse(), () -> createResponse(distance));
+    }
+
+    @Test
+    public void testHit() {
+        RouteCache cache = new RouteCache(10 * ENTRY_BYTES, 60_000);
+        GHResponse rsp = get(cache, "a", 10);
+        assertEquals("", rsp.getAlgorithm());
+        assertEquals(42, rsp.getHints().getInt("visited_nodes.sum", -1));
+        assertEquals(ENTRY_BYTES, cache.getBytes());
+
+        rsp = get(cache, "a", 20);
+        assertEquals("cache", rsp.getAlgorithm());
+        assertEquals(10, rsp.getBest().getDistance());
+        assertEquals(0, rsp.getHints().getInt("visited_nodes.sum", -1));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // modifying the returned response does not change the cached one
+        rsp.getAll().add(new ResponsePath());
+        assertEquals(1, get(cache, "a", 20).getAll().size());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        RouteCache cache = new RouteCache(10 * ENTRY_BYTES, 60_000);
+        GHResponse rsp = cache.get("a", Long.MAX_VALUE, new GHResponse(),
+                () -> new GHResponse().addError(new ConnectionNotFoundException("not found", Collections.emptyMap())));
+        assertTrue(rsp.hasErrors());
+        assertEquals(0, cache.size());
+        assertThrows(IllegalStateException.class, () -> cache.get("b", Long.MAX_VALUE, new GHResponse(), () -> {
+            throw new IllegalStateException("failed");
+        }));
+        assertEquals(0, cache.size());
+        assertEquals(10, get(cache, "b", 10).getBest().getDistance());
+    }
+
+    @Test
+    public void testMemoryBudgetEvictsLeastRecentlyUsed() {
+        RouteCache cache = new RouteCache(2 * ENTRY_BYTES, 60_000);
+        get(cache, "a", 1);
+        get(cache, "b", 2);
+        // a is now used more recently than b
+        assertEquals("cache", get(cache, "a", 1).getAlgorithm());
+        get(cache, "c", 3);
+        assertEquals(2, cache.size());
+        assertEquals(2 * ENTRY_BYTES, cache.getBytes());
+        assertEquals("cache", get(cache, "a", 1).getAlgorithm());
+        assertEquals("cache", get(cache, "c", 3).getAlgorithm());
+        assertEquals("", get(cache, "b", 2).getAlgorithm());
+    }
+
+    @Test
+    public void testTimeToLive() {
+        AtomicLong clock = new AtomicLong();
+        RouteCache cache = new RouteCache(10 * ENTRY_BYTES, 1_000, clock::get);
+        get(cache, "a", 1);
+        clock.set(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals("cache", get(cache, "a", 2).getAlgorithm());
+        clock.set(TimeUnit.MILLISECONDS.toNanos(1001));
+        GHResponse rsp = get(cache, "a", 2);
+        assertEquals("", rsp.getAlgorithm());
+        assertEquals(2, rsp.getBest().getDistance());
+        assertEquals(ENTRY_BYTES, cache.getBytes());
+    }
+
+    @Test
+    public void testInvalidate() {
+        RouteCache cache = new RouteCache(10 * ENTRY_BYTES, 60_000);
+        get(cache, "a", 1);
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+
+        // a response that was calculated before the invalidation is not cached
+        cache.get("a", Long.MAX_VALUE, new GHResponse(), () -> {
+            cache.invalidate();
+            return createResponse(1);
+        });
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        RouteCache cache = new RouteCache(10 * ENTRY_BYTES, 60_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicInteger calculations = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<GHResponse> first = executor.submit(() -> cache.get("a", Long.MAX_VALUE, new GHResponse(), () -> {
+                calculations.incrementAndGet();
+                started.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return createResponse(1);
+            }));
+            started.await();
+            Future<GHResponse> second = executor.submit(() -> cache.get("a", Long.MAX_VALUE, new GHResponse(), () -> {
+                calculations.incrementAndGet();
+                return createResponse(2);
+            }));
+            // a waiting request respects its deadline
+            assertThrows(ExecutionException.class, () -> executor.submit(() -> cache.get("a", System.currentTimeMillis() + 50,
+                    new GHResponse(), () -> createResponse(3))).get());
+            finish.countDown();
+            assertEquals(1, first.get().getBest().getDistance());
+            assertEquals(1, second.get().getBest().getDistance());
+            assertEquals(1, calculations.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -264,6 +264,80 @@ public class KVStorageTest {
         Helper.removeDir(new File(location));
     }
 
+    @Test
+    public void testStringPool() {
+        Helper.removeDir(new File(location));
+
+        KVStorage index = new KVStorage(new RAMDirectory(location, true).create(), true).create(1000);
+        long pointerA = index.add(createMap("name", "Main Street", "ref", "B1"));
+        long pointerB = index.add(createMap("name", "Other Street"));
+        long pointerC = index.add(createMap("name", "Main Street", "ref", "B1"));
+        // the repeated name is stored as reference (1 + 4 bytes) instead of 1 + 11 bytes, the short ref is stored again
+        long pointerD = index.add(createMap("name", "Main Street"));
+        assertEquals(1 + 2 + 5 + 2 + 1 + 2, pointerD - pointerC);
+        long after = index.add(createMap("name", "x"));
+        assertEquals(1 + 2 + 5, after - pointerD);
+
+        // values in forward and backward direction are pooled too
+        long pointerE = index.add(Map.of("name", new KValue("Main Street", "Other Street")));
+        assertEquals("Main Street", index.get(pointerE, "name", false));
+        assertEquals("Other Street", index.get(pointerE, "name", true));
+
+        index.flush();
+        index.close();
+
+        index = new KVStorage(new RAMDirectory(location, true), true);
+        assertTrue(index.loadExisting());
+        assertEquals("Main Street", index.get(pointerA, "name", false));
+        assertEquals("B1", index.get(pointerC, "ref", false));
+        assertEquals("Other Street", index.get(pointerB, "name", false));
+        assertEquals("{name=Main Street, ref=B1}", index.getAll(pointerC).toString());
+        assertEquals("{name=Main Street}", index.getMap(pointerD).toString());
+        assertEquals("Main Street | Other Street", index.getAll(pointerE).get("name").toString());
+        index.close();
+
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testDecodeCache() {
+        KVStorage index = create();
+        long pointerA = index.add(createMap("name", "Main Street", "ref", "B1"));
+        long pointerB = index.add(createMap("name", "Main Street"));
+
+        // a repeated read and the read of a pooled value return the same instance
+        Object name = index.get(pointerA, "name", false);
+        assertSame(name, index.get(pointerA, "name", false));
+        assertSame(name, index.get(pointerB, "name", false));
+        assertSame(name, index.getAll(pointerB).get("name").getFwd());
+        assertEquals("B1", index.get(pointerA, "ref", false));
+    }
+
+    @Test
+    public void testPoolAndCacheDisabled() {
+        KVStorage index = new KVStorage(new RAMDirectory(), true, 0, 0).create(1000);
+        long pointerA = index.add(createMap("name", "Main Street"));
+        index.add(createMap("name", "x"));
+        long pointerB = index.add(createMap("name", "Main Street"));
+        long after = index.add(createMap("name", "x"));
+        // without the pool the name is stored again
+        assertEquals(1 + 2 + 1 + 11, after - pointerB);
+        Object name = index.get(pointerA, "name", false);
+        assertEquals("Main Street", name);
+        assertNotSame(name, index.get(pointerA, "name", false));
+    }
+
+    @Test
+    public void testMaxStringLength() {
+        KVStorage index = create();
+        String str = "a".repeat(254);
+        long pointer = index.add(createMap("name", str, "ref", "B1"));
+        assertEquals(str, index.get(pointer, "name", false));
+        assertEquals("B1", index.get(pointer, "ref", false));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> index.add(createMap("name", "a".repeat(255))));
+        assertTrue(e.getMessage().contains("bytes.length cannot be > 254"), e.getMessage());
+    }
+
     @Test
     public void testEmptyKey() {
         KVStorage index = create();
@@ -3,8 +3,10 @@ package com.graphhopper.storage;
 import org.junit.jupiter.api.Test;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class GHDirectoryTest {
 
@@ -33,4 +35,24 @@ class GHDirectoryTest {
         assertEquals(DAType.MMAP, dir.getDefaultType("nodes_ch_car", false));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testStats() {
+        GHDirectory dir = new GHDirectory("", DAType.RAM);
+        dir.create("nodes", 1 << 10).create(3000);
+        dir.create("edges", DAType.RAM_INT, 1 << 10).create(100);
+        List<DataAccessStats> stats = DataAccessStats.of(dir, 10);
+        assertEquals(2, stats.size());
+        assertEquals("edges", stats.get(0).getName());
+        assertEquals("RAM_INT", stats.get(0).getType());
+        assertEquals(1 << 10, stats.get(0).getHeapBytes());
+        assertEquals("nodes", stats.get(1).getName());
+        assertEquals(3, stats.get(1).getSegments());
+        assertEquals(3 << 10, stats.get(1).getHeapBytes());
+        assertEquals(3 << 10, stats.get(1).getResidentBytes());
+        assertEquals(0, stats.get(1).getMappedBytes());
+        String table = DataAccessStats.toTable(stats);
+        assertEquals(4, table.split("\n").length);
+        assertTrue(table.contains("4,096"), table);
+        dir.close();
+    }
+}
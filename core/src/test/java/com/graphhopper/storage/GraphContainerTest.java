@@ -0,0 +1,167 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphContainerTest {
+    private static final String LOCATION = "./target/graph-container-test";
+    private static final String CONTAINER = "./target/graph-container-test.ghc";
+
+    @BeforeEach
+    @AfterEach
+    public void setup() {
+        Helper.removeDir(new File(LOCATION));
+        Helper.removeDir(new File(LOCATION + "-extracted"));
+        Helper.removeDir(new File(CONTAINER));
+    }
+
+    private void createFolder() {
+        Directory dir = new GHDirectory(LOCATION, DAType.RAM_STORE).create();
+        DataAccess da = dir.create("nodes", 128).create(1000);
+        for (int i = 0; i < 250; i++) {
+            da.setInt(i * 4L, i * 7);
+        }
+        da.setHeader(0, 42);
+        DataAccess other = dir.create("edges", 128).create(10);
+        other.setInt(0, 13);
+        StorableProperties properties = new StorableProperties(dir);
+        properties.put("key", "value");
+        properties.flush();
+        da.flush();
+        other.flush();
+        dir.close();
+    }
+
+    @Test
+    public void testMapFromContainer() {
+        createFolder();
+        GraphContainer container = GraphContainer.export(new File(LOCATION), new File(CONTAINER));
+        assertTrue(GraphContainer.isContainer(new File(CONTAINER)));
+        assertFalse(GraphContainer.isContainer(new File(LOCATION + "/nodes")));
+        // properties.txt is no DataAccess but is included so that extract restores the complete folder
+        assertEquals("[edges, nodes, properties, properties.txt]",
+                container.getEntries().stream().map(GraphContainer.Entry::getName).toList().toString());
+        for (GraphContainer.Entry entry : container.getEntries()) {
+            assertEquals(0, (entry.getOffset() + AbstractDataAccess.HEADER_OFFSET) % GraphContainer.ALIGNMENT, entry.toString());
+            assertEquals(new File(LOCATION, entry.getName()).length(), entry.getLength());
+        }
+        container.verify();
+
+        GHDirectory dir = new GHDirectory(CONTAINER, DAType.RAM_STORE);
+        assertNotNull(dir.getContainer());
+        DataAccess da = dir.create("nodes");
+        assertTrue(da.loadExisting());
+        assertEquals(DAType.MMAP_RO, da.getType());
+        assertEquals(128, da.getSegmentSize());
+        assertEquals(42, da.getHeader(0));
+        for (int i = 0; i < 250; i++) {
+            assertEquals(i * 7, da.getInt(i * 4L));
+        }
+        DataAccess other = dir.create("edges");
+        assertTrue(other.loadExisting());
+        assertEquals(13, other.getInt(0));
+        StorableProperties properties = new StorableProperties(dir);
+        assertTrue(properties.loadExisting());
+        assertEquals("value", properties.get("key"));
+
+        DataAccess missing = dir.create("turn_costs");
+        assertFalse(missing.loadExisting());
+        assertThrows(IllegalStateException.class, () -> missing.create(100));
+        assertThrows(IllegalStateException.class, da::flush);
+        // removing must not touch the container
+        dir.remove("edges");
+        dir.close();
+        assertTrue(new File(CONTAINER).exists());
+        assertEquals(container.getEntries().size(), GraphContainer.open(new File(CONTAINER)).getEntries().size());
+    }
+
+    @Test
+    public void testExtract() {
+        createFolder();
+        GraphContainer.export(new File(LOCATION), new File(CONTAINER)).extract(new File(LOCATION + "-extracted"));
+        Directory dir = new GHDirectory(LOCATION + "-extracted", DAType.RAM_STORE);
+        DataAccess da = dir.create("nodes");
+        assertTrue(da.loadExisting());
+        assertEquals(42, da.getHeader(0));
+        assertEquals(7 * 249, da.getInt(249 * 4));
+        dir.close();
+    }
+
+    @Test
+    public void testCorruption() throws IOException {
+        createFolder();
+        GraphContainer container = GraphContainer.export(new File(LOCATION), new File(CONTAINER));
+        GraphContainer.Entry entry = container.getEntry("nodes");
+        try (RandomAccessFile file = new RandomAccessFile(CONTAINER, "rw")) {
+            long pos = entry.getOffset() + AbstractDataAccess.HEADER_OFFSET + 4;
+            file.seek(pos);
+            int b = file.read();
+            file.seek(pos);
+            file.write(b + 1);
+        }
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> GraphContainer.open(new File(CONTAINER)).verify());
+        assertTrue(ex.getMessage().contains("Checksum mismatch for nodes"), ex.getMessage());
+        assertThrows(IllegalStateException.class, () -> container.extract(new File(LOCATION + "-extracted")));
+
+        // a truncated copy is detected when opening
+        try (RandomAccessFile file = new RandomAccessFile(CONTAINER, "rw")) {
+            file.setLength(entry.getOffset());
+        }
+        ex = assertThrows(IllegalStateException.class, () -> new GHDirectory(CONTAINER, DAType.MMAP));
+        assertTrue(ex.getMessage().contains("Was the file copied completely?"), ex.getMessage());
+    }
+
+    @Test
+    public void testLoadGraphHopperFromContainer() {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("graph.location", LOCATION).
+                putObject("datareader.file", "../core/files/monaco.osm.gz").
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("import.osm.ignored_highways", "").
+                setProfiles(List.of(TestProfiles.accessAndSpeed("car", "car")));
+        config.setCHProfiles(List.of(new CHProfile("car")));
+        new GraphHopper().init(config).importAndClose();
+        GraphContainer.export(new File(LOCATION), new File(CONTAINER));
+        Helper.removeDir(new File(LOCATION));
+
+        GraphHopper hopper = new GraphHopper().init(config.putObject("graph.location", CONTAINER));
+        assertTrue(hopper.load());
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587.6, rsp.getBest().getDistance(), 1);
+        assertFalse(hopper.getCHGraphs().isEmpty());
+        hopper.close();
+    }
+}
@@ -59,4 +59,24 @@ public class MMapDataAccessTest extends DataAccessTest {
         assertEquals(123, da.getInt(7 * 4));
         da.close();
     }
+
+    @Test
+    public void testResidentBytes() {
+        MMapDataAccess da = (MMapDataAccess) createDataAccess(name, 1 << 16);
+        da.create(1 << 18);
+        for (long pointer = 0; pointer < da.getCapacity(); pointer += 4)
+            da.setInt(pointer, 1);
+        assertEquals(4, da.getSegments());
+        // all pages were just written and are therefore in physical memory
+        assertEquals(da.getCapacity(), da.getResidentBytes(100));
+        assertEquals(da.getCapacity(), da.getResidentBytes(1));
+
+        DataAccessStats stats = DataAccessStats.of(da, 100);
+        assertEquals("MMAP_STORE", stats.getType());
+        assertEquals(0, stats.getHeapBytes());
+        assertEquals(da.getCapacity(), stats.getMappedBytes());
+        da.close();
+        assertEquals(0, da.getResidentBytes(100));
+        assertEquals(0, DataAccessStats.of(da, 100).getResidentBytes());
+    }
 }
@@ -0,0 +1,268 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Matches many tracks in parallel, e.g. the traces of a fleet of vehicles. The tracks are distributed on a work-stealing
+ * {@link ForkJoinPool} or on an executor that is shared with other batches. A {@link MapMatching} instance is only used
+ * by one track at a time, as MapMatching is not thread-safe, and then reused for the next track of the same batch. The
+ * tracks are consumed lazily from an iterator and only a few tracks per thread are in flight at any time, so a batch
+ * can be arbitrarily large.
+ */
+public class BatchMapMatching {
+    private final Supplier<MapMatching> mapMatchingFactory;
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * Creates a batch that matches its tracks on its own pool with the specified number of threads.
+     *
+     * @param mapMatchingFactory creates the MapMatching instances of this batch
+     */
+    public BatchMapMatching(Supplier<MapMatching> mapMatchingFactory, int threads) {
+        this(mapMatchingFactory, null, threads);
+    }
+
+    /**
+     * @param executor runs the tracks, e.g. a pool that is shared by all batches of a server. It is not shut down.
+     * @param threads  the number of threads of the executor that this batch should use
+     */
+    public BatchMapMatching(Supplier<MapMatching> mapMatchingFactory, ExecutorService executor, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was " + threads);
+        this.mapMatchingFactory = mapMatchingFactory;
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Matches all tracks and blocks until they are finished.
+     *
+     * @param tracks          the tracks, this iterator is only called from the current thread
+     * @param getObservations converts a track into its observations, e.g. by parsing it. This is done in the thread that
+     *                        matches the track.
+     * @param handler         receives the result of every track as soon as it is finished. It is called from the threads
+     *                        of the pool concurrently and in the order in which the tracks finish.
+     * @return the statistics of the whole batch
+     */
+    public <T> Report match(Iterator<T> tracks, Function<T, List<Observation>> getObservations, Consumer<Result<T>> handler) {
+        Queue<MapMatching> idleMapMatchings = new ConcurrentLinkedQueue<>();
+        int maxPending = 4 * threads;
+        Semaphore pending = new Semaphore(maxPending);
+        AtomicReference<RuntimeException> handlerException = new AtomicReference<>();
+        Report report = new Report(threads);
+        long start = System.nanoTime();
+        ExecutorService pool = executor == null ? new ForkJoinPool(threads) : executor;
+        try {
+            while (tracks.hasNext() && handlerException.get() == null) {
+                T track = tracks.next();
+                pending.acquire();
+                pool.execute(() -> {
+                    MapMatching mapMatching = idleMapMatchings.poll();
+                    if (mapMatching == null)
+                        mapMatching = mapMatchingFactory.get();
+                    try {
+                        handler.accept(matchTrack(mapMatching, track, getObservations, report));
+                    } catch (RuntimeException ex) {
+                        handlerException.compareAndSet(null, ex);
+                    } finally {
+                        idleMapMatchings.offer(mapMatching);
+                        pending.release();
+                    }
+                });
+            }
+            // wait for the tracks that are still in flight
+            pending.acquire(maxPending);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while matching the batch", ex);
+        } finally {
+            if (executor == null)
+                pool.shutdownNow();
+        }
+        if (handlerException.get() != null)
+            throw handlerException.get();
+        report.wallNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private static <T> Result<T> matchTrack(MapMatching mapMatching, T track, Function<T, List<Observation>> getObservations, Report report) {
+        long start = System.nanoTime();
+        int observations = 0;
+        try {
+            List<Observation> list = getObservations.apply(track);
+            observations = list.size();
+            MatchResult matchResult = mapMatching.match(list);
+            long nanos = System.nanoTime() - start;
+            Map<String, Object> statistics = new HashMap<>(mapMatching.getStatistics());
+            report.add(observations, nanos, statistics.get("visitedNodes"));
+            return new Result<>(track, observations, matchResult, statistics, nanos, null);
+        } catch (Exception ex) {
+            long nanos = System.nanoTime() - start;
+            report.addFailed(observations, nanos);
+            return new Result<>(track, observations, null, null, nanos, ex);
+        }
+    }
+
+    public static class Result<T> {
+        private final T track;
+        private final int observations;
+        private final MatchResult matchResult;
+        private final Map<String, Object> statistics;
+        private final long nanos;
+        private final Exception error;
+
+        Result(T track, int observations, MatchResult matchResult, Map<String, Object> statistics, long nanos, Exception error) {
+            this.track = track;
+            this.observations = observations;
+            this.matchResult = matchResult;
+            this.statistics = statistics;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public T getTrack() {
+            return track;
+        }
+
+        public int getObservations() {
+            return observations;
+        }
+
+        /**
+         * @return the match result or null if the track could not be matched, see {@link #getError()}
+         */
+        public MatchResult getMatchResult() {
+            return matchResult;
+        }
+
+        /**
+         * @return a copy of {@link MapMatching#getStatistics()} for this track or null if it could not be matched
+         */
+        public Map<String, Object> getStatistics() {
+            return statistics;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean hasError() {
+            return error != null;
+        }
+    }
+
+    /**
+     * The aggregated statistics of a batch.
+     */
+    public static class Report {
+        private final int threads;
+        private final LongAdder tracks = new LongAdder();
+        private final LongAdder failedTracks = new LongAdder();
+        private final LongAdder observations = new LongAdder();
+        private final LongAdder matchNanos = new LongAdder();
+        private final LongAdder visitedNodes = new LongAdder();
+        private long wallNanos;
+
+        Report(int threads) {
+            this.threads = threads;
+        }
+
+        void add(int observations, long nanos, Object visitedNodes) {
+            tracks.increment();
+            this.observations.add(observations);
+            matchNanos.add(nanos);
+            if (visitedNodes instanceof Number)
+                this.visitedNodes.add(((Number) visitedNodes).longValue());
+        }
+
+        void addFailed(int observations, long nanos) {
+            tracks.increment();
+            failedTracks.increment();
+            this.observations.add(observations);
+            matchNanos.add(nanos);
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public long getTracks() {
+            return tracks.sum();
+        }
+
+        public long getFailedTracks() {
+            return failedTracks.sum();
+        }
+
+        public long getObservations() {
+            return observations.sum();
+        }
+
+        public long getVisitedNodes() {
+            return visitedNodes.sum();
+        }
+
+        /**
+         * @return the sum of the time spent for the single tracks, this is larger than the wall time if several threads
+         * were used
+         */
+        public long getMatchMillis() {
+            return matchNanos.sum() / 1_000_000;
+        }
+
+        public long getWallMillis() {
+            return wallNanos / 1_000_000;
+        }
+
+        public double getTracksPerSecond() {
+            return wallNanos == 0 ? 0 : getTracks() * 1e9 / wallNanos;
+        }
+
+        public double getObservationsPerSecond() {
+            return wallNanos == 0 ? 0 : getObservations() * 1e9 / wallNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "tracks: " + getTracks() + " (failed: " + getFailedTracks() + "), observations: " + getObservations()
+                    + ", threads: " + threads + ", wall time: " + getWallMillis() + "ms, match time: " + getMatchMillis()
+                    + "ms, tracks/s: " + Math.round(getTracksPerSecond()) + ", observations/s: " + Math.round(getObservationsPerSecond())
+                    + ", visited nodes: " + getVisitedNodes();
+        }
+    }
+}
@@ -20,21 +20,21 @@ package com.graphhopper.matching;
 import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.config.Profile;
-import com.graphhopper.routing.AStarBidirection;
-import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.EdgeToEdgeRoutingAlgorithm;
+import com.graphhopper.routing.MultiTargetDijkstra;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
-import com.graphhopper.routing.lm.LMApproximator;
-import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
-import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
@@ -66,6 +66,11 @@ import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
  * @author kodonnell
  */
 public class MapMatching {
+    // The one-to-many search of a transition stops at this multiple of the weight that the linear distance between the
+    // observations, plus MIN_TRANSITION_DISTANCE, has on the fastest roads. The transition probability of longer paths
+    // is negligible, but without a limit a candidate that cannot be reached would make the search settle everything.
+    private static final double MAX_TRANSITION_WEIGHT_FACTOR = 10;
+    private static final double MIN_TRANSITION_DISTANCE = 500;
     private final BaseGraph graph;
     private final Router router;
     private final LocationIndexTree locationIndex;
@@ -104,26 +109,26 @@ public class MapMatching {
             throw new IllegalArgumentException("Could not find profile '" + profileStr + "', choose one of: " + profileNames);
         }
 
-        boolean disableLM = hints.getBool(Parameters.Landmark.DISABLE, false);
-        boolean disableCH = hints.getBool(Parameters.CH.DISABLE, false);
-
-        // see map-matching/#177: both ch.disable and lm.disable can be used to force Dijkstra which is the better
-        // (=faster) choice when the observations are close to each other
-        boolean useDijkstra = disableLM || disableCH;
-
-        LandmarkStorage landmarks;
-        if (!useDijkstra && graphHopper.getLandmarks().get(profile.getName()) != null) {
-            // using LM because u-turn prevention does not work properly with (node-based) CH
-            landmarks = graphHopper.getLandmarks().get(profile.getName());
-        } else {
-            landmarks = null;
-        }
-        Weighting weighting = graphHopper.createWeighting(profile, hints);
+        // Edge-based CH is used for the transitions if it is available, because it is much faster for sparse traces.
+        // It respects the directions of the candidates just like the flexible search, but node-based CH does not, see
+        // map-matching/#177, so in this case and with ch.disable=true we fall back to the one-to-many Dijkstra. The
+        // hints cannot change the weighting of a CH preparation, so we fall back to it if they do, too.
+        RoutingCHGraph chGraph = hints.getBool(Parameters.CH.DISABLE, false) || changesWeighting(hints) ? null : graphHopper.getCHGraphs().get(profileStr);
+        if (chGraph != null && !chGraph.isEdgeBased())
+            chGraph = null;
+        Weighting weighting = chGraph != null ? chGraph.getWeighting() : graphHopper.createWeighting(profile, hints);
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileStr));
         DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
         int maxVisitedNodes = hints.getInt(Parameters.Routing.MAX_VISITED_NODES, Integer.MAX_VALUE);
+        PMap chOpts = new PMap().putObject(Parameters.Routing.MAX_VISITED_NODES, maxVisitedNodes);
+        final RoutingCHGraph routingCHGraph = chGraph;
 
         Router router = new Router() {
+            private long visitedNodes;
+            // creating the QueryRoutingCHGraph is not free, so we only do it once per query graph
+            private QueryGraph chQueryGraph;
+            private CHRoutingAlgorithmFactory chAlgoFactory;
+
             @Override
             public EdgeFilter getSnapFilter() {
                 return snapFilter;
@@ -131,38 +136,45 @@ public class MapMatching {
 
             @Override
             public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
-                assert (toNodes.length == toInEdges.length);
-                List<Path> result = new ArrayList<>();
+                return calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges, Double.POSITIVE_INFINITY);
+            }
+
+            @Override
+            public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double linearDistance) {
+                if (routingCHGraph != null)
+                    return calcCHPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+
+                // a single search from the source candidate settles all candidates of the next observation
+                MultiTargetDijkstra algo = new MultiTargetDijkstra(queryGraph, queryGraph.wrapWeighting(weighting)) {
+                    @Override
+                    protected void initCollections(int size) {
+                        super.initCollections(50);
+                    }
+                };
+                algo.setMaxVisitedNodes(maxVisitedNodes);
+                algo.setMaxWeight(MAX_TRANSITION_WEIGHT_FACTOR * weighting.calcMinWeightPerDistance() * (linearDistance + MIN_TRANSITION_DISTANCE));
+                List<Path> paths = algo.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges);
+                visitedNodes += algo.getVisitedNodes();
+                return paths;
+            }
+
+            private List<Path> calcCHPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
+                if (chQueryGraph != queryGraph) {
+                    chQueryGraph = queryGraph;
+                    chAlgoFactory = new CHRoutingAlgorithmFactory(new QueryRoutingCHGraph(routingCHGraph, queryGraph));
+                }
+                List<Path> paths = new ArrayList<>(toNodes.length);
                 for (int i = 0; i < toNodes.length; i++) {
-                    result.add(calcOnePath(queryGraph, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
+                    EdgeToEdgeRoutingAlgorithm algo = chAlgoFactory.createAlgo(chOpts);
+                    paths.add(algo.calcPath(fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
+                    visitedNodes += algo.getVisitedNodes();
                 }
-                return result;
+                return paths;
             }
 
-            private Path calcOnePath(QueryGraph queryGraph, int fromNode, int toNode, int fromOutEdge, int toInEdge) {
-                Weighting queryGraphWeighting = queryGraph.wrapWeighting(weighting);
-                if (landmarks != null) {
-                    AStarBidirection aStarBidirection = new AStarBidirection(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
-                        @Override
-                        protected void initCollections(int size) {
-                            super.initCollections(50);
-                        }
-                    };
-                    int activeLM = Math.min(8, landmarks.getLandmarkCount());
-                    LMApproximator lmApproximator = LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM);
-                    aStarBidirection.setApproximation(lmApproximator);
-                    aStarBidirection.setMaxVisitedNodes(maxVisitedNodes);
-                    return aStarBidirection.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
-                } else {
-                    DijkstraBidirectionRef dijkstraBidirectionRef = new DijkstraBidirectionRef(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
-                        @Override
-                        protected void initCollections(int size) {
-                            super.initCollections(50);
-                        }
-                    };
-                    dijkstraBidirectionRef.setMaxVisitedNodes(maxVisitedNodes);
-                    return dijkstraBidirectionRef.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
-                }
+            @Override
+            public long getVisitedNodes() {
+                return visitedNodes;
             }
 
             @Override
@@ -173,6 +185,13 @@ public class MapMatching {
         return router;
     }
 
+    /**
+     * @return true if the hints change the weighting of the profile, see DefaultWeightingFactory
+     */
+    private static boolean changesWeighting(PMap hints) {
+        return hints.has(CustomModel.KEY) || hints.has(Parameters.Routing.U_TURN_COSTS) || hints.has(Parameters.Routing.HEADING_PENALTY);
+    }
+
     public MapMatching(BaseGraph graph, LocationIndexTree locationIndex, Router router) {
         this.graph = graph;
         this.locationIndex = locationIndex;
@@ -196,6 +215,8 @@ public class MapMatching {
     }
 
     public MatchResult match(List<Observation> observations) {
+        // the router can be reused for several tracks, so we only count the nodes visited for this one
+        long visitedNodesBefore = router.getVisitedNodes();
         List<Observation> filteredObservations = filterObservations(observations);
         statistics.put("filteredObservations", filteredObservations.size());
 
@@ -216,7 +237,7 @@ public class MapMatching {
         // Compute the most likely sequence of map matching candidates:
         List<SequenceState<State, Observation, Path>> seq = computeViterbiSequence(timeSteps);
         statistics.put("transitionDistances", seq.stream().filter(s -> s.transitionDescriptor != null).mapToLong(s -> Math.round(s.transitionDescriptor.getDistance())).toArray());
-        statistics.put("visitedNodes", router.getVisitedNodes());
+        statistics.put("visitedNodes", router.getVisitedNodes() - visitedNodesBefore);
         statistics.put("snapDistanceRanks", IntStream.range(0, seq.size()).map(i -> snapsPerObservation.get(i).indexOf(seq.get(i).state.getSnap())).toArray());
         statistics.put("snapDistances", seq.stream().mapToDouble(s -> s.state.getSnap().getQueryDistance()).toArray());
         statistics.put("maxSnapDistances", IntStream.range(0, seq.size()).mapToDouble(i -> snapsPerObservation.get(i).stream().mapToDouble(Snap::getQueryDistance).max().orElse(-1.0)).toArray());
@@ -338,32 +359,7 @@ public class MapMatching {
             Collection<Snap> splits = splitsPerObservation.get(i);
             List<State> candidates = new ArrayList<>();
             for (Snap split : splits) {
-                if (queryGraph.isVirtualNode(split.getClosestNode())) {
-                    List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
-                    EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
-                    while (iter.next()) {
-                        if (!queryGraph.isVirtualEdge(iter.getEdge())) {
-                            throw new RuntimeException("Virtual nodes must only have virtual edges "
-                                    + "to adjacent nodes.");
-                        }
-                        virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
-                    }
-                    if (virtualEdges.size() != 2) {
-                        throw new RuntimeException("Each virtual node must have exactly 2 "
-                                + "virtual edges (reverse virtual edges are not returned by the "
-                                + "EdgeIterator");
-                    }
-
-                    // Create a directed candidate for each of the two possible directions through
-                    // the virtual node. We need to add candidates for both directions because
-                    // we don't know yet which is the correct one. This will be figured
-                    // out by the Viterbi algorithm.
-                    candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
-                    candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
-                } else {
-                    // Create an undirected candidate for the real node.
-                    candidates.add(new State(observation, split));
-                }
+                candidates.addAll(createCandidates(queryGraph, router.getWeighting(), observation, split));
             }
 
             timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
@@ -371,6 +367,47 @@ public class MapMatching {
         return timeSteps;
     }
 
+    /**
+     * Creates the candidates for a snap that is already part of the given query graph: up to two directed candidates
+     * for a virtual node and one undirected candidate for a real node. A directed candidate is only created if the
+     * weighting allows to enter and to leave the virtual node in its direction, e.g. only one for a one-way road.
+     */
+    static List<State> createCandidates(QueryGraph queryGraph, Weighting weighting, Observation observation, Snap split) {
+        if (queryGraph.isVirtualNode(split.getClosestNode())) {
+            List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
+            EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
+            while (iter.next()) {
+                if (!queryGraph.isVirtualEdge(iter.getEdge())) {
+                    throw new RuntimeException("Virtual nodes must only have virtual edges "
+                            + "to adjacent nodes.");
+                }
+                virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
+            }
+            if (virtualEdges.size() != 2) {
+                throw new RuntimeException("Each virtual node must have exactly 2 "
+                        + "virtual edges (reverse virtual edges are not returned by the "
+                        + "EdgeIterator");
+            }
+
+            // Create a directed candidate for each of the two possible directions through
+            // the virtual node. We need to add candidates for both directions because
+            // we don't know yet which is the correct one. This will be figured
+            // out by the Viterbi algorithm.
+            List<State> candidates = new ArrayList<>(2);
+            for (int i = 0; i < 2; i++) {
+                VirtualEdgeIteratorState incoming = virtualEdges.get(i);
+                VirtualEdgeIteratorState outgoing = virtualEdges.get(1 - i);
+                // both edges start at the virtual node, so the incoming one is used in reverse
+                if (Double.isFinite(weighting.calcEdgeWeight(incoming, true)) && Double.isFinite(weighting.calcEdgeWeight(outgoing, false)))
+                    candidates.add(new State(observation, split, incoming, outgoing));
+            }
+            return candidates;
+        } else {
+            // Create an undirected candidate for the real node.
+            return Collections.singletonList(new State(observation, split));
+        }
+    }
+
     static class Label {
         int timeStep;
         State state;
@@ -415,7 +452,7 @@ public class MapMatching {
             int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
             int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
             int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
-            List<Path> paths = router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+            List<Path> paths = router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges, linearDistance);
             for (int i = 0; i < nextTimeStep.candidates.size(); i++) {
                 State to = nextTimeStep.candidates.get(i);
                 Path path = paths.get(i);
@@ -527,13 +564,17 @@ public class MapMatching {
         }
     }
 
-    private boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
+    static boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
         return edge1.getEdge() == edge2.getEdge()
                 && edge1.getBaseNode() == edge2.getBaseNode()
                 && edge1.getAdjNode() == edge2.getAdjNode();
     }
 
     private EdgeIteratorState resolveToRealEdge(EdgeIteratorState edgeIteratorState) {
+        return resolveToRealEdge(graph, queryGraph, edgeIteratorState);
+    }
+
+    static EdgeIteratorState resolveToRealEdge(BaseGraph graph, QueryGraph queryGraph, EdgeIteratorState edgeIteratorState) {
         if (queryGraph.isVirtualNode(edgeIteratorState.getBaseNode()) || queryGraph.isVirtualNode(edgeIteratorState.getAdjNode())) {
             return graph.getEdgeIteratorStateForKey(((VirtualEdgeIteratorState) edgeIteratorState).getOriginalEdgeKey());
         } else {
@@ -541,6 +582,22 @@ public class MapMatching {
         }
     }
 
+    BaseGraph getGraph() {
+        return graph;
+    }
+
+    Router getRouter() {
+        return router;
+    }
+
+    double getMeasurementErrorSigma() {
+        return measurementErrorSigma;
+    }
+
+    double getTransitionProbabilityBeta() {
+        return transitionProbabilityBeta;
+    }
+
     public Map<String, Object> getStatistics() {
         return statistics;
     }
@@ -569,6 +626,14 @@ public class MapMatching {
 
         List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges);
 
+        /**
+         * Like {@link #calcPaths(QueryGraph, int, int, int[], int[])}, but the router may give up on the paths that are
+         * much longer than the given linear distance between the two observations.
+         */
+        default List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double linearDistance) {
+            return calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+        }
+
         Weighting getWeighting();
 
         default long getVisitedNodes() {
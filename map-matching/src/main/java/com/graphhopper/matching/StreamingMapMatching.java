@@ -0,0 +1,321 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.*;
+
+/**
+ * Matches a live stream of observations incrementally, e.g. the GPS positions of a vehicle, instead of the complete
+ * track like {@link MapMatching#match(List)}. Every call of {@link #add(Observation)} extends the Viterbi lattice by
+ * one time step and the time step that is lag observations behind the newest one is decided by the most likely
+ * sequence at this moment (fixed-lag decoding). The decision is final, i.e. all candidates that contradict it are
+ * removed from the lattice, and the {@link EdgeMatch}es of the decided time steps are returned as soon as the matched
+ * edge changes. The transitions are calculated on a query graph that only contains the candidates of the newest and
+ * the previous time step, so the work per observation does not depend on the length of the track.
+ * <p>
+ * Unlike {@link MapMatching#match(List)} an observation without candidates is skipped and a track that cannot be
+ * continued is decided up to its last observation and then started anew, instead of failing the whole track.
+ * <p>
+ * This class is not thread-safe, use one instance per track.
+ */
+public class StreamingMapMatching {
+    private final BaseGraph graph;
+    private final MapMatching mapMatching;
+    private final MapMatching.Router router;
+    private final HmmProbabilities probabilities;
+    private final double minDistance;
+    private final int lag;
+    private final DistanceCalc distanceCalc = new DistancePlaneProjection();
+    // the time steps that are not decided yet, oldest first
+    private final List<TimeStep> window = new ArrayList<>();
+    private TimeStep lastTimeStep;
+    private Observation lastObservation;
+    private double linearDistance;
+    // the edge match that is currently built from the decided time steps
+    private EdgeIteratorState currentEdge;
+    private List<State> currentStates = new ArrayList<>();
+
+    /**
+     * @param lag the number of observations that stay undecided. More observations give better results for ambiguous
+     *            situations, e.g. parallel roads, at the cost of a later decision.
+     */
+    public StreamingMapMatching(MapMatching mapMatching, int lag) {
+        if (lag < 0)
+            throw new IllegalArgumentException("lag must not be negative, but was " + lag);
+        this.mapMatching = mapMatching;
+        this.graph = mapMatching.getGraph();
+        this.router = mapMatching.getRouter();
+        this.probabilities = new HmmProbabilities(mapMatching.getMeasurementErrorSigma(), mapMatching.getTransitionProbabilityBeta());
+        this.minDistance = 2 * mapMatching.getMeasurementErrorSigma();
+        this.lag = lag;
+    }
+
+    /**
+     * Adds the next observation of the track.
+     *
+     * @return the edge matches that were completed by this observation, usually empty
+     */
+    public List<EdgeMatch> add(Observation observation) {
+        List<EdgeMatch> result = new ArrayList<>();
+        // like MapMatching#filterObservations we skip observations close to the previous one, but keep their distance
+        if (lastObservation != null)
+            linearDistance += calcDist(lastObservation, observation);
+        lastObservation = observation;
+        if (lastTimeStep != null && calcDist(lastTimeStep.observation, observation) <= minDistance)
+            return result;
+        List<Snap> snaps = mapMatching.findCandidateSnaps(observation.getPoint().lat, observation.getPoint().lon);
+        if (snaps.isEmpty())
+            return result;
+
+        TimeStep timeStep = new TimeStep(observation, snaps);
+        if (lastTimeStep == null) {
+            List<Snap> splits = copySnaps(snaps);
+            timeStep.candidates = createCandidates(QueryGraph.create(graph, splits), observation, splits);
+            startSequence(timeStep);
+        } else {
+            calcTransitions(lastTimeStep, timeStep);
+            if (timeStep.candidates.stream().allMatch(c -> c.back == null)) {
+                // the sequence is broken, we decide all pending time steps and continue with a new sequence
+                while (!window.isEmpty())
+                    decideOldest(result);
+                startSequence(timeStep);
+            } else {
+                timeStep.candidates.removeIf(c -> c.back == null);
+            }
+        }
+        window.add(timeStep);
+        lastTimeStep = timeStep;
+        linearDistance = 0;
+        while (window.size() > lag)
+            decideOldest(result);
+        return result;
+    }
+
+    /**
+     * Decides all pending observations and ends the track. This instance can then be used for a new track.
+     *
+     * @return the remaining edge matches of the track
+     */
+    public List<EdgeMatch> finish() {
+        List<EdgeMatch> result = new ArrayList<>();
+        while (!window.isEmpty())
+            decideOldest(result);
+        if (currentEdge != null)
+            result.add(new EdgeMatch(currentEdge, currentStates));
+        currentEdge = null;
+        currentStates = new ArrayList<>();
+        lastTimeStep = null;
+        lastObservation = null;
+        linearDistance = 0;
+        return result;
+    }
+
+    private void startSequence(TimeStep timeStep) {
+        for (Candidate candidate : timeStep.candidates) {
+            candidate.minusLogProbability = -probabilities.emissionLogProbability(candidate.state.getSnap().getQueryDistance());
+            candidate.back = null;
+            candidate.transition = null;
+        }
+    }
+
+    /**
+     * Calculates the most likely incoming transition for all candidates of the given time step. The candidates of the
+     * previous time step are recreated on a new query graph that contains the snaps of both time steps, since the
+     * query graph of the previous time step does not know the new snaps.
+     */
+    private void calcTransitions(TimeStep prev, TimeStep next) {
+        List<Snap> prevSplits = copySnaps(prev.snaps);
+        List<Snap> nextSplits = copySnaps(next.snaps);
+        List<Snap> allSplits = new ArrayList<>(prevSplits);
+        allSplits.addAll(nextSplits);
+        QueryGraph queryGraph = QueryGraph.create(graph, allSplits);
+        List<Candidate> sources = createCandidates(queryGraph, prev.observation, prevSplits);
+        next.candidates = createCandidates(queryGraph, next.observation, nextSplits);
+        for (Candidate candidate : next.candidates) {
+            candidate.minusLogProbability = Double.POSITIVE_INFINITY;
+        }
+
+        int[] toNodes = next.candidates.stream().mapToInt(c -> c.state.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = next.candidates.stream().mapToInt(c -> c.state.isOnDirectedEdge() ? c.state.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        Path[] bestPaths = new Path[next.candidates.size()];
+        for (Candidate from : prev.candidates) {
+            State source = findSource(sources, from);
+            int fromOutEdge = source.isOnDirectedEdge() ? source.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+            List<Path> paths = router.calcPaths(queryGraph, source.getSnap().getClosestNode(), fromOutEdge, toNodes, toInEdges, linearDistance);
+            for (int i = 0; i < bestPaths.length; i++) {
+                Path path = paths.get(i);
+                if (!path.isFound())
+                    continue;
+                Candidate to = next.candidates.get(i);
+                double minusLogProbability = from.minusLogProbability
+                        - probabilities.emissionLogProbability(to.state.getSnap().getQueryDistance())
+                        - probabilities.transitionLogProbability(path.getDistance(), linearDistance);
+                if (minusLogProbability < to.minusLogProbability) {
+                    to.minusLogProbability = minusLogProbability;
+                    to.back = from;
+                    bestPaths[i] = path;
+                }
+            }
+        }
+        // we only keep the real edges of the transitions, so the query graph can be discarded
+        for (int i = 0; i < bestPaths.length; i++) {
+            if (bestPaths[i] == null)
+                continue;
+            List<EdgeIteratorState> edges = bestPaths[i].calcEdges();
+            List<EdgeIteratorState> realEdges = new ArrayList<>(edges.size());
+            for (EdgeIteratorState edge : edges) {
+                realEdges.add(MapMatching.resolveToRealEdge(graph, queryGraph, edge));
+            }
+            next.candidates.get(i).transition = realEdges;
+        }
+    }
+
+    private static State findSource(List<Candidate> sources, Candidate candidate) {
+        for (Candidate source : sources) {
+            if (source.snapIndex == candidate.snapIndex && source.edgeKey == candidate.edgeKey)
+                return source.state;
+        }
+        throw new IllegalStateException("Could not find the candidate " + candidate.state + " in the new query graph");
+    }
+
+    /**
+     * Decides the oldest pending time step by following the back pointers of the currently most likely candidate and
+     * removes all candidates of the younger time steps that do not go through the decided candidate.
+     */
+    private void decideOldest(List<EdgeMatch> result) {
+        Candidate best = null;
+        for (Candidate candidate : lastTimeStep.candidates) {
+            if (best == null || candidate.minusLogProbability < best.minusLogProbability)
+                best = candidate;
+        }
+        for (int i = window.size() - 1; i > 0; i--) {
+            best = best.back;
+        }
+        emit(best, result);
+
+        window.remove(0).candidates = new ArrayList<>(Collections.singletonList(best));
+        Set<Candidate> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+        remaining.add(best);
+        for (TimeStep timeStep : window) {
+            timeStep.candidates.removeIf(c -> !remaining.contains(c.back));
+            remaining.clear();
+            remaining.addAll(timeStep.candidates);
+        }
+        // cut the lattice behind the window
+        best.back = null;
+        best.transition = null;
+    }
+
+    private void emit(Candidate candidate, List<EdgeMatch> result) {
+        if (candidate.transition != null) {
+            for (EdgeIteratorState edge : candidate.transition) {
+                nextEdge(edge, result);
+            }
+        }
+        if (candidate.directedRealEdge != null)
+            nextEdge(candidate.directedRealEdge, result);
+        currentStates.add(candidate.state);
+    }
+
+    private void nextEdge(EdgeIteratorState edge, List<EdgeMatch> result) {
+        if (currentEdge != null && !MapMatching.equalEdges(currentEdge, edge)) {
+            result.add(new EdgeMatch(currentEdge, currentStates));
+            currentStates = new ArrayList<>();
+        }
+        currentEdge = edge;
+    }
+
+    private List<Candidate> createCandidates(QueryGraph queryGraph, Observation observation, List<Snap> splits) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (int i = 0; i < splits.size(); i++) {
+            for (State state : MapMatching.createCandidates(queryGraph, router.getWeighting(), observation, splits.get(i))) {
+                candidates.add(new Candidate(state, i));
+            }
+        }
+        return candidates;
+    }
+
+    private double calcDist(Observation a, Observation b) {
+        return distanceCalc.calcDist(a.getPoint().lat, a.getPoint().lon, b.getPoint().lat, b.getPoint().lon);
+    }
+
+    /**
+     * The query graph changes the snaps, so every query graph needs its own copies.
+     */
+    private static List<Snap> copySnaps(List<Snap> snaps) {
+        List<Snap> copies = new ArrayList<>(snaps.size());
+        for (Snap snap : snaps) {
+            Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+            copy.setClosestEdge(snap.getClosestEdge());
+            copy.setClosestNode(snap.getClosestNode());
+            copy.setWayIndex(snap.getWayIndex());
+            copy.setSnappedPosition(snap.getSnappedPosition());
+            copy.setQueryDistance(snap.getQueryDistance());
+            copy.setSnappedPoint(snap.getSnappedPoint());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static class TimeStep {
+        final Observation observation;
+        // the snaps as found by the location index, i.e. never modified by a query graph
+        final List<Snap> snaps;
+        List<Candidate> candidates;
+
+        TimeStep(Observation observation, List<Snap> snaps) {
+            this.observation = observation;
+            this.snaps = snaps;
+        }
+    }
+
+    private class Candidate {
+        final State state;
+        // identifies the candidate independent of the query graph
+        final int snapIndex;
+        final int edgeKey;
+        // the directed real edge of a candidate on a virtual node or null
+        final EdgeIteratorState directedRealEdge;
+        double minusLogProbability;
+        Candidate back;
+        // the real edges of the transition from back to this candidate
+        List<EdgeIteratorState> transition;
+
+        Candidate(State state, int snapIndex) {
+            this.state = state;
+            this.snapIndex = snapIndex;
+            if (state.isOnDirectedEdge()) {
+                edgeKey = ((VirtualEdgeIteratorState) state.getOutgoingVirtualEdge()).getOriginalEdgeKey();
+                directedRealEdge = graph.getEdgeIteratorStateForKey(edgeKey);
+            } else {
+                edgeKey = -1;
+                directedRealEdge = null;
+            }
+        }
+    }
+}
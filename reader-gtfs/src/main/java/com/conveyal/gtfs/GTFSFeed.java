@@ -31,6 +31,7 @@ import com.conveyal.gtfs.error.GeneralError;
 import com.conveyal.gtfs.model.Calendar;
 import com.conveyal.gtfs.model.*;
 import com.google.common.collect.Iterables;
+import com.graphhopper.gtfs.StopTimesStore;
 import com.graphhopper.gtfs.Trips;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateList;
@@ -101,6 +102,9 @@ public class GTFSFeed implements Cloneable, Closeable {
 
     private boolean loaded = false;
 
+    /* Columnar copy of stop_times that is used for lookups by trip if it is set. */
+    private StopTimesStore stopTimesStore;
+
     /**
      * The order in which we load the tables is important for two reasons.
      * 1. We must load feed_info first so we know the feed ID before loading any other entities. This could be relaxed
@@ -218,6 +222,28 @@ public class GTFSFeed implements Cloneable, Closeable {
         return tripStopTimes.values();
     }
 
+    public void setStopTimesStore(StopTimesStore stopTimesStore) {
+        this.stopTimesStore = stopTimesStore;
+    }
+
+    public StopTimesStore getStopTimesStore() {
+        return stopTimesStore;
+    }
+
+    /**
+     * Fetch the stop time of the given trip with the given stop_sequence, or null if there is none. If a
+     * {@link StopTimesStore} is set, the returned stop time only contains the columns of the store.
+     */
+    public StopTime getStopTime (String trip_id, int stop_sequence) {
+        if (stopTimesStore == null)
+            return stop_times.get(new Fun.Tuple2<>(trip_id, stop_sequence));
+        int trip = stopTimesStore.getTripIndex(trip_id);
+        if (trip < 0)
+            return null;
+        int i = stopTimesStore.findStopTime(trip, stop_sequence);
+        return i < 0 ? null : stopTimesStore.getStopTime(trip, i);
+    }
+
     /** Get the shape for the given shape ID */
     public Shape getShape (String shape_id) {
         Shape shape = new Shape(this, shape_id);
@@ -226,12 +252,23 @@ public class GTFSFeed implements Cloneable, Closeable {
 
     /**
      * For the given trip ID, fetch all the stop times in order, and interpolate stop-to-stop travel times.
+     * If a {@link StopTimesStore} is set, the stop times are read from it and only contain its columns.
      */
     public List<StopTime> getInterpolatedStopTimesForTrip (String trip_id) throws FirstAndLastStopsDoNotHaveTimes {
-        // clone stop times so as not to modify base GTFS structures
-        StopTime[] stopTimes = StreamSupport.stream(Spliterators.spliteratorUnknownSize(getOrderedStopTimesForTrip(trip_id).iterator(), 0), false)
-                .map(st -> st.clone())
-                .toArray(i -> new StopTime[i]);
+        StopTime[] stopTimes;
+        if (stopTimesStore != null) {
+            // the store creates new stop times, which only contain its columns
+            int trip = stopTimesStore.getTripIndex(trip_id);
+            stopTimes = new StopTime[trip < 0 ? 0 : stopTimesStore.getStopTimeCount(trip)];
+            for (int i = 0; i < stopTimes.length; i++) {
+                stopTimes[i] = stopTimesStore.getStopTime(trip, i);
+            }
+        } else {
+            // clone stop times so as not to modify base GTFS structures
+            stopTimes = StreamSupport.stream(Spliterators.spliteratorUnknownSize(getOrderedStopTimesForTrip(trip_id).iterator(), 0), false)
+                    .map(st -> st.clone())
+                    .toArray(i -> new StopTime[i]);
+        }
 
         // avoid having to make sure that the array has length below.
         if (stopTimes.length == 0) return Collections.emptyList();
@@ -0,0 +1,386 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.Trip;
+import com.graphhopper.config.Profile;
+import com.graphhopper.routing.DefaultWeightingFactory;
+import com.graphhopper.routing.WeightingFactory;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.Translation;
+import com.graphhopper.util.TranslationMap;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Base class of the {@link PtRouter}s that search the timetable between the stations that are found by separate
+ * access and egress searches on the street network. The subclasses only do the search on the timetable and turn
+ * their journeys into public transit legs.
+ */
+abstract class AbstractAccessEgressPtRouter implements PtRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractAccessEgressPtRouter.class);
+
+    protected final GraphHopperConfig config;
+    protected final TranslationMap translationMap;
+    protected final BaseGraph baseGraph;
+    protected final EncodingManager encodingManager;
+    protected final LocationIndex locationIndex;
+    protected final GtfsStorage gtfsStorage;
+    protected final PtGraph ptGraph;
+    protected final PathDetailsBuilderFactory pathDetailsBuilderFactory;
+    protected final WeightingFactory weightingFactory;
+    private final Map<String, ZoneId> feedZoneIds = new ConcurrentHashMap<>(); // ad-hoc cache for timezone field of gtfs feed
+
+    protected AbstractAccessEgressPtRouter(GraphHopperConfig config, TranslationMap translationMap, BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, GtfsStorage gtfsStorage, PathDetailsBuilderFactory pathDetailsBuilderFactory) {
+        this.config = config;
+        this.weightingFactory = new DefaultWeightingFactory(baseGraph, encodingManager);
+        this.translationMap = translationMap;
+        this.baseGraph = baseGraph;
+        this.encodingManager = encodingManager;
+        this.locationIndex = locationIndex;
+        this.gtfsStorage = gtfsStorage;
+        this.ptGraph = gtfsStorage.getPtGraph();
+        this.pathDetailsBuilderFactory = pathDetailsBuilderFactory;
+    }
+
+    /**
+     * Routes a single request. J is the type of the journeys that are found on the timetable.
+     */
+    protected abstract class RequestHandler<J> {
+        protected final int maxVisitedNodesForRequest;
+        protected final int limitSolutions;
+        protected final Duration maxProfileDuration;
+        protected final Instant initialTime;
+        protected final boolean profileQuery;
+        protected final boolean arriveBy;
+        protected final boolean ignoreTransfers;
+        protected final double betaTransfers;
+        protected final double betaStreetTime;
+        protected final double walkSpeedKmH;
+        protected final int blockedRouteTypes;
+        protected final Map<Integer, Long> transferPenaltiesByRouteType;
+        protected final GHLocation enter;
+        protected final GHLocation exit;
+        protected final Translation translation;
+        protected final List<String> requestedPathDetails;
+
+        protected final GHResponse response = new GHResponse();
+        protected final long limitTripTime;
+        protected final long limitStreetTime;
+        protected final double betaAccessTime;
+        protected final double betaEgressTime;
+        protected QueryGraph queryGraph;
+        protected int visitedNodes;
+        protected final Profile accessProfile;
+        protected final EdgeFilter accessSnapFilter;
+        protected final Weighting accessWeighting;
+        protected final Profile egressProfile;
+        protected final EdgeFilter egressSnapFilter;
+        protected final Weighting egressWeighting;
+        protected TripFromLabel tripFromLabel;
+        protected List<Label> accessStationLabels;
+        protected List<TripBasedRouter.StopWithTimeDelta> accessStations;
+        protected Label walkDestLabel;
+        protected List<Label> egressStationLabels;
+        protected List<TripBasedRouter.StopWithTimeDelta> egressStations;
+        protected ResponsePath walkResponsePath;
+
+        protected RequestHandler(Request request) {
+            maxVisitedNodesForRequest = request.getMaxVisitedNodes();
+            profileQuery = request.isProfileQuery();
+            ignoreTransfers = Optional.ofNullable(request.getIgnoreTransfers()).orElse(false);
+            betaTransfers = request.getBetaTransfers();
+            betaStreetTime = request.getBetaStreetTime();
+            limitSolutions = Optional.ofNullable(request.getLimitSolutions()).orElse(profileQuery ? 50 : ignoreTransfers ? 1 : Integer.MAX_VALUE);
+            initialTime = request.getEarliestDepartureTime();
+            maxProfileDuration = request.getMaxProfileDuration();
+            arriveBy = request.isArriveBy();
+            walkSpeedKmH = request.getWalkSpeedKmH();
+            blockedRouteTypes = request.getBlockedRouteTypes();
+            transferPenaltiesByRouteType = request.getBoardingPenaltiesByRouteType();
+            translation = translationMap.getWithFallBack(request.getLocale());
+            enter = request.getPoints().get(0);
+            exit = request.getPoints().get(1);
+            limitTripTime = request.getLimitTripTime() != null ? request.getLimitTripTime().toMillis() : Long.MAX_VALUE;
+            limitStreetTime = request.getLimitStreetTime() != null ? request.getLimitStreetTime().toMillis() : Long.MAX_VALUE;
+            requestedPathDetails = request.getPathDetails();
+            accessProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getAccessProfile())).findFirst().get();
+            betaAccessTime = request.getBetaAccessTime();
+            accessWeighting = weightingFactory.createWeighting(accessProfile, new PMap(), false);
+            accessSnapFilter = new DefaultSnapFilter(accessWeighting, encodingManager.getBooleanEncodedValue(Subnetwork.key(accessProfile.getName())));
+            egressProfile = config.getProfiles().stream().filter(p -> p.getName().equals(request.getEgressProfile())).findFirst().get();
+            betaEgressTime = request.getBetaEgressTime();
+            egressWeighting = weightingFactory.createWeighting(egressProfile, new PMap(), false);
+            egressSnapFilter = new DefaultSnapFilter(egressWeighting, encodingManager.getBooleanEncodedValue(Subnetwork.key(egressProfile.getName())));
+        }
+
+        /**
+         * @return the journeys on the timetable from the accessStations to the egressStations
+         */
+        protected abstract List<J> routeStations();
+
+        protected abstract Label accessLabel(J journey);
+
+        protected abstract Label egressLabel(J journey);
+
+        /**
+         * Adds the public transit legs of the journey, and the transfer legs between them, to the legs.
+         *
+         * @return the weight of these legs
+         */
+        protected abstract long addPtLegs(J journey, List<Trip.Leg> legs);
+
+        /**
+         * @return the time after the initial time in which the departures are searched
+         */
+        protected Duration profileDuration() {
+            return maxProfileDuration;
+        }
+
+        /**
+         * Removes solutions from the sorted list of solutions, if the subclass does not do this itself.
+         */
+        protected void limitSolutions(List<ResponsePath> solutions) {
+        }
+
+        GHResponse route() {
+            StopWatch stopWatch = new StopWatch().start();
+            PtLocationSnapper.Result result = new PtLocationSnapper(baseGraph, locationIndex, gtfsStorage).snapAll(Arrays.asList(enter, exit), Arrays.asList(accessSnapFilter, egressSnapFilter));
+            queryGraph = result.queryGraph;
+            response.addDebugInfo("idLookup:" + stopWatch.stop().getSeconds() + "s");
+
+            Label.NodeId startNode = result.nodes.get(0);
+            Label.NodeId destNode = result.nodes.get(1);
+
+            StopWatch stopWatch1 = new StopWatch().start();
+
+            accessStationLabels = access(startNode, destNode);
+            accessStations = accessStationLabels.stream()
+                    .map(l -> stopWithTimeDelta(l.edge.getPlatformDescriptor(), l.currentTime - initialTime.toEpochMilli()))
+                    .collect(Collectors.toList());
+            for (TripBasedRouter.StopWithTimeDelta accessStation : accessStations) {
+                logger.debug("access {}", accessStation);
+            }
+            egressStationLabels = egress(startNode, destNode);
+            egressStations = egressStationLabels.stream()
+                    .map(l -> stopWithTimeDelta(l.edge.getPlatformDescriptor(), initialTime.toEpochMilli() - l.currentTime))
+                    .collect(Collectors.toList());
+            response.addDebugInfo("access/egress routing:" + stopWatch1.stop().getSeconds() + "s");
+
+            List<J> journeys = routeStations();
+
+            tripFromLabel = new TripFromLabel(queryGraph, encodingManager, gtfsStorage, RealtimeFeed.empty(), pathDetailsBuilderFactory, walkSpeedKmH);
+            if (walkDestLabel != null) {
+                List<Label.Transition> walkTransitions = Label.getTransitions(walkDestLabel, false);
+                List<List<Label.Transition>> walkPartitions = tripFromLabel.parsePathToPartitions(walkTransitions);
+                List<Trip.Leg> walkPath = tripFromLabel.parsePartitionToLegs(walkPartitions.get(0), result.queryGraph, encodingManager, accessWeighting, translation, requestedPathDetails);
+                walkResponsePath = TripFromLabel.createResponsePath(gtfsStorage, translation, result.points, walkPath);
+                walkResponsePath.setRouteWeight(walkResponsePath.getTime() * betaAccessTime);
+                response.add(walkResponsePath);
+            }
+            for (J journey : journeys) {
+                ResponsePath responsePath = extractResponse(journey, result);
+                if (walkResponsePath != null) {
+                    Instant departureTime = responsePath.getLegs().get(0).getDepartureTime().toInstant();
+                    Duration waitTimeBeforeDeparture = Duration.between(initialTime, departureTime);
+                    double travelTimeyWeight = responsePath.getRouteWeight() - waitTimeBeforeDeparture.toMillis();
+                    double gapBetweenTravelTimeyWeights = walkResponsePath.getRouteWeight() - travelTimeyWeight;
+                    Instant earliestDepartureTimeWhereResponseIsBetterThanWalking = departureTime.minus((long) gapBetweenTravelTimeyWeights, ChronoUnit.MILLIS);
+                    Instant endOfProfile = initialTime.plus(profileDuration());
+                    if (earliestDepartureTimeWhereResponseIsBetterThanWalking.isAfter(endOfProfile)) {
+                        continue;
+                    }
+                }
+                response.add(responsePath);
+            }
+            response.getAll().sort(Comparator.comparingLong(ResponsePath::getTime));
+            if (ignoreTransfers) {
+                Instant bestDepartureTime = Instant.MIN;
+                Iterator<ResponsePath> i = response.getAll().iterator();
+                while (i.hasNext()) {
+                    ResponsePath path = i.next();
+                    Instant departureTime = path.getLegs().get(0).getDepartureTime().toInstant();
+                    if (!departureTime.isAfter(bestDepartureTime)) {
+                        i.remove();
+                    } else {
+                        bestDepartureTime = departureTime;
+                    }
+                }
+            }
+            limitSolutions(response.getAll());
+            response.getHints().putObject("visited_nodes.sum", visitedNodes);
+            response.getHints().putObject("visited_nodes.average", visitedNodes);
+            if (response.getAll().isEmpty()) {
+                if (visitedNodes >= maxVisitedNodesForRequest) {
+                    response.addError(new MaximumNodesExceededException("No path found - maximum number of nodes exceeded: " + maxVisitedNodesForRequest, maxVisitedNodesForRequest));
+                } else {
+                    response.addError(new ConnectionNotFoundException("No route found", Collections.emptyMap()));
+                }
+            }
+            return response;
+        }
+
+        private List<Label> access(Label.NodeId startNode, Label.NodeId destNode) {
+            final GraphExplorer accessEgressGraphExplorer = new GraphExplorer(queryGraph, ptGraph, accessWeighting, gtfsStorage, RealtimeFeed.empty(), false, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting stationRouter = new MultiCriteriaLabelSetting(accessEgressGraphExplorer, false, false, false, 0, new ArrayList<>());
+            stationRouter.setBetaStreetTime(betaStreetTime);
+            stationRouter.setLimitStreetTime(limitStreetTime);
+            List<Label> stationLabels = new ArrayList<>();
+            for (Label label : stationRouter.calcLabels(startNode, initialTime)) {
+                visitedNodes++;
+                if (label.node.equals(destNode)) {
+                    walkDestLabel = label;
+                    break;
+                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.ENTER_PT) {
+                    stationLabels.add(label);
+                }
+            }
+            return stationLabels;
+        }
+
+        private List<Label> egress(Label.NodeId startNode, Label.NodeId destNode) {
+            final GraphExplorer accessEgressGraphExplorer = new GraphExplorer(queryGraph, ptGraph, egressWeighting, gtfsStorage, RealtimeFeed.empty(), true, true, false, walkSpeedKmH, false, blockedRouteTypes);
+            MultiCriteriaLabelSetting stationRouter = new MultiCriteriaLabelSetting(accessEgressGraphExplorer, true, false, false, 0, new ArrayList<>());
+            stationRouter.setBetaStreetTime(betaStreetTime);
+            stationRouter.setLimitStreetTime(limitStreetTime);
+            List<Label> stationLabels = new ArrayList<>();
+            for (Label label : stationRouter.calcLabels(destNode, initialTime)) {
+                visitedNodes++;
+                if (label.node.equals(startNode)) {
+                    break;
+                } else if (label.edge != null && label.edge.getType() == GtfsStorage.EdgeType.EXIT_PT) {
+                    stationLabels.add(label);
+                }
+            }
+            return stationLabels;
+        }
+
+        private ResponsePath extractResponse(J journey, PtLocationSnapper.Result snapResult) {
+            logger.debug("{}", journey);
+            long routeWeight = 0;
+            List<Trip.Leg> legs = new ArrayList<>();
+            Optional<Trip.Leg> maybeAccessLeg = extractAccessLeg(journey, snapResult);
+            logger.debug(" {}", maybeAccessLeg);
+            if (maybeAccessLeg.isPresent()) {
+                Trip.Leg accessLeg = maybeAccessLeg.get();
+                legs.add(accessLeg);
+                routeWeight += (accessLeg.getArrivalTime().getTime() - accessLeg.getDepartureTime().getTime()) * betaAccessTime;
+            }
+            routeWeight += addPtLegs(journey, legs);
+            Optional<Trip.Leg> maybeEgressLeg = extractEgressLeg(journey, snapResult);
+            if (maybeEgressLeg.isPresent()) {
+                Trip.Leg egressLeg = maybeEgressLeg.get();
+                legs.add(egressLeg);
+                routeWeight += (egressLeg.getArrivalTime().getTime() - egressLeg.getDepartureTime().getTime()) * betaEgressTime;
+            }
+
+            ResponsePath responsePath = TripFromLabel.createResponsePath(gtfsStorage, translation, snapResult.points, legs);
+            Duration duration = Duration.between(initialTime, responsePath.getLegs().get(responsePath.getLegs().size() - 1).getArrivalTime().toInstant());
+            responsePath.setTime(duration.toMillis());
+            Duration waitTimeBeforeDeparture = Duration.between(initialTime, responsePath.getLegs().get(0).getDepartureTime().toInstant());
+            routeWeight += waitTimeBeforeDeparture.toMillis();
+            for (int i = 1; i < responsePath.getLegs().size(); i++) {
+                Duration waitTimeBeforeLeg = Duration.between(responsePath.getLegs().get(i - 1).getArrivalTime().toInstant(), responsePath.getLegs().get(i).getDepartureTime().toInstant());
+                routeWeight += waitTimeBeforeLeg.toMillis();
+            }
+            responsePath.setRouteWeight(routeWeight);
+            return responsePath;
+        }
+
+        private Optional<Trip.Leg> extractAccessLeg(J journey, PtLocationSnapper.Result snapResult) {
+            List<Label.Transition> accessTransitions = Label.getTransitions(accessLabel(journey), false);
+            List<List<Label.Transition>> accessPartitions = tripFromLabel.parsePathToPartitions(accessTransitions);
+            List<Trip.Leg> accessPath = tripFromLabel.parsePartitionToLegs(accessPartitions.get(0), snapResult.queryGraph, encodingManager, accessWeighting, translation, requestedPathDetails);
+            if (accessPath.isEmpty()) {
+                return Optional.empty();
+            } else {
+                return Optional.of(accessPath.get(0));
+            }
+        }
+
+        private Optional<Trip.Leg> extractEgressLeg(J journey, PtLocationSnapper.Result snapResult) {
+            List<Label.Transition> egressTransitions = Label.getTransitions(egressLabel(journey), true);
+            List<List<Label.Transition>> egressPartitions = tripFromLabel.parsePathToPartitions(egressTransitions);
+            if (egressPartitions.size() < 2) {
+                return Optional.empty();
+            } else {
+                List<Trip.Leg> egressPath = tripFromLabel.parsePartitionToLegs(egressPartitions.get(1), snapResult.queryGraph, encodingManager, egressWeighting, translation, requestedPathDetails);
+                return Optional.of(egressPath.get(0));
+            }
+        }
+
+        /**
+         * Adds the walk from the last stop of the previous leg to the stop of the next one, if it is an interpolated
+         * transfer.
+         */
+        protected void addTransferLeg(List<Trip.Leg> legs, GtfsStorage.FeedIdWithStopId stopA, GtfsStorage.FeedIdWithStopId stopB) {
+            List<Trip.Stop> previousStops = ((Trip.PtLeg) legs.get(legs.size() - 1)).stops;
+            gtfsStorage.interpolatedTransfers.get(stopA).stream().filter(it -> it.toPlatformDescriptor.equals(stopB)).findAny().ifPresent(it -> {
+                List<Label.Transition> transferTransitions = tripFromLabel.transferPath(it.skippedEdgesForTransfer, egressWeighting, previousStops.get(previousStops.size() - 1).arrivalTime.toInstant().toEpochMilli());
+                List<Trip.Leg> transferLegs = tripFromLabel.parsePartitionToLegs(transferTransitions, queryGraph, encodingManager, egressWeighting, translation, requestedPathDetails);
+                legs.add(transferLegs.get(0));
+            });
+        }
+    }
+
+    protected static Trip.Stop createStop(GTFSFeed feed, StopTime st, GeometryFactory geometryFactory, Date arrivalTime, Date departureTime) {
+        Stop stop = feed.stops.get(st.stop_id);
+        return new Trip.Stop(st.stop_id, st.stop_sequence, stop.stop_name, geometryFactory.createPoint(new Coordinate(stop.stop_lon, stop.stop_lat)), arrivalTime, arrivalTime, arrivalTime, false, departureTime, departureTime, departureTime, false);
+    }
+
+    protected static Trip.PtLeg createPtLeg(String feedId, boolean isInSameVehicleAsPrevious, com.conveyal.gtfs.model.Trip trip, List<Trip.Stop> stops, long travelTime, GeometryFactory geometryFactory) {
+        return new Trip.PtLeg(feedId, isInSameVehicleAsPrevious, trip.trip_id,
+                trip.route_id, trip.trip_headsign, stops, 0, travelTime, geometryFactory.createLineString(stops.stream().map(s -> s.geometry.getCoordinate()).toArray(Coordinate[]::new)));
+    }
+
+    private TripBasedRouter.StopWithTimeDelta stopWithTimeDelta(GtfsStorage.PlatformDescriptor platformDescriptor, long timeDelta) {
+        ZoneId zoneId = feedZoneIds.computeIfAbsent(platformDescriptor.feed_id, feedId -> ZoneId.of(gtfsStorage.getGtfsFeeds().get(feedId).agency.values().stream().findFirst().get().agency_timezone));
+        return new TripBasedRouter.StopWithTimeDelta(new GtfsStorage.FeedIdWithStopId(platformDescriptor.feed_id, platformDescriptor.stop_id), zoneId, timeDelta);
+    }
+
+}
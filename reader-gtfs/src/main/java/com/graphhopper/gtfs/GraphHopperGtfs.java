@@ -76,11 +76,7 @@ public class GraphHopperGtfs extends GraphHopper {
             ptGraph.loadExisting();
             stopIndex.loadExisting();
             if (ghConfig.getBool("gtfs.trip_based", false)) {
-                for (String trafficDayString : ghConfig.getString("gtfs.schedule_day", null).split(",")) {
-                    LocalDate trafficDay = LocalDate.parse(trafficDayString);
-                    LOGGER.info("Loading trip-based transfers for pt router. Schedule day: {}", trafficDay);
-                    gtfsStorage.tripTransfers.getTripTransfers().put(trafficDay, gtfsStorage.deserializeTripTransfersMap("trip_transfers_" + trafficDayString));
-                }
+                // the trip transfers of a schedule day are mapped when the day is first queried
                 for (Map.Entry<String, GTFSFeed> entry : this.gtfsStorage.getGtfsFeeds().entrySet()) {
                     for (Stop stop : entry.getValue().stops.values()) {
                         gtfsStorage.tripTransfers.getPatternBoardings(new GtfsStorage.FeedIdWithStopId(entry.getKey(), stop.stop_id));
@@ -123,14 +119,9 @@ public class GraphHopperGtfs extends GraphHopper {
                 interpolateTransfers(allReaders, allTransfers);
                 if (ghConfig.getBool("gtfs.trip_based", false)) {
                     ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode = Multimaps.invertFrom(Multimaps.forMap(gtfsStorage.getStationNodes()), ArrayListMultimap.create());
-                    for (String trafficDayString : ghConfig.getString("gtfs.schedule_day", null).split(",")) {
-                        LocalDate trafficDay = LocalDate.parse(trafficDayString);
-                        LOGGER.info("Computing trip-based transfers for pt router. Schedule day: {}", trafficDay);
-                        Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> tripTransfersMap = gtfsStorage.tripTransfers.getTripTransfers(trafficDay);
-                        gtfsStorage.tripTransfers.findAllTripTransfersInto(tripTransfersMap, trafficDay, allTransfers, stopsForStationNode);
-                        LOGGER.info("Writing. Schedule day: {}", trafficDay);
-                        gtfsStorage.serializeTripTransfersMap("trip_transfers_" + trafficDayString, tripTransfersMap);
-                    }
+                    List<LocalDate> trafficDays = Arrays.stream(ghConfig.getString("gtfs.schedule_day", null).split(",")).map(LocalDate::parse).collect(Collectors.toList());
+                    int threads = ghConfig.getInt("gtfs.trip_transfers_threads", Runtime.getRuntime().availableProcessors());
+                    gtfsStorage.tripTransfers.computeTripTransfers(gtfsStorage.getDirectory(), trafficDays, allTransfers, stopsForStationNode, threads);
                 }
             } catch (Exception e) {
                 throw new RuntimeException("Error while constructing transit network. Is your GTFS file valid? Please check log for possible causes.", e);
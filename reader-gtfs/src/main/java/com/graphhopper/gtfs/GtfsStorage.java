@@ -54,6 +54,7 @@ public class GtfsStorage {
 	private LineIntIndex stopIndex;
 	private PtGraph ptGraph;
 	public Trips tripTransfers;
+	private RaptorTimetable raptorTimetable;
 
 	public void setStopIndex(LineIntIndex stopIndex) {
 		this.stopIndex = stopIndex;
@@ -163,6 +164,7 @@ public class GtfsStorage {
 	private Directory dir;
 	private Set<String> gtfsFeedIds;
 	private Map<String, GTFSFeed> gtfsFeeds = new HashMap<>();
+	private Map<String, StopTimesStore> stopTimesStores = new HashMap<>();
 	private Map<String, Map<String, Fare>> faresByFeed;
 	private Map<FeedIdWithStopId, Integer> stationNodes;
 	private IntObjectHashMap<int[]> skippedEdgesForTransfer;
@@ -198,6 +200,13 @@ public class GtfsStorage {
             }
 
             GTFSFeed feed = new GTFSFeed(dbFile);
+            StopTimesStore stopTimesStore = new StopTimesStore(dir, gtfsFeedId);
+            if (stopTimesStore.loadExisting()) {
+                feed.setStopTimesStore(stopTimesStore);
+                stopTimesStores.put(gtfsFeedId, stopTimesStore);
+            } else {
+                LOGGER.warn("No stop times store found for {}, reading stop times from {}", gtfsFeedId, dbFile.getName());
+            }
             this.gtfsFeeds.put(gtfsFeedId, feed);
         }
 		ptToStreet = deserializeIntoIntIntHashMap("pt_to_street");
@@ -283,6 +292,10 @@ public class GtfsStorage {
 			Files.deleteIfExists(dbFile.toPath());
 			GTFSFeed feed = new GTFSFeed(dbFile);
 			feed.loadFromFileAndLogErrors(zipFileOrDirectory);
+			StopTimesStore stopTimesStore = new StopTimesStore(dir, id);
+			stopTimesStore.create(feed);
+			feed.setStopTimesStore(stopTimesStore);
+			this.stopTimesStores.put(id, stopTimesStore);
 			this.gtfsFeeds.put(id, feed);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
@@ -307,6 +320,11 @@ public class GtfsStorage {
 			for (GTFSFeed feed : gtfsFeeds.values()) {
 				feed.close();
 			}
+			for (StopTimesStore stopTimesStore : stopTimesStores.values()) {
+				stopTimesStore.close();
+			}
+			if (tripTransfers != null)
+				tripTransfers.close();
 		}
 	}
 
@@ -322,6 +340,10 @@ public class GtfsStorage {
 		return streetToPt;
 	}
 
+	public Directory getDirectory() {
+		return dir;
+	}
+
 	public Map<String, GTFSFeed> getGtfsFeeds() {
 		return Collections.unmodifiableMap(gtfsFeeds);
 	}
@@ -330,10 +352,22 @@ public class GtfsStorage {
 		return stationNodes;
 	}
 
+	/**
+	 * The timetable for the {@link RaptorRouter}. It is built from the trip patterns when it is first needed.
+	 */
+	public synchronized RaptorTimetable getRaptorTimetable() {
+		if (raptorTimetable == null)
+			raptorTimetable = new RaptorTimetable(this);
+		return raptorTimetable;
+	}
+
 	public void flush() {
 		serialize("pt_to_street", ptToStreet);
 		serialize("street_to_pt", streetToPt);
 		serialize("skipped_edges_for_transfer", skippedEdgesForTransfer);
+		for (StopTimesStore stopTimesStore : stopTimesStores.values()) {
+			stopTimesStore.flush();
+		}
 		try (OutputStream os = Files.newOutputStream(Paths.get(dir.getLocation() + "interpolated_transfers"))) {
 			SequenceWriter sequenceWriter = ionMapper.writer().writeValuesAsArray(os);
 			for (Map.Entry<FeedIdWithStopId, Collection<InterpolatedTransfer>> e : interpolatedTransfers.asMap().entrySet()) {
@@ -345,45 +379,6 @@ public class GtfsStorage {
 		}
 	}
 
-	public void serializeTripTransfersMap(String filename, Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> data) {
-		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
-			oos.writeInt(data.size());
-			for (Map.Entry<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> entry : data.entrySet()) {
-				oos.writeInt(entry.getKey().tripIdx);
-				oos.writeInt(entry.getKey().stop_sequence);
-				oos.writeInt(entry.getValue().size());
-				for (Trips.TripAtStopTime tripAtStopTime : entry.getValue()) {
-					oos.writeInt(tripAtStopTime.tripIdx);
-					oos.writeInt(tripAtStopTime.stop_sequence);
-				}
-			}
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	public Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> deserializeTripTransfersMap(String filename) {
-		try (FileInputStream in = new FileInputStream(dir.getLocation() + filename)) {
-			ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-			int size = ois.readInt();
-			Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> result = new TreeMap<>();
-			for (int i = 0; i < size; i++) {
-				Trips.TripAtStopTime origin = new Trips.TripAtStopTime(ois.readInt(), ois.readInt());
-				int nDestinations = ois.readInt();
-				List<Trips.TripAtStopTime> destinations = new ArrayList<>(nDestinations);
-				for (int j = 0; j < nDestinations; j++) {
-					int tripIdxTo = ois.readInt();
-					int stop_sequenceTo = ois.readInt();
-					destinations.add(new Trips.TripAtStopTime(tripIdxTo, stop_sequenceTo));
-				}
-				result.put(origin, destinations);
-			}
-			return result;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	public void serialize(String filename, IntObjectHashMap<int[]> data) {
 		try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(dir.getLocation() + filename))))) {
 			oos.writeInt(data.size());
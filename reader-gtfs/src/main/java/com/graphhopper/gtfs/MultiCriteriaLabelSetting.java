@@ -17,6 +17,8 @@
  */
 package com.graphhopper.gtfs;
 
+import com.carrotsearch.hppc.LongObjectHashMap;
+
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Consumer;
@@ -27,6 +29,9 @@ import java.util.function.Predicate;
  * Implements a Multi-Criteria Label Setting (MLS) path finding algorithm
  * with the criteria earliest arrival time and number of transfers.
  * <p>
+ * The Pareto set of every node is kept in a bag with the weights of its labels in a primitive array, and the queue
+ * is a binary heap that orders by these weights, so the weight of a label is calculated only once.
+ * <p>
  *
  * @author Michael Zilske
  * @author Peter Karich
@@ -37,8 +42,8 @@ public class MultiCriteriaLabelSetting {
     private final Comparator<Label> queueComparator;
     private final List<Label> targetLabels;
     private long startTime;
-    private final Map<Label.NodeId, List<Label>> fromMap;
-    private final PriorityQueue<Label> fromHeap;
+    private final LongObjectHashMap<Bag> fromMap;
+    private final LabelHeap fromHeap;
     private final long maxProfileDuration;
     private final boolean reverse;
     private final boolean mindTransfers;
@@ -49,6 +54,7 @@ public class MultiCriteriaLabelSetting {
     private double betaStreetTime = 1.0;
     private long limitTripTime = Long.MAX_VALUE;
     private long limitStreetTime = Long.MAX_VALUE;
+    private long weightLimit = Long.MAX_VALUE;
 
     public MultiCriteriaLabelSetting(GraphExplorer explorer, boolean reverse, boolean mindTransfers, boolean profileQuery, long maxProfileDuration, List<Label> solutions) {
         this.explorer = explorer;
@@ -59,8 +65,8 @@ public class MultiCriteriaLabelSetting {
         this.targetLabels = solutions;
 
         queueComparator = new LabelComparator();
-        fromHeap = new PriorityQueue<>(queueComparator);
-        fromMap = new HashMap<>();
+        fromHeap = new LabelHeap();
+        fromMap = new LongObjectHashMap<>();
     }
 
     public Iterable<Label> calcLabels(Label.NodeId from, Instant startTime) {
@@ -85,10 +91,11 @@ public class MultiCriteriaLabelSetting {
         MultiCriteriaLabelSettingSpliterator(Label.NodeId from) {
             super(0, 0);
             Label label = new Label(startTime, null, from, 0, null, 0, 0L, 0, false, null);
-            ArrayList<Label> labels = new ArrayList<>(1);
-            labels.add(label);
-            fromMap.put(from, labels);
-            fromHeap.add(label);
+            long weight = weight(label);
+            Bag bag = new Bag();
+            bag.add(label, weight);
+            fromMap.put(nodeKey(from), bag);
+            fromHeap.add(label, weight);
         }
 
         @Override
@@ -179,20 +186,48 @@ public class MultiCriteriaLabelSetting {
 
 
     void insertIfNotDominated(Label me) {
-        Predicate<Label> filter;
-        if (profileQuery && me.departureTime != null) {
-            filter = (targetLabel) -> (!reverse ? prc(me, targetLabel) : rprc(me, targetLabel));
-        } else {
-            filter = label -> true;
+        long meWeight = weight(me);
+        // labels above the limit would only be polled after the search is stopped
+        if (meWeight > weightLimit)
+            return;
+        boolean profileFilter = profileQuery && me.departureTime != null;
+        for (Label targetLabel : targetLabels) {
+            if ((!profileFilter || profileFilter(me, targetLabel)) && dominates(targetLabel, weight(targetLabel), me, meWeight))
+                return;
+        }
+        long key = nodeKey(me.node);
+        Bag bag = fromMap.get(key);
+        if (bag == null) {
+            bag = new Bag();
+            fromMap.put(key, bag);
+        }
+        for (int i = 0; i < bag.size; i++) {
+            if ((!profileFilter || profileFilter(me, bag.labels[i])) && dominates(bag.labels[i], bag.weights[i], me, meWeight))
+                return;
         }
-        if (isNotDominatedByAnyOf(me, targetLabels, filter)) {
-            List<Label> sptEntries = fromMap.computeIfAbsent(me.node, k -> new ArrayList<>(1));
-            if (isNotDominatedByAnyOf(me, sptEntries, filter)) {
-                removeDominated(me, sptEntries, filter);
-                sptEntries.add(me);
-                fromHeap.add(me);
+        int size = 0;
+        for (int i = 0; i < bag.size; i++) {
+            Label they = bag.labels[i];
+            if ((!profileFilter || profileFilter(me, they)) && dominates(me, meWeight, they, bag.weights[i])) {
+                they.deleted = true;
+            } else {
+                bag.labels[size] = they;
+                bag.weights[size] = bag.weights[i];
+                size++;
             }
         }
+        Arrays.fill(bag.labels, size, bag.size, null);
+        bag.size = size;
+        bag.add(me, meWeight);
+        fromHeap.add(me, meWeight);
+    }
+
+    private boolean profileFilter(Label me, Label they) {
+        return !reverse ? prc(me, they) : rprc(me, they);
+    }
+
+    private static long nodeKey(Label.NodeId node) {
+        return ((long) node.streetNode << 32) | (node.ptNode & 0xFFFFFFFFL);
     }
 
     boolean rprc(Label me, Label they) {
@@ -223,7 +258,11 @@ public class MultiCriteriaLabelSetting {
     }
 
     private boolean dominates(Label me, Label they) {
-        if (weight(me) > weight(they))
+        return dominates(me, weight(me), they, weight(they));
+    }
+
+    private boolean dominates(Label me, long meWeight, Label they, long theyWeight) {
+        if (meWeight > theyWeight)
             return false;
 
         if (mindTransfers && me.nTransfers > they.nTransfers)
@@ -231,7 +270,7 @@ public class MultiCriteriaLabelSetting {
         if (me.impossible && !they.impossible)
             return false;
 
-        if (weight(me) < weight(they))
+        if (meWeight < theyWeight)
             return true;
         if (mindTransfers && me.nTransfers < they.nTransfers)
             return true;
@@ -259,6 +298,100 @@ public class MultiCriteriaLabelSetting {
         this.limitStreetTime = limitStreetTime;
     }
 
+    /**
+     * Labels with a higher weight are not inserted anymore. This must only be used with a limit that the caller
+     * stops the search at anyway, e.g. the weight of the best solution found so far, and that does not increase.
+     */
+    void setWeightLimit(long weightLimit) {
+        this.weightLimit = weightLimit;
+    }
+
+    /**
+     * The labels of a node that are not dominated by each other.
+     */
+    private static class Bag {
+        Label[] labels = new Label[2];
+        long[] weights = new long[2];
+        int size;
+
+        void add(Label label, long weight) {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            labels[size] = label;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * A binary heap like {@link PriorityQueue} with the same order of the labels, but the weight of every label is
+     * stored next to it, so that the full comparator is only used for labels with the same weight.
+     */
+    private class LabelHeap {
+        private Label[] labels = new Label[16];
+        private long[] weights = new long[16];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        Label peek() {
+            return labels[0];
+        }
+
+        void add(Label label, long weight) {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (compare(label, weight, labels[parent], weights[parent]) >= 0)
+                    break;
+                labels[k] = labels[parent];
+                weights[k] = weights[parent];
+                k = parent;
+            }
+            labels[k] = label;
+            weights[k] = weight;
+        }
+
+        Label poll() {
+            Label result = labels[0];
+            int n = --size;
+            Label label = labels[n];
+            long weight = weights[n];
+            labels[n] = null;
+            if (n > 0) {
+                int k = 0;
+                int half = n >>> 1;
+                while (k < half) {
+                    int child = (k << 1) + 1;
+                    int right = child + 1;
+                    if (right < n && compare(labels[child], weights[child], labels[right], weights[right]) > 0)
+                        child = right;
+                    if (compare(label, weight, labels[child], weights[child]) <= 0)
+                        break;
+                    labels[k] = labels[child];
+                    weights[k] = weights[child];
+                    k = child;
+                }
+                labels[k] = label;
+                weights[k] = weight;
+            }
+            return result;
+        }
+
+        private int compare(Label a, long aWeight, Label b, long bWeight) {
+            int c = Long.compare(aWeight, bWeight);
+            return c != 0 ? c : queueComparator.compare(a, b);
+        }
+    }
+
     private class LabelComparator implements Comparator<Label> {
 
         @Override
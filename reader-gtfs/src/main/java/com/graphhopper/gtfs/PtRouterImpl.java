@@ -102,9 +102,20 @@ public final class PtRouterImpl implements PtRouter {
         }
 
         public PtRouter createWith(GtfsRealtime.FeedMessage realtimeFeed) {
+            return createWith(updateRealtimeFeed(RealtimeFeed.empty(), realtimeFeed));
+        }
+
+        public PtRouter createWith(RealtimeFeed realtimeFeed) {
+            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, realtimeFeed, new PathDetailsBuilderFactory());
+        }
+
+        /**
+         * @see RealtimeFeed#update
+         */
+        public RealtimeFeed updateRealtimeFeed(RealtimeFeed previous, GtfsRealtime.FeedMessage realtimeFeed) {
             Map<String, GtfsRealtime.FeedMessage> realtimeFeeds = new HashMap<>();
             realtimeFeeds.put("gtfs_0", realtimeFeed);
-            return new PtRouterImpl(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, RealtimeFeed.fromProtobuf(gtfsStorage, this.transfers, realtimeFeeds), new PathDetailsBuilderFactory());
+            return previous.update(gtfsStorage, this.transfers, realtimeFeeds);
         }
 
         public PtRouter createWithoutRealtimeFeed() {
@@ -315,6 +326,9 @@ public final class PtRouterImpl implements PtRouter {
                             }
                         } else {
                             highestWeightForDominationTest = discoveredSolutions.stream().filter(s -> !s.impossible && (ignoreTransfers || s.nTransfers <= 1)).mapToLong(router::weight).min().orElse(Long.MAX_VALUE);
+                            // This bound never increases, so labels above it would only be polled after the loop has stopped.
+                            if (highestWeightForDominationTest != Long.MAX_VALUE && smallestStationLabelWeight != Long.MAX_VALUE)
+                                router.setWeightLimit(highestWeightForDominationTest - smallestStationLabelWeight);
                         }
                     }
                 }
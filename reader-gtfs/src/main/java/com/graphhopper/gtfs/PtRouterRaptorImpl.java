@@ -0,0 +1,139 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.Trip;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.TranslationMap;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link PtRouter} that uses the round-based {@link RaptorRouter} on the trip patterns of the feeds. The access and
+ * egress to and from the stations are calculated on the street network like in the other routers. Realtime updates and
+ * queries by arrival time are not supported.
+ */
+public final class PtRouterRaptorImpl extends AbstractAccessEgressPtRouter {
+
+    private static final int MAX_ROUNDS = 9;
+
+    @Inject
+    public PtRouterRaptorImpl(GraphHopperConfig config, TranslationMap translationMap, BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, GtfsStorage gtfsStorage, PathDetailsBuilderFactory pathDetailsBuilderFactory) {
+        super(config, translationMap, baseGraph, encodingManager, locationIndex, gtfsStorage, pathDetailsBuilderFactory);
+    }
+
+    @Override
+    public GHResponse route(Request request) {
+        return new RaptorRequestHandler(request).route();
+    }
+
+    private class RaptorRequestHandler extends RequestHandler<RaptorRouter.Journey> {
+
+        RaptorRequestHandler(Request request) {
+            super(request);
+        }
+
+        @Override
+        GHResponse route() {
+            if (arriveBy) {
+                response.addError(new IllegalArgumentException("Queries by arrival time are not supported by the raptor router"));
+                return response;
+            }
+            return super.route();
+        }
+
+        @Override
+        protected Duration profileDuration() {
+            return profileQuery ? maxProfileDuration : Duration.ZERO;
+        }
+
+        @Override
+        protected List<RaptorRouter.Journey> routeStations() {
+            StopWatch stopWatch = new StopWatch().start();
+            RaptorRouter raptorRouter = new RaptorRouter(gtfsStorage.getRaptorTimetable(), new RaptorRouter.Parameters(accessStations, egressStations, initialTime,
+                    profileDuration(), trip -> (blockedRouteTypes & (1 << trip.routeType)) == 0,
+                    betaAccessTime, betaEgressTime, betaTransfers, transferPenaltiesByRouteType, ignoreTransfers, MAX_ROUNDS));
+            List<RaptorRouter.Journey> journeys = raptorRouter.route();
+            response.addDebugInfo("raptor:" + stopWatch.stop().getSeconds() + "s");
+            response.getHints().putObject("raptor.scanned_routes", raptorRouter.getScannedRoutes());
+            return journeys.stream()
+                    .filter(journey -> (journey.arrivalTime - journey.departureTime) * 1000 <= limitTripTime)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        protected void limitSolutions(List<ResponsePath> solutions) {
+            if (solutions.size() > limitSolutions)
+                solutions.subList(limitSolutions, solutions.size()).clear();
+        }
+
+        @Override
+        protected Label accessLabel(RaptorRouter.Journey journey) {
+            return accessStationLabels.get(journey.access);
+        }
+
+        @Override
+        protected Label egressLabel(RaptorRouter.Journey journey) {
+            return egressStationLabels.get(journey.egress);
+        }
+
+        @Override
+        protected long addPtLegs(RaptorRouter.Journey journey, List<Trip.Leg> legs) {
+            GeometryFactory geometryFactory = new GeometryFactory();
+            RaptorTimetable timetable = gtfsStorage.getRaptorTimetable();
+            long routeWeight = 0;
+            String previousBlockId = null;
+            GtfsStorage.FeedIdWithStopId previousStop = null;
+            for (RaptorRouter.Ride ride : journey.rides) {
+                GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer = timetable.getTrip(ride.tripIdx);
+                GTFSFeed feed = gtfsStorage.getGtfsFeeds().get(tripPointer.feedId);
+                com.conveyal.gtfs.model.Trip trip = tripPointer.trip;
+                List<Trip.Stop> stops = timetable.getStopTimes(ride.tripIdx).subList(ride.boardPosition, ride.alightPosition + 1).stream()
+                        .map(st -> createStop(feed, st, geometryFactory, new Date((ride.serviceDayStart + st.arrival_time) * 1000), new Date((ride.serviceDayStart + st.departure_time) * 1000)))
+                        .collect(Collectors.toList());
+                boolean isInSameVehicleAsPrevious = trip.block_id != null && trip.block_id.equals(previousBlockId);
+                GtfsStorage.FeedIdWithStopId boardingStop = new GtfsStorage.FeedIdWithStopId(tripPointer.feedId, stops.get(0).stop_id);
+                if (previousStop != null && !previousStop.equals(boardingStop))
+                    addTransferLeg(legs, previousStop, boardingStop);
+                long travelTime = (ride.arrivalTime - ride.departureTime) * 1000;
+                legs.add(createPtLeg(tripPointer.feedId, isInSameVehicleAsPrevious, trip, stops, travelTime, geometryFactory));
+                routeWeight += travelTime;
+                routeWeight += transferPenaltiesByRouteType.getOrDefault(tripPointer.routeType, 0L);
+                previousBlockId = trip.block_id;
+                previousStop = new GtfsStorage.FeedIdWithStopId(tripPointer.feedId, stops.get(stops.size() - 1).stop_id);
+            }
+            routeWeight += (long) (journey.transfers * betaTransfers);
+            return routeWeight;
+        }
+    }
+
+}
@@ -0,0 +1,548 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Round-based public transit routing (RAPTOR, Delling, Pajor, Werneck 2012) on a {@link RaptorTimetable}. Round k
+ * finds the earliest arrival at every stop with k trips: every route that serves a stop which was improved in the
+ * previous round is scanned once, and the stops improved by it are relaxed along their footpaths.
+ * <p>
+ * Profile queries use rRAPTOR: the rounds are run once for every departure time in the profile window, from the
+ * latest to the earliest, and the labels of a later departure time are kept as bounds for the earlier ones.
+ * <p>
+ * Like the {@link TripBasedRouter}, the betas are naive: the extra disutility of the access walk, the transfers and the
+ * boarding penalties are added to the arrival time of a label, while the earliest trip that can be boarded only depends
+ * on the real arrival time. Without betas and penalties this is exact.
+ */
+public class RaptorRouter {
+
+    private static final int UNREACHED = Integer.MAX_VALUE;
+    private static final int[] DAY_OFFSETS = {-1, 0, 1};
+
+    private final RaptorTimetable timetable;
+    private final Parameters parameters;
+    private final int maxRounds;
+    private final int stopCount;
+    private long baseTime;
+    private final Map<String, long[]> dayStartByFeed = new HashMap<>();
+    private final Map<String, LocalDate> serviceDayByFeed = new HashMap<>();
+    private boolean[][] serviceActive;
+
+    // labels per round and stop, times in seconds since baseTime
+    private final int[][] arrival;
+    private final int[][] cost;
+    private final int[][] fromStop;
+    private final int[][] transitArrival;
+    private final int[][] transitCost;
+    private final int[][] transitTrip;
+    private final byte[][] transitDay;
+    private final int[][] transitBoardPosition;
+    private final int[][] transitAlightPosition;
+    private final int[] accessOfStop;
+    private final int[] bestCost;
+    private final int[] bestTargetCost;
+
+    private final BitSet marked;
+    private final BitSet markedByTransit;
+    private final int[] routeMarkedFrom;
+    private int scannedRoutes;
+    private final List<Journey> journeys = new ArrayList<>();
+
+    public RaptorRouter(RaptorTimetable timetable, Parameters parameters) {
+        this.timetable = timetable;
+        this.parameters = parameters;
+        this.maxRounds = parameters.maxRounds();
+        this.stopCount = timetable.getStopCount();
+        arrival = new int[maxRounds + 1][stopCount];
+        cost = new int[maxRounds + 1][stopCount];
+        fromStop = new int[maxRounds + 1][stopCount];
+        transitArrival = new int[maxRounds + 1][stopCount];
+        transitCost = new int[maxRounds + 1][stopCount];
+        transitTrip = new int[maxRounds + 1][stopCount];
+        transitDay = new byte[maxRounds + 1][stopCount];
+        transitBoardPosition = new int[maxRounds + 1][stopCount];
+        transitAlightPosition = new int[maxRounds + 1][stopCount];
+        for (int k = 0; k <= maxRounds; k++) {
+            Arrays.fill(arrival[k], UNREACHED);
+            Arrays.fill(cost[k], UNREACHED);
+            Arrays.fill(transitArrival[k], UNREACHED);
+            Arrays.fill(transitCost[k], UNREACHED);
+        }
+        accessOfStop = new int[stopCount];
+        bestCost = new int[stopCount];
+        Arrays.fill(bestCost, UNREACHED);
+        bestTargetCost = new int[maxRounds + 1];
+        Arrays.fill(bestTargetCost, UNREACHED);
+        marked = new BitSet(stopCount);
+        markedByTransit = new BitSet(stopCount);
+        routeMarkedFrom = new int[timetable.getRouteCount()];
+        Arrays.fill(routeMarkedFrom, -1);
+    }
+
+    /**
+     * @return the journeys that are Pareto-optimal with respect to the departure time (only for a profile), the arrival
+     * time and, unless transfers are ignored, the number of transfers, sorted by departure time
+     */
+    public List<Journey> route() {
+        baseTime = parameters.departureTime().getEpochSecond();
+        initServiceDays();
+        int profileSeconds = (int) parameters.profileLength().getSeconds();
+        int[] departureTimes = profileSeconds > 0 ? departureTimesInProfile(profileSeconds) : new int[]{0};
+        for (int departureTime : departureTimes) {
+            runRounds(departureTime);
+        }
+        return paretoFilter(journeys);
+    }
+
+    /**
+     * Runs the rounds for the given departure times like a profile query, from the latest to the earliest, and passes
+     * the earliest arrival at every stop after each of them to the consumer. The arrivals are in seconds after the
+     * departure time of the parameters, or {@link Integer#MAX_VALUE} for stops that are not reached, and the array is
+     * reused for the next departure time. Egress stations are ignored.
+     * <p>
+     * The arrivals are the costs of the labels, so this needs neutral betas and no transfer penalties.
+     *
+     * @param departureTimes in seconds after the departure time of the parameters, in descending order
+     */
+    public void calcEarliestArrivals(int[] departureTimes, ObjIntConsumer<int[]> consumer) {
+        if (parameters.betaAccessTime() != 1.0 || parameters.betaTransfers() != 0.0 || !parameters.transferPenaltiesByRouteType().isEmpty())
+            throw new IllegalArgumentException("Earliest arrivals need neutral betas and no transfer penalties");
+        baseTime = parameters.departureTime().getEpochSecond();
+        initServiceDays();
+        for (int i = 0; i < departureTimes.length; i++) {
+            if (i > 0 && departureTimes[i] > departureTimes[i - 1])
+                throw new IllegalArgumentException("Departure times must be in descending order");
+            runRounds(departureTimes[i]);
+            consumer.accept(bestCost, departureTimes[i]);
+        }
+    }
+
+    public int getScannedRoutes() {
+        return scannedRoutes;
+    }
+
+    private void initServiceDays() {
+        Instant departureTime = parameters.departureTime();
+        for (int r = 0; r < timetable.getRouteCount(); r++) {
+            String feedId = timetable.routeFeed[r];
+            if (dayStartByFeed.containsKey(feedId))
+                continue;
+            ZoneId zoneId = timetable.getZoneId(feedId);
+            LocalDate serviceDay = departureTime.atZone(zoneId).toLocalDate();
+            long[] starts = new long[DAY_OFFSETS.length];
+            for (int d = 0; d < DAY_OFFSETS.length; d++) {
+                starts[d] = serviceDayStart(serviceDay.plusDays(DAY_OFFSETS[d]), zoneId);
+            }
+            dayStartByFeed.put(feedId, starts);
+            serviceDayByFeed.put(feedId, serviceDay);
+        }
+        serviceActive = new boolean[timetable.services.size()][DAY_OFFSETS.length];
+        for (int i = 0; i < timetable.services.size(); i++) {
+            Service service = timetable.services.get(i);
+            LocalDate serviceDay = serviceDayByFeed.get(timetable.serviceFeeds.get(i));
+            if (serviceDay == null)
+                continue;
+            for (int d = 0; d < DAY_OFFSETS.length; d++) {
+                serviceActive[i][d] = service.activeOn(serviceDay.plusDays(DAY_OFFSETS[d]));
+            }
+        }
+    }
+
+    /**
+     * GTFS times are measured from "noon minus 12h" of the service day, which is midnight except on days with a
+     * daylight saving time change.
+     */
+    static long serviceDayStart(LocalDate serviceDay, ZoneId zoneId) {
+        return serviceDay.atTime(LocalTime.NOON).atZone(zoneId).toEpochSecond() - 12 * 60 * 60;
+    }
+
+    private int[] departureTimesInProfile(int profileSeconds) {
+        IntArrayList result = new IntArrayList();
+        result.add(profileSeconds);
+        for (int a = 0; a < parameters.accessStations().size(); a++) {
+            int s = stopIndex(parameters.accessStations().get(a));
+            if (s < 0)
+                continue;
+            int accessSeconds = accessSeconds(parameters.accessStations().get(a));
+            for (int i = timetable.stopRouteOffset[s]; i < timetable.stopRouteOffset[s + 1]; i++) {
+                int r = timetable.stopRoutes[i];
+                int p = timetable.stopRoutePositions[i];
+                if (!timetable.canBoard[timetable.routeStopOffset[r] + p])
+                    continue;
+                long[] starts = dayStartByFeed.get(timetable.routeFeed[r]);
+                for (int t = 0; t < timetable.routeTripCount[r]; t++) {
+                    int tripIdx = timetable.routeFirstTrip[r] + t;
+                    for (int d = 0; d < DAY_OFFSETS.length; d++) {
+                        if (!isUsable(tripIdx, d))
+                            continue;
+                        long departure = starts[d] - baseTime + timetable.departures[timetable.stopTimeIndex(r, t, p)] - accessSeconds;
+                        if (departure >= 0 && departure < profileSeconds)
+                            result.add((int) departure);
+                    }
+                }
+            }
+        }
+        int[] departureTimes = result.toArray();
+        Arrays.sort(departureTimes);
+        // distinct, latest first
+        IntArrayList descending = new IntArrayList();
+        for (int i = departureTimes.length - 1; i >= 0; i--) {
+            if (descending.isEmpty() || descending.get(descending.size() - 1) != departureTimes[i])
+                descending.add(departureTimes[i]);
+        }
+        return descending.toArray();
+    }
+
+    private boolean isUsable(int tripIdx, int day) {
+        return serviceActive[timetable.tripService[tripIdx]][day] && parameters.tripFilter().test(timetable.getTrip(tripIdx));
+    }
+
+    private void runRounds(int departureTime) {
+        marked.clear();
+        List<TripBasedRouter.StopWithTimeDelta> accessStations = parameters.accessStations();
+        for (int a = 0; a < accessStations.size(); a++) {
+            int s = stopIndex(accessStations.get(a));
+            if (s < 0)
+                continue;
+            int accessSeconds = accessSeconds(accessStations.get(a));
+            int arrivalAtStop = departureTime + accessSeconds;
+            int c = arrivalAtStop + (int) (accessSeconds * (parameters.betaAccessTime() - 1.0));
+            if (c < cost[0][s]) {
+                arrival[0][s] = arrivalAtStop;
+                cost[0][s] = c;
+                fromStop[0][s] = s;
+                accessOfStop[s] = a;
+                bestCost[s] = Math.min(bestCost[s], c);
+                marked.set(s);
+            }
+        }
+        for (int k = 1; k <= maxRounds && !marked.isEmpty(); k++) {
+            scanRoutes(k);
+            relaxFootpaths(k);
+            checkTargets(k);
+        }
+    }
+
+    private void scanRoutes(int k) {
+        IntArrayList routes = new IntArrayList();
+        for (int s = marked.nextSetBit(0); s >= 0; s = marked.nextSetBit(s + 1)) {
+            for (int i = timetable.stopRouteOffset[s]; i < timetable.stopRouteOffset[s + 1]; i++) {
+                int r = timetable.stopRoutes[i];
+                int p = timetable.stopRoutePositions[i];
+                if (routeMarkedFrom[r] < 0)
+                    routes.add(r);
+                if (routeMarkedFrom[r] < 0 || p < routeMarkedFrom[r])
+                    routeMarkedFrom[r] = p;
+            }
+        }
+        marked.clear();
+        markedByTransit.clear();
+        int targetBound = bestTargetCost[k];
+        int transferSeconds = k >= 2 ? (int) (parameters.betaTransfers() / 1000) : 0;
+        for (int i = 0; i < routes.size(); i++) {
+            int r = routes.get(i);
+            int firstPosition = routeMarkedFrom[r];
+            routeMarkedFrom[r] = -1;
+            scannedRoutes++;
+            int trip = -1;
+            int tripInRoute = -1;
+            int day = -1;
+            int tripBase = 0;
+            int boardPosition = -1;
+            int extra = 0;
+            long[] starts = dayStartByFeed.get(timetable.routeFeed[r]);
+            for (int p = firstPosition; p < timetable.routeStopCount[r]; p++) {
+                int routeStop = timetable.routeStopOffset[r] + p;
+                int s = timetable.routeStops[routeStop];
+                if (trip >= 0 && timetable.canAlight[routeStop]) {
+                    int arrivalAtStop = tripBase + timetable.arrivals[timetable.stopTimeIndex(r, tripInRoute, p)];
+                    int c = arrivalAtStop + extra;
+                    if (c < bestCost[s] && c < targetBound) {
+                        transitArrival[k][s] = arrivalAtStop;
+                        transitCost[k][s] = c;
+                        transitTrip[k][s] = trip;
+                        transitDay[k][s] = (byte) day;
+                        transitBoardPosition[k][s] = boardPosition;
+                        transitAlightPosition[k][s] = p;
+                        arrival[k][s] = arrivalAtStop;
+                        cost[k][s] = c;
+                        fromStop[k][s] = s;
+                        bestCost[s] = c;
+                        marked.set(s);
+                        markedByTransit.set(s);
+                    }
+                }
+                if (arrival[k - 1][s] != UNREACHED && timetable.canBoard[routeStop]) {
+                    int earliestBoarding = arrival[k - 1][s];
+                    // a transfer at the same stop, the footpaths already contain their transfer time
+                    if (k >= 2 && fromStop[k - 1][s] == s)
+                        earliestBoarding += timetable.getChangeSeconds(s, timetable.tripRoute[transitTrip[k - 1][s]], r);
+                    if (trip >= 0 && tripBase + timetable.departures[timetable.stopTimeIndex(r, tripInRoute, p)] < earliestBoarding)
+                        continue;
+                    int labelExtra = cost[k - 1][s] - arrival[k - 1][s];
+                    int bestTrip = -1;
+                    int bestDay = -1;
+                    long bestDeparture = Long.MAX_VALUE;
+                    for (int d = 0; d < DAY_OFFSETS.length; d++) {
+                        long base = starts[d] - baseTime;
+                        int t = earliestTrip(r, p, (int) Math.min(Integer.MAX_VALUE, Math.max(Integer.MIN_VALUE, earliestBoarding - base)), d);
+                        if (t >= 0) {
+                            long departure = base + timetable.departures[timetable.stopTimeIndex(r, t, p)];
+                            if (departure < bestDeparture) {
+                                bestDeparture = departure;
+                                bestTrip = t;
+                                bestDay = d;
+                            }
+                        }
+                    }
+                    if (bestTrip < 0)
+                        continue;
+                    int newExtra = labelExtra + (int) (parameters.transferPenaltiesByRouteType().getOrDefault(timetable.getTrip(timetable.routeFirstTrip[r] + bestTrip).routeType, 0L) / 1000) + transferSeconds;
+                    long currentDeparture = trip >= 0 ? tripBase + timetable.departures[timetable.stopTimeIndex(r, tripInRoute, p)] : Long.MAX_VALUE;
+                    if (bestDeparture < currentDeparture || (bestDeparture == currentDeparture && newExtra < extra)) {
+                        tripInRoute = bestTrip;
+                        trip = timetable.routeFirstTrip[r] + bestTrip;
+                        day = bestDay;
+                        tripBase = (int) (starts[bestDay] - baseTime);
+                        boardPosition = p;
+                        extra = newExtra;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the trip of the route with the earliest departure at the position that is not before the given time
+     * and runs on the service day, or -1
+     */
+    private int earliestTrip(int r, int p, int earliestDeparture, int day) {
+        int tripCount = timetable.routeTripCount[r];
+        if (timetable.routeFifo[r]) {
+            int low = 0, high = tripCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timetable.departures[timetable.stopTimeIndex(r, mid, p)] < earliestDeparture)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            for (int t = low; t < tripCount; t++) {
+                if (isUsable(timetable.routeFirstTrip[r] + t, day))
+                    return t;
+            }
+            return -1;
+        }
+        int result = -1;
+        for (int t = 0; t < tripCount; t++) {
+            int departure = timetable.departures[timetable.stopTimeIndex(r, t, p)];
+            if (departure >= earliestDeparture && (result < 0 || departure < timetable.departures[timetable.stopTimeIndex(r, result, p)])
+                    && isUsable(timetable.routeFirstTrip[r] + t, day))
+                result = t;
+        }
+        return result;
+    }
+
+    private void relaxFootpaths(int k) {
+        int targetBound = bestTargetCost[k];
+        for (int s = markedByTransit.nextSetBit(0); s >= 0; s = markedByTransit.nextSetBit(s + 1)) {
+            for (int i = timetable.footpathOffset[s]; i < timetable.footpathOffset[s + 1]; i++) {
+                int target = timetable.footpathTargets[i];
+                int c = transitCost[k][s] + timetable.footpathSeconds[i];
+                if (c < bestCost[target] && c < targetBound) {
+                    arrival[k][target] = transitArrival[k][s] + timetable.footpathSeconds[i];
+                    cost[k][target] = c;
+                    fromStop[k][target] = s;
+                    bestCost[target] = c;
+                    marked.set(target);
+                }
+            }
+        }
+    }
+
+    private void checkTargets(int k) {
+        List<TripBasedRouter.StopWithTimeDelta> egressStations = parameters.egressStations();
+        int bestEgress = -1;
+        int bestCostAtTarget = bestTargetCost[k];
+        for (int e = 0; e < egressStations.size(); e++) {
+            int s = stopIndex(egressStations.get(e));
+            if (s < 0 || !marked.get(s))
+                continue;
+            int c = cost[k][s] + (int) (accessSeconds(egressStations.get(e)) * parameters.betaEgressTime());
+            if (c < bestCostAtTarget) {
+                bestCostAtTarget = c;
+                bestEgress = e;
+            }
+        }
+        if (bestEgress < 0)
+            return;
+        for (int j = k; j <= maxRounds; j++) {
+            bestTargetCost[j] = Math.min(bestTargetCost[j], bestCostAtTarget);
+        }
+        journeys.add(extractJourney(k, bestEgress, bestCostAtTarget));
+    }
+
+    private Journey extractJourney(int k, int egress, int costAtTarget) {
+        TripBasedRouter.StopWithTimeDelta egressStation = parameters.egressStations().get(egress);
+        int s = stopIndex(egressStation);
+        List<Ride> rides = new ArrayList<>();
+        for (int round = k; round >= 1; round--) {
+            s = fromStop[round][s];
+            int trip = transitTrip[round][s];
+            int r = timetable.tripRoute[trip];
+            int tripInRoute = trip - timetable.routeFirstTrip[r];
+            String feedId = timetable.routeFeed[r];
+            int day = transitDay[round][s];
+            long start = dayStartByFeed.get(feedId)[day];
+            int boardPosition = transitBoardPosition[round][s];
+            int alightPosition = transitAlightPosition[round][s];
+            rides.add(new Ride(trip, serviceDayByFeed.get(feedId).plusDays(DAY_OFFSETS[day]), start, boardPosition, alightPosition,
+                    start + timetable.departures[timetable.stopTimeIndex(r, tripInRoute, boardPosition)],
+                    start + timetable.arrivals[timetable.stopTimeIndex(r, tripInRoute, alightPosition)]));
+            s = timetable.routeStops[timetable.routeStopOffset[r] + boardPosition];
+        }
+        Collections.reverse(rides);
+        int access = accessOfStop[s];
+        long departureTime = rides.get(0).departureTime - accessSeconds(parameters.accessStations().get(access));
+        long arrivalTime = rides.get(rides.size() - 1).arrivalTime + accessSeconds(egressStation);
+        int transfers = 0;
+        for (int i = 1; i < rides.size(); i++) {
+            String previousBlockId = timetable.getTrip(rides.get(i - 1).tripIdx).trip.block_id;
+            String blockId = timetable.getTrip(rides.get(i).tripIdx).trip.block_id;
+            if (previousBlockId == null || !previousBlockId.equals(blockId))
+                transfers++;
+        }
+        return new Journey(rides, access, egress, departureTime, arrivalTime, transfers, baseTime + costAtTarget);
+    }
+
+    private List<Journey> paretoFilter(List<Journey> candidates) {
+        boolean mindTransfers = !parameters.ignoreTransfers();
+        // without a profile, all journeys leave at the departure time of the query
+        boolean mindDeparture = !parameters.profileLength().isZero();
+        List<Journey> result = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Journey journey = candidates.get(i);
+            boolean dominated = false;
+            for (int j = 0; j < candidates.size() && !dominated; j++) {
+                Journey other = candidates.get(j);
+                // of two equivalent journeys, the one found first is kept
+                dominated = j != i && other.dominates(journey, mindDeparture, mindTransfers) && (j < i || !journey.dominates(other, mindDeparture, mindTransfers));
+            }
+            if (!dominated)
+                result.add(journey);
+        }
+        result.sort(Comparator.comparingLong((Journey j) -> j.departureTime).thenComparingLong(j -> j.weightedArrivalTime));
+        return result;
+    }
+
+    private int stopIndex(TripBasedRouter.StopWithTimeDelta station) {
+        return timetable.getStopIndex(station.stopId);
+    }
+
+    private static int accessSeconds(TripBasedRouter.StopWithTimeDelta station) {
+        // round up, so that we never board a trip that we can't reach
+        return (int) ((Math.abs(station.timeDelta) + 999) / 1000);
+    }
+
+    public record Parameters(List<TripBasedRouter.StopWithTimeDelta> accessStations,
+                             List<TripBasedRouter.StopWithTimeDelta> egressStations, Instant departureTime,
+                             Duration profileLength, Predicate<GTFSFeed.StopTimesForTripWithTripPatternKey> tripFilter,
+                             double betaAccessTime, double betaEgressTime, double betaTransfers,
+                             Map<Integer, Long> transferPenaltiesByRouteType, boolean ignoreTransfers, int maxRounds) {
+    }
+
+    /**
+     * One trip of a journey, from the boarding to the alighting position of its route.
+     */
+    public static class Ride {
+        public final int tripIdx;
+        public final LocalDate serviceDay;
+        /**
+         * the start of the service day in epoch seconds, the times of the trip are relative to it
+         */
+        public final long serviceDayStart;
+        public final int boardPosition;
+        public final int alightPosition;
+        public final long departureTime;
+        public final long arrivalTime;
+
+        Ride(int tripIdx, LocalDate serviceDay, long serviceDayStart, int boardPosition, int alightPosition, long departureTime, long arrivalTime) {
+            this.tripIdx = tripIdx;
+            this.serviceDay = serviceDay;
+            this.serviceDayStart = serviceDayStart;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+            this.departureTime = departureTime;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+
+    public static class Journey {
+        public final List<Ride> rides;
+        /**
+         * the index of the access and egress station in the parameters
+         */
+        public final int access;
+        public final int egress;
+        /**
+         * the latest departure at the origin and the arrival at the destination in epoch seconds
+         */
+        public final long departureTime;
+        public final long arrivalTime;
+        public final int transfers;
+        /**
+         * the arrival time plus the extra disutilities of the journey, in epoch seconds
+         */
+        public final long weightedArrivalTime;
+
+        Journey(List<Ride> rides, int access, int egress, long departureTime, long arrivalTime, int transfers, long weightedArrivalTime) {
+            this.rides = rides;
+            this.access = access;
+            this.egress = egress;
+            this.departureTime = departureTime;
+            this.arrivalTime = arrivalTime;
+            this.transfers = transfers;
+            this.weightedArrivalTime = weightedArrivalTime;
+        }
+
+        boolean dominates(Journey other, boolean mindDeparture, boolean mindTransfers) {
+            return (!mindDeparture || departureTime >= other.departureTime) && weightedArrivalTime <= other.weightedArrivalTime
+                    && (!mindTransfers || transfers <= other.transfers);
+        }
+
+        @Override
+        public String toString() {
+            return "Journey{" + Instant.ofEpochSecond(departureTime) + " -> " + Instant.ofEpochSecond(arrivalTime) +
+                    ", rides=" + rides.size() + ", transfers=" + transfers + '}';
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.Service;
+import com.conveyal.gtfs.model.Stop;
+import com.conveyal.gtfs.model.StopTime;
+import com.conveyal.gtfs.model.Transfer;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimaps;
+
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * The timetable of all feeds in flat arrays, as needed by the {@link RaptorRouter}. Every {@link Trips.Pattern} is a
+ * route, its trips are the trips of the pattern in the order of {@link Trips#trips}, i.e. by departure time, and the
+ * stop times of a route are stored trip by trip. Transfers between stops are footpaths: the rules from transfers.txt,
+ * the other stops of the same station and the interpolated walking transfers.
+ */
+public class RaptorTimetable {
+
+    private final Trips trips;
+    private final ObjectIntHashMap<GtfsStorage.FeedIdWithStopId> stopIndex = new ObjectIntHashMap<>();
+    private final List<GtfsStorage.FeedIdWithStopId> stops = new ArrayList<>();
+    private final Map<String, ZoneId> zoneIds = new HashMap<>();
+
+    // routes
+    final int routeCount;
+    final int[] routeFirstTrip;
+    final int[] routeTripCount;
+    final int[] routeStopOffset;
+    final int[] routeStopCount;
+    final int[] routeStopTimeOffset;
+    final boolean[] routeFifo;
+    final String[] routeFeed;
+    final String[] routeIds;
+    final int[] routeStops;
+    final boolean[] canBoard;
+    final boolean[] canAlight;
+    final int[] arrivals;
+    final int[] departures;
+
+    // trips, in the order of Trips#trips
+    final int[] tripRoute;
+    final int[] tripService;
+    final List<Service> services = new ArrayList<>();
+    final List<String> serviceFeeds = new ArrayList<>();
+
+    // stops
+    final int[] stopRouteOffset;
+    final int[] stopRoutes;
+    final int[] stopRoutePositions;
+    final int[] footpathOffset;
+    final int[] footpathTargets;
+    final int[] footpathSeconds;
+    private final Map<Integer, Map<String, Integer>> changeSecondsByStop = new HashMap<>();
+
+    public RaptorTimetable(GtfsStorage gtfsStorage) {
+        trips = gtfsStorage.tripTransfers;
+        for (Map.Entry<String, GTFSFeed> entry : gtfsStorage.getGtfsFeeds().entrySet()) {
+            zoneIds.put(entry.getKey(), ZoneId.of(entry.getValue().agency.values().stream().findFirst().get().agency_timezone));
+            for (Stop stop : entry.getValue().stops.values()) {
+                addStop(new GtfsStorage.FeedIdWithStopId(entry.getKey(), stop.stop_id));
+            }
+        }
+
+        List<GTFSFeed.StopTimesForTripWithTripPatternKey> allTrips = trips.trips;
+        IntArrayList firstTrips = new IntArrayList();
+        for (int i = 0; i < allTrips.size(); i++) {
+            if (i == 0 || allTrips.get(i).pattern != allTrips.get(i - 1).pattern)
+                firstTrips.add(i);
+        }
+        routeCount = firstTrips.size();
+        routeFirstTrip = firstTrips.toArray();
+        routeTripCount = new int[routeCount];
+        routeStopOffset = new int[routeCount];
+        routeStopCount = new int[routeCount];
+        routeStopTimeOffset = new int[routeCount];
+        routeFifo = new boolean[routeCount];
+        routeFeed = new String[routeCount];
+        routeIds = new String[routeCount];
+        tripRoute = new int[allTrips.size()];
+        tripService = new int[allTrips.size()];
+        int stopCount = 0;
+        int stopTimeCount = 0;
+        for (int r = 0; r < routeCount; r++) {
+            int end = r + 1 < routeCount ? routeFirstTrip[r + 1] : allTrips.size();
+            routeTripCount[r] = end - routeFirstTrip[r];
+            routeStopOffset[r] = stopCount;
+            routeStopCount[r] = allTrips.get(routeFirstTrip[r]).pattern.orderedStops.size();
+            routeStopTimeOffset[r] = stopTimeCount;
+            routeFeed[r] = allTrips.get(routeFirstTrip[r]).feedId;
+            // a pattern can be shared by several routes, the transfer rules are applied for the route of its first trip
+            routeIds[r] = allTrips.get(routeFirstTrip[r]).trip.route_id;
+            stopCount += routeStopCount[r];
+            stopTimeCount += routeStopCount[r] * routeTripCount[r];
+        }
+        routeStops = new int[stopCount];
+        canBoard = new boolean[stopCount];
+        canAlight = new boolean[stopCount];
+        arrivals = new int[stopTimeCount];
+        departures = new int[stopTimeCount];
+
+        Map<Service, Integer> serviceIndex = new IdentityHashMap<>();
+        for (int r = 0; r < routeCount; r++) {
+            routeFifo[r] = true;
+            for (int t = 0; t < routeTripCount[r]; t++) {
+                int tripIdx = routeFirstTrip[r] + t;
+                GTFSFeed.StopTimesForTripWithTripPatternKey trip = allTrips.get(tripIdx);
+                tripRoute[tripIdx] = r;
+                tripService[tripIdx] = serviceIndex.computeIfAbsent(trip.service, s -> {
+                    services.add(s);
+                    serviceFeeds.add(trip.feedId);
+                    return services.size() - 1;
+                });
+                int position = 0;
+                for (StopTime stopTime : trip.stopTimes) {
+                    if (stopTime == null)
+                        continue;
+                    if (t == 0) {
+                        int routeStop = routeStopOffset[r] + position;
+                        routeStops[routeStop] = addStop(new GtfsStorage.FeedIdWithStopId(trip.feedId, stopTime.stop_id));
+                        canBoard[routeStop] = stopTime.pickup_type != 1;
+                        canAlight[routeStop] = stopTime.drop_off_type != 1;
+                    }
+                    int i = stopTimeIndex(r, t, position);
+                    arrivals[i] = stopTime.arrival_time;
+                    departures[i] = stopTime.departure_time;
+                    // the binary search for the earliest trip is only valid if trips don't overtake each other
+                    if (t > 0 && (arrivals[i] < arrivals[i - routeStopCount[r]] || departures[i] < departures[i - routeStopCount[r]]))
+                        routeFifo[r] = false;
+                    position++;
+                }
+            }
+        }
+
+        int n = stops.size();
+        List<IntArrayList> routesForStop = new ArrayList<>(n);
+        List<IntArrayList> positionsForStop = new ArrayList<>(n);
+        for (int s = 0; s < n; s++) {
+            routesForStop.add(new IntArrayList());
+            positionsForStop.add(new IntArrayList());
+        }
+        for (int r = 0; r < routeCount; r++) {
+            for (int p = 0; p < routeStopCount[r]; p++) {
+                int s = routeStops[routeStopOffset[r] + p];
+                routesForStop.get(s).add(r);
+                positionsForStop.get(s).add(p);
+            }
+        }
+        stopRouteOffset = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            stopRouteOffset[s + 1] = stopRouteOffset[s] + routesForStop.get(s).size();
+        }
+        stopRoutes = new int[stopRouteOffset[n]];
+        stopRoutePositions = new int[stopRouteOffset[n]];
+        for (int s = 0; s < n; s++) {
+            System.arraycopy(routesForStop.get(s).buffer, 0, stopRoutes, stopRouteOffset[s], routesForStop.get(s).size());
+            System.arraycopy(positionsForStop.get(s).buffer, 0, stopRoutePositions, stopRouteOffset[s], positionsForStop.get(s).size());
+        }
+
+        List<Map<Integer, Integer>> footpaths = new ArrayList<>(n);
+        for (int s = 0; s < n; s++) {
+            footpaths.add(new TreeMap<>());
+        }
+        Map<String, Transfers> transfers = new HashMap<>();
+        gtfsStorage.getGtfsFeeds().forEach((feedId, feed) -> transfers.put(feedId, new Transfers(feed)));
+        ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode = Multimaps.invertFrom(Multimaps.forMap(gtfsStorage.getStationNodes()), ArrayListMultimap.create());
+        for (int s = 0; s < n; s++) {
+            GtfsStorage.FeedIdWithStopId stop = stops.get(s);
+            Map<Integer, Integer> footpathsFromStop = footpaths.get(s);
+            // The transfer rules can depend on the routes we arrive and depart with. Within the stop this is kept,
+            // but a footpath to another stop can't depend on them, so it gets the longest minimum transfer time.
+            // This never produces a transfer that is too short.
+            Set<String> routeIdsAtStop = new HashSet<>();
+            for (int i = stopRouteOffset[s]; i < stopRouteOffset[s + 1]; i++) {
+                routeIdsAtStop.add(routeIds[stopRoutes[i]]);
+            }
+            for (String routeId : routeIdsAtStop) {
+                for (Transfer transfer : transfers.get(stop.feedId).getTransfersFromStop(stop.stopId, routeId)) {
+                    int target = stopIndex.getOrDefault(new GtfsStorage.FeedIdWithStopId(stop.feedId, transfer.to_stop_id), -1);
+                    if (target == s)
+                        changeSecondsByStop.computeIfAbsent(s, k -> new HashMap<>()).put(routeId + "\n" + transfer.to_route_id, transfer.min_transfer_time);
+                    else if (target >= 0)
+                        footpathsFromStop.merge(target, transfer.min_transfer_time, Math::max);
+                }
+            }
+            Integer stationNode = gtfsStorage.getStationNodes().get(stop);
+            if (stationNode != null) {
+                for (GtfsStorage.FeedIdWithStopId otherStop : stopsForStationNode.get(stationNode)) {
+                    int target = stopIndex.getOrDefault(otherStop, -1);
+                    if (target >= 0 && target != s)
+                        footpathsFromStop.putIfAbsent(target, 0);
+                }
+            }
+            for (GtfsStorage.InterpolatedTransfer it : gtfsStorage.interpolatedTransfers.get(stop)) {
+                int target = stopIndex.getOrDefault(it.toPlatformDescriptor, -1);
+                if (target >= 0 && target != s)
+                    footpathsFromStop.merge(target, it.streetTime, Math::min);
+            }
+        }
+        footpathOffset = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            footpathOffset[s + 1] = footpathOffset[s] + footpaths.get(s).size();
+        }
+        footpathTargets = new int[footpathOffset[n]];
+        footpathSeconds = new int[footpathOffset[n]];
+        for (int s = 0; s < n; s++) {
+            int i = footpathOffset[s];
+            for (Map.Entry<Integer, Integer> e : footpaths.get(s).entrySet()) {
+                footpathTargets[i] = e.getKey();
+                footpathSeconds[i] = e.getValue();
+                i++;
+            }
+        }
+    }
+
+    private int addStop(GtfsStorage.FeedIdWithStopId stop) {
+        int index = stopIndex.getOrDefault(stop, -1);
+        if (index < 0) {
+            index = stops.size();
+            stops.add(stop);
+            stopIndex.put(stop, index);
+        }
+        return index;
+    }
+
+    int stopTimeIndex(int route, int tripInRoute, int position) {
+        return routeStopTimeOffset[route] + tripInRoute * routeStopCount[route] + position;
+    }
+
+    /**
+     * @return the minimum time for a transfer between the routes at the same stop
+     */
+    int getChangeSeconds(int stop, int fromRoute, int toRoute) {
+        Map<String, Integer> changeSeconds = changeSecondsByStop.get(stop);
+        if (changeSeconds == null)
+            return 0;
+        return changeSeconds.getOrDefault(routeIds[fromRoute] + "\n" + routeIds[toRoute], 0);
+    }
+
+    public int getStopCount() {
+        return stops.size();
+    }
+
+    public int getRouteCount() {
+        return routeCount;
+    }
+
+    /**
+     * @return the index of the stop or -1 if the stop is not part of the timetable
+     */
+    public int getStopIndex(GtfsStorage.FeedIdWithStopId stop) {
+        return stopIndex.getOrDefault(stop, -1);
+    }
+
+    public GtfsStorage.FeedIdWithStopId getStop(int stopIndex) {
+        return stops.get(stopIndex);
+    }
+
+    public ZoneId getZoneId(String feedId) {
+        return zoneIds.get(feedId);
+    }
+
+    public GTFSFeed.StopTimesForTripWithTripPatternKey getTrip(int tripIdx) {
+        return trips.getTrip(tripIdx);
+    }
+
+    /**
+     * @return the stop times of the trip in the order of the positions of its route, i.e. without the padding of
+     * {@link GTFSFeed.StopTimesForTripWithTripPatternKey#stopTimes}
+     */
+    public List<StopTime> getStopTimes(int tripIdx) {
+        List<StopTime> result = new ArrayList<>(routeStopCount[tripRoute[tripIdx]]);
+        for (StopTime stopTime : getTrip(tripIdx).stopTimes) {
+            if (stopTime != null)
+                result.add(stopTime);
+        }
+        return result;
+    }
+}
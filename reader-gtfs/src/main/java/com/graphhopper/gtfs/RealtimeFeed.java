@@ -26,7 +26,6 @@ import com.conveyal.gtfs.model.Frequency;
 import com.conveyal.gtfs.model.StopTime;
 import com.conveyal.gtfs.model.Trip;
 import com.google.transit.realtime.GtfsRealtime;
-import org.mapdb.Fun;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,81 +52,264 @@ public class RealtimeFeed {
     private final TreeSet<PtGraph.PtEdge> additionalEdgesByBaseNode;
     private final TreeSet<PtGraph.PtEdge> additionalEdgesByAdjNode;
     public final Map<String, GtfsRealtime.FeedMessage> feedMessages;
+    // the effects of the single trip updates, they are immutable and shared with the feeds created by update()
+    private final Map<TripUpdateKey, TripUpdateEffect> effects;
+    private final int nextEdge;
+    private final int nextNode;
+    private final UpdateStatistics statistics;
 
-    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, IntHashSet blockedEdges,
-                         IntLongHashMap delaysForBoardEdges, IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
+    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, Map<TripUpdateKey, TripUpdateEffect> effects, int nextEdge, int nextNode, UpdateStatistics statistics) {
         this.feedMessages = feedMessages;
-        this.blockedEdges = blockedEdges;
-        this.delaysForBoardEdges = delaysForBoardEdges;
-        this.delaysForAlightEdges = delaysForAlightEdges;
+        this.effects = effects;
+        this.nextEdge = nextEdge;
+        this.nextNode = nextNode;
+        this.statistics = statistics;
+        this.blockedEdges = new IntHashSet();
+        this.delaysForBoardEdges = new IntLongHashMap();
+        this.delaysForAlightEdges = new IntLongHashMap();
         this.additionalEdgesByBaseNode = new TreeSet<>(Comparator.comparingInt(PtGraph.PtEdge::getBaseNode).thenComparingInt(PtGraph.PtEdge::getId));
-        this.additionalEdgesByBaseNode.addAll(additionalEdges);
         this.additionalEdgesByAdjNode = new TreeSet<>(Comparator.comparingInt(PtGraph.PtEdge::getAdjNode).thenComparingInt(PtGraph.PtEdge::getId));
-        this.additionalEdgesByAdjNode.addAll(additionalEdges);
+        for (TripUpdateEffect effect : effects.values()) {
+            blockedEdges.addAll(effect.blockedEdges);
+            delaysForBoardEdges.putAll(effect.delaysForBoardEdges);
+            delaysForAlightEdges.putAll(effect.delaysForAlightEdges);
+            additionalEdgesByBaseNode.addAll(effect.additionalEdges);
+            additionalEdgesByAdjNode.addAll(effect.additionalEdges);
+        }
+    }
+
+    private RealtimeFeed(Map<String, GtfsRealtime.FeedMessage> feedMessages, RealtimeFeed unchanged, UpdateStatistics statistics) {
+        this.feedMessages = feedMessages;
+        this.effects = unchanged.effects;
+        this.nextEdge = unchanged.nextEdge;
+        this.nextNode = unchanged.nextNode;
+        this.statistics = statistics;
+        this.blockedEdges = unchanged.blockedEdges;
+        this.delaysForBoardEdges = unchanged.delaysForBoardEdges;
+        this.delaysForAlightEdges = unchanged.delaysForAlightEdges;
+        this.additionalEdgesByBaseNode = unchanged.additionalEdgesByBaseNode;
+        this.additionalEdgesByAdjNode = unchanged.additionalEdgesByAdjNode;
     }
 
     public static RealtimeFeed empty() {
-        return new RealtimeFeed(Collections.emptyMap(), new IntHashSet(), new IntLongHashMap(), new IntLongHashMap(), Collections.emptyList());
+        return new RealtimeFeed(Collections.emptyMap(), Collections.emptyMap(), 0, 0, new UpdateStatistics(0, 0, 0, false, 0, new long[0]));
     }
 
     public static RealtimeFeed fromProtobuf(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
-        final IntHashSet blockedEdges = new IntHashSet();
-        final IntLongHashMap delaysForBoardEdges = new IntLongHashMap();
-        final IntLongHashMap delaysForAlightEdges = new IntLongHashMap();
-        final LinkedList<PtGraph.PtEdge> additionalEdges = new LinkedList<>();
-        final GtfsReader.PtGraphOut overlayGraph = new GtfsReader.PtGraphOut() {
-            int nextEdge = staticGtfs.getPtGraph().getEdgeCount();
-            int nextNode = staticGtfs.getPtGraph().getNodeCount();
-
-            @Override
-            public int createEdge(int src, int dest, PtEdgeAttributes attrs) {
-                int edgeId = nextEdge++;
-                PtGraph.PtEdge e = new PtGraph.PtEdge(edgeId, src, dest, attrs);
-                assert canBeAdded(e);
-                additionalEdges.add(e);
-                return edgeId;
-            }
-
-            private boolean canBeAdded(PtGraph.PtEdge e) {
-                if (e.getType() != GtfsStorage.EdgeType.ENTER_PT) {
-                    if (staticGtfs.getPtToStreet().containsKey(e.getBaseNode())) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-
-            @Override
-            public int createNode() {
-                return nextNode++;
-            }
-
-        };
+        return empty().update(staticGtfs, transfers, feedMessages);
+    }
 
-        feedMessages.forEach((feedKey, feedMessage) -> {
+    /**
+     * Creates the realtime feed for the given feed messages. Only the trip updates that are new or changed since this
+     * feed are applied to the graph, the effects of all other trip updates are reused. This feed is not modified, so
+     * queries that still use it keep a consistent view.
+     */
+    public RealtimeFeed update(GtfsStorage staticGtfs, Map<String, Transfers> transfers, Map<String, GtfsRealtime.FeedMessage> feedMessages) {
+        long start = System.nanoTime();
+        PtGraph ptGraph = staticGtfs.getPtGraph();
+        // New edges and nodes get ids that are not used by this feed, because its effects can be reused. The ids of
+        // retired effects are only free again if no effect is reused, so once the overlay has used more ids than the
+        // PtGraph itself, we rebuild all effects and restart the ids from the PtGraph counts.
+        boolean rebuild = effects.isEmpty() || nextEdge - ptGraph.getEdgeCount() > ptGraph.getEdgeCount()
+                || nextNode - ptGraph.getNodeCount() > ptGraph.getNodeCount();
+        Map<TripUpdateKey, TripUpdateEffect> reusableEffects = rebuild ? Collections.emptyMap() : effects;
+        Overlay overlay = rebuild ? new Overlay(staticGtfs, ptGraph.getEdgeCount(), ptGraph.getNodeCount())
+                : new Overlay(staticGtfs, Math.max(nextEdge, ptGraph.getEdgeCount()), Math.max(nextNode, ptGraph.getNodeCount()));
+        Map<TripUpdateKey, TripUpdateEffect> newEffects = new LinkedHashMap<>();
+        List<Long> applyNanos = new ArrayList<>();
+        int tripUpdates = 0;
+        for (Map.Entry<String, GtfsRealtime.FeedMessage> entry : feedMessages.entrySet()) {
+            String feedKey = entry.getKey();
+            GtfsRealtime.FeedMessage feedMessage = entry.getValue();
             GTFSFeed feed = staticGtfs.getGtfsFeeds().get(feedKey);
             ZoneId timezone = ZoneId.of(feed.agency.values().stream().findFirst().get().agency_timezone);
-            PtGraph ptGraphNodesAndEdges = staticGtfs.getPtGraph();
-            final GtfsReader gtfsReader = new GtfsReader(feedKey, ptGraphNodesAndEdges, overlayGraph, staticGtfs, null, transfers.get(feedKey), null);
             Instant timestamp = Instant.ofEpochSecond(feedMessage.getHeader().getTimestamp());
             LocalDate dateToChange = timestamp.atZone(timezone).toLocalDate(); //FIXME
             BitSet validOnDay = new BitSet();
             LocalDate startDate = feed.getStartDate();
             validOnDay.set((int) DAYS.between(startDate, dateToChange));
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
-                    .forEach(tripUpdate -> maybeUpdateScheduledTrip(staticGtfs, feedKey, tripUpdate, feed, blockedEdges, delaysForAlightEdges, ptGraphNodesAndEdges, gtfsReader, timezone, validOnDay, delaysForBoardEdges));
-            feedMessage.getEntityList().stream()
-                    .filter(GtfsRealtime.FeedEntity::hasTripUpdate)
-                    .map(GtfsRealtime.FeedEntity::getTripUpdate)
-                    .filter(tripUpdate -> tripUpdate.getTrip().getScheduleRelationship() == GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
-                    .forEach(tripUpdate -> maybeAddExtraTrip(staticGtfs, feedKey, tripUpdate, timezone, validOnDay, gtfsReader));
-            gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
-        });
+            GtfsReader gtfsReader = null;
+            Map<GtfsRealtime.TripDescriptor, Integer> occurrences = new HashMap<>();
+            for (GtfsRealtime.FeedEntity feedEntity : feedMessage.getEntityList()) {
+                if (!feedEntity.hasTripUpdate())
+                    continue;
+                GtfsRealtime.TripUpdate tripUpdate = feedEntity.getTripUpdate();
+                GtfsRealtime.TripDescriptor.ScheduleRelationship scheduleRelationship = tripUpdate.getTrip().getScheduleRelationship();
+                if (scheduleRelationship != GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED && scheduleRelationship != GtfsRealtime.TripDescriptor.ScheduleRelationship.ADDED)
+                    continue;
+                tripUpdates++;
+                int occurrence = occurrences.merge(tripUpdate.getTrip(), 1, Integer::sum) - 1;
+                TripUpdateKey key = new TripUpdateKey(feedKey, tripUpdate.getTrip(), occurrence);
+                // the timestamp of a trip update changes with every message even if the update itself is the same
+                GtfsRealtime.TripUpdate content = tripUpdate.hasTimestamp() ? tripUpdate.toBuilder().clearTimestamp().build() : tripUpdate;
+                TripUpdateEffect effect = reusableEffects.get(key);
+                if (effect == null || !effect.tripUpdate.equals(content) || !effect.day.equals(dateToChange)) {
+                    if (gtfsReader == null)
+                        gtfsReader = new GtfsReader(feedKey, ptGraph, overlay, staticGtfs, null, transfers.get(feedKey), null);
+                    long applyStart = System.nanoTime();
+                    overlay.startTripUpdate();
+                    if (scheduleRelationship == GtfsRealtime.TripDescriptor.ScheduleRelationship.SCHEDULED)
+                        maybeUpdateScheduledTrip(staticGtfs, feedKey, tripUpdate, feed, overlay.blockedEdges, overlay.delaysForAlightEdges, ptGraph, gtfsReader, timezone, validOnDay, overlay.delaysForBoardEdges);
+                    else
+                        maybeAddExtraTrip(staticGtfs, feedKey, tripUpdate, timezone, validOnDay, gtfsReader);
+                    gtfsReader.wireUpAdditionalDeparturesAndArrivals(timezone);
+                    effect = overlay.finishTripUpdate(content, dateToChange);
+                    applyNanos.add(System.nanoTime() - applyStart);
+                }
+                newEffects.put(key, effect);
+            }
+        }
+        int removed = 0;
+        for (TripUpdateKey key : effects.keySet()) {
+            if (!newEffects.containsKey(key))
+                removed++;
+        }
+        UpdateStatistics statistics = new UpdateStatistics(tripUpdates, applyNanos.size(), removed, !effects.isEmpty() && rebuild,
+                System.nanoTime() - start, applyNanos.stream().mapToLong(Long::longValue).toArray());
+        if (applyNanos.isEmpty() && removed == 0)
+            return new RealtimeFeed(feedMessages, this, statistics);
+        return new RealtimeFeed(feedMessages, newEffects, overlay.nextEdge, overlay.nextNode, statistics);
+    }
+
+    public UpdateStatistics getUpdateStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Receives the edges and nodes that are created for a trip update and collects them, together with the blocked
+     * edges and delays, into the effect of this trip update.
+     */
+    private static class Overlay implements GtfsReader.PtGraphOut {
+        private final GtfsStorage staticGtfs;
+        int nextEdge;
+        int nextNode;
+        IntHashSet blockedEdges;
+        IntLongHashMap delaysForBoardEdges;
+        IntLongHashMap delaysForAlightEdges;
+        List<PtGraph.PtEdge> additionalEdges;
+
+        Overlay(GtfsStorage staticGtfs, int nextEdge, int nextNode) {
+            this.staticGtfs = staticGtfs;
+            this.nextEdge = nextEdge;
+            this.nextNode = nextNode;
+        }
+
+        void startTripUpdate() {
+            blockedEdges = new IntHashSet();
+            delaysForBoardEdges = new IntLongHashMap();
+            delaysForAlightEdges = new IntLongHashMap();
+            additionalEdges = new ArrayList<>();
+        }
+
+        TripUpdateEffect finishTripUpdate(GtfsRealtime.TripUpdate tripUpdate, LocalDate day) {
+            return new TripUpdateEffect(tripUpdate, day, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
+        }
+
+        @Override
+        public int createEdge(int src, int dest, PtEdgeAttributes attrs) {
+            int edgeId = nextEdge++;
+            PtGraph.PtEdge e = new PtGraph.PtEdge(edgeId, src, dest, attrs);
+            assert canBeAdded(e);
+            additionalEdges.add(e);
+            return edgeId;
+        }
 
-        return new RealtimeFeed(feedMessages, blockedEdges, delaysForBoardEdges, delaysForAlightEdges, additionalEdges);
+        private boolean canBeAdded(PtGraph.PtEdge e) {
+            if (e.getType() != GtfsStorage.EdgeType.ENTER_PT) {
+                if (staticGtfs.getPtToStreet().containsKey(e.getBaseNode())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int createNode() {
+            return nextNode++;
+        }
+    }
+
+    private record TripUpdateKey(String feedKey, GtfsRealtime.TripDescriptor trip, int occurrence) {
+    }
+
+    private static class TripUpdateEffect {
+        final GtfsRealtime.TripUpdate tripUpdate;
+        final LocalDate day;
+        final IntHashSet blockedEdges;
+        final IntLongHashMap delaysForBoardEdges;
+        final IntLongHashMap delaysForAlightEdges;
+        final List<PtGraph.PtEdge> additionalEdges;
+
+        TripUpdateEffect(GtfsRealtime.TripUpdate tripUpdate, LocalDate day, IntHashSet blockedEdges, IntLongHashMap delaysForBoardEdges,
+                         IntLongHashMap delaysForAlightEdges, List<PtGraph.PtEdge> additionalEdges) {
+            this.tripUpdate = tripUpdate;
+            this.day = day;
+            this.blockedEdges = blockedEdges;
+            this.delaysForBoardEdges = delaysForBoardEdges;
+            this.delaysForAlightEdges = delaysForAlightEdges;
+            this.additionalEdges = additionalEdges;
+        }
+    }
+
+    /**
+     * Describes how a realtime feed was created from its predecessor, see {@link #update}.
+     */
+    public static class UpdateStatistics {
+        private final int tripUpdates;
+        private final int appliedTripUpdates;
+        private final int removedTripUpdates;
+        private final boolean rebuilt;
+        private final long nanos;
+        private final long[] applyNanos;
+
+        UpdateStatistics(int tripUpdates, int appliedTripUpdates, int removedTripUpdates, boolean rebuilt, long nanos, long[] applyNanos) {
+            this.tripUpdates = tripUpdates;
+            this.appliedTripUpdates = appliedTripUpdates;
+            this.removedTripUpdates = removedTripUpdates;
+            this.rebuilt = rebuilt;
+            this.nanos = nanos;
+            this.applyNanos = applyNanos;
+        }
+
+        public int getTripUpdates() {
+            return tripUpdates;
+        }
+
+        /**
+         * @return the number of trip updates that were new or changed and had to be applied to the graph
+         */
+        public int getAppliedTripUpdates() {
+            return appliedTripUpdates;
+        }
+
+        public int getRemovedTripUpdates() {
+            return removedTripUpdates;
+        }
+
+        /**
+         * @return true if the effects of the predecessor were not reused, but all trip updates were applied again to
+         * recycle the ids of the edges and nodes of retired trip updates
+         */
+        public boolean isRebuilt() {
+            return rebuilt;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the time it took to apply each of the applied trip updates
+         */
+        public long[] getApplyNanos() {
+            return applyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "trip updates: " + tripUpdates + ", applied: " + appliedTripUpdates + ", removed: " + removedTripUpdates
+                    + (rebuilt ? ", rebuilt" : "") + ", took: " + nanos / 1_000_000 + "ms";
+        }
     }
 
     private static void maybeUpdateScheduledTrip(GtfsStorage staticGtfs, String feedKey, GtfsRealtime.TripUpdate tripUpdate, GTFSFeed feed, IntHashSet blockedEdges, IntLongHashMap delaysForAlightEdges, PtGraph ptGraphNodesAndEdges, GtfsReader gtfsReader, ZoneId timezone, BitSet validOnDay, IntLongHashMap delaysForBoardEdges) {
@@ -152,7 +334,7 @@ public class RealtimeFeed {
                 logger.warn("Stop sequence number too high {} vs {}", stopTime.stop_sequence, leaveEdges.length);
                 return;
             }
-            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence));
+            final StopTime originalStopTime = feed.getStopTime(tripUpdate.getTrip().getTripId(), stopTime.stop_sequence);
             int arrivalDelay = stopTime.arrival_time - originalStopTime.arrival_time;
             delaysForAlightEdges.put(leaveEdges[stopTime.stop_sequence], arrivalDelay * 1000);
             int departureDelay = stopTime.departure_time - originalStopTime.departure_time;
@@ -388,7 +570,7 @@ public class RealtimeFeed {
         for (GtfsRealtime.TripUpdate.StopTimeUpdate stopTimeUpdate : stopTimeUpdateListWithSentinel) {
             int nextStopSequence = stopTimes.isEmpty() ? 1 : stopTimes.get(stopTimes.size() - 1).stop_sequence + 1;
             for (int i = nextStopSequence; i < stopTimeUpdate.getStopSequence(); i++) {
-                StopTime previousOriginalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), i));
+                StopTime previousOriginalStopTime = feed.getStopTime(tripUpdate.getTrip().getTripId(), i);
                 if (previousOriginalStopTime == null) {
                     continue; // This can and does happen. Stop sequence numbers can be left out.
                 }
@@ -403,7 +585,7 @@ public class RealtimeFeed {
                 logger.trace("Number of stop times: {}", stopTimes.size());
             }
 
-            final StopTime originalStopTime = feed.stop_times.get(new Fun.Tuple2(tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopSequence()));
+            final StopTime originalStopTime = feed.getStopTime(tripUpdate.getTrip().getTripId(), stopTimeUpdate.getStopSequence());
             if (originalStopTime != null) {
                 StopTime updatedStopTime = originalStopTime.clone();
                 if (stopTimeUpdate.getScheduleRelationship() == NO_DATA) {
@@ -487,7 +669,7 @@ public class RealtimeFeed {
     }
 
     public StopTime getStopTime(GTFSFeed staticFeed, GtfsRealtime.TripDescriptor tripDescriptor, Instant boardTime, int stopSequence) {
-        StopTime stopTime = staticFeed.stop_times.get(new Fun.Tuple2<>(tripDescriptor.getTripId(), stopSequence));
+        StopTime stopTime = staticFeed.getStopTime(tripDescriptor.getTripId(), stopSequence);
         if (stopTime == null) {
             return getTripUpdate(staticFeed, tripDescriptor, boardTime).get().stopTimes.get(stopSequence - 1);
         } else {
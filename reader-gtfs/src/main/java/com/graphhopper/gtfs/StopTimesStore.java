@@ -0,0 +1,247 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.StopTime;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A columnar copy of the stop_times table of one GTFS feed. Trips and stops are referenced by their index, and the stop
+ * times of a trip are consecutive rows of int columns in the order of their stop_sequence. The rows are kept in
+ * {@link DataAccess} objects in the graph folder, so loading an imported graph maps the files instead of deserializing
+ * the MapDB entries, and looking up a stop time by trip and stop sequence is a binary search over a few ints.
+ * <p>
+ * Only the columns the router needs are stored: stop, stop_sequence, arrival and departure time and the pickup and
+ * drop-off types. The complete records are still available from {@link GTFSFeed#stop_times}.
+ */
+public class StopTimesStore {
+    // memory layout of a stop time row
+    private static final int S_STOP = 0, S_STOP_SEQUENCE = 4, S_ARRIVAL = 8, S_DEPARTURE = 12, S_PICKUP_DROP_OFF = 16;
+    private static final int ROW_BYTES = 20;
+    // memory layout of a trip, i.e. the range of its rows
+    private static final int T_FIRST_ROW = 0, T_ROW_COUNT = 4;
+    private static final int TRIP_BYTES = 8;
+
+    private final Directory dir;
+    private final String idsFileName;
+    private final DataAccess rows;
+    private final DataAccess trips;
+    private int rowCount;
+    private String[] tripIds;
+    private String[] stopIds;
+    private final ObjectIntHashMap<String> tripIndices = new ObjectIntHashMap<>();
+
+    public StopTimesStore(Directory dir, String feedId) {
+        this.dir = dir;
+        this.idsFileName = feedId + "_stop_time_ids";
+        rows = dir.create(feedId + "_stop_times", dir.getDefaultType(feedId + "_stop_times", true), -1);
+        trips = dir.create(feedId + "_stop_time_trips", dir.getDefaultType(feedId + "_stop_time_trips", true), -1);
+    }
+
+    /**
+     * Copies the stop times of all trips of the given feed into this store.
+     */
+    public void create(GTFSFeed feed) {
+        tripIds = feed.trips.keySet().toArray(new String[0]);
+        for (int i = 0; i < tripIds.length; i++) {
+            tripIndices.put(tripIds[i], i);
+        }
+        ObjectIntHashMap<String> stopIndices = new ObjectIntHashMap<>();
+        List<String> stopIdList = new ArrayList<>(feed.stops.keySet());
+        for (int i = 0; i < stopIdList.size(); i++) {
+            stopIndices.put(stopIdList.get(i), i);
+        }
+
+        trips.create((long) tripIds.length * TRIP_BYTES);
+        rows.create(1000L * ROW_BYTES);
+        for (int i = 0; i < tripIds.length; i++) {
+            trips.setInt((long) i * TRIP_BYTES + T_FIRST_ROW, 0);
+            trips.setInt((long) i * TRIP_BYTES + T_ROW_COUNT, 0);
+        }
+        // the stop times are sorted by trip and stop sequence, so the rows of a trip are written consecutively
+        rowCount = 0;
+        int currentTrip = -1;
+        for (StopTime stopTime : feed.stop_times.values()) {
+            int trip = tripIndices.getOrDefault(stopTime.trip_id, -1);
+            if (trip < 0)
+                continue;
+            if (trip != currentTrip) {
+                if (getStopTimeCount(trip) > 0)
+                    throw new IllegalStateException("stop times of trip " + stopTime.trip_id + " are not consecutive");
+                currentTrip = trip;
+                trips.setInt((long) trip * TRIP_BYTES + T_FIRST_ROW, rowCount);
+            }
+            int stop = stopIndices.getOrDefault(stopTime.stop_id, -1);
+            if (stop < 0) {
+                stop = stopIdList.size();
+                stopIndices.put(stopTime.stop_id, stop);
+                stopIdList.add(stopTime.stop_id);
+            }
+            if (rowCount == Integer.MAX_VALUE)
+                throw new IllegalStateException("Maximum number of stop times exceeded: " + rowCount);
+            long rowPointer = (long) rowCount * ROW_BYTES;
+            rows.ensureCapacity(rowPointer + ROW_BYTES);
+            rows.setInt(rowPointer + S_STOP, stop);
+            rows.setInt(rowPointer + S_STOP_SEQUENCE, stopTime.stop_sequence);
+            rows.setInt(rowPointer + S_ARRIVAL, stopTime.arrival_time);
+            rows.setInt(rowPointer + S_DEPARTURE, stopTime.departure_time);
+            rows.setInt(rowPointer + S_PICKUP_DROP_OFF, stopTime.pickup_type << 16 | stopTime.drop_off_type);
+            rowCount++;
+            trips.setInt((long) trip * TRIP_BYTES + T_ROW_COUNT, getStopTimeCount(trip) + 1);
+        }
+        stopIds = stopIdList.toArray(new String[0]);
+    }
+
+    public boolean loadExisting() {
+        if (!rows.loadExisting() || !trips.loadExisting())
+            return false;
+        rowCount = rows.getHeader(0);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dir.getLocation() + idsFileName)))) {
+            tripIds = readStrings(in);
+            stopIds = readStrings(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (int i = 0; i < tripIds.length; i++) {
+            tripIndices.put(tripIds[i], i);
+        }
+        return true;
+    }
+
+    public void flush() {
+        rows.setHeader(0, rowCount);
+        trips.setHeader(0, tripIds.length);
+        rows.flush();
+        trips.flush();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dir.getLocation() + idsFileName)))) {
+            writeStrings(out, tripIds);
+            writeStrings(out, stopIds);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void close() {
+        rows.close();
+        trips.close();
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    public int getTripCount() {
+        return tripIds.length;
+    }
+
+    /**
+     * @return the index of the given trip or -1 if the feed does not contain it
+     */
+    public int getTripIndex(String tripId) {
+        return tripIndices.getOrDefault(tripId, -1);
+    }
+
+    public String getTripId(int trip) {
+        return tripIds[trip];
+    }
+
+    public int getStopTimeCount(int trip) {
+        return trips.getInt((long) trip * TRIP_BYTES + T_ROW_COUNT);
+    }
+
+    /**
+     * @return the position of the stop time with the given stop sequence within its trip or -1 if there is none
+     */
+    public int findStopTime(int trip, int stopSequence) {
+        long firstRow = trips.getInt((long) trip * TRIP_BYTES + T_FIRST_ROW);
+        int low = 0, high = getStopTimeCount(trip) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midSequence = rows.getInt((firstRow + mid) * ROW_BYTES + S_STOP_SEQUENCE);
+            if (midSequence < stopSequence)
+                low = mid + 1;
+            else if (midSequence > stopSequence)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public String getStopId(int trip, int i) {
+        return stopIds[getInt(trip, i, S_STOP)];
+    }
+
+    public int getStopSequence(int trip, int i) {
+        return getInt(trip, i, S_STOP_SEQUENCE);
+    }
+
+    public int getArrivalTime(int trip, int i) {
+        return getInt(trip, i, S_ARRIVAL);
+    }
+
+    public int getDepartureTime(int trip, int i) {
+        return getInt(trip, i, S_DEPARTURE);
+    }
+
+    public int getPickupType(int trip, int i) {
+        return getInt(trip, i, S_PICKUP_DROP_OFF) >>> 16;
+    }
+
+    public int getDropOffType(int trip, int i) {
+        return getInt(trip, i, S_PICKUP_DROP_OFF) & 0xFFFF;
+    }
+
+    /**
+     * @return a new StopTime with the stored columns of the i-th stop time of the given trip
+     */
+    public StopTime getStopTime(int trip, int i) {
+        StopTime stopTime = new StopTime();
+        stopTime.trip_id = tripIds[trip];
+        stopTime.stop_id = getStopId(trip, i);
+        stopTime.stop_sequence = getStopSequence(trip, i);
+        stopTime.arrival_time = getArrivalTime(trip, i);
+        stopTime.departure_time = getDepartureTime(trip, i);
+        stopTime.pickup_type = getPickupType(trip, i);
+        stopTime.drop_off_type = getDropOffType(trip, i);
+        return stopTime;
+    }
+
+    private int getInt(int trip, int i, int offset) {
+        long firstRow = trips.getInt((long) trip * TRIP_BYTES + T_FIRST_ROW);
+        return rows.getInt((firstRow + i) * ROW_BYTES + offset);
+    }
+}
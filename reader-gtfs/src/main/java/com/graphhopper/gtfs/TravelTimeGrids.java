@@ -0,0 +1,270 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.graphhopper.gtfs.TravelTimeSurface.UNREACHED;
+
+/**
+ * Calculates the {@link TravelTimeSurface} of many origins in parallel and writes them as grids to a folder. The
+ * origins are distributed on a {@link ForkJoinPool} and every thread uses its own surface, all of them share the walking
+ * trees of the stops.
+ * <p>
+ * The travel time of a grid cell is read at the street node that is closest to the center of the cell, plus the walk
+ * from the center to this node. Over the departure times of the window, the given percentile of the travel times is
+ * written, e.g. 50 for the median or 0 for the best case. Every origin is written to a file called
+ * <code>&lt;id&gt;.grid</code> that contains, as written by {@link DataOutputStream}: the width and height of the grid
+ * (int), the west and south border and the cell size in degrees (double), the percentile (int) and the travel time of
+ * every cell in seconds or -1 if it is not reached (int). The cells are stored row by row from south to north, and from
+ * west to east within a row. Travel times of 65535 seconds, about 18 hours, or more count as not reached.
+ */
+public class TravelTimeGrids {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TravelTimeGrids.class);
+    // the largest travel time sample, it also stands for a cell that is not reached
+    private static final char MAX_SAMPLE = Character.MAX_VALUE;
+
+    private final TravelTimeSurface.Factory factory;
+    private final Grid grid;
+    private final int threads;
+    private final int[] cellNodes;
+    private final int[] cellWalkSeconds;
+
+    /**
+     * @param walkSpeedKmH the speed of the walk from the center of a cell to its street node
+     */
+    public TravelTimeGrids(TravelTimeSurface.Factory factory, Grid grid, double walkSpeedKmH, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was " + threads);
+        this.factory = factory;
+        this.grid = grid;
+        this.threads = threads;
+        cellNodes = new int[grid.width() * grid.height()];
+        cellWalkSeconds = new int[cellNodes.length];
+        NodeAccess nodeAccess = factory.getBaseGraph().getNodeAccess();
+        for (int y = 0; y < grid.height(); y++) {
+            for (int x = 0; x < grid.width(); x++) {
+                int cell = y * grid.width() + x;
+                cellNodes[cell] = -1;
+                Snap snap = factory.getLocationIndex().findClosest(grid.lat(y), grid.lon(x), factory.getSnapFilter());
+                if (!snap.isValid())
+                    continue;
+                int node = snap.getClosestNode();
+                double distance = DistanceCalcEarth.DIST_EARTH.calcDist(grid.lat(y), grid.lon(x), nodeAccess.getLat(node), nodeAccess.getLon(node));
+                int walkSeconds = (int) Math.ceil(distance / (walkSpeedKmH / 3.6));
+                if (walkSeconds <= factory.getMaxWalkSeconds()) {
+                    cellNodes[cell] = node;
+                    cellWalkSeconds[cell] = walkSeconds;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the grids of all origins and blocks until they are written.
+     *
+     * @param origins the origins, this iterator is only called from the current thread
+     */
+    public Report compute(Iterator<Origin> origins, Instant windowStart, Duration windowLength, Duration step, int percentile, File outputDir) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile must be between 0 and 100, but was " + percentile);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IllegalArgumentException("Cannot create " + outputDir);
+        ThreadLocal<TravelTimeSurface> surfaces = ThreadLocal.withInitial(factory::createTravelTimeSurface);
+        int maxPending = 4 * threads;
+        Semaphore pending = new Semaphore(maxPending);
+        Report report = new Report();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            while (origins.hasNext()) {
+                Origin origin = origins.next();
+                pending.acquire();
+                pool.execute(() -> {
+                    try {
+                        int[] travelTimes = calcGrid(surfaces.get(), origin.point(), windowStart, windowLength, step, percentile);
+                        write(new File(outputDir, origin.id() + ".grid"), travelTimes, percentile);
+                        report.origins.incrementAndGet();
+                    } catch (Exception ex) {
+                        LOGGER.warn("Cannot calculate the travel times of origin {}", origin.id(), ex);
+                        report.origins.incrementAndGet();
+                        report.failedOrigins.incrementAndGet();
+                    } finally {
+                        pending.release();
+                    }
+                });
+            }
+            // wait for the origins that are still in flight
+            pending.acquire(maxPending);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while calculating the travel time grids", ex);
+        } finally {
+            pool.shutdownNow();
+        }
+        report.wallNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * @return the travel time of every cell at the given percentile of the departure times, or
+     * {@link TravelTimeSurface#UNREACHED}
+     */
+    public int[] calcGrid(TravelTimeSurface surface, GHPoint origin, Instant windowStart, Duration windowLength, Duration step, int percentile) {
+        int departureCount = TravelTimeSurface.getDepartureCount(windowLength, step);
+        int rank = Math.max(1, (int) Math.ceil(percentile / 100.0 * departureCount));
+        // Instead of all samples, every cell only keeps the smaller side around the rank as a max-heap of unsigned
+        // 16-bit seconds: the rank smallest samples, whose maximum is the result, or the departureCount - rank + 1
+        // largest ones, whose minimum is the result, as MAX_SAMPLE - sample. E.g. for the median of 60 departure times
+        // these are 60 bytes per cell, and for the best case only 2.
+        boolean reversed = departureCount - rank + 1 < rank;
+        int capacity = reversed ? departureCount - rank + 1 : rank;
+        char[] heaps = new char[cellNodes.length * capacity];
+        int[] heapSize = {0};
+        surface.calcTravelTimes(origin, windowStart, windowLength, step, (departureTime, stopTravelTimes, nodeTravelTimes) -> {
+            for (int cell = 0; cell < cellNodes.length; cell++) {
+                int node = cellNodes[cell];
+                char sample = node < 0 || nodeTravelTimes[node] == UNREACHED ? MAX_SAMPLE : toSample(nodeTravelTimes[node] + cellWalkSeconds[cell]);
+                offer(heaps, cell * capacity, heapSize[0], capacity, reversed ? (char) (MAX_SAMPLE - sample) : sample);
+            }
+            if (heapSize[0] < capacity)
+                heapSize[0]++;
+        });
+        int[] result = new int[cellNodes.length];
+        for (int cell = 0; cell < cellNodes.length; cell++) {
+            char sample = reversed ? (char) (MAX_SAMPLE - heaps[cell * capacity]) : heaps[cell * capacity];
+            result[cell] = sample == MAX_SAMPLE ? UNREACHED : sample;
+        }
+        return result;
+    }
+
+    private static char toSample(int travelTime) {
+        return (char) Math.min(travelTime, MAX_SAMPLE);
+    }
+
+    /**
+     * Adds the sample to the max-heap of the given size at heaps[offset], or replaces its maximum if the heap is full.
+     */
+    private static void offer(char[] heaps, int offset, int size, int capacity, char sample) {
+        int i;
+        if (size < capacity) {
+            i = size;
+            heaps[offset + i] = sample;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heaps[offset + parent] >= heaps[offset + i])
+                    break;
+                swap(heaps, offset + parent, offset + i);
+                i = parent;
+            }
+        } else if (sample < heaps[offset]) {
+            heaps[offset] = sample;
+            i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && heaps[offset + child + 1] > heaps[offset + child])
+                    child++;
+                if (heaps[offset + child] <= heaps[offset + i])
+                    break;
+                swap(heaps, offset + child, offset + i);
+                i = child;
+            }
+        }
+    }
+
+    private static void swap(char[] array, int i, int j) {
+        char tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    private void write(File file, int[] travelTimes, int percentile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(grid.width());
+            out.writeInt(grid.height());
+            out.writeDouble(grid.west());
+            out.writeDouble(grid.south());
+            out.writeDouble(grid.cellSize());
+            out.writeInt(percentile);
+            for (int travelTime : travelTimes) {
+                out.writeInt(travelTime == UNREACHED ? -1 : travelTime);
+            }
+        }
+    }
+
+    /**
+     * A grid of square cells in degrees.
+     */
+    public record Grid(double west, double south, double cellSize, int width, int height) {
+        public static Grid fromBBox(BBox bbox, double cellSize) {
+            return new Grid(bbox.minLon, bbox.minLat, cellSize,
+                    (int) Math.ceil((bbox.maxLon - bbox.minLon) / cellSize), (int) Math.ceil((bbox.maxLat - bbox.minLat) / cellSize));
+        }
+
+        public double lat(int y) {
+            return south + (y + 0.5) * cellSize;
+        }
+
+        public double lon(int x) {
+            return west + (x + 0.5) * cellSize;
+        }
+    }
+
+    public record Origin(String id, GHPoint point) {
+    }
+
+    public static class Report {
+        private final AtomicInteger origins = new AtomicInteger();
+        private final AtomicInteger failedOrigins = new AtomicInteger();
+        private long wallNanos;
+
+        public int getOrigins() {
+            return origins.get();
+        }
+
+        public int getFailedOrigins() {
+            return failedOrigins.get();
+        }
+
+        public long getWallMillis() {
+            return wallNanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return "origins: " + getOrigins() + " (failed: " + getFailedOrigins() + "), wall time: " + getWallMillis() + "ms";
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.gtfs;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.config.Profile;
+import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.routing.DefaultWeightingFactory;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Travel times by public transit and walking from one origin to all stops and all street nodes, e.g. for accessibility
+ * studies over many origins. Unlike the {@link MultiCriteriaLabelSetting} behind the isochrones, only the earliest
+ * arrival is calculated: the walk from the origin is a shortest path tree on the street network, the stops are reached
+ * with the rounds of the {@link RaptorRouter}, and the travel times of the street nodes around the reached stops are
+ * taken from the walking trees of the stops, which are calculated once and shared by all surfaces of a {@link Factory}.
+ * <p>
+ * For a window of departure times, the rounds are run for every departure time from the latest to the earliest, and
+ * the labels of a later departure time are reused for the earlier ones. Travel times include the wait at the origin.
+ * <p>
+ * A TravelTimeSurface keeps its buffers between calls and is not thread-safe, use one per thread.
+ */
+public class TravelTimeSurface {
+
+    /**
+     * The travel time of the stops and street nodes that are not reached.
+     */
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final Factory factory;
+    private final int[] stopTravelTimes;
+    private final int[] nodeTravelTimes;
+    private final IntArrayList touchedNodes = new IntArrayList();
+
+    private TravelTimeSurface(Factory factory) {
+        this.factory = factory;
+        stopTravelTimes = new int[factory.timetable.getStopCount()];
+        nodeTravelTimes = new int[factory.baseGraph.getNodes()];
+        Arrays.fill(nodeTravelTimes, UNREACHED);
+    }
+
+    public interface TravelTimesConsumer {
+        /**
+         * Receives the travel times of one departure time. Both arrays are reused for the next departure time.
+         *
+         * @param stopTravelTimes the travel time in seconds by stop index of the {@link RaptorTimetable}
+         * @param nodeTravelTimes the travel time in seconds by street node
+         */
+        void accept(Instant departureTime, int[] stopTravelTimes, int[] nodeTravelTimes);
+    }
+
+    /**
+     * Calculates the travel times for the departure times from windowStart, every step, until before the end of the
+     * window, and passes them to the consumer, from the latest departure time to the earliest. The window should be
+     * shorter than a day.
+     */
+    public void calcTravelTimes(GHPoint origin, Instant windowStart, Duration windowLength, Duration step, TravelTimesConsumer consumer) {
+        if (step.getSeconds() <= 0)
+            throw new IllegalArgumentException("step must be at least one second, but was " + step);
+        Snap snap = factory.locationIndex.findClosest(origin.lat, origin.lon, factory.snapFilter);
+        if (!snap.isValid())
+            throw new PointNotFoundException("Cannot find point: " + origin, 0);
+        QueryGraph queryGraph = QueryGraph.create(factory.baseGraph, snap);
+        IntArrayList accessNodes = new IntArrayList();
+        IntArrayList accessSeconds = new IntArrayList();
+        List<TripBasedRouter.StopWithTimeDelta> accessStations = new ArrayList<>();
+        ShortestPathTree walk = new ShortestPathTree(queryGraph, factory.weighting, false, TraversalMode.NODE_BASED);
+        walk.setTimeLimit(factory.maxWalkSeconds * 1000.0);
+        walk.search(snap.getClosestNode(), label -> {
+            if (label.node >= nodeTravelTimes.length)
+                return; // virtual node
+            // round up, so that we never board a trip that we can't reach
+            int seconds = (int) ((label.time + 999) / 1000);
+            accessNodes.add(label.node);
+            accessSeconds.add(seconds);
+            IntArrayList stops = factory.stopsByNode.get(label.node);
+            if (stops != null) {
+                for (int i = 0; i < stops.size(); i++) {
+                    GtfsStorage.FeedIdWithStopId stop = factory.timetable.getStop(stops.get(i));
+                    accessStations.add(new TripBasedRouter.StopWithTimeDelta(stop, factory.timetable.getZoneId(stop.feedId), seconds * 1000L));
+                }
+            }
+        });
+
+        int departureCount = getDepartureCount(windowLength, step);
+        int[] departureTimes = new int[departureCount];
+        for (int i = 0; i < departureCount; i++) {
+            departureTimes[i] = (int) ((departureCount - 1 - i) * step.getSeconds());
+        }
+        RaptorRouter router = new RaptorRouter(factory.timetable, new RaptorRouter.Parameters(accessStations, Collections.emptyList(),
+                windowStart, Duration.ZERO, trip -> true, 1.0, 1.0, 0.0, Collections.emptyMap(), true, factory.maxRounds));
+        router.calcEarliestArrivals(departureTimes, (arrivals, departureTime) -> {
+            for (int i = 0; i < touchedNodes.size(); i++) {
+                nodeTravelTimes[touchedNodes.get(i)] = UNREACHED;
+            }
+            touchedNodes.clear();
+            for (int i = 0; i < accessNodes.size(); i++) {
+                updateNode(accessNodes.get(i), accessSeconds.get(i));
+            }
+            for (int s = 0; s < arrivals.length; s++) {
+                if (arrivals[s] == UNREACHED) {
+                    stopTravelTimes[s] = UNREACHED;
+                    continue;
+                }
+                int travelTime = arrivals[s] - departureTime;
+                stopTravelTimes[s] = travelTime;
+                int[] tree = factory.getStopTree(s);
+                for (int i = 0; i < tree.length; i += 2) {
+                    updateNode(tree[i], travelTime + tree[i + 1]);
+                }
+            }
+            consumer.accept(windowStart.plusSeconds(departureTime), stopTravelTimes, nodeTravelTimes);
+        });
+    }
+
+    /**
+     * @return the number of departure times that {@link #calcTravelTimes} passes to its consumer
+     */
+    public static int getDepartureCount(Duration windowLength, Duration step) {
+        return (int) Math.max(1, (windowLength.getSeconds() + step.getSeconds() - 1) / step.getSeconds());
+    }
+
+    private void updateNode(int node, int travelTime) {
+        if (nodeTravelTimes[node] == UNREACHED)
+            touchedNodes.add(node);
+        if (travelTime < nodeTravelTimes[node])
+            nodeTravelTimes[node] = travelTime;
+    }
+
+    /**
+     * The data that all travel time surfaces of a graph share. It is thread-safe.
+     */
+    public static class Factory {
+        private final BaseGraph baseGraph;
+        private final LocationIndex locationIndex;
+        private final RaptorTimetable timetable;
+        private final Weighting weighting;
+        private final DefaultSnapFilter snapFilter;
+        private final int maxWalkSeconds;
+        private final int maxRounds;
+        private final int[] stopNodes;
+        private final IntObjectHashMap<IntArrayList> stopsByNode = new IntObjectHashMap<>();
+        private final AtomicReferenceArray<int[]> stopTrees;
+
+        /**
+         * @param walkProfile    the profile of the walks, like the access and egress profile of the routers
+         * @param maxWalkSeconds the longest walk from the origin to a stop, and from a stop to a street node
+         * @param maxRounds      the maximum number of trips of a journey
+         */
+        public Factory(GtfsStorage gtfsStorage, BaseGraph baseGraph, LocationIndex locationIndex, EncodingManager encodingManager, Profile walkProfile, int maxWalkSeconds, int maxRounds) {
+            this.baseGraph = baseGraph;
+            this.locationIndex = locationIndex;
+            this.timetable = gtfsStorage.getRaptorTimetable();
+            this.maxWalkSeconds = maxWalkSeconds;
+            this.maxRounds = maxRounds;
+            weighting = new DefaultWeightingFactory(baseGraph, encodingManager).createWeighting(walkProfile, new PMap(), false);
+            snapFilter = new DefaultSnapFilter(weighting, encodingManager.getBooleanEncodedValue(Subnetwork.key(walkProfile.getName())));
+            stopNodes = new int[timetable.getStopCount()];
+            for (int s = 0; s < stopNodes.length; s++) {
+                Integer stationNode = gtfsStorage.getStationNodes().get(timetable.getStop(s));
+                stopNodes[s] = stationNode == null ? -1 : gtfsStorage.getPtToStreet().getOrDefault(stationNode, -1);
+                if (stopNodes[s] >= 0) {
+                    IntArrayList stops = stopsByNode.get(stopNodes[s]);
+                    if (stops == null) {
+                        stops = new IntArrayList();
+                        stopsByNode.put(stopNodes[s], stops);
+                    }
+                    stops.add(s);
+                }
+            }
+            stopTrees = new AtomicReferenceArray<>(stopNodes.length);
+        }
+
+        public TravelTimeSurface createTravelTimeSurface() {
+            return new TravelTimeSurface(this);
+        }
+
+        public RaptorTimetable getTimetable() {
+            return timetable;
+        }
+
+        public BaseGraph getBaseGraph() {
+            return baseGraph;
+        }
+
+        public LocationIndex getLocationIndex() {
+            return locationIndex;
+        }
+
+        public DefaultSnapFilter getSnapFilter() {
+            return snapFilter;
+        }
+
+        public int getMaxWalkSeconds() {
+            return maxWalkSeconds;
+        }
+
+        /**
+         * @return the street nodes within walking distance of the stop and their walk time in seconds, as pairs
+         */
+        int[] getStopTree(int stop) {
+            int[] tree = stopTrees.get(stop);
+            if (tree == null) {
+                IntArrayList result = new IntArrayList();
+                if (stopNodes[stop] >= 0) {
+                    ShortestPathTree walk = new ShortestPathTree(baseGraph, weighting, false, TraversalMode.NODE_BASED);
+                    walk.setTimeLimit(maxWalkSeconds * 1000.0);
+                    walk.search(stopNodes[stop], label -> result.add(label.node, (int) ((label.time + 999) / 1000)));
+                }
+                tree = result.toArray();
+                // another thread may have calculated the same tree in the meantime, which is fine
+                stopTrees.set(stop, tree);
+            }
+            return tree;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The trip-to-trip transfers of one traffic day in compressed sparse row layout. Every stop time of every trip, i.e.
+ * every possible transfer origin, is a slot. The slots of a trip are consecutive and indexed by stop_sequence, starting
+ * at {@link Trips#getFirstSlot(int)}. The store holds one int offset per slot, followed by the destinations as pairs of
+ * trip index and stop_sequence, so the transfers of an origin are the destinations between its offset and the next
+ * one.
+ * <p>
+ * The store is a memory-mapped file in the graph folder, one per traffic day, so only the days that are actually
+ * queried are mapped.
+ */
+public class TripTransfersStore {
+    private static final int H_SLOT_COUNT = 0, H_DESTINATION_COUNT = 4;
+    private static final int DESTINATION_BYTES = 8;
+
+    private final Directory dir;
+    private final String name;
+    private final int[] firstSlots;
+    private DataAccess data;
+    private int slotCount;
+    private long destinationsPointer;
+
+    TripTransfersStore(Directory dir, LocalDate trafficDay, int[] firstSlots) {
+        this.dir = dir;
+        this.name = "trip_transfers_" + trafficDay;
+        this.firstSlots = firstSlots;
+    }
+
+    /**
+     * @param transfers the destinations by trip index and stop_sequence of the origin, packed as pairs of trip index
+     *                  and stop_sequence. Trips and stop times without transfers can be null.
+     */
+    void create(int[][][] transfers) {
+        slotCount = firstSlots[firstSlots.length - 1];
+        data = dir.create(name, DAType.MMAP, -1);
+        destinationsPointer = 4L * (slotCount + 1);
+        data.create(destinationsPointer);
+        int destinationCount = 0;
+        for (int tripIdx = 0; tripIdx < firstSlots.length - 1; tripIdx++) {
+            int firstSlot = firstSlots[tripIdx];
+            int[][] transfersOfTrip = transfers[tripIdx];
+            for (int slot = firstSlot; slot < firstSlots[tripIdx + 1]; slot++) {
+                data.setInt(4L * slot, destinationCount);
+                int[] destinations = transfersOfTrip == null ? null : transfersOfTrip[slot - firstSlot];
+                if (destinations == null)
+                    continue;
+                long pointer = destinationsPointer + (long) destinationCount * DESTINATION_BYTES;
+                data.ensureCapacity(pointer + 4L * destinations.length);
+                for (int i = 0; i < destinations.length; i++) {
+                    data.setInt(pointer + 4L * i, destinations[i]);
+                }
+                destinationCount += destinations.length / 2;
+            }
+        }
+        data.setInt(4L * slotCount, destinationCount);
+        data.setHeader(H_SLOT_COUNT, slotCount);
+        data.setHeader(H_DESTINATION_COUNT, destinationCount);
+    }
+
+    boolean loadExisting() {
+        data = dir.create(name, DAType.MMAP_RO, -1);
+        if (!data.loadExisting()) {
+            dir.remove(name);
+            data = null;
+            return false;
+        }
+        slotCount = data.getHeader(H_SLOT_COUNT);
+        if (slotCount != firstSlots[firstSlots.length - 1])
+            throw new IllegalStateException("The trip transfers in " + name + " do not match the trips of the feeds");
+        destinationsPointer = 4L * (slotCount + 1);
+        return true;
+    }
+
+    /**
+     * Writes the store to disk and unmaps it. It is mapped again by {@link #loadExisting()} when it is needed.
+     */
+    void flushAndClose() {
+        data.flush();
+        dir.close(name);
+        data = null;
+    }
+
+    void close() {
+        if (data != null) {
+            dir.close(name);
+            data = null;
+        }
+    }
+
+    public int getTransferCount() {
+        return data == null ? 0 : data.getHeader(H_DESTINATION_COUNT);
+    }
+
+    /**
+     * @return the trips (and their stop_sequence) that can be reached by a transfer from the given trip and
+     * stop_sequence on this day
+     */
+    public List<Trips.TripAtStopTime> get(Trips.TripAtStopTime origin) {
+        if (data == null)
+            return Collections.emptyList();
+        int slot = firstSlots[origin.tripIdx] + origin.stop_sequence;
+        int from = data.getInt(4L * slot);
+        int to = data.getInt(4L * (slot + 1));
+        return new AbstractList<>() {
+            @Override
+            public Trips.TripAtStopTime get(int index) {
+                long pointer = destinationsPointer + (long) (from + index) * DESTINATION_BYTES;
+                return new Trips.TripAtStopTime(data.getInt(pointer), data.getInt(pointer + 4));
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+}
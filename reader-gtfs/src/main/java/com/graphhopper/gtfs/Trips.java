@@ -7,6 +7,9 @@ import com.conveyal.gtfs.model.*;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.graphhopper.storage.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.time.LocalDate;
@@ -14,12 +17,17 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class Trips {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(Trips.class);
     public final List<GTFSFeed.StopTimesForTripWithTripPatternKey> trips;
     private Map<GtfsStorage.FeedIdWithStopId, Map<String, List<TripAtStopTime>>> boardingsForStopByPattern = new ConcurrentHashMap<>();
-    private Map<LocalDate, Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>>> tripTransfersPerDay = new ConcurrentHashMap<>();
+    private final Map<LocalDate, TripTransfersStore> tripTransfersPerDay = new ConcurrentHashMap<>();
+    // the first transfer origin slot of every trip, see TripTransfersStore
+    private final int[] firstSlots;
     public int idx;
 
     public Trips(GtfsStorage gtfsStorage) {
@@ -101,6 +109,10 @@ public class Trips {
                 }
             }
         }
+        firstSlots = new int[trips.size() + 1];
+        for (int i = 0; i < trips.size(); i++) {
+            firstSlots[i + 1] = firstSlots[i] + trips.get(i).stopTimes.size();
+        }
     }
 
     public Map<String, List<TripAtStopTime>> getPatternBoardings(GtfsStorage.FeedIdWithStopId stopId) {
@@ -207,23 +219,77 @@ public class Trips {
         }
     }
 
-    public void findAllTripTransfersInto(Map<TripAtStopTime, Collection<TripAtStopTime>> result, LocalDate trafficDay, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode) {
-        Map<TripAtStopTime, Collection<TripAtStopTime>> r = Collections.synchronizedMap(result);
-        trips.stream()
-            .filter(trip -> trip.service.activeOn(trafficDay))
-            .parallel()
-            .forEach(tripPointer -> {
-                Map<TripAtStopTime, Collection<TripAtStopTime>> reducedTripTransfers = findTripTransfers(tripPointer, tripPointer.feedId, trafficDay, transfers, stopsForStationNode);
-                r.putAll(reducedTripTransfers);
-            });
+    /**
+     * Computes the trip transfers of the given traffic days and writes them to one {@link TripTransfersStore} per day.
+     * The days and, within a day, the trip patterns are processed in parallel on a fork-join pool with the given number
+     * of threads. A day is unmapped as soon as it is written, so only the days that are being computed are in memory.
+     */
+    public void computeTripTransfers(Directory dir, List<LocalDate> trafficDays, Map<String, Transfers> transfers, ArrayListMultimap<Integer, GtfsStorage.FeedIdWithStopId> stopsForStationNode, int threads) {
+        List<List<GTFSFeed.StopTimesForTripWithTripPatternKey>> patterns = new ArrayList<>();
+        for (int i = 0; i < trips.size(); i = trips.get(i).endIdxOfPattern) {
+            patterns.add(trips.subList(i, trips.get(i).endIdxOfPattern));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> trafficDays.parallelStream().forEach(trafficDay -> {
+                LOGGER.info("Computing trip-based transfers for pt router. Schedule day: {}", trafficDay);
+                int[][][] transfersByTrip = new int[trips.size()][][];
+                patterns.parallelStream().forEach(pattern -> {
+                    for (GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer : pattern) {
+                        if (tripPointer.service.activeOn(trafficDay)) {
+                            transfersByTrip[tripPointer.idx] = toSlots(tripPointer, findTripTransfers(tripPointer, tripPointer.feedId, trafficDay, transfers, stopsForStationNode));
+                        }
+                    }
+                });
+                TripTransfersStore store = new TripTransfersStore(dir, trafficDay, firstSlots);
+                store.create(transfersByTrip);
+                LOGGER.info("Writing {} trip-based transfers. Schedule day: {}", store.getTransferCount(), trafficDay);
+                store.flushAndClose();
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing the trip transfers", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int[][] toSlots(GTFSFeed.StopTimesForTripWithTripPatternKey tripPointer, Map<TripAtStopTime, Collection<TripAtStopTime>> tripTransfers) {
+        int[][] slots = new int[tripPointer.stopTimes.size()][];
+        for (Map.Entry<TripAtStopTime, Collection<TripAtStopTime>> entry : tripTransfers.entrySet()) {
+            int[] destinations = new int[2 * entry.getValue().size()];
+            int i = 0;
+            for (TripAtStopTime destination : entry.getValue()) {
+                destinations[i++] = destination.tripIdx;
+                destinations[i++] = destination.stop_sequence;
+            }
+            slots[entry.getKey().stop_sequence] = destinations;
+        }
+        return slots;
+    }
+
+    /**
+     * @return the trip transfers of the given traffic day. They are mapped from the graph folder when a day is first
+     * requested. The result is empty if they were not computed for this day.
+     */
+    public TripTransfersStore getTripTransfers(LocalDate trafficDay) {
+        return tripTransfersPerDay.computeIfAbsent(trafficDay, day -> {
+            TripTransfersStore store = new TripTransfersStore(gtfsStorage.getDirectory(), day, firstSlots);
+            if (store.loadExisting())
+                LOGGER.info("Loaded trip-based transfers for pt router. Schedule day: {}", day);
+            return store;
+        });
     }
 
-    public Map<LocalDate, Map<TripAtStopTime, Collection<TripAtStopTime>>> getTripTransfers() {
-        return tripTransfersPerDay;
+    public int getFirstSlot(int tripIdx) {
+        return firstSlots[tripIdx];
     }
 
-    public Map<Trips.TripAtStopTime, Collection<Trips.TripAtStopTime>> getTripTransfers(LocalDate trafficDay) {
-        return tripTransfersPerDay.computeIfAbsent(trafficDay, k -> new TreeMap<>());
+    void close() {
+        tripTransfersPerDay.values().forEach(TripTransfersStore::close);
+        tripTransfersPerDay.clear();
     }
 
     public GTFSFeed.StopTimesForTripWithTripPatternKey getTrip(int tripIdx) {
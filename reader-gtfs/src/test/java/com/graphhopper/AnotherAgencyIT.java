@@ -124,6 +124,43 @@ public interface AnotherAgencyIT<T extends PtRouter> {
         }
     }
 
+    class RaptorPtRouterTest implements AnotherAgencyIT<PtRouterRaptorImpl> {
+
+        private static GraphHopperGtfs graphHopperGtfs;
+        static PtRouterRaptorImpl ptRouter;
+
+        @BeforeAll
+        static void init() {
+            GraphHopperConfig ghConfig = new GraphHopperConfig();
+            ghConfig.putObject("graph.location", GRAPH_LOC);
+            ghConfig.putObject("import.osm.ignored_highways", "");
+            ghConfig.putObject("datareader.file", "files/beatty.osm");
+            ghConfig.putObject("gtfs.file", "files/sample-feed,files/another-sample-feed");
+            ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+            ghConfig.setProfiles(List.of(
+                    TestProfiles.accessSpeedAndPriority("foot"),
+                    TestProfiles.accessAndSpeed("car")));
+            Helper.removeDir(new File(GRAPH_LOC));
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+            ptRouter = new PtRouterRaptorImpl(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+        }
+
+        public GraphHopperGtfs graphHopperGtfs() {
+            return graphHopperGtfs;
+        }
+
+        public PtRouterRaptorImpl ptRouter() {
+            return ptRouter;
+        }
+
+        @AfterAll
+        public static void close() {
+            graphHopperGtfs.close();
+        }
+    }
+
     class DefaultPtRouterTest implements AnotherAgencyIT<PtRouterImpl> {
 
         private static GraphHopperGtfs graphHopperGtfs;
@@ -154,6 +154,71 @@ public interface GraphHopperMultimodalIT<T extends PtRouter> {
         }
     }
 
+    class RaptorPtRouterMultimodalTest implements GraphHopperMultimodalIT<PtRouterRaptorImpl> {
+        private static GraphHopperGtfs graphHopperGtfs;
+        private static PtRouterRaptorImpl graphHopper;
+
+        @BeforeAll
+        public static void init() {
+            GraphHopperConfig ghConfig = new GraphHopperConfig();
+            ghConfig.putObject("datareader.file", "files/beatty.osm");
+            ghConfig.putObject("import.osm.ignored_highways", "");
+            ghConfig.putObject("gtfs.file", "files/sample-feed");
+            ghConfig.putObject("graph.location", GRAPH_LOC);
+            ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+            ghConfig.setProfiles(Arrays.asList(
+                    TestProfiles.accessSpeedAndPriority("foot"),
+                    TestProfiles.accessAndSpeed("car_default", "car"),
+                    TestProfiles.accessAndSpeed("car_custom","car")));
+            Helper.removeDir(new File(GRAPH_LOC));
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+
+            graphHopperGtfs.close();
+            // Re-load read only
+            graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+            graphHopperGtfs.init(ghConfig);
+            graphHopperGtfs.importOrLoad();
+
+            graphHopper = new PtRouterRaptorImpl(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+        }
+
+        @Override
+        public void assertAllIfWeCanAssureMaxVisitedNodes(SoftAssertions softly) {
+
+        }
+
+        @Override
+        @Test
+        public void testArriveBy() {
+            Request ghRequest = new Request(
+                    36.92311729030539, -116.76769495010377,
+                    36.91260259593356, -116.76149368286134
+            );
+            ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 7, 0, 0).atZone(zoneId).toInstant());
+            ghRequest.setArriveBy(true);
+
+            GHResponse response = ptRouter().route(ghRequest);
+            assertThat(response.hasErrors()).isTrue();
+        }
+
+        @Override
+        public PtRouterRaptorImpl ptRouter() {
+            return graphHopper;
+        }
+
+        @Override
+        public GraphHopperGtfs graphHopperGtfs() {
+            return graphHopperGtfs;
+        }
+
+        @AfterAll
+        public static void close() {
+            graphHopperGtfs.close();
+        }
+    }
+
     @Test
     default void testDepartureTimeOfAccessLegInProfileQuery() {
         Request ghRequest = new Request(
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper;
+
+import com.graphhopper.gtfs.*;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.TranslationMap;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the earliest arrival found by the raptor router with the one of the classic router for all pairs of
+ * stations of the sample feed and a few departure times, and logs the time both of them need.
+ */
+public class RaptorIT {
+
+    private static final Logger logger = LoggerFactory.getLogger(RaptorIT.class);
+    private static final String GRAPH_LOC = "target/RaptorIT";
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    private static final List<String> STATIONS = Arrays.asList("FUR_CREEK_RES", "BEATTY_AIRPORT", "BULLFROG", "STAGECOACH", "NADAV", "NANAA", "DADAN", "EMSI", "AMV");
+    private static GraphHopperGtfs graphHopperGtfs;
+    private static PtRouter classicRouter;
+    private static PtRouter raptorRouter;
+
+    @BeforeAll
+    public static void init() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("datareader.file", "files/beatty.osm");
+        ghConfig.putObject("gtfs.file", "files/sample-feed");
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed");
+        ghConfig.setProfiles(List.of(TestProfiles.accessSpeedAndPriority("foot")));
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+        classicRouter = new PtRouterImpl.Factory(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage())
+                .createWithoutRealtimeFeed();
+        raptorRouter = new PtRouterRaptorImpl(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getPathDetailsBuilderFactory());
+    }
+
+    @AfterAll
+    public static void close() {
+        graphHopperGtfs.close();
+    }
+
+    @Test
+    public void sameEarliestArrivalAsClassicRouter() {
+        List<LocalDateTime> departureTimes = Arrays.asList(
+                LocalDateTime.of(2007, 1, 1, 0, 0),
+                LocalDateTime.of(2007, 1, 1, 6, 30),
+                LocalDateTime.of(2007, 1, 1, 8, 0),
+                LocalDateTime.of(2007, 1, 1, 12, 0),
+                LocalDateTime.of(2007, 1, 1, 17, 45),
+                LocalDateTime.of(2007, 1, 6, 9, 0));
+        long classicNanos = 0, raptorNanos = 0;
+        int queries = 0, withSolution = 0;
+        for (LocalDateTime departureTime : departureTimes) {
+            for (String from : STATIONS) {
+                for (String to : STATIONS) {
+                    if (from.equals(to))
+                        continue;
+                    Request request = new Request(Arrays.asList(new GHStationLocation(from), new GHStationLocation(to)), departureTime.atZone(zoneId).toInstant());
+                    request.setIgnoreTransfers(true);
+
+                    long start = System.nanoTime();
+                    GHResponse classic = classicRouter.route(request);
+                    classicNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    GHResponse raptor = raptorRouter.route(request);
+                    raptorNanos += System.nanoTime() - start;
+                    queries++;
+
+                    Optional<Instant> classicArrival = earliestArrival(classic);
+                    Optional<Instant> raptorArrival = earliestArrival(raptor);
+                    assertThat(raptorArrival).as("earliest arrival from %s to %s at %s", from, to, departureTime).isEqualTo(classicArrival);
+                    if (classicArrival.isPresent())
+                        withSolution++;
+                }
+            }
+        }
+        logger.info("{} queries ({} with a solution), classic: {}ms, raptor: {}ms", queries, withSolution, classicNanos / 1_000_000, raptorNanos / 1_000_000);
+        assertThat(withSolution).isGreaterThan(0);
+    }
+
+    private static Optional<Instant> earliestArrival(GHResponse response) {
+        assertThat(response.getErrors()).allMatch(e -> e instanceof ConnectionNotFoundException);
+        return response.getAll().stream()
+                .map(path -> path.getLegs().get(path.getLegs().size() - 1).getArrivalTime().toInstant())
+                .min(Instant::compareTo);
+    }
+
+}
@@ -22,6 +22,7 @@ import com.google.transit.realtime.GtfsRealtime;
 import com.graphhopper.gtfs.GraphHopperGtfs;
 import com.graphhopper.gtfs.PtRouter;
 import com.graphhopper.gtfs.PtRouterImpl;
+import com.graphhopper.gtfs.RealtimeFeed;
 import com.graphhopper.gtfs.Request;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
@@ -186,6 +187,84 @@ public class RealtimeIT {
         assertEquals(time(0, 5), response.getBest().getTime(), 0.1, "I am two minutes late for my bus, but the bus is two minutes late, too, so I catch it!");
     }
 
+    @Test
+    public void testIncrementalUpdate() {
+        final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
+        final double TO_LAT = 36.914944, TO_LON = -116.761472; // NANAA stop
+        Request ghRequest = new Request(
+                FROM_LAT, FROM_LON,
+                TO_LAT, TO_LON
+        );
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 46).atZone(zoneId).toInstant());
+
+        RealtimeFeed heavyDelay = graphHopperFactory.updateRealtimeFeed(RealtimeFeed.empty(), delayOfCity2(0, 3600));
+        assertEquals(1, heavyDelay.getUpdateStatistics().getAppliedTripUpdates());
+        assertEquals(time(0, 33), graphHopperFactory.createWith(heavyDelay).route(ghRequest).getBest().getTime(), 0.1, "I have to wait for the next one");
+
+        // the same trip update in a newer message is not applied again
+        RealtimeFeed sameDelay = graphHopperFactory.updateRealtimeFeed(heavyDelay, delayOfCity2(30, 3600));
+        assertEquals(1, sameDelay.getUpdateStatistics().getTripUpdates());
+        assertEquals(0, sameDelay.getUpdateStatistics().getAppliedTripUpdates());
+        assertEquals(time(0, 33), graphHopperFactory.createWith(sameDelay).route(ghRequest).getBest().getTime(), 0.1);
+
+        RealtimeFeed smallDelay = graphHopperFactory.updateRealtimeFeed(sameDelay, delayOfCity2(60, 120));
+        assertEquals(1, smallDelay.getUpdateStatistics().getAppliedTripUpdates());
+        assertEquals(0, smallDelay.getUpdateStatistics().getRemovedTripUpdates());
+        assertEquals(1, smallDelay.getUpdateStatistics().getApplyNanos().length);
+        assertEquals(time(0, 5), graphHopperFactory.createWith(smallDelay).route(ghRequest).getBest().getTime(), 0.1, "The bus is two minutes late, so I catch it");
+        // the previous feed is not changed by the update
+        assertEquals(time(0, 33), graphHopperFactory.createWith(sameDelay).route(ghRequest).getBest().getTime(), 0.1);
+
+        RealtimeFeed noDelay = graphHopperFactory.updateRealtimeFeed(smallDelay, delayOfCity2(90, -1));
+        assertEquals(0, noDelay.getUpdateStatistics().getTripUpdates());
+        assertEquals(1, noDelay.getUpdateStatistics().getRemovedTripUpdates());
+        assertEquals(graphHopperFactory.createWithoutRealtimeFeed().route(ghRequest).getBest().getTime(),
+                graphHopperFactory.createWith(noDelay).route(ghRequest).getBest().getTime(), 0.1);
+    }
+
+    @Test
+    public void testRecycleIdsOfRetiredTripUpdates() {
+        final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
+        final double TO_LAT = 36.914944, TO_LON = -116.761472; // NANAA stop
+        Request ghRequest = new Request(
+                FROM_LAT, FROM_LON,
+                TO_LAT, TO_LON
+        );
+        ghRequest.setEarliestDepartureTime(LocalDateTime.of(2007, 1, 1, 6, 46).atZone(zoneId).toInstant());
+
+        // every changed delay adds new edges, so eventually all trip updates are applied again with the old ids
+        RealtimeFeed realtimeFeed = graphHopperFactory.updateRealtimeFeed(RealtimeFeed.empty(), delayOfCity2(0, 3600));
+        int updates = 0;
+        while (!realtimeFeed.getUpdateStatistics().isRebuilt()) {
+            assertTrue(++updates < 1000, "the ids are never recycled");
+            realtimeFeed = graphHopperFactory.updateRealtimeFeed(realtimeFeed, delayOfCity2(updates, updates % 2 == 0 ? 3600 : 3660));
+            assertEquals(1, realtimeFeed.getUpdateStatistics().getAppliedTripUpdates());
+        }
+        assertEquals(time(0, 33), graphHopperFactory.createWith(realtimeFeed).route(ghRequest).getBest().getTime(), 0.1, "I have to wait for the next one");
+        realtimeFeed = graphHopperFactory.updateRealtimeFeed(realtimeFeed, delayOfCity2(updates + 1, 120));
+        assertFalse(realtimeFeed.getUpdateStatistics().isRebuilt());
+        assertEquals(time(0, 5), graphHopperFactory.createWith(realtimeFeed).route(ghRequest).getBest().getTime(), 0.1, "The bus is two minutes late, so I catch it");
+    }
+
+    private static GtfsRealtime.FeedMessage delayOfCity2(int secondsAfterMidnight, int delay) {
+        final GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("1")
+                .setTimestamp(ZonedDateTime.of(LocalDate.of(2007, 1, 1), LocalTime.ofSecondOfDay(secondsAfterMidnight), zoneId).toEpochSecond()));
+        if (delay >= 0) {
+            feedMessageBuilder.addEntityBuilder()
+                    .setId("1")
+                    .getTripUpdateBuilder()
+                    .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                    .setTimestamp(ZonedDateTime.of(LocalDate.of(2007, 1, 1), LocalTime.ofSecondOfDay(secondsAfterMidnight), zoneId).toEpochSecond())
+                    .addStopTimeUpdateBuilder()
+                    .setScheduleRelationship(SCHEDULED)
+                    .setStopSequence(3)
+                    .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(delay).build());
+        }
+        return feedMessageBuilder.build();
+    }
+
     @Test
     public void testSkipArrivalStop() {
         final double FROM_LAT = 36.914893, FROM_LON = -116.76821; // NADAV stop
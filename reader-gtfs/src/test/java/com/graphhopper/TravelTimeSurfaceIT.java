@@ -0,0 +1,199 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper;
+
+import com.graphhopper.gtfs.*;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.TranslationMap;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.gtfs.TravelTimeSurface.UNREACHED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TravelTimeSurfaceIT {
+
+    private static final String GRAPH_LOC = "target/TravelTimeSurfaceIT";
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    // near the stops NADAV and NANAA in Beatty
+    private static final GHPoint ORIGIN = new GHPoint(36.914893, -116.76821);
+    private static GraphHopperGtfs graphHopperGtfs;
+    private static PtRouter classicRouter;
+    private static TravelTimeSurface.Factory factory;
+
+    @BeforeAll
+    public static void init() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("datareader.file", "files/beatty.osm");
+        ghConfig.putObject("gtfs.file", "files/sample-feed");
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed");
+        ghConfig.setProfiles(List.of(TestProfiles.accessSpeedAndPriority("foot")));
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+        classicRouter = new PtRouterImpl.Factory(ghConfig, new TranslationMap().doImport(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getEncodingManager(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getGtfsStorage())
+                .createWithoutRealtimeFeed();
+        factory = new TravelTimeSurface.Factory(graphHopperGtfs.getGtfsStorage(), graphHopperGtfs.getBaseGraph(), graphHopperGtfs.getLocationIndex(), graphHopperGtfs.getEncodingManager(), ghConfig.getProfiles().get(0), 15 * 60, 5);
+    }
+
+    @AfterAll
+    public static void close() {
+        graphHopperGtfs.close();
+    }
+
+    @Test
+    public void sameStopTravelTimesAsClassicRouter() {
+        Instant departureTime = LocalDateTime.of(2007, 1, 1, 7, 40).atZone(zoneId).toInstant();
+        int[] stopTravelTimes = calcSingle(departureTime)[0];
+        RaptorTimetable timetable = factory.getTimetable();
+        int reachedByTransit = 0;
+        for (int s = 0; s < timetable.getStopCount(); s++) {
+            Request request = new Request(Arrays.asList(new GHPointLocation(ORIGIN), new GHStationLocation(timetable.getStop(s).stopId)), departureTime);
+            request.setIgnoreTransfers(true);
+            request.setLimitStreetTime(Duration.ofMinutes(15));
+            GHResponse response;
+            try {
+                response = classicRouter.route(request);
+            } catch (PointNotFoundException e) {
+                continue; // a stop without a station node
+            }
+            if (response.hasErrors() || response.getAll().isEmpty()) {
+                assertThat(stopTravelTimes[s]).as("travel time to %s", timetable.getStop(s)).isEqualTo(UNREACHED);
+                continue;
+            }
+            long earliestArrival = response.getAll().stream()
+                    .mapToLong(path -> path.getLegs().get(path.getLegs().size() - 1).getArrivalTime().getTime())
+                    .min().getAsLong();
+            long expected = (earliestArrival - departureTime.toEpochMilli()) / 1000;
+            // the surface rounds every walk up to full seconds
+            assertThat(stopTravelTimes[s]).as("travel time to %s", timetable.getStop(s)).isBetween((int) expected, (int) expected + 2);
+            if (stopTravelTimes[s] > 15 * 60)
+                reachedByTransit++;
+        }
+        assertThat(reachedByTransit).isGreaterThan(0);
+    }
+
+    @Test
+    public void windowIsLikeSingleDepartures() {
+        Instant windowStart = LocalDateTime.of(2007, 1, 1, 6, 30).atZone(zoneId).toInstant();
+        List<Instant> departureTimes = new ArrayList<>();
+        List<int[][]> travelTimes = new ArrayList<>();
+        factory.createTravelTimeSurface().calcTravelTimes(ORIGIN, windowStart, Duration.ofMinutes(60), Duration.ofMinutes(10), (departureTime, stopTravelTimes, nodeTravelTimes) -> {
+            departureTimes.add(departureTime);
+            travelTimes.add(new int[][]{stopTravelTimes.clone(), nodeTravelTimes.clone()});
+        });
+        assertThat(departureTimes).containsExactly(windowStart.plusSeconds(3000), windowStart.plusSeconds(2400), windowStart.plusSeconds(1800),
+                windowStart.plusSeconds(1200), windowStart.plusSeconds(600), windowStart);
+        for (int i = 0; i < departureTimes.size(); i++) {
+            int[][] single = calcSingle(departureTimes.get(i));
+            assertThat(travelTimes.get(i)[0]).isEqualTo(single[0]);
+            assertThat(travelTimes.get(i)[1]).isEqualTo(single[1]);
+        }
+    }
+
+    @Test
+    public void writeGrids() throws IOException {
+        File outputDir = new File(GRAPH_LOC, "grids");
+        TravelTimeGrids.Grid grid = TravelTimeGrids.Grid.fromBBox(new BBox(-116.78, -116.74, 36.90, 36.93), 0.002);
+        TravelTimeGrids grids = new TravelTimeGrids(factory, grid, 5, 2);
+        List<TravelTimeGrids.Origin> origins = List.of(
+                new TravelTimeGrids.Origin("nadav", ORIGIN),
+                new TravelTimeGrids.Origin("emsi", new GHPoint(36.905697, -116.76218)),
+                new TravelTimeGrids.Origin("stagecoach", new GHPoint(36.915682, -116.751677)));
+        TravelTimeGrids.Report report = grids.compute(origins.iterator(), LocalDateTime.of(2007, 1, 1, 7, 0).atZone(zoneId).toInstant(),
+                Duration.ofMinutes(60), Duration.ofMinutes(5), 50, outputDir);
+        assertThat(report.getOrigins()).isEqualTo(3);
+        assertThat(report.getFailedOrigins()).isEqualTo(0);
+        for (TravelTimeGrids.Origin origin : origins) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(new File(outputDir, origin.id() + ".grid")))) {
+                assertThat(in.readInt()).isEqualTo(grid.width());
+                assertThat(in.readInt()).isEqualTo(grid.height());
+                assertThat(in.readDouble()).isEqualTo(grid.west());
+                assertThat(in.readDouble()).isEqualTo(grid.south());
+                assertThat(in.readDouble()).isEqualTo(grid.cellSize());
+                assertThat(in.readInt()).isEqualTo(50);
+                int reached = 0;
+                int originX = (int) ((origin.point().lon - grid.west()) / grid.cellSize());
+                int originY = (int) ((origin.point().lat - grid.south()) / grid.cellSize());
+                for (int y = 0; y < grid.height(); y++) {
+                    for (int x = 0; x < grid.width(); x++) {
+                        int travelTime = in.readInt();
+                        if (travelTime >= 0)
+                            reached++;
+                        if (x == originX && y == originY)
+                            assertThat(travelTime).isBetween(0, 5 * 60);
+                    }
+                }
+                assertThat(reached).isGreaterThan(0);
+            }
+        }
+    }
+
+    @Test
+    public void gridPercentilesLikeSortedDepartures() {
+        TravelTimeGrids.Grid grid = TravelTimeGrids.Grid.fromBBox(new BBox(-116.78, -116.74, 36.90, 36.93), 0.002);
+        TravelTimeGrids grids = new TravelTimeGrids(factory, grid, 5, 1);
+        TravelTimeSurface surface = factory.createTravelTimeSurface();
+        Instant windowStart = LocalDateTime.of(2007, 1, 1, 7, 0).atZone(zoneId).toInstant();
+        int departureCount = 12;
+        List<int[]> singles = new ArrayList<>();
+        for (int i = 0; i < departureCount; i++) {
+            singles.add(grids.calcGrid(surface, ORIGIN, windowStart.plus(Duration.ofMinutes(5 * i)), Duration.ZERO, Duration.ofMinutes(5), 0));
+        }
+        for (int percentile : new int[]{0, 10, 50, 51, 90, 100}) {
+            int[] result = grids.calcGrid(surface, ORIGIN, windowStart, Duration.ofMinutes(5 * departureCount), Duration.ofMinutes(5), percentile);
+            int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * departureCount) - 1);
+            for (int cell = 0; cell < result.length; cell++) {
+                int[] column = new int[departureCount];
+                for (int i = 0; i < departureCount; i++) {
+                    column[i] = singles.get(i)[cell];
+                }
+                Arrays.sort(column);
+                assertThat(result[cell]).as("percentile %d of cell %d", percentile, cell).isEqualTo(column[index]);
+            }
+        }
+    }
+
+    private static int[][] calcSingle(Instant departureTime) {
+        int[][] result = new int[2][];
+        factory.createTravelTimeSurface().calcTravelTimes(ORIGIN, departureTime, Duration.ZERO, Duration.ofMinutes(1), (t, stopTravelTimes, nodeTravelTimes) -> {
+            result[0] = stopTravelTimes.clone();
+            result[1] = nodeTravelTimes.clone();
+        });
+        return result;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.conveyal.gtfs.model.StopTime;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StopTimesStoreTest {
+    private static final String LOCATION = "target/stop-times-store-test";
+
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    @Test
+    public void sameStopTimesAsFeed() throws IOException {
+        GTFSFeed feed = new GTFSFeed();
+        feed.loadFromZipfileOrDirectory(new File("files/sample-feed"), "");
+        GHDirectory dir = new GHDirectory(LOCATION, DAType.RAM_STORE);
+        dir.create();
+        StopTimesStore store = new StopTimesStore(dir, "gtfs_0");
+        store.create(feed);
+        store.flush();
+        store.close();
+
+        StopTimesStore loaded = new StopTimesStore(new GHDirectory(LOCATION, DAType.MMAP_RO), "gtfs_0");
+        assertTrue(loaded.loadExisting());
+        assertEquals(feed.trips.size(), loaded.getTripCount());
+        GTFSFeed feedWithStore = feed.clone();
+        feedWithStore.setStopTimesStore(loaded);
+        int stopTimes = 0;
+        for (String tripId : feed.trips.keySet()) {
+            int trip = loaded.getTripIndex(tripId);
+            assertEquals(tripId, loaded.getTripId(trip));
+            List<StopTime> expected = feed.getInterpolatedStopTimesForTrip(tripId);
+            List<StopTime> actual = feedWithStore.getInterpolatedStopTimesForTrip(tripId);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.size(), loaded.getStopTimeCount(trip));
+            for (int i = 0; i < expected.size(); i++) {
+                assertStopTime(expected.get(i), actual.get(i));
+                assertStopTime(feed.getStopTime(tripId, expected.get(i).stop_sequence), feedWithStore.getStopTime(tripId, expected.get(i).stop_sequence));
+            }
+            assertNull(feedWithStore.getStopTime(tripId, 1000));
+            stopTimes += actual.size();
+        }
+        assertEquals(feed.stop_times.size(), stopTimes);
+        assertEquals(-1, loaded.getTripIndex("unknown"));
+        assertNull(feedWithStore.getStopTime("unknown", 1));
+        assertTrue(feedWithStore.getInterpolatedStopTimesForTrip("unknown").isEmpty());
+        loaded.close();
+    }
+
+    private static void assertStopTime(StopTime expected, StopTime actual) {
+        assertEquals(expected.trip_id, actual.trip_id);
+        assertEquals(expected.stop_id, actual.stop_id);
+        assertEquals(expected.stop_sequence, actual.stop_sequence);
+        assertEquals(expected.arrival_time, actual.arrival_time);
+        assertEquals(expected.departure_time, actual.departure_time);
+        assertEquals(expected.pickup_type, actual.pickup_type);
+        assertEquals(expected.drop_off_type, actual.drop_off_type);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.gtfs;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TripTransfersStoreTest {
+    private static final String LOCATION = "target/trip-transfers-store-test";
+    private static final LocalDate DAY = LocalDate.of(2007, 1, 1);
+
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    @Test
+    public void createAndLoad() {
+        // three trips with 3, 2 and 4 stop times (including padding)
+        int[] firstSlots = {0, 3, 5, 9};
+        int[][][] transfers = new int[3][][];
+        transfers[0] = new int[][]{null, {1, 0, 2, 1}, {2, 3}};
+        transfers[2] = new int[][]{null, null, {0, 1}, null};
+        GHDirectory dir = new GHDirectory(LOCATION, DAType.RAM_STORE);
+        dir.create();
+        TripTransfersStore store = new TripTransfersStore(dir, DAY, firstSlots);
+        store.create(transfers);
+        assertEquals(4, store.getTransferCount());
+        store.flushAndClose();
+        assertTrue(new File(LOCATION, "trip_transfers_2007-01-01").exists());
+
+        TripTransfersStore loaded = new TripTransfersStore(new GHDirectory(LOCATION, DAType.RAM_STORE), DAY, firstSlots);
+        assertTrue(loaded.loadExisting());
+        assertEquals(4, loaded.getTransferCount());
+        assertThat(loaded.get(new Trips.TripAtStopTime(0, 0))).isEmpty();
+        assertThat(loaded.get(new Trips.TripAtStopTime(0, 1))).containsExactly(new Trips.TripAtStopTime(1, 0), new Trips.TripAtStopTime(2, 1));
+        assertThat(loaded.get(new Trips.TripAtStopTime(0, 2))).containsExactly(new Trips.TripAtStopTime(2, 3));
+        assertThat(loaded.get(new Trips.TripAtStopTime(1, 1))).isEmpty();
+        assertThat(loaded.get(new Trips.TripAtStopTime(2, 2))).containsExactly(new Trips.TripAtStopTime(0, 1));
+        assertThat(loaded.get(new Trips.TripAtStopTime(2, 3))).isEmpty();
+        loaded.close();
+
+        // the trips changed
+        TripTransfersStore other = new TripTransfersStore(new GHDirectory(LOCATION, DAType.RAM_STORE), DAY, new int[]{0, 3});
+        assertThrows(IllegalStateException.class, other::loadExisting);
+    }
+
+    @Test
+    public void missingDay() {
+        GHDirectory dir = new GHDirectory(LOCATION, DAType.RAM_STORE);
+        dir.create();
+        TripTransfersStore store = new TripTransfersStore(dir, DAY, new int[]{0, 3});
+        assertFalse(store.loadExisting());
+        assertEquals(0, store.getTransferCount());
+        assertThat(store.get(new Trips.TripAtStopTime(0, 1))).isEmpty();
+    }
+}
@@ -20,8 +20,10 @@ package com.graphhopper;
 import com.graphhopper.util.PMap;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Wrapper containing path and error output of GraphHopper.
@@ -34,6 +36,8 @@ public class GHResponse {
     private PMap hintsMap = new PMap();
     private final List<ResponsePath> responsePaths = new ArrayList<>(5);
     private String debugInfo = "";
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private String algorithm = "";
 
     public GHResponse() {
     }
@@ -87,6 +91,34 @@ public class GHResponse {
         return str;
     }
 
+    /**
+     * Adds the duration of one phase of the calculation like snapping or the routing algorithm. The durations of the
+     * same phase are summed up, e.g. for the legs of a via route.
+     */
+    public GHResponse addTiming(String phase, long nanos) {
+        timings.merge(phase, nanos, Long::sum);
+        return this;
+    }
+
+    /**
+     * @return the durations in nanoseconds per phase, in the order the phases were added
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
+    public GHResponse setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+
+    /**
+     * @return the name of the routing algorithm that calculated the paths, e.g. dijkstrabi|ch, or an empty string
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
     /**
      * This method returns true if one of the paths has an error or if the response itself is
      * erroneous.
@@ -255,30 +255,7 @@ public class ResponsePathDeserializerHelper {
                 exClass = error.get("details").asText();
 
             String exMessage = error.get("message").asText();
-
-            if (exClass.equals(UnsupportedOperationException.class.getName()))
-                errors.add(new UnsupportedOperationException(exMessage));
-            else if (exClass.equals(IllegalStateException.class.getName()))
-                errors.add(new IllegalStateException(exMessage));
-            else if (exClass.equals(RuntimeException.class.getName()))
-                errors.add(new DetailedRuntimeException(exMessage, toMap(objectMapper, error)));
-            else if (exClass.equals(IllegalArgumentException.class.getName()))
-                errors.add(new DetailedIllegalArgumentException(exMessage, toMap(objectMapper, error)));
-            else if (exClass.equals(ConnectionNotFoundException.class.getName())) {
-                errors.add(new ConnectionNotFoundException(exMessage, toMap(objectMapper, error)));
-            } else if (exClass.equals(MaximumNodesExceededException.class.getName())) {
-                int maxVisitedNodes = error.get(MaximumNodesExceededException.NODES_KEY).asInt();
-                errors.add(new MaximumNodesExceededException(exMessage, maxVisitedNodes));
-            } else if (exClass.equals(PointNotFoundException.class.getName())) {
-                int pointIndex = error.get(PointNotFoundException.INDEX_KEY).asInt();
-                errors.add(new PointNotFoundException(exMessage, pointIndex));
-            } else if (exClass.equals(PointOutOfBoundsException.class.getName())) {
-                int pointIndex = error.get(PointNotFoundException.INDEX_KEY).asInt();
-                errors.add(new PointOutOfBoundsException(exMessage, pointIndex));
-            } else if (exClass.isEmpty())
-                errors.add(new DetailedRuntimeException(exMessage, toMap(objectMapper, error)));
-            else
-                errors.add(new DetailedRuntimeException(exClass + " " + exMessage, toMap(objectMapper, error)));
+            errors.add(createError(exClass, exMessage, toMap(objectMapper, error)));
         }
 
         if (json.has("message") && errors.isEmpty())
@@ -287,6 +264,35 @@ public class ResponsePathDeserializerHelper {
         return errors;
     }
 
+    /**
+     * Creates the exception for an error of the routing API, where exClass is the class name of the original
+     * exception (the "details" entry of the error) and details contains the other entries.
+     */
+    public static Throwable createError(String exClass, String exMessage, Map<String, Object> details) {
+        if (exClass.equals(UnsupportedOperationException.class.getName()))
+            return new UnsupportedOperationException(exMessage);
+        else if (exClass.equals(IllegalStateException.class.getName()))
+            return new IllegalStateException(exMessage);
+        else if (exClass.equals(RuntimeException.class.getName()))
+            return new DetailedRuntimeException(exMessage, details);
+        else if (exClass.equals(IllegalArgumentException.class.getName()))
+            return new DetailedIllegalArgumentException(exMessage, details);
+        else if (exClass.equals(ConnectionNotFoundException.class.getName()))
+            return new ConnectionNotFoundException(exMessage, details);
+        else if (exClass.equals(MaximumNodesExceededException.class.getName()))
+            return new MaximumNodesExceededException(exMessage, ((Number) details.get(MaximumNodesExceededException.NODES_KEY)).intValue());
+        else if (exClass.equals(DeadlineExceededException.class.getName()))
+            return new DeadlineExceededException(exMessage);
+        else if (exClass.equals(PointNotFoundException.class.getName()))
+            return new PointNotFoundException(exMessage, ((Number) details.get(PointNotFoundException.INDEX_KEY)).intValue());
+        else if (exClass.equals(PointOutOfBoundsException.class.getName()))
+            return new PointOutOfBoundsException(exMessage, ((Number) details.get(PointNotFoundException.INDEX_KEY)).intValue());
+        else if (exClass.isEmpty())
+            return new DetailedRuntimeException(exMessage, details);
+        else
+            return new DetailedRuntimeException(exClass + " " + exMessage, details);
+    }
+
     // Credits to: http://stackoverflow.com/a/24012023/194609
     private static Map<String, Object> toMap(ObjectMapper objectMapper, JsonNode object) {
         return objectMapper.convertValue(object, new TypeReference<Map<String, Object>>() {
@@ -18,6 +18,7 @@
 
 package com.graphhopper.jackson;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -26,9 +27,12 @@ import com.graphhopper.ResponsePath;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 
+import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Code which constructs the JSON response of the routing API, including polyline encoding.
@@ -43,45 +47,85 @@ import java.util.Locale;
 public class ResponsePathSerializer {
 
     public static String encodePolyline(PointList poly, boolean includeElevation, double multiplier) {
-        if (multiplier < 1)
-            throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline");
-
-        StringBuilder sb = new StringBuilder(Math.max(20, poly.size() * 3));
-        int size = poly.size();
-        int prevLat = 0;
-        int prevLon = 0;
-        int prevEle = 0;
-        for (int i = 0; i < size; i++) {
-            int num = (int) Math.round(poly.getLat(i) * multiplier);
-            encodeNumber(sb, num - prevLat);
-            prevLat = num;
-            num = (int) Math.round(poly.getLon(i) * multiplier);
-            encodeNumber(sb, num - prevLon);
-            prevLon = num;
-            if (includeElevation) {
-                num = (int) Math.round(poly.getEle(i) * 100);
-                encodeNumber(sb, num - prevEle);
-                prevEle = num;
+        PolylineBuffer buffer = new PolylineBuffer(Math.max(20, poly.size() * 3));
+        buffer.encode(poly, includeElevation, multiplier);
+        return buffer.toString();
+    }
+
+    /**
+     * A growable char array for the polyline encoding. Used to write the encoded points of all paths of a response
+     * into the JsonGenerator without creating a String for every polyline.
+     */
+    static final class PolylineBuffer {
+        private char[] chars;
+        private int length;
+
+        PolylineBuffer(int capacity) {
+            chars = new char[capacity];
+        }
+
+        void encode(PointList poly, boolean includeElevation, double multiplier) {
+            if (multiplier < 1)
+                throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + multiplier + " for polyline");
+
+            length = 0;
+            int size = poly.size();
+            int prevLat = 0;
+            int prevLon = 0;
+            int prevEle = 0;
+            for (int i = 0; i < size; i++) {
+                int num = (int) Math.round(poly.getLat(i) * multiplier);
+                encodeNumber(num - prevLat);
+                prevLat = num;
+                num = (int) Math.round(poly.getLon(i) * multiplier);
+                encodeNumber(num - prevLon);
+                prevLon = num;
+                if (includeElevation) {
+                    num = (int) Math.round(poly.getEle(i) * 100);
+                    encodeNumber(num - prevEle);
+                    prevEle = num;
+                }
             }
         }
-        return sb.toString();
-    }
 
-    private static void encodeNumber(StringBuilder sb, int num) {
-        num = num << 1;
-        if (num < 0) {
-            num = ~num;
+        private void encodeNumber(int num) {
+            num = num << 1;
+            if (num < 0) {
+                num = ~num;
+            }
+            while (num >= 0x20) {
+                int nextValue = (0x20 | (num & 0x1f)) + 63;
+                append((char) (nextValue));
+                num >>= 5;
+            }
+            num += 63;
+            append((char) (num));
         }
-        while (num >= 0x20) {
-            int nextValue = (0x20 | (num & 0x1f)) + 63;
-            sb.append((char) (nextValue));
-            num >>= 5;
+
+        private void append(char c) {
+            if (length == chars.length)
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            chars[length++] = c;
+        }
+
+        void writeTo(JsonGenerator gen) throws IOException {
+            gen.writeString(chars, 0, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
         }
-        num += 63;
-        sb.append((char) (num));
     }
 
-    public record Info(List<String> copyrights, long took, String roadDataTimestamp) {
+    /**
+     * @param timings the milliseconds per phase of the routing pipeline, see {@link GHResponse#getTimings()}. Only
+     *                set on request and omitted in the JSON if null.
+     */
+    public record Info(List<String> copyrights, long took, String roadDataTimestamp, Map<String, Double> timings) {
+        public Info(List<String> copyrights, long took, String roadDataTimestamp) {
+            this(copyrights, took, roadDataTimestamp, null);
+        }
     }
 
     public static ObjectNode jsonObject(GHResponse ghRsp, Info info, boolean enableInstructions,
@@ -122,4 +166,89 @@ public class ResponsePathSerializer {
         }
         return json;
     }
+
+    /**
+     * Writes the same JSON as {@link #jsonObject} directly into the specified generator, i.e. without building the
+     * intermediate tree, the LineString or a String per polyline. The codec of the generator is used for the hints,
+     * info, legs, instructions and path details, so it has to be the ObjectMapper that would serialize the tree.
+     */
+    public static void writeJson(JsonGenerator gen, GHResponse ghRsp, Info info, boolean enableInstructions,
+                                 boolean calcPoints, boolean enableElevation, boolean pointsEncoded, double pointsMultiplier) throws IOException {
+        PolylineBuffer buffer = pointsEncoded ? new PolylineBuffer(1024) : null;
+        gen.writeStartObject();
+        gen.writeObjectField("hints", ghRsp.getHints().toMap());
+        gen.writeObjectField("info", info);
+        gen.writeArrayFieldStart("paths");
+        for (ResponsePath p : ghRsp.getAll()) {
+            gen.writeStartObject();
+            gen.writeNumberField("distance", Helper.round(p.getDistance(), 3));
+            gen.writeNumberField("weight", Helper.round6(p.getRouteWeight()));
+            gen.writeNumberField("time", p.getTime());
+            gen.writeNumberField("transfers", p.getNumChanges());
+            gen.writeObjectField("legs", p.getLegs());
+            if (!p.getDescription().isEmpty()) {
+                gen.writeObjectField("description", p.getDescription());
+            }
+
+            // for points and snapped_waypoints:
+            gen.writeBooleanField("points_encoded", pointsEncoded);
+            if (pointsEncoded) gen.writeNumberField("points_encoded_multiplier", pointsMultiplier);
+
+            if (calcPoints) {
+                gen.writeObjectField("bbox", p.calcBBox2D());
+                gen.writeFieldName("points");
+                writePoints(gen, p.getPoints(), enableElevation, pointsMultiplier, buffer);
+                if (enableInstructions) {
+                    gen.writeObjectField("instructions", p.getInstructions());
+                }
+                gen.writeObjectField("details", p.getPathDetails());
+                gen.writeNumberField("ascend", p.getAscend());
+                gen.writeNumberField("descend", p.getDescend());
+            }
+            gen.writeFieldName("snapped_waypoints");
+            writePoints(gen, p.getWaypoints(), enableElevation, pointsMultiplier, buffer);
+            if (p.getFare() != null) {
+                gen.writeStringField("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(p.getFare()));
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the points either as encoded polyline (if buffer is not null) or like the GeoJSON LineString of
+     * {@link PointList#toLineString(boolean)}.
+     */
+    private static void writePoints(JsonGenerator gen, PointList points, boolean includeElevation, double multiplier,
+                                    PolylineBuffer buffer) throws IOException {
+        if (buffer != null) {
+            buffer.encode(points, includeElevation, multiplier);
+            buffer.writeTo(gen);
+            return;
+        }
+        gen.writeStartObject();
+        gen.writeStringField("type", "LineString");
+        gen.writeArrayFieldStart("coordinates");
+        for (int i = 0; i < points.size(); i++) {
+            writeCoordinate(gen, points, i, includeElevation);
+        }
+        // special case as just 1 point is not supported in the specification #1412
+        if (points.size() == 1)
+            writeCoordinate(gen, points, 0, includeElevation);
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeCoordinate(JsonGenerator gen, PointList points, int index, boolean includeElevation) throws IOException {
+        gen.writeStartArray();
+        gen.writeNumber(Helper.round6(points.getLon(index)));
+        gen.writeNumber(Helper.round6(points.getLat(index)));
+        if (includeElevation) {
+            double ele = Helper.round2(points.getEle(index));
+            if (!Double.isNaN(ele))
+                gen.writeNumber(ele);
+        }
+        gen.writeEndArray();
+    }
 }
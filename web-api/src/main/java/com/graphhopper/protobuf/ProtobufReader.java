@@ -0,0 +1,132 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.protobuf;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.graphhopper.protobuf.ProtobufWriter.*;
+
+/**
+ * Reads the protocol buffers wire format from a byte array. A nested message is read via a new reader for the same
+ * array, see {@link #readMessage()}.
+ */
+final class ProtobufReader {
+    private final byte[] bytes;
+    private final int limit;
+    private int pos;
+
+    ProtobufReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    private ProtobufReader(byte[] bytes, int pos, int limit) {
+        this.bytes = bytes;
+        this.pos = pos;
+        this.limit = limit;
+    }
+
+    boolean hasNext() {
+        return pos < limit;
+    }
+
+    /**
+     * @return the tag of the next field. Use tag >>> 3 for the field number and tag &amp; 7 for the wire type.
+     */
+    int readTag() {
+        return (int) readVarint();
+    }
+
+    long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit)
+                throw new IllegalStateException("Truncated message at " + pos);
+            byte b = bytes[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IllegalStateException("Malformed varint at " + pos);
+    }
+
+    long readSInt64() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    boolean readBool() {
+        return readVarint() != 0;
+    }
+
+    double readDouble() {
+        checkAvailable(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) (bytes[pos++] & 0xFF) << (8 * i);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    String readString() {
+        int length = readLength();
+        String str = new String(bytes, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return str;
+    }
+
+    /**
+     * Reads a nested message or a packed repeated field.
+     */
+    ProtobufReader readMessage() {
+        int length = readLength();
+        ProtobufReader reader = new ProtobufReader(bytes, pos, pos + length);
+        pos += length;
+        return reader;
+    }
+
+    void skip(int wireType) {
+        switch (wireType) {
+            case VARINT -> readVarint();
+            case FIXED64 -> {
+                checkAvailable(8);
+                pos += 8;
+            }
+            case LENGTH_DELIMITED -> {
+                int length = readLength();
+                pos += length;
+            }
+            case FIXED32 -> {
+                checkAvailable(4);
+                pos += 4;
+            }
+            default -> throw new IllegalStateException("Unsupported wire type " + wireType + " at " + pos);
+        }
+    }
+
+    private int readLength() {
+        long length = readVarint();
+        if (length < 0 || length > limit - pos)
+            throw new IllegalStateException("Truncated message at " + pos + ", length " + length);
+        return (int) length;
+    }
+
+    private void checkAvailable(int count) {
+        if (limit - pos < count)
+            throw new IllegalStateException("Truncated message at " + pos);
+    }
+}
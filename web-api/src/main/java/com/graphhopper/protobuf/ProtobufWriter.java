@@ -0,0 +1,148 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.protobuf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the protocol buffers wire format into a growable byte array. A nested message is written in place and its
+ * length prefix is inserted when the message is finished, so the size of a message never has to be calculated in
+ * advance.
+ */
+final class ProtobufWriter {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private byte[] bytes;
+    private int pos;
+
+    ProtobufWriter(int capacity) {
+        bytes = new byte[Math.max(16, capacity)];
+    }
+
+    void writeInt64(int field, long value) {
+        writeTag(field, VARINT);
+        writeRawVarint(value);
+    }
+
+    void writeSInt64(int field, long value) {
+        writeTag(field, VARINT);
+        writeRawSInt64(value);
+    }
+
+    void writeBool(int field, boolean value) {
+        writeTag(field, VARINT);
+        writeRawVarint(value ? 1 : 0);
+    }
+
+    void writeDouble(int field, double value) {
+        writeTag(field, FIXED64);
+        writeRawDouble(value);
+    }
+
+    /**
+     * Writes nothing if the value is null, which the reader interprets as the default value, i.e. the empty string.
+     */
+    void writeString(int field, String value) {
+        if (value == null)
+            return;
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeTag(field, LENGTH_DELIMITED);
+        writeRawVarint(utf8.length);
+        ensureCapacity(utf8.length);
+        System.arraycopy(utf8, 0, bytes, pos, utf8.length);
+        pos += utf8.length;
+    }
+
+    /**
+     * Starts a nested message or a packed repeated field. Write the content and then call {@link #endMessage} with the
+     * returned position.
+     */
+    int beginMessage(int field) {
+        writeTag(field, LENGTH_DELIMITED);
+        return pos;
+    }
+
+    void endMessage(int start) {
+        int length = pos - start;
+        int prefixLength = varintSize(length);
+        ensureCapacity(prefixLength);
+        System.arraycopy(bytes, start, bytes, start + prefixLength, length);
+        int end = pos + prefixLength;
+        pos = start;
+        writeRawVarint(length);
+        pos = end;
+    }
+
+    void writeRawSInt64(long value) {
+        writeRawVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeRawDouble(double value) {
+        ensureCapacity(8);
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            bytes[pos++] = (byte) bits;
+            bits >>>= 8;
+        }
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeRawVarint(((long) field << 3) | wireType);
+    }
+
+    private void writeRawVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (pos + additional > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + additional));
+    }
+
+    int size() {
+        return pos;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, pos);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, pos);
+    }
+}
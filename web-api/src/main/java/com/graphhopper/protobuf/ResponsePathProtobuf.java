@@ -0,0 +1,643 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.protobuf;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.Trip;
+import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.exceptions.GHException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Writes and reads the compact binary representation of the route response, the media type is {@link #MEDIA_TYPE}.
+ * It contains the same information as the JSON of {@link ResponsePathSerializer} but the points are always delta
+ * encoded integers (similar to the encoded polyline) and numbers are not converted to text. The message definitions
+ * are in com/graphhopper/protobuf/route.proto, which can be used to generate the classes for other languages.
+ */
+public class ResponsePathProtobuf {
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * Writes the RouteResponse message. The points are encoded with the specified multiplier (and elevation with 100)
+     * regardless of the points_encoded parameter of the request.
+     */
+    public static void write(OutputStream out, GHResponse ghRsp, ResponsePathSerializer.Info info, boolean enableInstructions,
+                             boolean calcPoints, boolean enableElevation, double pointsMultiplier) throws IOException {
+        if (pointsMultiplier < 1)
+            throw new IllegalArgumentException("multiplier cannot be smaller than 1 but was " + pointsMultiplier);
+
+        ProtobufWriter writer = new ProtobufWriter(4096);
+        for (ResponsePath path : ghRsp.getAll()) {
+            int start = writer.beginMessage(1);
+            writePath(writer, path, enableInstructions, calcPoints, enableElevation, pointsMultiplier);
+            writer.endMessage(start);
+        }
+
+        int start = writer.beginMessage(2);
+        for (String copyright : info.copyrights()) {
+            writer.writeString(1, copyright);
+        }
+        writer.writeInt64(2, info.took());
+        writer.writeString(3, info.roadDataTimestamp());
+        if (info.timings() != null)
+            writeEntries(writer, 4, info.timings());
+        writer.endMessage(start);
+
+        writeEntries(writer, 3, ghRsp.getHints().toMap());
+        writer.writeTo(out);
+    }
+
+    /**
+     * Writes a RouteResponse message that contains only the errors, like the JSON of the MultiException.
+     */
+    public static void writeErrors(OutputStream out, List<Throwable> errors) throws IOException {
+        if (errors.isEmpty())
+            throw new IllegalArgumentException("errors must not be empty");
+
+        ProtobufWriter writer = new ProtobufWriter(256);
+        writer.writeString(4, getMessage(errors.get(0)));
+        for (Throwable t : errors) {
+            int start = writer.beginMessage(5);
+            writer.writeString(1, getMessage(t));
+            writer.writeString(2, t.getClass().getName());
+            if (t instanceof GHException)
+                writeEntries(writer, 3, ((GHException) t).getDetails());
+            writer.endMessage(start);
+        }
+        writer.writeTo(out);
+    }
+
+    private static String getMessage(Throwable t) {
+        return t.getMessage() == null ? t.getClass().getSimpleName() : t.getMessage();
+    }
+
+    private static void writePath(ProtobufWriter writer, ResponsePath path, boolean enableInstructions,
+                                  boolean calcPoints, boolean enableElevation, double multiplier) {
+        writer.writeDouble(1, path.getDistance());
+        writer.writeDouble(2, path.getRouteWeight());
+        writer.writeInt64(3, path.getTime());
+        writer.writeInt64(4, path.getNumChanges());
+        for (String description : path.getDescription()) {
+            writer.writeString(5, description);
+        }
+
+        if (calcPoints) {
+            Envelope bbox = path.calcBBox2D();
+            int start = writer.beginMessage(6);
+            writer.writeRawDouble(bbox.getMinX());
+            writer.writeRawDouble(bbox.getMinY());
+            writer.writeRawDouble(bbox.getMaxX());
+            writer.writeRawDouble(bbox.getMaxY());
+            writer.endMessage(start);
+
+            writePoints(writer, 7, path.getPoints(), enableElevation, multiplier);
+            if (enableInstructions)
+                writeInstructions(writer, 9, path.getInstructions());
+            writeDetails(writer, 10, path.getPathDetails());
+            writer.writeDouble(11, path.getAscend());
+            writer.writeDouble(12, path.getDescend());
+        }
+        writePoints(writer, 8, path.getWaypoints(), enableElevation, multiplier);
+        for (Trip.Leg leg : path.getLegs()) {
+            int start = writer.beginMessage(13);
+            writeLeg(writer, leg, multiplier);
+            writer.endMessage(start);
+        }
+        if (path.getFare() != null)
+            writer.writeString(14, path.getFare().toPlainString());
+    }
+
+    private static void writePoints(ProtobufWriter writer, int field, PointList points, boolean includeElevation, double multiplier) {
+        int start = writer.beginMessage(field);
+        writer.writeDouble(1, multiplier);
+        writer.writeBool(2, includeElevation);
+        int coordinates = writer.beginMessage(3);
+        long prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < points.size(); i++) {
+            long lat = Math.round(points.getLat(i) * multiplier);
+            writer.writeRawSInt64(lat - prevLat);
+            prevLat = lat;
+            long lon = Math.round(points.getLon(i) * multiplier);
+            writer.writeRawSInt64(lon - prevLon);
+            prevLon = lon;
+            if (includeElevation) {
+                long ele = Math.round(points.getEle(i) * 100);
+                writer.writeRawSInt64(ele - prevEle);
+                prevEle = ele;
+            }
+        }
+        writer.endMessage(coordinates);
+        writer.endMessage(start);
+    }
+
+    private static void writeInstructions(ProtobufWriter writer, int field, InstructionList instructions) {
+        int pointsIndex = 0;
+        for (Instruction instruction : instructions) {
+            int start = writer.beginMessage(field);
+            writer.writeSInt64(1, instruction.getSign());
+            writer.writeString(2, Helper.firstBig(instruction.getTurnDescription(instructions.getTr())));
+            writer.writeString(3, instruction.getName());
+            writer.writeDouble(4, instruction.getDistance());
+            writer.writeInt64(5, instruction.getTime());
+            int tmpIndex = pointsIndex + instruction.getLength();
+            writer.writeInt64(6, pointsIndex);
+            writer.writeInt64(7, tmpIndex);
+            pointsIndex = tmpIndex;
+            writeEntries(writer, 8, instruction.getExtraInfoJSON());
+            writer.endMessage(start);
+        }
+    }
+
+    private static void writeDetails(ProtobufWriter writer, int field, Map<String, List<PathDetail>> details) {
+        for (Map.Entry<String, List<PathDetail>> entry : details.entrySet()) {
+            int start = writer.beginMessage(field);
+            writer.writeString(1, entry.getKey());
+            for (PathDetail pathDetail : entry.getValue()) {
+                int detail = writer.beginMessage(2);
+                writer.writeInt64(1, pathDetail.getFirst());
+                writer.writeInt64(2, pathDetail.getLast());
+                if (pathDetail.getValue() != null)
+                    writeValue(writer, 3, pathDetail.getValue());
+                writer.endMessage(detail);
+            }
+            writer.endMessage(start);
+        }
+    }
+
+    private static void writeLeg(ProtobufWriter writer, Trip.Leg leg, double multiplier) {
+        writer.writeString(1, leg.type);
+        writer.writeString(2, leg.departureLocation);
+        if (leg.geometry != null) {
+            PointList points = new PointList(leg.geometry.getNumPoints(), false);
+            for (Coordinate coordinate : leg.geometry.getCoordinates()) {
+                points.add(coordinate.y, coordinate.x);
+            }
+            writePoints(writer, 3, points, false, multiplier);
+        }
+        writer.writeDouble(4, leg.distance);
+        writeDate(writer, 5, leg.getDepartureTime());
+        writeDate(writer, 6, leg.getArrivalTime());
+        if (leg instanceof Trip.WalkLeg walkLeg) {
+            if (walkLeg.instructions != null)
+                writeInstructions(writer, 7, walkLeg.instructions);
+            if (walkLeg.details != null)
+                writeDetails(writer, 8, walkLeg.details);
+        } else if (leg instanceof Trip.PtLeg ptLeg) {
+            writer.writeString(9, ptLeg.feed_id);
+            writer.writeBool(10, ptLeg.isInSameVehicleAsPrevious);
+            writer.writeString(11, ptLeg.trip_headsign);
+            writer.writeInt64(12, ptLeg.travelTime);
+            for (Trip.Stop stop : ptLeg.stops) {
+                int start = writer.beginMessage(13);
+                writeStop(writer, stop);
+                writer.endMessage(start);
+            }
+            writer.writeString(14, ptLeg.trip_id);
+            writer.writeString(15, ptLeg.route_id);
+        }
+    }
+
+    private static void writeStop(ProtobufWriter writer, Trip.Stop stop) {
+        writer.writeString(1, stop.stop_id);
+        writer.writeInt64(2, stop.stop_sequence);
+        writer.writeString(3, stop.stop_name);
+        if (stop.geometry != null) {
+            writer.writeDouble(4, stop.geometry.getY());
+            writer.writeDouble(5, stop.geometry.getX());
+        }
+        writeDate(writer, 6, stop.arrivalTime);
+        writeDate(writer, 7, stop.plannedArrivalTime);
+        writeDate(writer, 8, stop.predictedArrivalTime);
+        writer.writeBool(9, stop.arrivalCancelled);
+        writeDate(writer, 10, stop.departureTime);
+        writeDate(writer, 11, stop.plannedDepartureTime);
+        writeDate(writer, 12, stop.predictedDepartureTime);
+        writer.writeBool(13, stop.departureCancelled);
+    }
+
+    private static void writeDate(ProtobufWriter writer, int field, Date date) {
+        if (date != null)
+            writer.writeInt64(field, date.getTime());
+    }
+
+    private static void writeEntries(ProtobufWriter writer, int field, Map<String, ?> map) {
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            int start = writer.beginMessage(field);
+            writer.writeString(1, entry.getKey());
+            if (entry.getValue() != null)
+                writeValue(writer, 2, entry.getValue());
+            writer.endMessage(start);
+        }
+    }
+
+    /**
+     * Writes the Value message. Null is an empty message, other objects than numbers, booleans, strings, maps and
+     * collections are written as string.
+     */
+    private static void writeValue(ProtobufWriter writer, int field, Object value) {
+        int start = writer.beginMessage(field);
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writer.writeSInt64(2, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            writer.writeDouble(1, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            writer.writeBool(3, (Boolean) value);
+        } else if (value instanceof Map<?, ?> map) {
+            int struct = writer.beginMessage(5);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                int entryStart = writer.beginMessage(1);
+                writer.writeString(1, String.valueOf(entry.getKey()));
+                if (entry.getValue() != null)
+                    writeValue(writer, 2, entry.getValue());
+                writer.endMessage(entryStart);
+            }
+            writer.endMessage(struct);
+        } else if (value instanceof Collection<?> collection) {
+            int list = writer.beginMessage(6);
+            for (Object o : collection) {
+                writeValue(writer, 1, o);
+            }
+            writer.endMessage(list);
+        } else if (value != null) {
+            writer.writeString(4, value.toString());
+        }
+        writer.endMessage(start);
+    }
+
+    /**
+     * Reads a RouteResponse message into the specified response. Errors are added like
+     * {@link ResponsePathDeserializerHelper#readErrors} does for the JSON.
+     *
+     * @param turnDescription if false the street name is used as name of the instructions instead of the text
+     */
+    public static GHResponse read(byte[] bytes, GHResponse rsp, boolean turnDescription) {
+        ProtobufReader reader = new ProtobufReader(bytes);
+        String message = null;
+        List<ResponsePath> paths = new ArrayList<>();
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> paths.add(readPath(reader.readMessage(), turnDescription));
+                case 3 -> {
+                    Map.Entry<String, Object> hint = readEntry(reader.readMessage());
+                    if (hint.getValue() != null)
+                        rsp.getHints().putObject(hint.getKey(), hint.getValue());
+                }
+                case 4 -> message = reader.readString();
+                case 5 -> rsp.addError(readError(reader.readMessage()));
+                default -> reader.skip(tag & 7);
+            }
+        }
+        if (message != null && !rsp.hasErrors())
+            rsp.addError(new RuntimeException(message));
+        if (rsp.hasErrors())
+            return rsp;
+        for (ResponsePath path : paths) {
+            rsp.add(path);
+        }
+        return rsp;
+    }
+
+    private static Throwable readError(ProtobufReader reader) {
+        String message = "", exClass = "";
+        Map<String, Object> details = new HashMap<>();
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> message = reader.readString();
+                case 2 -> exClass = reader.readString();
+                case 3 -> {
+                    Map.Entry<String, Object> entry = readEntry(reader.readMessage());
+                    details.put(entry.getKey(), entry.getValue());
+                }
+                default -> reader.skip(tag & 7);
+            }
+        }
+        return ResponsePathDeserializerHelper.createError(exClass, message, details);
+    }
+
+    private static ResponsePath readPath(ProtobufReader reader, boolean turnDescription) {
+        ResponsePath path = new ResponsePath();
+        List<String> description = new ArrayList<>();
+        List<ProtobufReader> instructions = new ArrayList<>();
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> path.setDistance(reader.readDouble());
+                case 2 -> path.setRouteWeight(reader.readDouble());
+                case 3 -> path.setTime(reader.readVarint());
+                case 4 -> path.setNumChanges((int) reader.readVarint());
+                case 5 -> description.add(reader.readString());
+                case 7 -> path.setPoints(readPoints(reader.readMessage()));
+                case 8 -> path.setWaypoints(readPoints(reader.readMessage()));
+                case 9 -> instructions.add(reader.readMessage());
+                case 10 -> readDetails(reader.readMessage(), details);
+                case 11 -> path.setAscend(reader.readDouble());
+                case 12 -> path.setDescend(reader.readDouble());
+                case 13 -> path.getLegs().add(readLeg(reader.readMessage(), turnDescription));
+                case 14 -> path.setFare(new BigDecimal(reader.readString()));
+                default -> reader.skip(tag & 7);
+            }
+        }
+        if (!description.isEmpty())
+            path.setDescription(description);
+        // the instructions reference the points, which could be written after them
+        if (!instructions.isEmpty())
+            path.setInstructions(readInstructions(instructions, path.getPoints(), turnDescription));
+        if (!details.isEmpty())
+            path.addPathDetails(details);
+
+        List<Integer> pointsOrder = new ArrayList<>(path.getWaypoints().size());
+        for (int i = 0; i < path.getWaypoints().size(); i++) {
+            pointsOrder.add(i);
+        }
+        path.setPointsOrder(pointsOrder);
+        return path;
+    }
+
+    private static PointList readPoints(ProtobufReader reader) {
+        double multiplier = 1e5;
+        boolean is3D = false;
+        ProtobufReader coordinates = null;
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> multiplier = reader.readDouble();
+                case 2 -> is3D = reader.readBool();
+                case 3 -> coordinates = reader.readMessage();
+                default -> reader.skip(tag & 7);
+            }
+        }
+        if (multiplier < 1)
+            throw new IllegalStateException("multiplier cannot be smaller than 1 but was " + multiplier);
+
+        PointList points = new PointList(10, is3D);
+        if (coordinates == null)
+            return points;
+        long lat = 0, lon = 0, ele = 0;
+        while (coordinates.hasNext()) {
+            lat += coordinates.readSInt64();
+            lon += coordinates.readSInt64();
+            if (is3D) {
+                ele += coordinates.readSInt64();
+                points.add(lat / multiplier, lon / multiplier, ele / 100.0);
+            } else {
+                points.add(lat / multiplier, lon / multiplier);
+            }
+        }
+        return points;
+    }
+
+    private static InstructionList readInstructions(List<ProtobufReader> messages, PointList points, boolean turnDescription) {
+        InstructionList instructions = new InstructionList(messages.size(), null);
+        int viaCount = 1;
+        for (ProtobufReader reader : messages) {
+            int sign = 0, from = 0, to = 0;
+            String text = "", streetName = "";
+            double distance = 0;
+            long time = 0;
+            Map<String, Object> extraInfo = new LinkedHashMap<>();
+            while (reader.hasNext()) {
+                int tag = reader.readTag();
+                switch (tag >>> 3) {
+                    case 1 -> sign = (int) reader.readSInt64();
+                    case 2 -> text = reader.readString();
+                    case 3 -> streetName = reader.readString();
+                    case 4 -> distance = reader.readDouble();
+                    case 5 -> time = reader.readVarint();
+                    case 6 -> from = (int) reader.readVarint();
+                    case 7 -> to = (int) reader.readVarint();
+                    case 8 -> {
+                        Map.Entry<String, Object> entry = readEntry(reader.readMessage());
+                        extraInfo.put(entry.getKey(), entry.getValue());
+                    }
+                    default -> reader.skip(tag & 7);
+                }
+            }
+
+            PointList instPL = new PointList(to - from, points.is3D());
+            for (int j = from; j <= to && j < points.size(); j++) {
+                instPL.add(points, j);
+            }
+            String name = turnDescription ? text : streetName;
+            Instruction instr;
+            if (sign == Instruction.USE_ROUNDABOUT || sign == Instruction.LEAVE_ROUNDABOUT) {
+                RoundaboutInstruction ri = new RoundaboutInstruction(sign, name, instPL);
+                if (extraInfo.get("exit_number") instanceof Number exitNumber)
+                    ri.setExitNumber(exitNumber.intValue());
+                if (Boolean.TRUE.equals(extraInfo.get("exited")))
+                    ri.setExited();
+                if (extraInfo.get("turn_angle") instanceof Number turnAngle) {
+                    double angle = turnAngle.doubleValue();
+                    ri.setDirOfRotation(angle);
+                    ri.setRadian((angle < 0 ? -Math.PI : Math.PI) - angle);
+                }
+                instr = ri;
+            } else if (sign == Instruction.REACHED_VIA) {
+                ViaInstruction viaInstruction = new ViaInstruction(name, instPL);
+                viaInstruction.setViaCount(viaCount);
+                viaCount++;
+                instr = viaInstruction;
+            } else if (sign == Instruction.FINISH) {
+                instr = new FinishInstruction(name, instPL, 0);
+            } else {
+                instr = new Instruction(sign, name, instPL);
+            }
+            if (!(instr instanceof RoundaboutInstruction))
+                extraInfo.forEach(instr::setExtraInfo);
+
+            // like for the JSON use the translated text from the server, see ResponsePathDeserializerHelper
+            if (turnDescription)
+                instr.setUseRawName();
+            instr.setDistance(distance).setTime(time);
+            instructions.add(instr);
+        }
+        return instructions;
+    }
+
+    private static void readDetails(ProtobufReader reader, Map<String, List<PathDetail>> details) {
+        String name = "";
+        List<PathDetail> list = new ArrayList<>();
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> name = reader.readString();
+                case 2 -> list.add(readPathDetail(reader.readMessage()));
+                default -> reader.skip(tag & 7);
+            }
+        }
+        details.put(name, list);
+    }
+
+    private static PathDetail readPathDetail(ProtobufReader reader) {
+        int first = 0, last = 0;
+        Object value = null;
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> first = (int) reader.readVarint();
+                case 2 -> last = (int) reader.readVarint();
+                case 3 -> value = readValue(reader.readMessage());
+                default -> reader.skip(tag & 7);
+            }
+        }
+        PathDetail pathDetail = new PathDetail(value);
+        pathDetail.setFirst(first);
+        pathDetail.setLast(last);
+        return pathDetail;
+    }
+
+    private static Trip.Leg readLeg(ProtobufReader reader, boolean turnDescription) {
+        String type = "", departureLocation = "", feedId = "", headsign = "", tripId = "", routeId = "";
+        PointList geometry = null;
+        double distance = 0;
+        Date departureTime = null, arrivalTime = null;
+        List<ProtobufReader> instructions = new ArrayList<>();
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        boolean isInSameVehicleAsPrevious = false;
+        long travelTime = 0;
+        List<Trip.Stop> stops = new ArrayList<>();
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> type = reader.readString();
+                case 2 -> departureLocation = reader.readString();
+                case 3 -> geometry = readPoints(reader.readMessage());
+                case 4 -> distance = reader.readDouble();
+                case 5 -> departureTime = new Date(reader.readVarint());
+                case 6 -> arrivalTime = new Date(reader.readVarint());
+                case 7 -> instructions.add(reader.readMessage());
+                case 8 -> readDetails(reader.readMessage(), details);
+                case 9 -> feedId = reader.readString();
+                case 10 -> isInSameVehicleAsPrevious = reader.readBool();
+                case 11 -> headsign = reader.readString();
+                case 12 -> travelTime = reader.readVarint();
+                case 13 -> stops.add(readStop(reader.readMessage()));
+                case 14 -> tripId = reader.readString();
+                case 15 -> routeId = reader.readString();
+                default -> reader.skip(tag & 7);
+            }
+        }
+        Geometry geom = null;
+        if (geometry != null)
+            // a LineString needs at least two points, so a single point was a Point before
+            geom = geometry.size() == 1
+                    ? geometryFactory.createPoint(new Coordinate(geometry.getLon(0), geometry.getLat(0)))
+                    : geometry.toLineString(false);
+        if ("pt".equals(type))
+            return new Trip.PtLeg(feedId, isInSameVehicleAsPrevious, tripId, routeId, headsign, stops, distance, travelTime, geom);
+        return new Trip.WalkLeg(departureLocation, departureTime, geom, distance,
+                readInstructions(instructions, geometry == null ? PointList.EMPTY : geometry, turnDescription), details, arrivalTime);
+    }
+
+    private static Trip.Stop readStop(ProtobufReader reader) {
+        String stopId = "", stopName = "";
+        int stopSequence = 0;
+        double lat = Double.NaN, lon = Double.NaN;
+        Date[] dates = new Date[6];
+        boolean arrivalCancelled = false, departureCancelled = false;
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            int field = tag >>> 3;
+            switch (field) {
+                case 1 -> stopId = reader.readString();
+                case 2 -> stopSequence = (int) reader.readVarint();
+                case 3 -> stopName = reader.readString();
+                case 4 -> lat = reader.readDouble();
+                case 5 -> lon = reader.readDouble();
+                case 6, 7, 8 -> dates[field - 6] = new Date(reader.readVarint());
+                case 9 -> arrivalCancelled = reader.readBool();
+                case 10, 11, 12 -> dates[field - 7] = new Date(reader.readVarint());
+                case 13 -> departureCancelled = reader.readBool();
+                default -> reader.skip(tag & 7);
+            }
+        }
+        return new Trip.Stop(stopId, stopSequence, stopName,
+                Double.isNaN(lat) ? null : geometryFactory.createPoint(new Coordinate(lon, lat)),
+                dates[0], dates[1], dates[2], arrivalCancelled, dates[3], dates[4], dates[5], departureCancelled);
+    }
+
+    private static Map.Entry<String, Object> readEntry(ProtobufReader reader) {
+        String key = "";
+        Object value = null;
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> key = reader.readString();
+                case 2 -> value = readValue(reader.readMessage());
+                default -> reader.skip(tag & 7);
+            }
+        }
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+
+    private static Object readValue(ProtobufReader reader) {
+        Object value = null;
+        while (reader.hasNext()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1 -> value = reader.readDouble();
+                case 2 -> value = reader.readSInt64();
+                case 3 -> value = reader.readBool();
+                case 4 -> value = reader.readString();
+                case 5 -> {
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    ProtobufReader struct = reader.readMessage();
+                    while (struct.hasNext()) {
+                        int entryTag = struct.readTag();
+                        if (entryTag >>> 3 == 1) {
+                            Map.Entry<String, Object> entry = readEntry(struct.readMessage());
+                            map.put(entry.getKey(), entry.getValue());
+                        } else {
+                            struct.skip(entryTag & 7);
+                        }
+                    }
+                    value = map;
+                }
+                case 6 -> {
+                    List<Object> list = new ArrayList<>();
+                    ProtobufReader listReader = reader.readMessage();
+                    while (listReader.hasNext()) {
+                        int valueTag = listReader.readTag();
+                        if (valueTag >>> 3 == 1)
+                            list.add(readValue(listReader.readMessage()));
+                        else
+                            listReader.skip(valueTag & 7);
+                    }
+                    value = list;
+                }
+                default -> reader.skip(tag & 7);
+            }
+        }
+        return value;
+    }
+}
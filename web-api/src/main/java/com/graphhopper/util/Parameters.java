@@ -99,6 +99,11 @@ public class Parameters {
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
         public static final String TIMEOUT_MS = "timeout_ms";
         public static final String INIT_TIMEOUT_MS = ROUTING_INIT_PREFIX + "timeout_ms";
+        /**
+         * the point in time in milliseconds since the epoch until which the request has to be finished. Together
+         * with timeout_ms it forms one time budget for snapping and all path calculations of the request.
+         */
+        public static final String DEADLINE = "deadline";
         /**
          * if true the response will contain turn instructions
          */
@@ -114,6 +119,10 @@ public class Parameters {
         public static final String WAY_POINT_MAX_DISTANCE = "way_point_max_distance";
         public static final String INIT_WAY_POINT_MAX_DISTANCE = ROUTING_INIT_PREFIX + "way_point_max_distance";
         public static final String ELEVATION_WAY_POINT_MAX_DISTANCE = "elevation_way_point_max_distance";
+        /**
+         * if true the info of the response will contain the milliseconds per phase of the routing pipeline
+         */
+        public static final String TIMINGS = "timings";
         /**
          * true or false. If routes at via points should avoid u-turns. (not for CH) See related
          * 'heading' parameter:
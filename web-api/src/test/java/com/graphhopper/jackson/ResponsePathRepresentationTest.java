@@ -17,10 +17,19 @@
  */
 package com.graphhopper.jackson;
 
-import com.graphhopper.util.Helper;
-import com.graphhopper.util.PointList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.*;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -79,4 +88,65 @@ public class ResponsePathRepresentationTest {
     public void testEncode1e6() {
         assertEquals("ohdfzAgt}bVoEL", ResponsePathSerializer.encodePolyline(Helper.createPointList(47.827608, 12.123476, 47.827712, 12.123469), false, 1e6));
     }
+
+    @Test
+    public void testWriteJsonEqualsTree() throws IOException {
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        ResponsePath path = new ResponsePath();
+        PointList points = Helper.createPointList3D(43.727687, 7.418737, 12.345, 43.73, 7.42, 15, 43.74958, 7.436566, 17.5);
+        path.setPoints(points);
+        path.setWaypoints(Helper.createPointList3D(43.727687, 7.418737, 12.345, 43.74958, 7.436566, 17.5));
+        path.setDistance(1234.56789).setTime(123456).setRouteWeight(99.1234567).setAscend(5.2).setDescend(0);
+        path.setDescription(List.of("some", "description"));
+        path.setFare(new BigDecimal("2.5"));
+        Translation tr = new Translation() {
+            @Override
+            public String tr(String key, Object... params) {
+                return key;
+            }
+
+            @Override
+            public Map<String, String> asMap() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return Locale.US;
+            }
+
+            @Override
+            public String getLanguage() {
+                return "en";
+            }
+        };
+        InstructionList instructions = new InstructionList(tr);
+        instructions.add(new Instruction(Instruction.CONTINUE_ON_STREET, "main street", points));
+        path.setInstructions(instructions);
+        PathDetail detail = new PathDetail("main street");
+        detail.setFirst(0);
+        detail.setLast(2);
+        path.addPathDetails(Map.of("street_name", List.of(detail)));
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        // a single point is written twice for GeoJSON
+        ResponsePath singlePoint = new ResponsePath().setPoints(Helper.createPointList(43.7, 7.4)).setWaypoints(Helper.createPointList(43.7, 7.4));
+        singlePoint.setInstructions(new InstructionList(tr));
+        rsp.add(singlePoint);
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper"), 7, "2024-01-01");
+
+        for (boolean encoded : new boolean[]{true, false}) {
+            for (boolean elevation : new boolean[]{true, false}) {
+                for (boolean calcPoints : new boolean[]{true, false}) {
+                    String expected = objectMapper.writeValueAsString(ResponsePathSerializer.jsonObject(rsp, info, true, calcPoints, elevation, encoded, 1e5));
+                    StringWriter writer = new StringWriter();
+                    try (JsonGenerator gen = objectMapper.createGenerator(writer)) {
+                        ResponsePathSerializer.writeJson(gen, rsp, info, true, calcPoints, elevation, encoded, 1e5);
+                    }
+                    assertEquals(expected, writer.toString(), "encoded: " + encoded + ", elevation: " + elevation + ", calcPoints: " + calcPoints);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,300 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.protobuf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnknownFieldSet;
+import com.graphhopper.GHResponse;
+import com.graphhopper.ResponsePath;
+import com.graphhopper.Trip;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponsePathProtobufTest {
+    private static final Translation tr = new Translation() {
+        @Override
+        public String tr(String key, Object... params) {
+            return key;
+        }
+
+        @Override
+        public Map<String, String> asMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Locale getLocale() {
+            return Locale.US;
+        }
+
+        @Override
+        public String getLanguage() {
+            return "en";
+        }
+    };
+    private static final ResponsePathSerializer.Info info = new ResponsePathSerializer.Info(List.of("GraphHopper"), 7, "2024-01-01");
+
+    private static GHResponse createResponse() {
+        ResponsePath path = new ResponsePath();
+        PointList points = Helper.createPointList3D(43.727687, 7.418737, 12.34, 43.73, 7.42, 15, 43.74958, 7.436566, 17.5);
+        path.setPoints(points);
+        path.setWaypoints(Helper.createPointList3D(43.727687, 7.418737, 12.34, 43.74958, 7.436566, 17.5));
+        path.setDistance(1234.56789).setTime(123456).setRouteWeight(99.1234567).setAscend(5.2).setDescend(0.5);
+        path.setDescription(List.of("some", "description"));
+        path.setFare(new BigDecimal("2.5"));
+        InstructionList instructions = new InstructionList(tr);
+        Instruction instruction = new Instruction(Instruction.TURN_LEFT, "main street", points.copy(0, 1));
+        instruction.setExtraInfo("street_ref", "B 1");
+        instruction.setDistance(1000.5).setTime(100000);
+        instructions.add(instruction);
+        RoundaboutInstruction roundabout = new RoundaboutInstruction(Instruction.USE_ROUNDABOUT, "ring", points.copy(1, 2));
+        roundabout.setExitNumber(2).setExited();
+        instructions.add(roundabout);
+        instructions.add(new FinishInstruction("end", points, 2));
+        path.setInstructions(instructions);
+
+        Map<String, List<PathDetail>> details = new HashMap<>();
+        details.put("street_name", List.of(createDetail("main street", 0, 1), createDetail(null, 1, 2)));
+        details.put("max_speed", List.of(createDetail(50.5, 0, 2)));
+        details.put("osm_way_id", List.of(createDetail(123456789012L, 0, 1), createDetail(-1, 1, 2)));
+        details.put("toll", List.of(createDetail(true, 0, 2)));
+        details.put("curvature", List.of(createDetail(Map.of("a", 1, "b", "x"), 0, 2)));
+        path.addPathDetails(details);
+
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        rsp.getHints().putObject("visited_nodes.sum", 42);
+        rsp.getHints().putObject("visited_nodes.average", 21.5);
+        return rsp;
+    }
+
+    private static PathDetail createDetail(Object value, int first, int last) {
+        PathDetail detail = new PathDetail(value);
+        detail.setFirst(first);
+        detail.setLast(last);
+        return detail;
+    }
+
+    private static byte[] write(GHResponse rsp, boolean instructions, boolean calcPoints, boolean elevation) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponsePathProtobuf.write(out, rsp, info, instructions, calcPoints, elevation, 1e6);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        GHResponse rsp = createResponse();
+        ResponsePath expected = rsp.getBest();
+        GHResponse result = ResponsePathProtobuf.read(write(rsp, true, true, true), new GHResponse(), true);
+        assertFalse(result.hasErrors(), result.getErrors().toString());
+        assertEquals(1, result.getAll().size());
+        ResponsePath path = result.getBest();
+        assertEquals(expected.getDistance(), path.getDistance());
+        assertEquals(expected.getRouteWeight(), path.getRouteWeight());
+        assertEquals(expected.getTime(), path.getTime());
+        assertEquals(expected.getAscend(), path.getAscend());
+        assertEquals(expected.getDescend(), path.getDescend());
+        assertEquals(expected.getDescription(), path.getDescription());
+        assertEquals(expected.getFare(), path.getFare());
+        assertEquals(expected.getPoints(), path.getPoints());
+        assertEquals(12.34, path.getPoints().getEle(0), 1e-9);
+        assertEquals(expected.getWaypoints(), path.getWaypoints());
+        assertEquals(List.of(0, 1), path.getPointsOrder());
+
+        InstructionList instructions = path.getInstructions();
+        assertEquals(3, instructions.size());
+        assertEquals(Helper.firstBig(expected.getInstructions().get(0).getTurnDescription(tr)), instructions.get(0).getTurnDescription(tr));
+        assertEquals(Instruction.TURN_LEFT, instructions.get(0).getSign());
+        assertEquals(1000.5, instructions.get(0).getDistance());
+        assertEquals(100000, instructions.get(0).getTime());
+        assertEquals("B 1", instructions.get(0).getExtraInfoJSON().get("street_ref"));
+        // like for the JSON the points of an instruction include the first point of the next instruction
+        assertEquals(Helper.createPointList3D(43.727687, 7.418737, 12.34, 43.73, 7.42, 15), instructions.get(0).getPoints());
+        RoundaboutInstruction roundabout = (RoundaboutInstruction) instructions.get(1);
+        assertEquals(2, roundabout.getExitNumber());
+        assertTrue(roundabout.isExited());
+        assertInstanceOf(FinishInstruction.class, instructions.get(2));
+
+        Map<String, List<PathDetail>> details = path.getPathDetails();
+        assertEquals(expected.getPathDetails().keySet(), details.keySet());
+        assertEquals("main street", details.get("street_name").get(0).getValue());
+        assertNull(details.get("street_name").get(1).getValue());
+        assertEquals(1, details.get("street_name").get(1).getFirst());
+        assertEquals(2, details.get("street_name").get(1).getLast());
+        assertEquals(50.5, details.get("max_speed").get(0).getValue());
+        assertEquals(123456789012L, details.get("osm_way_id").get(0).getValue());
+        assertEquals(-1L, details.get("osm_way_id").get(1).getValue());
+        assertEquals(true, details.get("toll").get(0).getValue());
+        assertEquals(Map.of("a", 1L, "b", "x"), details.get("curvature").get(0).getValue());
+
+        assertEquals(42L, result.getHints().getLong("visited_nodes.sum", 0));
+        assertEquals(21.5, result.getHints().getDouble("visited_nodes.average", 0));
+
+        // the street name is used without turn description
+        result = ResponsePathProtobuf.read(write(rsp, true, true, true), new GHResponse(), false);
+        assertEquals("main street", result.getBest().getInstructions().get(0).getName());
+    }
+
+    @Test
+    public void testWithoutPoints() throws IOException {
+        GHResponse rsp = createResponse();
+        ResponsePath path = ResponsePathProtobuf.read(write(rsp, false, false, false), new GHResponse(), true).getBest();
+        assertTrue(path.getPoints().isEmpty());
+        assertTrue(path.getPathDetails().isEmpty());
+        assertThrows(IllegalArgumentException.class, path::getInstructions);
+        assertEquals(Helper.createPointList(43.727687, 7.418737, 43.74958, 7.436566), path.getWaypoints());
+        assertEquals(1234.56789, path.getDistance());
+
+        path = ResponsePathProtobuf.read(write(rsp, false, true, false), new GHResponse(), true).getBest();
+        assertEquals(3, path.getPoints().size());
+        assertFalse(path.getPoints().is3D());
+        assertThrows(IllegalArgumentException.class, path::getInstructions);
+    }
+
+    @Test
+    public void testValidMessage() throws IOException {
+        byte[] bytes = write(createResponse(), true, true, false);
+        UnknownFieldSet response = UnknownFieldSet.parseFrom(bytes);
+        assertEquals(1, response.getField(1).getLengthDelimitedList().size());
+        assertEquals(2, response.getField(3).getLengthDelimitedList().size());
+        UnknownFieldSet infoMessage = UnknownFieldSet.parseFrom(response.getField(2).getLengthDelimitedList().get(0));
+        assertEquals("GraphHopper", infoMessage.getField(1).getLengthDelimitedList().get(0).toStringUtf8());
+        assertEquals(List.of(7L), infoMessage.getField(2).getVarintList());
+
+        UnknownFieldSet path = UnknownFieldSet.parseFrom(response.getField(1).getLengthDelimitedList().get(0));
+        assertEquals(1234.56789, Double.longBitsToDouble(path.getField(1).getFixed64List().get(0)));
+        assertEquals(3, path.getField(9).getLengthDelimitedList().size());
+        assertEquals(5, path.getField(10).getLengthDelimitedList().size());
+        CodedInputStream bbox = path.getField(6).getLengthDelimitedList().get(0).newCodedInput();
+        assertEquals(7.418737, bbox.readDouble());
+        assertEquals(43.727687, bbox.readDouble());
+
+        UnknownFieldSet points = UnknownFieldSet.parseFrom(path.getField(7).getLengthDelimitedList().get(0));
+        assertEquals(1e6, Double.longBitsToDouble(points.getField(1).getFixed64List().get(0)));
+        CodedInputStream coordinates = points.getField(3).getLengthDelimitedList().get(0).newCodedInput();
+        long lat = 0, lon = 0;
+        List<String> decoded = new ArrayList<>();
+        while (!coordinates.isAtEnd()) {
+            lat += coordinates.readSInt64();
+            lon += coordinates.readSInt64();
+            decoded.add(lat + "," + lon);
+        }
+        assertEquals(List.of("43727687,7418737", "43730000,7420000", "43749580,7436566"), decoded);
+
+        UnknownFieldSet instruction = UnknownFieldSet.parseFrom(path.getField(9).getLengthDelimitedList().get(0));
+        assertEquals(Instruction.TURN_LEFT, CodedInputStream.decodeZigZag64(instruction.getField(1).getVarintList().get(0)));
+        ByteString text = instruction.getField(2).getLengthDelimitedList().get(0);
+        assertEquals("main street", instruction.getField(3).getLengthDelimitedList().get(0).toStringUtf8());
+        assertFalse(text.isEmpty());
+
+        // much smaller than the JSON
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        byte[] json = objectMapper.writeValueAsBytes(ResponsePathSerializer.jsonObject(createResponse(), info, true, true, false, true, 1e6));
+        assertTrue(bytes.length < json.length * 0.7, bytes.length + " vs. " + json.length);
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponsePathProtobuf.writeErrors(out, List.of(new PointNotFoundException("Cannot find point 1", 1), new IllegalStateException()));
+        GHResponse rsp = ResponsePathProtobuf.read(out.toByteArray(), new GHResponse(), true);
+        assertEquals(2, rsp.getErrors().size());
+        PointNotFoundException ex = assertInstanceOf(PointNotFoundException.class, rsp.getErrors().get(0));
+        assertEquals("Cannot find point 1", ex.getMessage());
+        assertEquals(1, ex.getPointIndex());
+        assertInstanceOf(IllegalStateException.class, rsp.getErrors().get(1));
+        assertEquals("IllegalStateException", rsp.getErrors().get(1).getMessage());
+        assertTrue(rsp.getAll().isEmpty());
+
+        IllegalStateException truncated = assertThrows(IllegalStateException.class,
+                () -> ResponsePathProtobuf.read(Arrays.copyOf(write(createResponse(), true, true, false), 100), new GHResponse(), true));
+        assertTrue(truncated.getMessage().startsWith("Truncated message"), truncated.getMessage());
+    }
+
+    @Test
+    public void testLegs() throws IOException {
+        GeometryFactory geometryFactory = new GeometryFactory();
+        LineString walkGeometry = geometryFactory.createLineString(new Coordinate[]{new Coordinate(7.41, 43.72), new Coordinate(7.42, 43.73)});
+        InstructionList walkInstructions = new InstructionList(tr);
+        walkInstructions.add(new Instruction(Instruction.CONTINUE_ON_STREET, "path", PointList.fromLineString(walkGeometry)));
+        Trip.WalkLeg walkLeg = new Trip.WalkLeg("start", new Date(1000), walkGeometry, 100.5, walkInstructions, Map.of(), new Date(61000));
+        Trip.Stop first = new Trip.Stop("s1", 0, "First", geometryFactory.createPoint(new Coordinate(7.42, 43.73)),
+                null, null, null, false, new Date(120000), new Date(120000), null, false);
+        Trip.Stop last = new Trip.Stop("s2", 1, "Last", geometryFactory.createPoint(new Coordinate(7.43, 43.74)),
+                new Date(300000), new Date(240000), new Date(300000), false, null, null, null, true);
+        LineString ptGeometry = geometryFactory.createLineString(new Coordinate[]{new Coordinate(7.42, 43.73), new Coordinate(7.43, 43.74)});
+        Trip.PtLeg ptLeg = new Trip.PtLeg("feed", true, "trip", "route", "Downtown", List.of(first, last), 2000, 180000, ptGeometry);
+
+        ResponsePath path = new ResponsePath().setWaypoints(Helper.createPointList(43.72, 7.41, 43.74, 7.43));
+        path.setNumChanges(1);
+        path.getLegs().add(walkLeg);
+        path.getLegs().add(ptLeg);
+        path.setPoints(Helper.createPointList(43.72, 7.41, 43.73, 7.42, 43.74, 7.43));
+        path.setInstructions(new InstructionList(tr));
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+
+        ResponsePath result = ResponsePathProtobuf.read(write(rsp, false, true, false), new GHResponse(), true).getBest();
+        assertEquals(1, result.getNumChanges());
+        assertEquals(2, result.getLegs().size());
+        Trip.WalkLeg walk = assertInstanceOf(Trip.WalkLeg.class, result.getLegs().get(0));
+        assertEquals("walk", walk.type);
+        assertEquals("start", walk.departureLocation);
+        assertEquals(walkGeometry, walk.geometry);
+        assertEquals(100.5, walk.distance);
+        assertEquals(new Date(1000), walk.getDepartureTime());
+        assertEquals(new Date(61000), walk.getArrivalTime());
+        assertEquals(1, walk.instructions.size());
+        assertEquals(Helper.firstBig(walkInstructions.get(0).getTurnDescription(tr)), walk.instructions.get(0).getTurnDescription(tr));
+
+        Trip.PtLeg pt = assertInstanceOf(Trip.PtLeg.class, result.getLegs().get(1));
+        assertEquals("pt", pt.type);
+        assertEquals("First", pt.departureLocation);
+        assertEquals(ptGeometry, pt.geometry);
+        assertEquals("feed", pt.feed_id);
+        assertTrue(pt.isInSameVehicleAsPrevious);
+        assertEquals("trip", pt.trip_id);
+        assertEquals("route", pt.route_id);
+        assertEquals("Downtown", pt.trip_headsign);
+        assertEquals(180000, pt.travelTime);
+        assertEquals(2, pt.stops.size());
+        assertEquals(first.toString(), pt.stops.get(0).toString());
+        assertEquals(first.geometry, pt.stops.get(0).geometry);
+        assertNull(pt.stops.get(0).arrivalTime);
+        assertEquals(new Date(120000), pt.getDepartureTime());
+        assertEquals(new Date(300000), pt.getArrivalTime());
+        assertEquals(new Date(240000), pt.stops.get(1).plannedArrivalTime);
+        assertTrue(pt.stops.get(1).departureCancelled);
+    }
+}
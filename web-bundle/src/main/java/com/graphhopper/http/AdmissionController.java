@@ -0,0 +1,233 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
+
+/**
+ * Decides before the CPU bound work of a request whether it is cheap or expensive. Cheap requests run in the calling
+ * thread and are only limited by the {@link EndpointLimiter}, so they keep the full throughput of the server. Expensive
+ * requests run in a lane with a fixed number of threads and a bounded queue and do not block the calling thread: the
+ * resources suspend their response and resume it when the returned future completes. This way a few long flexible or
+ * LM routes or large isochrones can neither occupy all Jetty threads nor stall the cheap CH requests. If the queue of
+ * the lane is full the request is rejected with an {@link OverloadedException} instead of waiting until it times out.
+ * An expensive route can optionally be degraded instead, i.e. it runs in the calling thread with a lower
+ * max_visited_nodes.
+ * <p>
+ * The cost of a route is the beeline distance of the points in km times a factor for the algorithm that the Router
+ * will use for the profile: 1 for CH, 20 for LM and 100 for the flexible mode. Alternative routes count twice. The cost
+ * of a search that explores everything within a radius, like an isochrone, is the radius in km times the factor of the
+ * flexible mode.
+ * <p>
+ * Admission control is disabled by default and then every request runs in the calling thread.
+ */
+public class AdmissionController implements Managed {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+    static final double CH_FACTOR = 1;
+    static final double LM_FACTOR = 20;
+    static final double FLEXIBLE_FACTOR = 100;
+    /**
+     * The speed that converts a time limit of a search into its radius
+     */
+    public static final double SEARCH_SPEED_KMH = 100;
+
+    private final boolean enabled;
+    private final double expensiveCost;
+    private final int degradedMaxVisitedNodes;
+    private final EndpointLimiter endpointLimiter;
+    private final ThreadPoolExecutor expensiveLane;
+    private final Meter rejected;
+    private final Meter degraded;
+
+    public AdmissionController(GraphHopperConfig config, EndpointLimiter endpointLimiter, MetricRegistry metrics) {
+        this.endpointLimiter = endpointLimiter;
+        enabled = config.getBool("admission.enabled", false);
+        expensiveCost = config.getDouble("admission.expensive_cost", 1_000);
+        degradedMaxVisitedNodes = config.getInt("admission.degraded_max_visited_nodes", 0);
+        if (enabled) {
+            int threads = config.getInt("admission.expensive.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 4));
+            int queueSize = config.getInt("admission.expensive.queue", 10);
+            if (threads < 1)
+                throw new IllegalArgumentException("admission.expensive.threads must be positive but was " + threads);
+            if (queueSize < 0)
+                throw new IllegalArgumentException("admission.expensive.queue must not be negative but was " + queueSize);
+            AtomicInteger counter = new AtomicInteger();
+            expensiveLane = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    queueSize == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueSize), r -> {
+                Thread thread = new Thread(r, "gh-admission-expensive-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            rejected = metrics.meter(name("admission", "expensive", "rejected"));
+            degraded = metrics.meter(name("admission", "degraded"));
+            metrics.register(name("admission", "expensive", "queued"), (Gauge<Integer>) () -> expensiveLane.getQueue().size());
+            metrics.register(name("admission", "expensive", "active"), (Gauge<Integer>) expensiveLane::getActiveCount);
+        } else {
+            expensiveLane = null;
+            rejected = null;
+            degraded = null;
+        }
+    }
+
+    /**
+     * @return the response of {@link GraphHopper#route}. The future is already completed if the route was calculated
+     * in the calling thread.
+     */
+    public CompletableFuture<GHResponse> route(GraphHopper graphHopper, GHRequest request) {
+        double cost = enabled ? estimateCost(graphHopper, request) : 0;
+        return submit(EndpointLimiter.ROUTE, cost, () -> graphHopper.route(request),
+                () -> graphHopper.route(degrade(request, degradedMaxVisitedNodes)));
+    }
+
+    /**
+     * Runs the CPU bound work of a request of the specified endpoint, in the calling thread if it is cheap and in the
+     * expensive lane otherwise.
+     *
+     * @return the result of the task or a future that completed exceptionally, e.g. with an
+     * {@link OverloadedException}
+     */
+    public <T> CompletableFuture<T> submit(String endpoint, double cost, Supplier<T> task) {
+        return submit(endpoint, cost, task, null);
+    }
+
+    private <T> CompletableFuture<T> submit(String endpoint, double cost, Supplier<T> task, Supplier<T> degradedTask) {
+        if (!enabled || cost < expensiveCost)
+            return runInCallingThread(endpoint, task);
+        try {
+            return CompletableFuture.supplyAsync(task, expensiveLane);
+        } catch (RejectedExecutionException ex) {
+            if (degradedTask != null && degradedMaxVisitedNodes > 0) {
+                degraded.mark();
+                logger.info("expensive lane is full, degraded " + endpoint + " request with cost " + Math.round(cost) + " to " + MAX_VISITED_NODES + "=" + degradedMaxVisitedNodes);
+                return runInCallingThread(endpoint, degradedTask);
+            }
+            rejected.mark();
+            return CompletableFuture.failedFuture(new OverloadedException("Too many expensive requests, try again later"));
+        }
+    }
+
+    private <T> CompletableFuture<T> runInCallingThread(String endpoint, Supplier<T> task) {
+        try {
+            endpointLimiter.acquire(endpoint);
+            try {
+                return CompletableFuture.completedFuture(task.get());
+            } finally {
+                endpointLimiter.release(endpoint);
+            }
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * @return a copy of the request with at most the specified max_visited_nodes. The hints of the request itself are
+     * not changed as the resources still read them when they create the response.
+     */
+    static GHRequest degrade(GHRequest request, int maxVisitedNodes) {
+        GHRequest copy = new GHRequest(request.getPoints()).
+                setProfile(request.getProfile()).
+                setAlgorithm(request.getAlgorithm()).
+                setLocale(request.getLocale()).
+                setCustomModel(request.getCustomModel()).
+                setHeadings(request.getHeadings()).
+                setPointHints(request.getPointHints()).
+                setCurbsides(request.getCurbsides()).
+                setPathDetails(request.getPathDetails());
+        if (request.hasSnapPreventions())
+            copy.setSnapPreventions(request.getSnapPreventions());
+        PMap hints = copy.getHints().putAll(request.getHints());
+        hints.putObject(MAX_VISITED_NODES, Math.min(maxVisitedNodes, hints.getInt(MAX_VISITED_NODES, Integer.MAX_VALUE)));
+        return copy;
+    }
+
+    /**
+     * @return the approximate cost of the request, requests with a cost of at least admission.expensive_cost run in
+     * the expensive lane
+     */
+    double estimateCost(GraphHopper graphHopper, GHRequest request) {
+        PMap hints = request.getHints();
+        double km;
+        if (Parameters.Algorithms.ROUND_TRIP.equals(request.getAlgorithm())) {
+            km = hints.getDouble(Parameters.Algorithms.RoundTrip.DISTANCE, 10_000) / 1000;
+        } else {
+            km = 0;
+            List<GHPoint> points = request.getPoints();
+            for (int i = 1; i < points.size(); i++) {
+                GHPoint from = points.get(i - 1), to = points.get(i);
+                km += DistanceCalcEarth.DIST_EARTH.calcDist(from.lat, from.lon, to.lat, to.lon) / 1000;
+            }
+        }
+        if (Parameters.Algorithms.ALT_ROUTE.equals(request.getAlgorithm()))
+            km *= 2;
+        return km * getFactor(graphHopper, request);
+    }
+
+    /**
+     * @return the approximate cost of a flexible search that explores everything within the specified radius, e.g.
+     * for an isochrone
+     */
+    public static double estimateSearchCost(double radiusInKm) {
+        return radiusInKm * FLEXIBLE_FACTOR;
+    }
+
+    private static double getFactor(GraphHopper graphHopper, GHRequest request) {
+        String profile = request.getProfile();
+        PMap hints = request.getHints();
+        if (!hints.getBool(Parameters.CH.DISABLE, false) && request.getCustomModel() == null
+                && graphHopper.getCHPreparationHandler().getCHProfiles().stream().map(CHProfile::getProfile).anyMatch(profile::equals))
+            return CH_FACTOR;
+        if (!hints.getBool(Parameters.Landmark.DISABLE, false)
+                && graphHopper.getLMPreparationHandler().getLMProfiles().stream().map(LMProfile::getProfile).anyMatch(profile::equals))
+            return LM_FACTOR;
+        return FLEXIBLE_FACTOR;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        if (enabled)
+            expensiveLane.shutdownNow();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.DataAccessStats;
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Registers gauges for the capacity, heap, mapped and resident bytes of every DataAccess of the graph. As sampling
+ * the resident pages is not free the statistics are cached for one minute. DataAccess objects that are opened later,
+ * e.g. lazily loaded CH and LM preparations, get their gauges the next time the statistics are loaded.
+ */
+public class DataAccessMetrics implements Managed {
+
+    private final GraphHopperManaged graphHopperManaged;
+    private final MetricRegistry metrics;
+    private final List<String> registeredNames = new ArrayList<>();
+    private final Set<String> registeredDAs = new HashSet<>();
+    private CachedGauge<Map<String, DataAccessStats>> stats;
+
+    public DataAccessMetrics(GraphHopperManaged graphHopperManaged, MetricRegistry metrics) {
+        this.graphHopperManaged = graphHopperManaged;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void start() {
+        stats = new CachedGauge<>(1, TimeUnit.MINUTES) {
+            @Override
+            protected Map<String, DataAccessStats> loadValue() {
+                GraphHopper graphHopper = graphHopperManaged.acquire();
+                Map<String, DataAccessStats> map;
+                try {
+                    map = DataAccessStats.of(graphHopper.getBaseGraph().getDirectory(), DataAccessStatsServlet.DEFAULT_SAMPLES).
+                            stream().collect(Collectors.toMap(DataAccessStats::getName, s -> s));
+                } finally {
+                    graphHopperManaged.release(graphHopper);
+                }
+                registerGauges(map.keySet());
+                return map;
+            }
+        };
+        // after a reload the graph could contain other DataAccess objects, but usually it is prepared with the same config
+        registerGauges(graphHopperManaged.getGraphHopper().getBaseGraph().getDirectory().getDAs().keySet());
+    }
+
+    private synchronized void registerGauges(Collection<String> daNames) {
+        for (String daName : daNames) {
+            if (!registeredDAs.add(daName))
+                continue;
+            register(daName, "capacity", DataAccessStats::getCapacity);
+            register(daName, "heap_bytes", DataAccessStats::getHeapBytes);
+            register(daName, "mapped_bytes", DataAccessStats::getMappedBytes);
+            register(daName, "resident_bytes", DataAccessStats::getResidentBytes);
+        }
+    }
+
+    private void register(String daName, String metric, ToLongFunction<DataAccessStats> getter) {
+        String name = name("graphhopper", "data_access", daName, metric);
+        metrics.register(name, (Gauge<Long>) () -> {
+            DataAccessStats s = stats.getValue().get(daName);
+            return s == null ? 0L : getter.applyAsLong(s);
+        });
+        registeredNames.add(name);
+    }
+
+    @Override
+    public synchronized void stop() {
+        registeredNames.forEach(metrics::remove);
+        registeredNames.clear();
+        registeredDAs.clear();
+    }
+}
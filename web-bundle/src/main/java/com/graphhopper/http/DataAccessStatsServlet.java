@@ -0,0 +1,77 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.DataAccessStats;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Lists the memory usage of all DataAccess objects of the current graph for the admin port, e.g.
+ * <pre>curl 'localhost:8990/data-access?samples=64'</pre>
+ * The samples parameter specifies the maximum number of pages per segment that are checked to estimate the resident
+ * memory of memory mapped files. Use type=text to get the table that is also logged at startup.
+ */
+public class DataAccessStatsServlet extends HttpServlet {
+
+    static final int DEFAULT_SAMPLES = 64;
+    private final GraphHopperManaged graphHopperManaged;
+    private final ObjectMapper objectMapper;
+
+    public DataAccessStatsServlet(GraphHopperManaged graphHopperManaged, ObjectMapper objectMapper) {
+        this.graphHopperManaged = graphHopperManaged;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        int samples;
+        try {
+            samples = req.getParameter("samples") == null ? DEFAULT_SAMPLES : Integer.parseInt(req.getParameter("samples"));
+        } catch (NumberFormatException ex) {
+            samples = -1;
+        }
+        if (samples <= 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "samples must be a positive integer");
+            return;
+        }
+
+        List<DataAccessStats> stats;
+        GraphHopper graphHopper = graphHopperManaged.acquire();
+        try {
+            stats = DataAccessStats.of(graphHopper.getBaseGraph().getDirectory(), samples);
+        } finally {
+            graphHopperManaged.release(graphHopper);
+        }
+        resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        if ("text".equals(req.getParameter("type"))) {
+            resp.setContentType("text/plain");
+            resp.getWriter().print(DataAccessStats.toTable(stats));
+        } else {
+            resp.setContentType("application/json");
+            objectMapper.writeValue(resp.getOutputStream(), stats);
+        }
+    }
+}
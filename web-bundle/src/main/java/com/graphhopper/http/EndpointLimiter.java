@@ -0,0 +1,111 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GraphHopperConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Limits the number of requests per endpoint that do CPU bound work at the same time. This is mainly useful together
+ * with virtual threads (server.enable_virtual_threads, requires Java 21): then Jetty no longer limits the concurrent
+ * requests and requests that wait for I/O, e.g. for page faults of memory mapped files, do not block a platform
+ * thread. Only the CPU heavy part of a request is guarded by a fair semaphore with
+ * endpoint_limit.&lt;endpoint&gt;.permits permits, by default the number of processors. A request that does not get a
+ * permit within endpoint_limit.max_wait_ms is rejected with an {@link OverloadedException}.
+ * <p>
+ * The limits are disabled by default, see endpoint_limit.enabled. Use {@link #acquire} and {@link #release} in a
+ * try-finally block. For /route and /isochrone the {@link AdmissionController} acquires the permits for the requests
+ * that it runs in the calling thread, its expensive lane is not limited a second time.
+ */
+public class EndpointLimiter {
+
+    public static final String ROUTE = "route";
+    public static final String ISOCHRONE = "isochrone";
+    public static final String MATCH = "match";
+
+    private final boolean enabled;
+    private final long maxWaitMillis;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public EndpointLimiter(GraphHopperConfig config, MetricRegistry metrics) {
+        enabled = config.getBool("endpoint_limit.enabled", false);
+        maxWaitMillis = config.getLong("endpoint_limit.max_wait_ms", 10_000);
+        if (enabled) {
+            int processors = Runtime.getRuntime().availableProcessors();
+            for (String endpoint : new String[]{ROUTE, ISOCHRONE, MATCH}) {
+                limits.put(endpoint, new Limit(endpoint, config.getInt("endpoint_limit." + endpoint + ".permits", processors), metrics));
+            }
+        }
+    }
+
+    /**
+     * Blocks until the calling request may do the CPU bound work of the specified endpoint.
+     *
+     * @throws OverloadedException if no permit was available within endpoint_limit.max_wait_ms
+     */
+    public void acquire(String endpoint) {
+        if (!enabled)
+            return;
+        Limit limit = getLimit(endpoint);
+        try {
+            if (!limit.semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                limit.rejected.mark();
+                throw new OverloadedException("Too many concurrent " + endpoint + " requests, try again later");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a permit for " + endpoint, ex);
+        }
+    }
+
+    public void release(String endpoint) {
+        if (!enabled)
+            return;
+        getLimit(endpoint).semaphore.release();
+    }
+
+    private Limit getLimit(String endpoint) {
+        Limit limit = limits.get(endpoint);
+        if (limit == null)
+            throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+        return limit;
+    }
+
+    private static class Limit {
+        final Semaphore semaphore;
+        final Meter rejected;
+
+        Limit(String endpoint, int permits, MetricRegistry metrics) {
+            if (permits < 1)
+                throw new IllegalArgumentException("endpoint_limit." + endpoint + ".permits must be positive but was " + permits);
+            semaphore = new Semaphore(permits, true);
+            rejected = metrics.meter(name(endpoint, "limit", "rejected"));
+            metrics.register(name(endpoint, "limit", "waiting"), (Gauge<Integer>) semaphore::getQueueLength);
+            metrics.register(name(endpoint, "limit", "active"), (Gauge<Integer>) () -> permits - semaphore.availablePermits());
+        }
+    }
+}
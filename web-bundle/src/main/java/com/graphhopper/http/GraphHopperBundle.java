@@ -44,9 +44,30 @@ import jakarta.inject.Singleton;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    /**
+     * Provides the current GraphHopper instance for one request and keeps it open until the request is finished,
+     * even if the graph is reloaded in the meantime.
+     */
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Override
+        public GraphHopper provide() {
+            return graphHopperManaged.acquire();
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+            graphHopperManaged.release(instance);
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -143,9 +164,17 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
     }
 
     static class GHRequestTransformerFactory implements Factory<GHRequestTransformer> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
         @Override
         public GHRequestTransformer provide() {
-            return req -> req;
+            // record the requests to warm up the graph of a later reload
+            return req -> {
+                graphHopperManaged.recordRequest(req);
+                return req;
+            };
         }
 
         @Override
@@ -185,6 +214,22 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         }
     }
 
+    static class TriangulatorFactory implements Factory<Triangulator> {
+
+        @Inject
+        GraphHopper graphHopper;
+
+        @Override
+        public Triangulator provide() {
+            return new JTSTriangulator(graphHopper.getRouterConfig());
+        }
+
+        @Override
+        public void dispose(Triangulator instance) {
+
+        }
+    }
+
     static class HasElevation implements Factory<Boolean> {
 
         @Inject
@@ -267,21 +312,45 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         // come out as JSON or GPX, depending on the media type
         environment.jersey().register(new MultiExceptionMapper());
         environment.jersey().register(new MultiExceptionGPXMessageBodyWriter());
+        environment.jersey().register(new MultiExceptionProtobufMessageBodyWriter());
+        final RoutingMetrics routingMetrics = new RoutingMetrics(environment.metrics());
+        environment.jersey().register(new RouteJsonResponseMessageBodyWriter(environment.getObjectMapper(), routingMetrics));
+        environment.jersey().register(new RouteProtobufMessageBodyWriter(routingMetrics));
 
         // This makes an IllegalArgumentException come out as a MultiException with
         // a single entry.
         environment.jersey().register(new IllegalArgumentExceptionMapper());
+        environment.jersey().register(new OverloadedExceptionMapper());
 
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        final EndpointLimiter endpointLimiter = new EndpointLimiter(configuration.getGraphHopperConfiguration(), environment.metrics());
+        final AdmissionController admissionController = new AdmissionController(configuration.getGraphHopperConfiguration(), endpointLimiter, environment.metrics());
+        environment.lifecycle().manage(admissionController);
+        final MVTTileRenderer mvtTileRenderer = new MVTTileRenderer(configuration.getGraphHopperConfiguration().getInt("mvt.encoding_threads", 1));
+        environment.lifecycle().manage(mvtTileRenderer);
+        final MapMatchingBatchPool mapMatchingBatchPool = new MapMatchingBatchPool(configuration.getGraphHopperConfiguration().
+                getInt("map_matching.batch.threads", Runtime.getRuntime().availableProcessors()));
+        environment.lifecycle().manage(mapMatchingBatchPool);
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
-                bind(graphHopper).to(GraphHopper.class);
-
-                bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bind(graphHopperManaged).to(GraphHopperManaged.class);
+                bindFactory(GraphHopperFactory.class).to(GraphHopper.class).in(RequestScoped.class);
+                // the public transit components keep the instance that exists at startup, so reloading the graph
+                // is refused for public transit, see GraphHopperManaged.reload
+                if (graphHopper instanceof GraphHopperGtfs)
+                    bind((GraphHopperGtfs) graphHopper).to(GraphHopperGtfs.class);
+
+                bindFactory(TriangulatorFactory.class).to(Triangulator.class);
+                bind(MVTTileCache.fromConfig(configuration.getGraphHopperConfiguration())).to(MVTTileCache.class);
+                bind(mvtTileRenderer).to(MVTTileRenderer.class);
+                bind(routingMetrics).to(RoutingMetrics.class);
+                bind(admissionController).to(AdmissionController.class);
+                bind(endpointLimiter).to(EndpointLimiter.class);
+                bind(mapMatchingBatchPool).to(MapMatchingBatchPool.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
@@ -312,12 +381,15 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                         bind(PtRouterFreeWalkImpl.class).to(PtRouter.class);
                     } else if (configuration.getGraphHopperConfiguration().getBool("gtfs.trip_based", false)) {
                         bind(PtRouterTripBasedImpl.class).to(PtRouter.class);
+                    } else if (configuration.getGraphHopperConfiguration().getBool("gtfs.raptor", false)) {
+                        bind(PtRouterRaptorImpl.class).to(PtRouter.class);
                     } else {
                         bind(PtRouterImpl.class).to(PtRouter.class);
                     }
                     bind(PtRouterImpl.class).to(PtRouter.class).named("classic");
                     bind(PtRouterFreeWalkImpl.class).to(PtRouter.class).named("free_walk");
                     bind(PtRouterTripBasedImpl.class).to(PtRouter.class).named("trip_based");
+                    bind(PtRouterRaptorImpl.class).to(PtRouter.class).named("raptor");
                 }
             });
             environment.jersey().register(PtRouteResource.class);
@@ -328,9 +400,13 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
+        environment.admin().addTask(new GraphHopperReloadTask(graphHopperManaged));
+        environment.admin().addServlet("data-access", new DataAccessStatsServlet(graphHopperManaged, environment.getObjectMapper())).
+                addMapping("/data-access");
+        environment.lifecycle().manage(new DataAccessMetrics(graphHopperManaged, environment.metrics()));
 
         if (configuration.gtfsrealtime().getFeeds().isEmpty()) {
             environment.jersey().register(new AbstractBinder() {
@@ -343,7 +419,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             final HttpClient httpClient = new HttpClientBuilder(environment)
                     .using(configuration.gtfsrealtime().getHttpClientConfiguration())
                     .build("gtfs-realtime-feed-loader");
-            RealtimeFeedLoadingCache realtimeFeedLoadingCache = new RealtimeFeedLoadingCache(((GraphHopperGtfs) graphHopper), httpClient, configuration);
+            RealtimeFeedLoadingCache realtimeFeedLoadingCache = new RealtimeFeedLoadingCache(((GraphHopperGtfs) graphHopper), httpClient, configuration, environment.metrics());
             environment.lifecycle().manage(realtimeFeedLoadingCache);
             environment.jersey().register(new AbstractBinder() {
                 @Override
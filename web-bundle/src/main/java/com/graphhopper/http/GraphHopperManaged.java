@@ -18,45 +18,242 @@
 
 package com.graphhopper.http;
 
+import com.graphhopper.GHRequest;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.storage.DataAccessStats;
+import com.graphhopper.util.StopWatch;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
+
+/**
+ * Owns the GraphHopper instance of the server. The instance can be replaced at runtime via {@link #reload(String)}:
+ * the new graph folder is loaded and warmed up in the background, then all new requests are switched to it atomically.
+ * Requests that already acquired the previous instance finish on it, and it is closed once the last of them released it.
+ * <p>
+ * If a startup warm-up is configured, see {@link GraphHopperWarmUp}, it runs in the background after the graph was
+ * loaded and {@link #isWarmedUp()} returns false until it is finished. If it fails the health check stays unhealthy,
+ * and a reload with a failing warm-up is refused.
+ * <p>
+ * Everything that is derived from the GraphHopper instance must be resolved per request, see GraphHopperBundle.
+ * The public transit components hold on to the instance they were created with, which is why reloading is refused
+ * if gtfs.file is configured.
+ */
 public class GraphHopperManaged implements Managed {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphHopperManaged.class);
-    private final GraphHopper graphHopper;
+    private final GraphHopperConfig configuration;
+    private final int maxRecordedRequests;
+    private final ArrayDeque<GHRequest> recordedRequests = new ArrayDeque<>();
+    private final Map<GraphHopper, Lease> leases = new ConcurrentHashMap<>();
+    private final GraphHopperWarmUp startupWarmUp;
+    private volatile Lease current;
+    private volatile boolean warmedUp;
+    private volatile String warmUpFailure;
 
     public GraphHopperManaged(GraphHopperConfig configuration) {
+        this.configuration = configuration;
+        this.maxRecordedRequests = configuration.getInt("reload.warmup_requests", 100);
+        this.startupWarmUp = new GraphHopperWarmUp(configuration);
+        current = createLease(create(configuration));
+    }
+
+    /**
+     * Keeps track of the requests that use one GraphHopper instance. Every request is a party of the phaser and
+     * the lease itself is one more party until the instance is replaced. The phaser terminates once all parties
+     * deregistered, i.e. when the instance was replaced and the last request released it.
+     */
+    private static class Lease {
+        final GraphHopper graphHopper;
+        final Phaser phaser = new Phaser(1);
+
+        Lease(GraphHopper graphHopper) {
+            this.graphHopper = graphHopper;
+        }
+    }
+
+    private Lease createLease(GraphHopper graphHopper) {
+        Lease lease = new Lease(graphHopper);
+        leases.put(graphHopper, lease);
+        return lease;
+    }
+
+    private static GraphHopper create(GraphHopperConfig configuration) {
+        GraphHopper graphHopper;
         if (configuration.has("gtfs.file")) {
             graphHopper = new GraphHopperGtfs(configuration);
         } else {
             graphHopper = new GraphHopper();
         }
         graphHopper.init(configuration);
+        return graphHopper;
     }
 
     @Override
     public void start() {
+        GraphHopper graphHopper = current.graphHopper;
         graphHopper.importOrLoad();
+        logLoaded(graphHopper);
+        if (!startupWarmUp.isEnabled()) {
+            warmedUp = true;
+            return;
+        }
+        // the server already accepts requests during the warm-up, but the health check reports it as unhealthy
+        GraphHopper instance = acquire();
+        Thread thread = new Thread(() -> {
+            try {
+                startupWarmUp.run(instance);
+            } catch (Exception ex) {
+                logger.warn("warm-up failed", ex);
+                warmUpFailure = ex.getMessage();
+            } finally {
+                release(instance);
+                warmedUp = true;
+            }
+        }, "gh-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return true if the startup warm-up of the graph is finished or if none is configured
+     */
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * @return the reason why the startup warm-up failed or null if it did not fail
+     */
+    public String getWarmUpFailure() {
+        return warmUpFailure;
+    }
+
+    private static void logLoaded(GraphHopper graphHopper) {
         logger.info("loaded graph at:{}, data_reader_file:{}, encoded values:{}, {} bytes for edge flags, {}",
                 graphHopper.getGraphHopperLocation(), graphHopper.getOSMFile(),
                 graphHopper.getEncodingManager().toEncodedValuesAsString(),
                 graphHopper.getEncodingManager().getBytesForFlags(),
                 graphHopper.getBaseGraph().toDetailsString());
+        logger.info("memory usage of data access objects:\n{}",
+                DataAccessStats.toTable(DataAccessStats.of(graphHopper.getBaseGraph().getDirectory(), DataAccessStatsServlet.DEFAULT_SAMPLES)));
     }
 
+    /**
+     * @return the GraphHopper instance that currently serves new requests. Use {@link #acquire()} instead if the
+     * instance is used for a longer time and must not be closed by a concurrent {@link #reload(String)}.
+     */
     public GraphHopper getGraphHopper() {
-        return graphHopper;
+        return current.graphHopper;
+    }
+
+    /**
+     * Returns the current GraphHopper instance and guarantees that it won't be closed until {@link #release} is called.
+     */
+    public GraphHopper acquire() {
+        while (true) {
+            Lease lease = current;
+            // a negative phase means the instance was replaced and all of its requests are finished
+            if (lease.phaser.register() < 0)
+                continue;
+            // if the instance was swapped in the meantime the reload might already wait for its requests
+            if (lease == current)
+                return lease.graphHopper;
+            lease.phaser.arriveAndDeregister();
+        }
+    }
+
+    public void release(GraphHopper instance) {
+        Lease lease = leases.get(instance);
+        if (lease != null)
+            lease.phaser.arriveAndDeregister();
+    }
+
+    /**
+     * Remembers the specified request so that it can be replayed to warm up the graph of the next {@link #reload}.
+     * Only the latest reload.warmup_requests requests are kept.
+     */
+    public void recordRequest(GHRequest request) {
+        if (maxRecordedRequests <= 0)
+            return;
+        synchronized (recordedRequests) {
+            if (recordedRequests.size() >= maxRecordedRequests)
+                recordedRequests.pollFirst();
+            recordedRequests.addLast(request);
+        }
+    }
+
+    /**
+     * Loads the already prepared graph folder graphLocation, warms it up with the configured startup warm-up and the
+     * recently recorded requests and then atomically replaces the current instance. This method blocks until the previous instance is closed.
+     */
+    public synchronized void reload(String graphLocation) {
+        if (configuration.has("gtfs.file"))
+            throw new IllegalStateException("Reloading the graph is not supported for public transit");
+        GraphHopperConfig newConfiguration = new GraphHopperConfig(configuration).putObject("graph.location", graphLocation);
+        GraphHopper newGraphHopper = create(newConfiguration);
+        StopWatch sw = new StopWatch().start();
+        try {
+            if (!newGraphHopper.load())
+                throw new IllegalArgumentException("Cannot reload, there is no graph at " + graphLocation);
+            logLoaded(newGraphHopper);
+            if (startupWarmUp.isEnabled())
+                startupWarmUp.run(newGraphHopper);
+            warmUp(newGraphHopper);
+        } catch (RuntimeException ex) {
+            newGraphHopper.close();
+            throw ex;
+        }
+
+        Lease oldLease = current;
+        current = createLease(newGraphHopper);
+        GraphHopper oldGraphHopper = oldLease.graphHopper;
+        logger.info("switched to graph at:{}, took: {}s, waiting for requests of previous graph at:{}",
+                graphLocation, sw.stop().getSeconds(), oldGraphHopper.getGraphHopperLocation());
+
+        // closing the previous instance while requests still read from its storage would fail or even crash the JVM
+        try {
+            oldLease.phaser.awaitAdvanceInterruptibly(oldLease.phaser.arriveAndDeregister());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for requests of previous graph", ex);
+        }
+        leases.remove(oldGraphHopper);
+        oldGraphHopper.close();
+        logger.info("closed previous graph at:{}", oldGraphHopper.getGraphHopperLocation());
+    }
+
+    private void warmUp(GraphHopper newGraphHopper) {
+        List<GHRequest> requests;
+        synchronized (recordedRequests) {
+            requests = new ArrayList<>(recordedRequests);
+        }
+        StopWatch sw = new StopWatch().start();
+        int errors = 0;
+        for (GHRequest request : requests) {
+            try {
+                if (newGraphHopper.route(request).hasErrors())
+                    errors++;
+            } catch (Exception ex) {
+                errors++;
+            }
+        }
+        logger.info("warmed up graph with {} recorded requests ({} failed), took: {}s",
+                requests.size(), errors, sw.stop().getSeconds());
     }
 
     @Override
     public void stop() {
-        graphHopper.close();
+        current.graphHopper.close();
     }
 
-
 }
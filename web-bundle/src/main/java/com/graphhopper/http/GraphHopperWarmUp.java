@@ -0,0 +1,226 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.config.Profile;
+import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Brings a freshly loaded GraphHopper instance to full speed before it serves requests. Optionally all DataAccess
+ * objects are read sequentially, which loads memory mapped files like the CH and LM preparations into the page
+ * cache. The files of preparations that are not loaded yet (routing.preparations.lazy_load) are read as well, but they
+ * are not loaded, so the memory budget of the preparations still applies. Then synthetic snaps, routes and isochrones
+ * are calculated for every profile so that the JIT compiles the hot loops. The routes use CH, LM and the flexible mode
+ * depending on the preparations of the profile. The start and target are random nodes of the graph and all requests
+ * are limited by warmup.max_visited_nodes. If all of them fail the warm-up fails, as the graph is most likely broken.
+ */
+public class GraphHopperWarmUp {
+
+    private static final Logger logger = LoggerFactory.getLogger(GraphHopperWarmUp.class);
+    private static final int PAGE_SIZE = 4096;
+
+    private final int iterations;
+    private final boolean prefault;
+    private final int maxVisitedNodes;
+    private final long timeoutMillis;
+
+    public GraphHopperWarmUp(GraphHopperConfig config) {
+        iterations = config.getInt("warmup.iterations", 0);
+        prefault = config.getBool("warmup.prefault", false);
+        maxVisitedNodes = config.getInt("warmup.max_visited_nodes", 20_000);
+        timeoutMillis = config.getLong("warmup.timeout_ms", 300_000);
+    }
+
+    public boolean isEnabled() {
+        return iterations > 0 || prefault;
+    }
+
+    /**
+     * @param prefaultedBytes the number of bytes that were read from the storage
+     * @param requests        the number of synthetic requests
+     * @param failedRequests  the number of synthetic requests that failed or returned errors
+     */
+    public record Result(long prefaultedBytes, int requests, int failedRequests) {
+    }
+
+    /**
+     * @throws IllegalStateException if all synthetic requests failed
+     */
+    public Result run(GraphHopper graphHopper) {
+        StopWatch sw = new StopWatch().start();
+        long bytes = 0;
+        if (prefault) {
+            bytes = prefault(graphHopper.getBaseGraph().getDirectory());
+            logger.info("prefaulted {}MB, took: {}s", bytes / 1024 / 1024, sw.getCurrentSeconds());
+        }
+        if (iterations <= 0)
+            return new Result(bytes, 0, 0);
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int requests = 0, errors = 0;
+        Random random = new Random(0);
+        for (int i = 0; i < iterations && System.currentTimeMillis() < deadline; i++) {
+            for (Profile profile : graphHopper.getProfiles()) {
+                for (GHRequest request : createRequests(graphHopper, profile, random)) {
+                    requests++;
+                    try {
+                        if (graphHopper.route(request).hasErrors())
+                            errors++;
+                    } catch (Exception ex) {
+                        errors++;
+                    }
+                }
+                // isochrones are more expensive and less common
+                if (i % 10 == 0) {
+                    requests++;
+                    try {
+                        calcIsochrone(graphHopper, profile, random);
+                    } catch (Exception ex) {
+                        errors++;
+                    }
+                }
+            }
+        }
+        logger.info("warmed up graph with {} synthetic requests ({} failed), took: {}s", requests, errors, sw.stop().getSeconds());
+        if (requests > 0 && errors == requests)
+            throw new IllegalStateException("All " + requests + " synthetic requests of the warm-up failed");
+        return new Result(bytes, requests, errors);
+    }
+
+    private GHRequest[] createRequests(GraphHopper graphHopper, Profile profile, Random random) {
+        BaseGraph graph = graphHopper.getBaseGraph();
+        NodeAccess na = graph.getNodeAccess();
+        int from = random.nextInt(graph.getNodes());
+        int to = random.nextInt(graph.getNodes());
+        int limit = Math.min(maxVisitedNodes, graphHopper.getRouterConfig().getMaxVisitedNodes());
+        boolean hasCH = graphHopper.getCHPreparationHandler().getCHProfiles().stream().map(CHProfile::getProfile).anyMatch(profile.getName()::equals);
+        boolean hasLM = graphHopper.getLMPreparationHandler().getLMProfiles().stream().map(LMProfile::getProfile).anyMatch(profile.getName()::equals);
+        GHRequest[] requests = new GHRequest[1 + (hasCH ? 1 : 0) + (hasLM ? 1 : 0)];
+        int index = 0;
+        // the points are slightly moved away from the nodes to warm up the snapping too
+        for (int mode = 0; mode < 3; mode++) {
+            if (mode == 0 && !hasCH || mode == 1 && !hasLM)
+                continue;
+            GHRequest request = new GHRequest(
+                    na.getLat(from) + random.nextDouble() * 1e-4, na.getLon(from) + random.nextDouble() * 1e-4,
+                    na.getLat(to) + random.nextDouble() * 1e-4, na.getLon(to) + random.nextDouble() * 1e-4).
+                    setProfile(profile.getName());
+            request.putHint(Parameters.Routing.MAX_VISITED_NODES, limit);
+            request.putHint(Parameters.CH.DISABLE, mode > 0);
+            request.putHint(Parameters.Landmark.DISABLE, mode > 1);
+            requests[index++] = request;
+        }
+        return requests;
+    }
+
+    private void calcIsochrone(GraphHopper graphHopper, Profile profile, Random random) {
+        BaseGraph graph = graphHopper.getBaseGraph();
+        int node = random.nextInt(graph.getNodes());
+        Weighting weighting = graphHopper.createWeighting(profile, new PMap());
+        Snap snap = graphHopper.getLocationIndex().findClosest(graph.getNodeAccess().getLat(node), graph.getNodeAccess().getLon(node),
+                new DefaultSnapFilter(weighting, graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profile.getName()))));
+        if (!snap.isValid())
+            return;
+        QueryGraph queryGraph = QueryGraph.create(graph, snap);
+        TraversalMode traversalMode = profile.hasTurnCosts() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+        ShortestPathTree tree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), false, traversalMode);
+        // 5 minutes
+        tree.setTimeLimit(300_000);
+        tree.search(snap.getClosestNode(), label -> {
+        });
+    }
+
+    /**
+     * Reads one int of every page of all DataAccess objects of the directory in sequential order. Not all
+     * implementations support byte based access. The other files of a storing directory, e.g. preparations that are
+     * loaded lazily, are read sequentially so that they are in the page cache when they are loaded.
+     *
+     * @return the number of bytes that were touched
+     */
+    static long prefault(Directory directory) {
+        long bytes = 0;
+        Set<String> opened = new HashSet<>();
+        for (DataAccess da : directory.getDAs().values()) {
+            if (da.isClosed())
+                continue;
+            opened.add(da.getName());
+            long capacity = da.getCapacity();
+            for (long pos = 0; pos + 4 <= capacity; pos += PAGE_SIZE) {
+                da.getInt(pos);
+            }
+            bytes += capacity;
+        }
+        if (directory.getDefaultType().isStoring())
+            bytes += readFiles(Paths.get(directory.getLocation()), opened);
+        return bytes;
+    }
+
+    private static long readFiles(Path location, Set<String> skipped) {
+        long bytes = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(location)) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file) || skipped.contains(file.getFileName().toString()))
+                    continue;
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    int read;
+                    while ((read = channel.read(buffer)) != -1) {
+                        bytes += read;
+                        buffer.clear();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes;
+    }
+}
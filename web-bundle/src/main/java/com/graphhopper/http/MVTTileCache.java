@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Caches encoded vector tiles in a bounded memory tier and optionally in a disk tier. The graph does not change
+ * between two imports, so a tile is cached forever and the key contains a version of the graph instead, see
+ * {@link #getGraphVersion(GraphHopper)}. The tiles of a previous graph are therefore never returned for a new one:
+ * they are evicted from memory over time and the folders of old versions in the disk tier can be removed.
+ * <p>
+ * Empty tiles, e.g. of low zoom levels or outside of the graph, are only kept in memory. So the disk tier is bounded by
+ * the tiles that contain edges up to the maximum disk zoom, tiles of higher zoom levels are only kept in memory.
+ */
+public class MVTTileCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MVTTileCache.class);
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final int maxDiskZoom;
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    // the version of every loaded graph is calculated only once. A reload creates a new GraphHopper instance, and the
+    // weak keys let the entries of closed instances disappear.
+    private final Map<GraphHopper, String> graphVersions = Collections.synchronizedMap(new WeakHashMap<>());
+    private long memoryBytes;
+
+    /**
+     * @param directory      the folder of the disk tier or null to disable it
+     * @param maxMemoryBytes the maximum size of all tiles kept in memory, 0 disables the memory tier
+     * @param maxDiskZoom    the highest zoom level for which {@link #put} writes tiles to the disk tier
+     */
+    public MVTTileCache(File directory, long maxMemoryBytes, int maxDiskZoom) {
+        if (maxMemoryBytes < 0)
+            throw new IllegalArgumentException("maxMemoryBytes must not be negative but was " + maxMemoryBytes);
+        this.directory = directory == null ? null : directory.toPath();
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskZoom = maxDiskZoom;
+    }
+
+    public static MVTTileCache fromConfig(GraphHopperConfig config) {
+        String location = config.getString("mvt.cache.location", "");
+        return new MVTTileCache(location.isEmpty() ? null : new File(location),
+                config.getLong("mvt.cache.memory_mb", 64) * 1024 * 1024, config.getInt("mvt.cache.max_disk_zoom", 16));
+    }
+
+    /**
+     * @return the version of the specified graph, see {@link #calcGraphVersion(GraphHopper)}. It is calculated only
+     * for the first tile of a loaded graph.
+     */
+    public String getGraphVersion(GraphHopper hopper) {
+        return graphVersions.computeIfAbsent(hopper, MVTTileCache::calcGraphVersion);
+    }
+
+    /**
+     * @return a short hash that changes with every import (and version of GraphHopper) and is identical for all
+     * servers that load the same graph.
+     */
+    public static String calcGraphVersion(GraphHopper hopper) {
+        StorableProperties properties = hopper.getProperties();
+        String str = Constants.VERSION
+                + "|" + properties.get("datareader.import.date")
+                + "|" + properties.get("datareader.data.date")
+                + "|" + properties.get("graph.encoded_values")
+                + "|" + hopper.getBaseGraph().getNodes()
+                + "|" + hopper.getBaseGraph().getEdges();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(str.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the key of a tile, it is also used as ETag and as path in the disk tier. It contains the
+     * {@link MVTTileRenderer#VERSION}, so tiles of an older renderer are not served for the same graph.
+     */
+    public static String createKey(String graphVersion, int z, int x, int y, boolean renderAll) {
+        return graphVersion + "/v" + MVTTileRenderer.VERSION + "/" + z + "/" + x + "/" + y + (renderAll ? "_all" : "");
+    }
+
+    /**
+     * @return the tile from memory or disk, or null if it is not cached
+     */
+    public byte[] get(String key) {
+        synchronized (memory) {
+            byte[] bytes = memory.get(key);
+            if (bytes != null)
+                return bytes;
+        }
+        if (directory == null)
+            return null;
+        try {
+            byte[] bytes = Files.readAllBytes(toFile(key));
+            putMemory(key, bytes);
+            return bytes;
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            logger.warn("Cannot read tile " + key + " from " + directory, ex);
+            return null;
+        }
+    }
+
+    public boolean containsOnDisk(String key) {
+        return directory != null && Files.exists(toFile(key));
+    }
+
+    /**
+     * Keeps the tile in memory and writes it to the disk tier if it is not empty and the zoom level z is not higher
+     * than the maximum disk zoom.
+     */
+    public void put(String key, int z, byte[] bytes) {
+        putMemory(key, bytes);
+        if (z <= maxDiskZoom)
+            putDisk(key, bytes);
+    }
+
+    /**
+     * Writes the tile only to the disk tier, e.g. when pre-rendering many tiles that won't be requested from this
+     * instance. Empty tiles are not written as they are rendered quickly again.
+     */
+    public void putDisk(String key, byte[] bytes) {
+        if (directory == null || bytes.length == 0)
+            return;
+        Path file = toFile(key);
+        try {
+            Files.createDirectories(file.getParent());
+            // write to a temporary file first so that a concurrent reader never sees a partially written tile
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, bytes);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException ex) {
+            logger.warn("Cannot write tile " + key + " to " + directory, ex);
+        }
+    }
+
+    private void putMemory(String key, byte[] bytes) {
+        if (maxMemoryBytes == 0 || bytes.length > maxMemoryBytes)
+            return;
+        synchronized (memory) {
+            byte[] prev = memory.put(key, bytes);
+            memoryBytes += bytes.length - (prev == null ? 0 : prev.length);
+            Iterator<Map.Entry<String, byte[]>> iter = memory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && iter.hasNext()) {
+                memoryBytes -= iter.next().getValue().length;
+                iter.remove();
+            }
+        }
+    }
+
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    private Path toFile(String key) {
+        return directory.resolve(key + ".mvt");
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.shapes.BBox;
+import io.dropwizard.lifecycle.Managed;
+import no.ecc.vectortile.VectorTileEncoder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Encodes the edges of one web mercator tile into a Mapbox vector tile. The result only depends on the graph, so
+ * it can be cached until the next import, see {@link MVTTileCache}.
+ * <p>
+ * Below zoom 14 only the more important road classes are included and the geometries are simplified to the
+ * resolution of the tile, which keeps these tiles small although they cover a much larger area. The features of a tile with many edges can be created in parallel, only adding them to
+ * the encoder happens in one thread and in the order of the edges, so the tile is the same as without parallelism.
+ * This class is thread-safe.
+ */
+public class MVTTileRenderer implements Managed {
+    /**
+     * Part of the cache key, see {@link MVTTileCache#createKey}. Increase it whenever the content of the tiles changes
+     * for the same graph, so that cached tiles of the previous renderer are no longer served.
+     */
+    public static final int VERSION = 2;
+    /**
+     * The tolerance for the Douglas-Peucker simplification in pixels of the 256x256 tile.
+     */
+    static final double SIMPLIFICATION_TOLERANCE = 0.5;
+    private static final int DETAIL_ZOOM = 14;
+    // splitting smaller tiles costs more than it saves
+    private static final int MIN_EDGES_PER_TASK = 512;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads the number of threads to create the features of one tile, 1 uses only the calling thread
+     */
+    public MVTTileRenderer(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        this.pool = threads == 1 ? null : new ForkJoinPool(threads);
+    }
+
+    @Override
+    public void stop() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    public byte[] render(GraphHopper graphHopper, int zInfo, int xInfo, int yInfo, boolean renderAll) {
+        if (zInfo <= 9)
+            return new VectorTileEncoder().encode();
+
+        Coordinate nw = num2deg(xInfo, yInfo, zInfo);
+        Coordinate se = num2deg(xInfo + 1, yInfo + 1, zInfo);
+        LocationIndexTree locationIndex = (LocationIndexTree) graphHopper.getLocationIndex();
+        BBox bbox = new BBox(nw.x, se.x, se.y, nw.y);
+        if (!bbox.isValid())
+            throw new IllegalStateException("Invalid bbox " + bbox);
+
+        EncodingManager encodingManager = graphHopper.getEncodingManager();
+        if (!encodingManager.hasEncodedValue(RoadClass.KEY))
+            throw new IllegalStateException("You need to configure GraphHopper to store road_class, e.g. graph.encoded_values: road_class,max_speed,... ");
+
+        AffineTransformation affineTransformation = createTransformation(nw, se);
+        double maxTowerOnlyDistance = zInfo < DETAIL_ZOOM ? calcMaxTowerOnlyDistance(nw, se) : -1;
+
+        IntArrayList edgeIds = new IntArrayList();
+        locationIndex.query(bbox, edgeIds::add);
+        FeatureFactory factory = new FeatureFactory(graphHopper.getBaseGraph(), encodingManager, affineTransformation,
+                zInfo, renderAll, maxTowerOnlyDistance);
+        Feature[] features = new Feature[edgeIds.size()];
+        if (pool == null || edgeIds.size() < 2 * MIN_EDGES_PER_TASK)
+            factory.create(edgeIds, features, 0, features.length);
+        else
+            pool.invoke(new FeatureTask(factory, edgeIds, features, 0, features.length));
+
+        // if performance of the vector tile encoding becomes an issue it might be worth to get rid of the simplification
+        // and clipping in the no.ecc code? https://github.com/graphhopper/graphhopper/commit/0f96c2deddb24efa97109e35e0c05f1c91221f59#r90830001
+        VectorTileEncoder vectorTileEncoder = new VectorTileEncoder();
+        for (Feature feature : features) {
+            if (feature != null)
+                vectorTileEncoder.addFeature("roads", feature.attributes, feature.geometry, feature.edge);
+        }
+        return vectorTileEncoder.encode();
+    }
+
+    /**
+     * 256x256 pixels per MVT. here we transform from the global coordinate system to the local one of the tile.
+     */
+    static AffineTransformation createTransformation(Coordinate nw, Coordinate se) {
+        AffineTransformation affineTransformation = new AffineTransformation();
+        affineTransformation.translate(-nw.x, -se.y);
+        affineTransformation.scale(
+                256.0 / (se.x - nw.x),
+                -256.0 / (nw.y - se.y)
+        );
+        affineTransformation.translate(0, 256);
+        return affineTransformation;
+    }
+
+    /**
+     * No point of an edge is further away from the line between its tower nodes than half of its distance. So the
+     * simplification of an edge that is at most twice the tolerance long in pixels always results in this line, and
+     * its pillar nodes do not need to be fetched.
+     *
+     * @return the maximum distance in meters of such an edge in the tile from nw to se
+     */
+    static double calcMaxTowerOnlyDistance(Coordinate nw, Coordinate se) {
+        // the tile is narrowest at the latitude closer to the pole
+        double lat = Math.abs(nw.y) > Math.abs(se.y) ? nw.y : se.y;
+        double minWidth = DistanceCalcEarth.DIST_EARTH.calcDist(lat, nw.x, lat, se.x);
+        double height = DistanceCalcEarth.DIST_EARTH.calcDist(nw.y, nw.x, se.y, nw.x);
+        return 2 * SIMPLIFICATION_TOLERANCE * Math.min(minWidth, height) / 256;
+    }
+
+    /**
+     * @return the minimum zoom at which edges of the specified road class are included in a tile
+     */
+    static int getMinZoom(RoadClass roadClass) {
+        return switch (roadClass) {
+            case MOTORWAY -> 10;
+            case TRUNK, PRIMARY -> 11;
+            case SECONDARY -> 12;
+            default -> 13;
+        };
+    }
+
+    private record Feature(int edge, Map<String, Object> attributes, Geometry geometry) {
+    }
+
+    private static class FeatureFactory {
+        final BaseGraph graph;
+        final EncodingManager encodingManager;
+        final EnumEncodedValue<RoadClass> roadClassEnc;
+        final AffineTransformation affineTransformation;
+        final int zoom;
+        final boolean renderAll;
+        // edges up to this distance are simplified to the line between their tower nodes, -1 if nothing is simplified
+        final double maxTowerOnlyDistance;
+
+        FeatureFactory(BaseGraph graph, EncodingManager encodingManager, AffineTransformation affineTransformation,
+                       int zoom, boolean renderAll, double maxTowerOnlyDistance) {
+            this.graph = graph;
+            this.encodingManager = encodingManager;
+            this.roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
+            this.affineTransformation = affineTransformation;
+            this.zoom = zoom;
+            this.renderAll = renderAll;
+            this.maxTowerOnlyDistance = maxTowerOnlyDistance;
+        }
+
+        void create(IntArrayList edgeIds, Feature[] features, int from, int to) {
+            for (int i = from; i < to; i++) {
+                features[i] = create(edgeIds.get(i));
+            }
+        }
+
+        /**
+         * @return the feature for the specified edge or null if the edge is not shown at this zoom
+         */
+        Feature create(int edgeId) {
+            EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            if (!renderAll && zoom < getMinZoom(edge.get(roadClassEnc)))
+                return null;
+
+            boolean towerOnly = edge.getDistance() <= maxTowerOnlyDistance;
+            LineString lineString = edge.fetchWayGeometry(towerOnly ? FetchMode.TOWER_ONLY : FetchMode.ALL).toLineString(false);
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, KVStorage.KValue> e : edge.getKeyValues().entrySet()) {
+                map.put(e.getKey(), e.getValue().toString());
+            }
+            map.put("edge_id", edge.getEdge());
+            map.put("edge_key", edge.getEdgeKey());
+            map.put("base_node", edge.getBaseNode());
+            map.put("adj_node", edge.getAdjNode());
+            map.put("distance", edge.getDistance());
+            encodingManager.getEncodedValues().forEach(ev -> {
+                if (ev instanceof EnumEncodedValue)
+                    map.put(ev.getName(), edge.get((EnumEncodedValue) ev).toString() + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((EnumEncodedValue) ev).toString() : ""));
+                else if (ev instanceof DecimalEncodedValue)
+                    map.put(ev.getName(), edge.get((DecimalEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((DecimalEncodedValue) ev) : ""));
+                else if (ev instanceof BooleanEncodedValue)
+                    map.put(ev.getName(), edge.get((BooleanEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((BooleanEncodedValue) ev) : ""));
+                else if (ev instanceof StringEncodedValue)
+                    map.put(ev.getName(), edge.get((StringEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((StringEncodedValue) ev) : ""));
+                else if (ev instanceof IntEncodedValue)
+                    map.put(ev.getName(), edge.get((IntEncodedValue) ev) + (ev.isStoreTwoDirections() ? " | " + edge.getReverse((IntEncodedValue) ev) : ""));
+            });
+            lineString.setUserData(map);
+
+            Geometry g = affineTransformation.transform(lineString);
+            if (zoom < DETAIL_ZOOM && !towerOnly)
+                g = DouglasPeuckerSimplifier.simplify(g, SIMPLIFICATION_TOLERANCE);
+            return new Feature(edge.getEdge(), map, g);
+        }
+    }
+
+    private static class FeatureTask extends RecursiveAction {
+        private final FeatureFactory factory;
+        private final IntArrayList edgeIds;
+        private final Feature[] features;
+        private final int from, to;
+
+        FeatureTask(FeatureFactory factory, IntArrayList edgeIds, Feature[] features, int from, int to) {
+            this.factory = factory;
+            this.edgeIds = edgeIds;
+            this.features = features;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 * MIN_EDGES_PER_TASK) {
+                factory.create(edgeIds, features, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FeatureTask(factory, edgeIds, features, from, middle),
+                        new FeatureTask(factory, edgeIds, features, middle, to));
+            }
+        }
+    }
+
+    static Coordinate num2deg(int xInfo, int yInfo, int zoom) {
+        // inverse web mercator projection
+        double n = Math.pow(2, zoom);
+        double lonDeg = xInfo / n * 360.0 - 180.0;
+        // unfortunately latitude numbers goes from north to south
+        double latRad = Math.atan(Math.sinh(Math.PI * (1 - 2 * yInfo / n)));
+        double latDeg = Math.toDegrees(latRad);
+        return new Coordinate(lonDeg, latDeg);
+    }
+
+    /**
+     * @return the x number of the tile that contains the specified longitude
+     */
+    public static int lon2TileX(double lon, int zoom) {
+        int n = 1 << zoom;
+        return clamp((int) Math.floor((lon + 180) / 360 * n), n);
+    }
+
+    /**
+     * @return the y number of the tile that contains the specified latitude. Like for the tiles the numbers increase
+     * from north to south.
+     */
+    public static int lat2TileY(double lat, int zoom) {
+        int n = 1 << zoom;
+        double latRad = Math.toRadians(lat);
+        return clamp((int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n), n);
+    }
+
+    private static int clamp(int tile, int n) {
+        return Math.max(0, Math.min(n - 1, tile));
+    }
+}
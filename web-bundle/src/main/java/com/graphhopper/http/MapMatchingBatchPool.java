@@ -0,0 +1,53 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The work-stealing pool that matches the tracks of all /match/batch requests with map_matching.batch.threads
+ * threads, by default the number of processors. Concurrent batches share these threads instead of creating a pool
+ * each, and every batch holds a match permit of the {@link EndpointLimiter} while it runs.
+ */
+public class MapMatchingBatchPool implements Managed {
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    public MapMatchingBatchPool(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("map_matching.batch.threads must be positive but was " + threads);
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public ExecutorService getExecutor() {
+        return pool;
+    }
+
+    @Override
+    public void stop() {
+        pool.shutdownNow();
+    }
+}
@@ -20,12 +20,14 @@ package com.graphhopper.http;
 
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.exceptions.DeadlineExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
+import java.util.List;
 
 @Provider
 public class MultiExceptionMapper implements ExceptionMapper<MultiException> {
@@ -36,8 +38,16 @@ public class MultiExceptionMapper implements ExceptionMapper<MultiException> {
         logger.info("bad request: " + (Helper.isEmpty(e.getMessage())
                 ? (e.getErrors().isEmpty() ? "unknown reason" : e.getErrors().toString())
                 : e.getErrors()));
-        return Response.status(Response.Status.BAD_REQUEST)
+        return Response.status(getStatus(e.getErrors()))
                 .entity(e)
                 .build();
     }
+
+    /**
+     * @return 503 if the time budget of the request was used up, otherwise 400
+     */
+    public static Response.Status getStatus(List<Throwable> errors) {
+        return errors.stream().anyMatch(DeadlineExceededException.class::isInstance)
+                ? Response.Status.SERVICE_UNAVAILABLE : Response.Status.BAD_REQUEST;
+    }
 }
@@ -19,6 +19,7 @@
 package com.graphhopper.http;
 
 import com.conveyal.gtfs.GTFSFeed;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -33,6 +34,8 @@ import io.dropwizard.lifecycle.Managed;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.glassfish.hk2.api.Factory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
 import java.io.IOException;
@@ -47,16 +50,20 @@ import java.util.concurrent.TimeUnit;
 
 public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed {
 
+    private static final Logger logger = LoggerFactory.getLogger(RealtimeFeedLoadingCache.class);
+
     private final HttpClient httpClient;
     private final GraphHopperGtfs graphHopper;
     private final GraphHopperBundleConfiguration bundleConfiguration;
+    private final MetricRegistry metrics;
     private ExecutorService executor;
     private LoadingCache<String, RealtimeFeed> cache;
     private Map<String, Transfers> transfers;
 
     @Inject
-    RealtimeFeedLoadingCache(GraphHopperGtfs graphHopper, HttpClient httpClient, GraphHopperBundleConfiguration bundleConfiguration) {
+    RealtimeFeedLoadingCache(GraphHopperGtfs graphHopper, HttpClient httpClient, GraphHopperBundleConfiguration bundleConfiguration, MetricRegistry metrics) {
         this.graphHopper = graphHopper;
+        this.metrics = metrics;
         this.bundleConfiguration = bundleConfiguration;
         this.httpClient = httpClient;
     }
@@ -73,12 +80,12 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
                 .refreshAfterWrite(1, TimeUnit.MINUTES)
                 .build(new CacheLoader<String, RealtimeFeed>() {
                     public RealtimeFeed load(String key) {
-                        return fetchFeedsAndCreateGraph();
+                        return fetchFeedsAndCreateGraph(RealtimeFeed.empty());
                     }
 
                     @Override
                     public ListenableFuture<RealtimeFeed> reload(String key, RealtimeFeed oldValue) {
-                        ListenableFutureTask<RealtimeFeed> task = ListenableFutureTask.create(() -> fetchFeedsAndCreateGraph());
+                        ListenableFutureTask<RealtimeFeed> task = ListenableFutureTask.create(() -> fetchFeedsAndCreateGraph(oldValue));
                         executor.execute(task);
                         return task;
                     }
@@ -104,7 +111,7 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
     public void stop() {
     }
 
-    private RealtimeFeed fetchFeedsAndCreateGraph() {
+    private RealtimeFeed fetchFeedsAndCreateGraph(RealtimeFeed previous) {
         Map<String, GtfsRealtime.FeedMessage> feedMessageMap = new HashMap<>();
         for (FeedConfiguration configuration : bundleConfiguration.gtfsrealtime().getFeeds()) {
             try {
@@ -125,7 +132,17 @@ public class RealtimeFeedLoadingCache implements Factory<RealtimeFeed>, Managed
                 throw new RuntimeException(e);
             }
         }
-        return RealtimeFeed.fromProtobuf(graphHopper.getGtfsStorage(), this.transfers, feedMessageMap);
+        // only the trip updates that changed since the previous feed are applied, queries still using it are not affected
+        RealtimeFeed realtimeFeed = previous.update(graphHopper.getGtfsStorage(), this.transfers, feedMessageMap);
+        RealtimeFeed.UpdateStatistics statistics = realtimeFeed.getUpdateStatistics();
+        logger.info("Updated realtime feed, {}", statistics);
+        metrics.timer("gtfs_realtime.update").update(statistics.getNanos(), TimeUnit.NANOSECONDS);
+        for (long nanos : statistics.getApplyNanos()) {
+            metrics.timer("gtfs_realtime.trip_update").update(nanos, TimeUnit.NANOSECONDS);
+        }
+        metrics.histogram("gtfs_realtime.applied_trip_updates").update(statistics.getAppliedTripUpdates());
+        metrics.histogram("gtfs_realtime.removed_trip_updates").update(statistics.getRemovedTripUpdates());
+        return realtimeFeed;
     }
 
     private void validate(RealtimeFeed realtimeFeed) {
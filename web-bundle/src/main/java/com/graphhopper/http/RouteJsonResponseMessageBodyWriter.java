@@ -0,0 +1,71 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.jackson.ResponsePathSerializer;
+
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Streams a route response to the client without creating the JSON tree of the complete response first. For long
+ * routes with many points and path details this tree was often several megabytes.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class RouteJsonResponseMessageBodyWriter implements MessageBodyWriter<RouteResponse> {
+
+    private final ObjectMapper objectMapper;
+    private final RoutingMetrics routingMetrics;
+
+    public RouteJsonResponseMessageBodyWriter(ObjectMapper objectMapper, RoutingMetrics routingMetrics) {
+        this.objectMapper = objectMapper;
+        this.routingMetrics = routingMetrics;
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return RouteResponse.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(RouteResponse rsp, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(RouteResponse rsp, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        long start = System.nanoTime();
+        // the container closes the stream
+        try (JsonGenerator gen = objectMapper.createGenerator(entityStream).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            ResponsePathSerializer.writeJson(gen, rsp.response(), rsp.info(), rsp.enableInstructions(), rsp.calcPoints(),
+                    rsp.enableElevation(), rsp.pointsEncoded(), rsp.pointsMultiplier());
+        }
+        routingMetrics.recordSerialization("json", System.nanoTime() - start);
+    }
+}
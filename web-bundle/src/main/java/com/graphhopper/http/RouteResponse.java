@@ -0,0 +1,30 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.jackson.ResponsePathSerializer;
+
+/**
+ * The successful response of the routing API. It is written directly into the output stream, as JSON by
+ * {@link RouteJsonResponseMessageBodyWriter} or as protobuf by {@link RouteProtobufMessageBodyWriter}.
+ */
+public record RouteResponse(GHResponse response, ResponsePathSerializer.Info info, boolean enableInstructions,
+                            boolean calcPoints, boolean enableElevation, boolean pointsEncoded,
+                            double pointsMultiplier) {
+}
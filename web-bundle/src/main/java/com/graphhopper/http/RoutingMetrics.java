@@ -0,0 +1,71 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GHResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Records the phases of the routing pipeline, see {@link GHResponse#getTimings()}, as timers per profile and
+ * algorithm, e.g. route.car.astarbi_beeline.snap, so that the percentiles of every phase are available via the
+ * /metrics endpoint of the admin port. The number of visited nodes is recorded as histogram and the time to write
+ * the response as timer per format, e.g. route.serialization.json.
+ */
+public class RoutingMetrics {
+
+    private final MetricRegistry metrics;
+
+    public RoutingMetrics(MetricRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public void record(String profile, GHResponse rsp, long totalNanos) {
+        String prefix = name("route", profile, sanitize(rsp.getAlgorithm()));
+        for (Map.Entry<String, Long> entry : rsp.getTimings().entrySet()) {
+            metrics.timer(name(prefix, entry.getKey())).update(entry.getValue(), TimeUnit.NANOSECONDS);
+        }
+        metrics.timer(name(prefix, "total")).update(totalNanos, TimeUnit.NANOSECONDS);
+        long visitedNodes = rsp.getHints().getLong("visited_nodes.sum", -1);
+        if (visitedNodes >= 0)
+            metrics.histogram(name(prefix, "visited_nodes")).update(visitedNodes);
+    }
+
+    public void recordSerialization(String format, long nanos) {
+        metrics.timer(name("route", "serialization", format)).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the timings in milliseconds, rounded to microseconds, for the info of the response
+     */
+    public static Map<String, Double> toMillis(Map<String, Long> timings) {
+        Map<String, Double> result = new LinkedHashMap<>(timings.size());
+        timings.forEach((phase, nanos) -> result.put(phase, Math.round(nanos / 1_000.0) / 1_000.0));
+        return result;
+    }
+
+    private static String sanitize(String algorithm) {
+        // the algorithm name is e.g. astarbi|beeline and the dot separates the parts of a metric name
+        return algorithm.isEmpty() ? "unknown" : algorithm.replace('|', '_').replace('.', '_');
+    }
+}
@@ -20,23 +20,35 @@ package com.graphhopper.http.health;
 
 import com.codahale.metrics.health.HealthCheck;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.http.GraphHopperManaged;
 
 public class GraphHopperHealthCheck extends HealthCheck {
 
-    private final GraphHopper graphHopper;
+    private final GraphHopperManaged graphHopperManaged;
 
-    public GraphHopperHealthCheck(GraphHopper graphHopper) {
-        this.graphHopper = graphHopper;
+    public GraphHopperHealthCheck(GraphHopperManaged graphHopperManaged) {
+        this.graphHopperManaged = graphHopperManaged;
     }
 
     @Override
     protected Result check() {
-        if (!graphHopper.getBaseGraph().getBounds().isValid()) {
-            return Result.unhealthy("BaseGraph has invalid bounds.");
+        GraphHopper graphHopper = graphHopperManaged.acquire();
+        try {
+            if (!graphHopper.getBaseGraph().getBounds().isValid()) {
+                return Result.unhealthy("BaseGraph has invalid bounds.");
+            }
+            if (!graphHopper.getFullyLoaded()) {
+                return Result.unhealthy("GraphHopper is not fully loaded.");
+            }
+            if (!graphHopperManaged.isWarmedUp()) {
+                return Result.unhealthy("GraphHopper is warming up.");
+            }
+            if (graphHopperManaged.getWarmUpFailure() != null) {
+                return Result.unhealthy("GraphHopper warm-up failed: " + graphHopperManaged.getWarmUpFailure());
+            }
+            return Result.healthy();
+        } finally {
+            graphHopperManaged.release(graphHopper);
         }
-        if (!graphHopper.getFullyLoaded()) {
-            return Result.unhealthy("GraphHopper is not fully loaded.");
-        }
-        return Result.healthy();
     }
 }
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.Profile;
+import com.graphhopper.http.AdmissionController;
+import com.graphhopper.http.EndpointLimiter;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ContourBuilder;
@@ -28,14 +30,19 @@ import org.slf4j.LoggerFactory;
 import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.ToDoubleFunction;
 
 import static com.graphhopper.resources.IsochroneResource.ResponseType.geojson;
@@ -52,14 +59,16 @@ public class IsochroneResource {
     private final GraphHopper graphHopper;
     private final Triangulator triangulator;
     private final ProfileResolver profileResolver;
+    private final AdmissionController admissionController;
     private final String osmDate;
 
     @Inject
-    public IsochroneResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver) {
+    public IsochroneResource(GraphHopperConfig config, GraphHopper graphHopper, Triangulator triangulator, ProfileResolver profileResolver, AdmissionController admissionController) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.triangulator = triangulator;
         this.profileResolver = profileResolver;
+        this.admissionController = admissionController;
         this.osmDate = graphHopper.getProperties().get("datareader.data.date");
     }
 
@@ -67,7 +76,8 @@ public class IsochroneResource {
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response doGet(
+    public void doGet(
+            @Suspended AsyncResponse asyncResponse,
             @Context UriInfo uriInfo,
             @QueryParam("profile") String profileName,
             @QueryParam("buckets") @Range(min = 1, max = 20) @DefaultValue("1") OptionalInt nBuckets,
@@ -93,52 +103,62 @@ public class IsochroneResource {
         Profile profile = graphHopper.getProfile(profileName);
         if (profile == null)
             throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
-        LocationIndex locationIndex = graphHopper.getLocationIndex();
-        BaseGraph graph = graphHopper.getBaseGraph();
-        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
-        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
-        Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
-        if (!snap.isValid())
-            throw new IllegalArgumentException("Point not found:" + point);
-        QueryGraph queryGraph = QueryGraph.create(graph, snap);
-        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
-        ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
-
-        double limit;
-        ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
-        if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
-            limit = weightLimit.getAsLong();
-            shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 200));
-            fz = l -> l.weight;
-        } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
-            limit = distanceLimitInMeter.getAsLong();
-            shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
-            fz = l -> l.distance;
-        } else {
-            limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
-            shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
-            fz = l -> l.time;
-        }
-        ArrayList<Double> zs = new ArrayList<>();
-        double delta = limit / nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."));
-        for (int i = 0; i < nBuckets.getAsInt(); i++) {
-            zs.add((i + 1) * delta);
-        }
-
-        Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
-
-        ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
-        ArrayList<Geometry> isochrones = new ArrayList<>();
-        for (Double z : zs) {
-            logger.info("Building contour z={}", z);
-            MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
-            if (fullGeometry) {
-                isochrones.add(isochrone);
+        // the weight is usually close to the time in seconds
+        double radiusInKm = distanceLimitInMeter.orElse(-1) > 0 ? distanceLimitInMeter.getAsLong() / 1000.0
+                : (weightLimit.orElse(-1) > 0 ? weightLimit.getAsLong() : timeLimitInSeconds.orElse(0)) * AdmissionController.SEARCH_SPEED_KMH / 3600;
+        CompletableFuture<Response> future = admissionController.submit(EndpointLimiter.ISOCHRONE, AdmissionController.estimateSearchCost(radiusInKm), () -> {
+            LocationIndex locationIndex = graphHopper.getLocationIndex();
+            BaseGraph graph = graphHopper.getBaseGraph();
+            Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+            BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profile.getName()));
+            Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
+            if (!snap.isValid())
+                throw new IllegalArgumentException("Point not found:" + point);
+            QueryGraph queryGraph = QueryGraph.create(graph, snap);
+            TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
+            ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+
+            double limit;
+            ToDoubleFunction<ShortestPathTree.IsoLabel> fz;
+            if (weightLimit.orElseThrow(() -> new IllegalArgumentException("query param weight_limit is not a number.")) > 0) {
+                limit = weightLimit.getAsLong();
+                shortestPathTree.setWeightLimit(limit + Math.max(limit * 0.14, 200));
+                fz = l -> l.weight;
+            } else if (distanceLimitInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
+                limit = distanceLimitInMeter.getAsLong();
+                shortestPathTree.setDistanceLimit(limit + Math.max(limit * 0.14, 2_000));
+                fz = l -> l.distance;
             } else {
-                Polygon maxPolygon = heuristicallyFindMainConnectedComponent(isochrone, isochrone.getFactory().createPoint(new Coordinate(point.get().lon, point.get().lat)));
-                isochrones.add(isochrone.getFactory().createPolygon(((LinearRing) maxPolygon.getExteriorRing())));
+                limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
+                shortestPathTree.setTimeLimit(limit + Math.max(limit * 0.14, 200_000));
+                fz = l -> l.time;
             }
-        }
+            ArrayList<Double> zs = new ArrayList<>();
+            double delta = limit / nBuckets.orElseThrow(() -> new IllegalArgumentException("query param buckets is not a number."));
+            for (int i = 0; i < nBuckets.getAsInt(); i++) {
+                zs.add((i + 1) * delta);
+            }
+
+            Triangulator.Result result = triangulator.triangulate(snap, queryGraph, shortestPathTree, fz, degreesFromMeters(toleranceInMeter));
+
+            ArrayList<Geometry> isochrones = new ArrayList<>();
+            ContourBuilder contourBuilder = new ContourBuilder(result.triangulation);
+            for (Double z : zs) {
+                logger.info("Building contour z={}", z);
+                MultiPolygon isochrone = contourBuilder.computeIsoline(z, result.seedEdges);
+                if (fullGeometry) {
+                    isochrones.add(isochrone);
+                } else {
+                    Polygon maxPolygon = heuristicallyFindMainConnectedComponent(isochrone, isochrone.getFactory().createPoint(new Coordinate(point.get().lon, point.get().lat)));
+                    isochrones.add(isochrone.getFactory().createPolygon(((LinearRing) maxPolygon.getExteriorRing())));
+                }
+            }
+            return createResponse(isochrones, respType, shortestPathTree, sw);
+        });
+        RouteResource.resume(asyncResponse, future, Function.identity());
+    }
+
+    private Response createResponse(List<Geometry> isochrones, ResponseType respType, ShortestPathTree shortestPathTree, StopWatch sw) {
         ArrayList<JsonFeature> features = new ArrayList<>();
         for (Geometry isochrone : isochrones) {
             JsonFeature feature = new JsonFeature();
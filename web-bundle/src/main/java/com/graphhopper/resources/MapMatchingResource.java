@@ -27,6 +27,8 @@ import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.http.EndpointLimiter;
+import com.graphhopper.http.MapMatchingBatchPool;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.jackson.Jackson;
@@ -34,6 +36,7 @@ import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.matching.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,7 +46,10 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
@@ -63,23 +69,28 @@ public class MapMatchingResource {
     }
 
     private static final Logger logger = LoggerFactory.getLogger(MapMatchingResource.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final TranslationMap trMap;
     private final MapMatchingRouterFactory mapMatchingRouterFactory;
+    private final EndpointLimiter endpointLimiter;
     private final ObjectMapper objectMapper = Jackson.newObjectMapper();
     private final String osmDate;
+    private final MapMatchingBatchPool batchPool;
 
     @Inject
-    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory) {
+    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory, EndpointLimiter endpointLimiter, MapMatchingBatchPool batchPool) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.trMap = trMap;
         this.mapMatchingRouterFactory = mapMatchingRouterFactory;
+        this.endpointLimiter = endpointLimiter;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
+        this.batchPool = batchPool;
     }
 
     @POST
@@ -114,23 +125,18 @@ public class MapMatchingResource {
 
         StopWatch sw = new StopWatch().start();
 
-        PMap hints = new PMap();
-        RouteResource.initHints(hints, uriInfo.getQueryParameters());
-
-        // resolve profile and remove legacy vehicle/weighting parameters
-        // we need to explicitly disable CH here because map matching does not use it
-        PMap profileResolverHints = new PMap(hints);
-        profileResolverHints.putObject("profile", profile);
-        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
-        profile = profileResolver.resolveProfile(profileResolverHints);
-        hints.putObject("profile", profile);
-        removeLegacyParameters(hints);
-
-        MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
-        matching.setMeasurementErrorSigma(gpsAccuracy);
+        PMap hints = createHints(uriInfo, profile);
+        profile = hints.getString("profile", "");
+        MapMatching matching = createMapMatching(hints, gpsAccuracy);
 
         List<Observation> measurements = GpxConversions.getEntries(gpx.trk.get(0));
-        MatchResult matchResult = matching.match(measurements);
+        MatchResult matchResult;
+        endpointLimiter.acquire(EndpointLimiter.MATCH);
+        try {
+            matchResult = matching.match(measurements);
+        } finally {
+            endpointLimiter.release(EndpointLimiter.MATCH);
+        }
 
         sw.stop();
         logger.info(objectMapper.createObjectNode()
@@ -193,6 +199,139 @@ public class MapMatchingResource {
         }
     }
 
+    /**
+     * Matches many tracks with one request. Every line of the body is a JSON object with an optional "id" and the
+     * "points" of a track as [lon, lat] arrays. The tracks are matched in parallel and every line of the response is
+     * the result of one track in the order in which they finish, followed by a last line with the "report" of the
+     * whole batch. The tracks of all batches are matched on the shared {@link MapMatchingBatchPool} and every batch
+     * holds one match permit of the {@link EndpointLimiter} until its response is written.
+     */
+    @POST
+    @jakarta.ws.rs.Path("batch")
+    @Consumes(NDJSON)
+    // JSON is only used for errors that happen before the first line is written, e.g. an unknown profile
+    @Produces({MediaType.APPLICATION_JSON, NDJSON})
+    public Response matchBatch(
+            InputStream body,
+            @Context UriInfo uriInfo,
+            @QueryParam(CALC_POINTS) @DefaultValue("true") boolean calcPoints,
+            @QueryParam("points_encoded_multiplier") @DefaultValue("1e5") double pointsEncodedMultiplier,
+            @QueryParam("profile") String profile,
+            @QueryParam("traversal_keys") @DefaultValue("false") boolean enableTraversalKeys,
+            @QueryParam("gps_accuracy") @DefaultValue("10") double gpsAccuracy) {
+        PMap hints = createHints(uriInfo, profile);
+        // acquired before the response is committed so that an overloaded server still answers with 503
+        endpointLimiter.acquire(EndpointLimiter.MATCH);
+        StreamingOutput output = out -> {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                Iterator<BatchTrack> tracks = reader.lines().filter(line -> !line.isBlank()).map(this::parseTrack).iterator();
+                BatchMapMatching batch = new BatchMapMatching(() -> createMapMatching(hints, gpsAccuracy), batchPool.getExecutor(), batchPool.getThreads());
+                BatchMapMatching.Report report = batch.match(tracks, BatchTrack::getObservations, result -> {
+                    writeLine(out, convertBatchResult(result, calcPoints, pointsEncodedMultiplier, enableTraversalKeys));
+                });
+                logger.info(objectMapper.createObjectNode()
+                        .put("profile", hints.getString("profile", ""))
+                        .putPOJO("mapmatching_batch", report).toString());
+                writeLine(out, objectMapper.createObjectNode().putPOJO("report", report));
+            } finally {
+                endpointLimiter.release(EndpointLimiter.MATCH);
+            }
+        };
+        return Response.ok(output, NDJSON).build();
+    }
+
+    /**
+     * One line of a batch, parsed only once. A line that cannot be parsed is kept with its error, so that it fails
+     * like a track that cannot be matched instead of the whole batch.
+     */
+    private record BatchTrack(JsonNode id, List<Observation> observations, IllegalArgumentException error) {
+        List<Observation> getObservations() {
+            if (error != null)
+                throw error;
+            return observations;
+        }
+    }
+
+    private BatchTrack parseTrack(String line) {
+        JsonNode track;
+        try {
+            track = objectMapper.readTree(line);
+        } catch (IOException ex) {
+            return new BatchTrack(null, null, new IllegalArgumentException("Cannot parse track: " + ex.getMessage(), ex));
+        }
+        JsonNode id = track.get("id");
+        JsonNode points = track.get("points");
+        if (points == null || !points.isArray())
+            return new BatchTrack(id, null, new IllegalArgumentException("Every track needs the points as array of [lon, lat]"));
+        List<Observation> observations = new ArrayList<>(points.size());
+        for (JsonNode point : points) {
+            if (!point.isArray() || point.size() < 2)
+                return new BatchTrack(id, null, new IllegalArgumentException("Every point of a track needs to be an array of [lon, lat] but was " + point));
+            observations.add(new Observation(new GHPoint(point.get(1).asDouble(), point.get(0).asDouble())));
+        }
+        return new BatchTrack(id, observations, null);
+    }
+
+    private ObjectNode convertBatchResult(BatchMapMatching.Result<BatchTrack> result, boolean calcPoints, double pointsEncodedMultiplier, boolean enableTraversalKeys) {
+        ObjectNode json = objectMapper.createObjectNode();
+        JsonNode id = result.getTrack().id();
+        if (id != null)
+            json.set("id", id);
+        json.put("observations", result.getObservations());
+        json.put("took", result.getNanos() / 1_000_000);
+        if (result.hasError()) {
+            json.put("message", result.getError().getMessage());
+            return json;
+        }
+        MatchResult matchResult = result.getMatchResult();
+        json.put("distance", matchResult.getMatchLength());
+        json.put("time", matchResult.getMatchMillis());
+        json.put("original_distance", matchResult.getGpxEntriesLength());
+        if (calcPoints)
+            json.put("points", ResponsePathSerializer.encodePolyline(matchResult.getMergedPath().calcPoints(), false, pointsEncodedMultiplier));
+        if (enableTraversalKeys) {
+            ArrayNode traversalKeys = json.putArray("traversal_keys");
+            for (EdgeMatch em : matchResult.getEdgeMatches()) {
+                traversalKeys.add(em.getEdgeState().getEdgeKey());
+            }
+        }
+        return json;
+    }
+
+    private void writeLine(OutputStream out, JsonNode json) {
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(json);
+            synchronized (out) {
+                out.write(bytes);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private PMap createHints(UriInfo uriInfo, String profile) {
+        PMap hints = new PMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+
+        // resolve profile and remove legacy vehicle/weighting parameters
+        // we need to explicitly disable CH here because map matching does not require a CH preparation
+        PMap profileResolverHints = new PMap(hints);
+        profileResolverHints.putObject("profile", profile);
+        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
+        hints.putObject("profile", profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(hints);
+        return hints;
+    }
+
+    private MapMatching createMapMatching(PMap hints, double gpsAccuracy) {
+        MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
+        matching.setMeasurementErrorSigma(gpsAccuracy);
+        return matching;
+    }
+
     public static JsonNode convertToTree(MatchResult result, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
         ObjectNode root = JsonNodeFactory.instance.objectNode();
         ObjectNode diary = root.putObject("diary");
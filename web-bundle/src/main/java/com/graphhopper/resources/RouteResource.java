@@ -22,11 +22,16 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.http.AdmissionController;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.GHRequestTransformer;
+import com.graphhopper.http.MultiExceptionMapper;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.http.RouteResponse;
+import com.graphhopper.http.RoutingMetrics;
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.protobuf.ResponsePathProtobuf;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import io.dropwizard.jersey.params.AbstractParam;
@@ -38,10 +43,15 @@ import jakarta.inject.Named;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.*;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
 import static com.graphhopper.util.Parameters.Routing.*;
@@ -51,6 +61,9 @@ import static java.util.stream.Collectors.toList;
  * Resource to use GraphHopper in a remote client application like mobile or browser. Note: If type
  * is json it returns the points in GeoJson array format [longitude,latitude] unlike the format "lat,lon"
  * used for the request. See the full API response format in docs/web/api-doc.md
+ * <p>
+ * Clients that prefer application/x-protobuf in the Accept header (or use type=protobuf for GET) get the compact
+ * binary response of {@link ResponsePathProtobuf} instead of JSON.
  *
  * @author Peter Karich
  */
@@ -58,21 +71,30 @@ import static java.util.stream.Collectors.toList;
 public class RouteResource {
 
     private static final Logger logger = LoggerFactory.getLogger(RouteResource.class);
+    /**
+     * The remaining time budget of the request in milliseconds, e.g. set by a load balancer. Like timeout_ms, but
+     * the budget starts when the request is received, i.e. it includes the time in the queue of the admission control.
+     */
+    public static final String TIMEOUT_HEADER = "X-GH-Timeout-Ms";
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final GHRequestTransformer ghRequestTransformer;
+    private final RoutingMetrics routingMetrics;
+    private final AdmissionController admissionController;
     private final Boolean hasElevation;
     private final String osmDate;
     private final List<String> snapPreventionsDefault;
 
     @Inject
-    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, @Named("hasElevation") Boolean hasElevation) {
+    public RouteResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, GHRequestTransformer ghRequestTransformer, RoutingMetrics routingMetrics, AdmissionController admissionController, @Named("hasElevation") Boolean hasElevation) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.ghRequestTransformer = ghRequestTransformer;
+        this.routingMetrics = routingMetrics;
+        this.admissionController = admissionController;
         this.hasElevation = hasElevation;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
         this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
@@ -80,10 +102,13 @@ public class RouteResource {
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
-    public Response doGet(
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", ResponsePathProtobuf.MEDIA_TYPE})
+    public void doGet(
+            @Suspended AsyncResponse asyncResponse,
             @Context HttpServletRequest httpReq,
             @Context UriInfo uriInfo,
+            @Context HttpHeaders httpHeaders,
+            @HeaderParam(TIMEOUT_HEADER) Long timeoutHeader,
             @QueryParam(WAY_POINT_MAX_DISTANCE) @DefaultValue("0.5") double minPathPrecision,
             @QueryParam(ELEVATION_WAY_POINT_MAX_DISTANCE) Double minPathElevationPrecision,
             @QueryParam("point") @NotNull List<GHPointParam> pointParams,
@@ -106,15 +131,18 @@ public class RouteResource {
             @QueryParam("gpx.waypoints") @DefaultValue("false") boolean withWayPoints,
             @QueryParam("gpx.trackname") @DefaultValue("GraphHopper Track") String trackName,
             @QueryParam("gpx.millis") String timeString) {
+        long receivedMillis = System.currentTimeMillis();
         StopWatch sw = new StopWatch().start();
         List<GHPoint> points = pointParams.stream().map(AbstractParam::get).collect(toList());
         boolean writeGPX = "gpx".equalsIgnoreCase(type);
-        instructions = writeGPX || instructions;
+        boolean writeProtobuf = !writeGPX && ("protobuf".equalsIgnoreCase(type) || prefersProtobuf(httpHeaders));
+        boolean withInstructions = writeGPX || instructions;
         if (enableElevation && !hasElevation)
             throw new IllegalArgumentException("Elevation not supported!");
 
         GHRequest request = new GHRequest();
         initHints(request.getHints(), uriInfo.getQueryParameters());
+        setDeadline(request.getHints(), receivedMillis, timeoutHeader);
 
         if (minPathElevationPrecision != null)
             request.getHints().putObject(ELEVATION_WAY_POINT_MAX_DISTANCE, minPathElevationPrecision);
@@ -129,7 +157,7 @@ public class RouteResource {
                 setPathDetails(pathDetails).
                 getHints().
                 putObject(CALC_POINTS, calcPoints).
-                putObject(INSTRUCTIONS, instructions).
+                putObject(INSTRUCTIONS, withInstructions).
                 putObject(WAY_POINT_MAX_DISTANCE, minPathPrecision);
 
         if (uriInfo.getQueryParameters().containsKey(SNAP_PREVENTION)) {
@@ -147,49 +175,54 @@ public class RouteResource {
         PMap profileResolverHints = new PMap(request.getHints());
         profileResolverHints.putObject("profile", profileName);
         profileResolverHints.putObject("has_curbsides", !curbsides.isEmpty());
-        profileName = profileResolver.resolveProfile(profileResolverHints);
+        String profile = profileResolver.resolveProfile(profileResolverHints);
         removeLegacyParameters(request.getHints());
-        request.setProfile(profileName);
+        request.setProfile(profile);
 
-        GHResponse ghResponse = graphHopper.route(request);
-
-        double took = sw.stop().getMillisDouble();
-        String logStr = (httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")) + " " + points + ", took: " + String.format("%.1f", took) + "ms, algo: " + algoStr + ", profile: " + profileName;
+        boolean withTimings = request.getHints().getBool(TIMINGS, false);
+        String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
+        resume(asyncResponse, admissionController.route(graphHopper, request), ghResponse -> {
+            double took = sw.stop().getMillisDouble();
+            String logStr = infoStr + " " + points + ", took: " + String.format("%.1f", took) + "ms, algo: " + algoStr + ", profile: " + profile;
 
-        if (ghResponse.hasErrors()) {
-            logger.info(logStr + " " + ghResponse);
-            return Response.status(Response.Status.BAD_REQUEST).
-                    entity(new MultiException(ghResponse.getErrors())).
-                    type(writeGPX ? "application/gpx+xml" : MediaType.APPLICATION_JSON).
-                    build();
-        } else {
-            logger.info(logStr + ", alternatives: " + ghResponse.getAll().size()
-                    + ", distance0: " + ghResponse.getBest().getDistance()
-                    + ", weight0: " + ghResponse.getBest().getRouteWeight()
-                    + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
-                    + ", points0: " + ghResponse.getBest().getPoints().size()
-                    + ", debugInfo: " + ghResponse.getDebugInfo());
-            return writeGPX ?
-                    gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
-                            header("X-GH-Took", "" + Math.round(took)).
-                            build()
-                    :
-                    Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
-                            header("X-GH-Took", "" + Math.round(took)).
-                            type(MediaType.APPLICATION_JSON).
-                            build();
-        }
+            if (ghResponse.hasErrors()) {
+                logger.info(logStr + " " + ghResponse);
+                return Response.status(MultiExceptionMapper.getStatus(ghResponse.getErrors())).
+                        entity(new MultiException(ghResponse.getErrors())).
+                        type(writeGPX ? "application/gpx+xml" : writeProtobuf ? ResponsePathProtobuf.MEDIA_TYPE : MediaType.APPLICATION_JSON).
+                        build();
+            } else {
+                logger.info(logStr + ", alternatives: " + ghResponse.getAll().size()
+                        + ", distance0: " + ghResponse.getBest().getDistance()
+                        + ", weight0: " + ghResponse.getBest().getRouteWeight()
+                        + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
+                        + ", points0: " + ghResponse.getBest().getPoints().size()
+                        + ", debugInfo: " + ghResponse.getDebugInfo());
+                routingMetrics.record(profile, ghResponse, sw.getNanos());
+                return writeGPX ?
+                        gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
+                                header("X-GH-Took", "" + Math.round(took)).
+                                build()
+                        :
+                        Response.ok(new RouteResponse(ghResponse, createInfo(ghResponse, took, withTimings), withInstructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+                                header("X-GH-Took", "" + Math.round(took)).
+                                type(writeProtobuf ? ResponsePathProtobuf.MEDIA_TYPE : MediaType.APPLICATION_JSON).
+                                build();
+            }
+        });
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response doPost(@NotNull GHRequest request, @Context HttpServletRequest httpReq) {
-        if (!request.hasSnapPreventions())
-            request.setSnapPreventions(snapPreventionsDefault);
+    @Produces({MediaType.APPLICATION_JSON, ResponsePathProtobuf.MEDIA_TYPE})
+    public void doPost(@Suspended AsyncResponse asyncResponse, @NotNull GHRequest postRequest, @Context HttpServletRequest httpReq,
+                       @Context HttpHeaders httpHeaders, @HeaderParam(TIMEOUT_HEADER) Long timeoutHeader) {
+        setDeadline(postRequest.getHints(), System.currentTimeMillis(), timeoutHeader);
+        if (!postRequest.hasSnapPreventions())
+            postRequest.setSnapPreventions(snapPreventionsDefault);
 
         StopWatch sw = new StopWatch().start();
-        request = ghRequestTransformer.transformRequest(request);
+        GHRequest request = ghRequestTransformer.transformRequest(postRequest);
 
         if (Helper.isEmpty(request.getProfile()) && request.getCustomModel() != null)
             // throw a dedicated exception here, otherwise a missing profile is still caught in Router
@@ -201,33 +234,74 @@ public class RouteResource {
         request.setProfile(profileResolver.resolveProfile(profileResolverHints));
         removeLegacyParameters(request.getHints());
 
-        GHResponse ghResponse = graphHopper.route(request);
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
         boolean enableElevation = request.getHints().getBool("elevation", false);
         boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
         boolean pointsEncoded = request.getHints().getBool("points_encoded", true);
         double pointsEncodedMultiplier = request.getHints().getDouble("points_encoded_multiplier", 1e5);
-
-        double took = sw.stop().getMillisDouble();
+        boolean withTimings = request.getHints().getBool(TIMINGS, false);
+        boolean writeProtobuf = prefersProtobuf(httpHeaders);
         String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
-        String logStr = infoStr + " " + request.getPoints().size() + ", took: "
-                + String.format("%.1f", took) + " ms, algo: " + request.getAlgorithm() + ", profile: " + request.getProfile()
-                + ", custom_model: " + request.getCustomModel();
 
-        if (ghResponse.hasErrors()) {
-            throw new MultiException(ghResponse.getErrors());
-        } else {
-            logger.info(logStr + ", alternatives: " + ghResponse.getAll().size()
-                    + ", distance0: " + ghResponse.getBest().getDistance()
-                    + ", weight0: " + ghResponse.getBest().getRouteWeight()
-                    + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
-                    + ", points0: " + ghResponse.getBest().getPoints().size()
-                    + ", debugInfo: " + ghResponse.getDebugInfo());
-            return Response.ok(ResponsePathSerializer.jsonObject(ghResponse, new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
-                    header("X-GH-Took", "" + Math.round(took)).
-                    type(MediaType.APPLICATION_JSON).
-                    build();
-        }
+        resume(asyncResponse, admissionController.route(graphHopper, request), ghResponse -> {
+            double took = sw.stop().getMillisDouble();
+            String logStr = infoStr + " " + request.getPoints().size() + ", took: "
+                    + String.format("%.1f", took) + " ms, algo: " + request.getAlgorithm() + ", profile: " + request.getProfile()
+                    + ", custom_model: " + request.getCustomModel();
+
+            if (ghResponse.hasErrors()) {
+                throw new MultiException(ghResponse.getErrors());
+            } else {
+                logger.info(logStr + ", alternatives: " + ghResponse.getAll().size()
+                        + ", distance0: " + ghResponse.getBest().getDistance()
+                        + ", weight0: " + ghResponse.getBest().getRouteWeight()
+                        + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
+                        + ", points0: " + ghResponse.getBest().getPoints().size()
+                        + ", debugInfo: " + ghResponse.getDebugInfo());
+                routingMetrics.record(request.getProfile(), ghResponse, sw.getNanos());
+                return Response.ok(new RouteResponse(ghResponse, createInfo(ghResponse, took, withTimings), instructions, calcPoints, enableElevation, pointsEncoded, pointsEncodedMultiplier)).
+                        header("X-GH-Took", "" + Math.round(took)).
+                        type(writeProtobuf ? ResponsePathProtobuf.MEDIA_TYPE : MediaType.APPLICATION_JSON).
+                        build();
+            }
+        });
+    }
+
+    /**
+     * Resumes the suspended response when the result of the {@link AdmissionController} is available. Expensive
+     * requests are calculated in its lane and the Jetty thread is not blocked while they wait or run. Exceptions, also
+     * the ones thrown when creating the response, are handled by the exception mappers like for synchronous requests.
+     */
+    static <T> void resume(AsyncResponse asyncResponse, CompletableFuture<T> future, Function<T, Response> createResponse) {
+        future.thenApply(createResponse).whenComplete((response, ex) -> {
+            if (ex == null)
+                asyncResponse.resume(response);
+            else
+                asyncResponse.resume(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+        });
+    }
+
+    private ResponsePathSerializer.Info createInfo(GHResponse ghResponse, double took, boolean withTimings) {
+        return new ResponsePathSerializer.Info(config.getCopyrights(), Math.round(took), osmDate,
+                withTimings ? RoutingMetrics.toMillis(ghResponse.getTimings()) : null);
+    }
+
+    static void setDeadline(PMap hints, long receivedMillis, Long timeoutHeader) {
+        if (timeoutHeader != null)
+            hints.putObject(DEADLINE, Math.min(receivedMillis + timeoutHeader, hints.getLong(DEADLINE, Long.MAX_VALUE)));
+    }
+
+    /**
+     * @return true if the most preferred media type of the Accept header is the protobuf route response. Wildcards
+     * like * / * still return JSON.
+     */
+    static boolean prefersProtobuf(HttpHeaders httpHeaders) {
+        List<MediaType> acceptable = httpHeaders.getAcceptableMediaTypes();
+        if (acceptable.isEmpty())
+            return false;
+        MediaType preferred = acceptable.get(0);
+        return !preferred.isWildcardType() && !preferred.isWildcardSubtype()
+                && preferred.isCompatible(MediaType.valueOf(ResponsePathProtobuf.MEDIA_TYPE));
     }
 
     public static void removeLegacyParameters(PMap hints) {
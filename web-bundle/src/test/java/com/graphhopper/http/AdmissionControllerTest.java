@@ -0,0 +1,157 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.util.Parameters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+import static com.graphhopper.util.Parameters.Routing.MAX_VISITED_NODES;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch finish = new CountDownLatch(1);
+    private final GraphHopper hopper = new GraphHopper() {
+        @Override
+        public GHResponse route(GHRequest request) {
+            if (request.getHints().getBool("block", false)) {
+                started.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            GHResponse rsp = new GHResponse().setAlgorithm(Thread.currentThread().getName());
+            rsp.addDebugInfo(MAX_VISITED_NODES + "=" + request.getHints().getInt(MAX_VISITED_NODES, -1));
+            return rsp;
+        }
+    };
+
+    @AfterEach
+    public void tearDown() {
+        finish.countDown();
+    }
+
+    @Test
+    public void testEstimateCost() {
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("bike"));
+        AdmissionController controller = createController(new GraphHopperConfig(), new MetricRegistry());
+
+        // ~11.1km
+        GHRequest request = new GHRequest(0, 0, 0, 0.1).setProfile("car");
+        assertEquals(11.1 * AdmissionController.CH_FACTOR, controller.estimateCost(hopper, request), 0.1);
+        request.setAlgorithm(Parameters.Algorithms.ALT_ROUTE);
+        assertEquals(2 * 11.1 * AdmissionController.CH_FACTOR, controller.estimateCost(hopper, request), 0.1);
+
+        request = new GHRequest(0, 0, 0, 0.1).setProfile("car");
+        request.putHint(Parameters.CH.DISABLE, true);
+        assertEquals(11.1 * AdmissionController.FLEXIBLE_FACTOR, controller.estimateCost(hopper, request), 10);
+        request = new GHRequest(0, 0, 0, 0.1).setProfile("bike");
+        assertEquals(11.1 * AdmissionController.LM_FACTOR, controller.estimateCost(hopper, request), 2);
+        request.putHint(Parameters.Landmark.DISABLE, true);
+        assertEquals(11.1 * AdmissionController.FLEXIBLE_FACTOR, controller.estimateCost(hopper, request), 10);
+    }
+
+    @Test
+    public void testDisabled() {
+        AdmissionController controller = createController(new GraphHopperConfig(), new MetricRegistry());
+        CompletableFuture<GHResponse> future = controller.route(hopper, expensiveRequest());
+        assertTrue(future.isDone());
+        assertEquals(Thread.currentThread().getName(), future.join().getAlgorithm());
+    }
+
+    @Test
+    public void testRejectWhenLaneIsFull() throws Exception {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("admission.enabled", true).
+                putObject("admission.expensive.threads", 1).
+                putObject("admission.expensive.queue", 0);
+        MetricRegistry metrics = new MetricRegistry();
+        AdmissionController controller = createController(config, metrics);
+        try {
+            // occupy the only thread of the expensive lane, the calling thread does not wait for it
+            CompletableFuture<GHResponse> blocked = controller.route(hopper, expensiveRequest().putHint("block", true));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertFalse(blocked.isDone());
+
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> controller.route(hopper, expensiveRequest()).get());
+            assertInstanceOf(OverloadedException.class, ex.getCause());
+            ex = assertThrows(ExecutionException.class, () -> controller.submit(EndpointLimiter.ISOCHRONE,
+                    AdmissionController.estimateSearchCost(100), () -> "isochrone").get());
+            assertInstanceOf(OverloadedException.class, ex.getCause());
+            assertEquals(2, metrics.meter("admission.expensive.rejected").getCount());
+
+            // cheap requests are not affected and run in the calling thread
+            GHResponse rsp = controller.route(hopper, new GHRequest(0, 0, 0, 0.001).setProfile("car")).join();
+            assertEquals(Thread.currentThread().getName(), rsp.getAlgorithm());
+            assertEquals("isochrone", controller.submit(EndpointLimiter.ISOCHRONE, AdmissionController.estimateSearchCost(1), () -> "isochrone").join());
+
+            finish.countDown();
+            assertTrue(blocked.get(10, TimeUnit.SECONDS).getAlgorithm().startsWith("gh-admission-expensive-"));
+        } finally {
+            controller.stop();
+        }
+    }
+
+    @Test
+    public void testDegradeWhenLaneIsFull() throws Exception {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("admission.enabled", true).
+                putObject("admission.expensive.threads", 1).
+                putObject("admission.expensive.queue", 0).
+                putObject("admission.degraded_max_visited_nodes", 1000);
+        MetricRegistry metrics = new MetricRegistry();
+        AdmissionController controller = createController(config, metrics);
+        try {
+            controller.route(hopper, expensiveRequest().putHint("block", true));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            GHRequest request = expensiveRequest();
+            GHResponse rsp = controller.route(hopper, request).join();
+            assertEquals(Thread.currentThread().getName(), rsp.getAlgorithm());
+            assertEquals(MAX_VISITED_NODES + "=1000", rsp.getDebugInfo());
+            // the hints of the caller are not changed
+            assertFalse(request.getHints().has(MAX_VISITED_NODES));
+            assertEquals(1, metrics.meter("admission.degraded").getCount());
+        } finally {
+            controller.stop();
+        }
+    }
+
+    private static AdmissionController createController(GraphHopperConfig config, MetricRegistry metrics) {
+        return new AdmissionController(config, new EndpointLimiter(config, metrics), metrics);
+    }
+
+    private static GHRequest expensiveRequest() {
+        // no CH or LM, i.e. ~111km * 100
+        return new GHRequest(0, 0, 0, 1).setProfile("car");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GraphHopperConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EndpointLimiterTest {
+
+    @Test
+    public void testDisabled() {
+        EndpointLimiter limiter = new EndpointLimiter(new GraphHopperConfig(), new MetricRegistry());
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(EndpointLimiter.ROUTE);
+        }
+    }
+
+    @Test
+    public void testLimitPerEndpoint() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        EndpointLimiter limiter = new EndpointLimiter(new GraphHopperConfig().
+                putObject("endpoint_limit.enabled", true).
+                putObject("endpoint_limit.max_wait_ms", 200).
+                putObject("endpoint_limit.route.permits", 1), metrics);
+
+        limiter.acquire(EndpointLimiter.ROUTE);
+        assertEquals(1, metrics.getGauges().get("route.limit.active").getValue());
+        OverloadedException ex = assertThrows(OverloadedException.class, () -> limiter.acquire(EndpointLimiter.ROUTE));
+        assertTrue(ex.getMessage().contains("route"), ex.getMessage());
+        assertEquals(1, metrics.meter("route.limit.rejected").getCount());
+
+        // the other endpoints have their own permits
+        limiter.acquire(EndpointLimiter.MATCH);
+        limiter.release(EndpointLimiter.MATCH);
+
+        // a waiting request gets the permit once it is released
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            LimiterTask task = new LimiterTask(limiter);
+            Future<?> future = executor.submit(task);
+            task.started.await();
+            limiter.release(EndpointLimiter.ROUTE);
+            future.get();
+            assertEquals(0, metrics.getGauges().get("route.limit.active").getValue());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThrows(IllegalArgumentException.class, () -> limiter.acquire("unknown"));
+    }
+
+    private static class LimiterTask implements Runnable {
+        final CountDownLatch started = new CountDownLatch(1);
+        final EndpointLimiter limiter;
+
+        LimiterTask(EndpointLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            limiter.acquire(EndpointLimiter.ROUTE);
+            limiter.release(EndpointLimiter.ROUTE);
+        }
+    }
+}
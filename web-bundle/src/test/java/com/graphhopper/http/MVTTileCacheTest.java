@@ -0,0 +1,102 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTTileCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testMemoryEviction() {
+        MVTTileCache cache = new MVTTileCache(null, 250, 16);
+        cache.put("a", 14, new byte[100]);
+        cache.put("b", 14, new byte[100]);
+        // access a, so that b is the least recently used tile
+        assertNotNull(cache.get("a"));
+        cache.put("c", 14, new byte[100]);
+        assertEquals(200, cache.getMemoryBytes());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+
+        // too big for the memory tier
+        cache.put("d", 14, new byte[300]);
+        assertNull(cache.get("d"));
+        assertEquals(200, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void testDiskTier() {
+        String key = MVTTileCache.createKey("abc", 14, 8261, 6050, false);
+        assertEquals("abc/v" + MVTTileRenderer.VERSION + "/14/8261/6050", key);
+        assertEquals("abc/v" + MVTTileRenderer.VERSION + "/14/8261/6050_all", MVTTileCache.createKey("abc", 14, 8261, 6050, true));
+
+        MVTTileCache cache = new MVTTileCache(tempDir, 0, 16);
+        assertFalse(cache.containsOnDisk(key));
+        assertNull(cache.get(key));
+        cache.putDisk(key, new byte[]{1, 2, 3});
+        assertTrue(cache.containsOnDisk(key));
+        assertTrue(new File(tempDir, "abc/v" + MVTTileRenderer.VERSION + "/14/8261/6050.mvt").exists());
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(key));
+        assertEquals(0, cache.getMemoryBytes());
+
+        // a new instance with memory tier reads the disk tier and keeps the tile in memory
+        cache = new MVTTileCache(tempDir, 1000, 16);
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(key));
+        assertEquals(3, cache.getMemoryBytes());
+    }
+
+    @Test
+    public void testOnlyNonEmptyTilesUpToMaxDiskZoomOnDisk() {
+        MVTTileCache cache = new MVTTileCache(tempDir, 1000, 14);
+        String emptyKey = MVTTileCache.createKey("abc", 9, 261, 150, false);
+        cache.put(emptyKey, 9, new byte[0]);
+        assertArrayEquals(new byte[0], cache.get(emptyKey));
+        assertFalse(cache.containsOnDisk(emptyKey));
+        cache.putDisk(emptyKey, new byte[0]);
+        assertFalse(cache.containsOnDisk(emptyKey));
+
+        String key = MVTTileCache.createKey("abc", 14, 8261, 6050, false);
+        cache.put(key, 14, new byte[]{1, 2, 3});
+        assertTrue(cache.containsOnDisk(key));
+
+        String highZoomKey = MVTTileCache.createKey("abc", 15, 16522, 12100, false);
+        cache.put(highZoomKey, 15, new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(highZoomKey));
+        assertFalse(cache.containsOnDisk(highZoomKey));
+    }
+
+    @Test
+    public void testTileNumbers() {
+        // the tile of MVTResourceTest
+        assertEquals(16528, MVTTileRenderer.lon2TileX(1.5898, 15));
+        assertEquals(12099, MVTTileRenderer.lat2TileY(42.5247, 15));
+        assertEquals(0, MVTTileRenderer.lon2TileX(-180, 10));
+        assertEquals(1023, MVTTileRenderer.lon2TileX(180, 10));
+        assertEquals(0, MVTTileRenderer.lat2TileY(89.9, 10));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.http;
+
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MVTTileRendererTest {
+
+    @Test
+    public void testShortEdgesAreSimplifiedToTowerNodes() {
+        Random random = new Random(123);
+        for (int zoom = 10; zoom < 14; zoom++) {
+            // tiles around Andorra and in the north of Norway
+            for (double[] lonLat : new double[][]{{1.5, 42.5}, {25.0, 70.0}}) {
+                int x = MVTTileRenderer.lon2TileX(lonLat[0], zoom), y = MVTTileRenderer.lat2TileY(lonLat[1], zoom);
+                Coordinate nw = MVTTileRenderer.num2deg(x, y, zoom);
+                Coordinate se = MVTTileRenderer.num2deg(x + 1, y + 1, zoom);
+                AffineTransformation transformation = MVTTileRenderer.createTransformation(nw, se);
+                double maxDistance = MVTTileRenderer.calcMaxTowerOnlyDistance(nw, se);
+                assertTrue(maxDistance > 0);
+
+                for (int i = 0; i < 100; i++) {
+                    // a random walk that is as long as possible and ends somewhere near its start
+                    PointList points = new PointList();
+                    double lat = se.y + random.nextDouble() * (nw.y - se.y), lon = nw.x + random.nextDouble() * (se.x - nw.x);
+                    points.add(lat, lon);
+                    double distance = 0;
+                    while (true) {
+                        double nextLat = lat + (random.nextDouble() - 0.5) * maxDistance / 1e5;
+                        double nextLon = lon + (random.nextDouble() - 0.5) * maxDistance / 1e5;
+                        double segment = DistanceCalcEarth.DIST_EARTH.calcDist(lat, lon, nextLat, nextLon);
+                        if (distance + segment > maxDistance)
+                            break;
+                        distance += segment;
+                        points.add(nextLat, nextLon);
+                        lat = nextLat;
+                        lon = nextLon;
+                    }
+                    if (points.size() < 3)
+                        continue;
+                    Geometry g = DouglasPeuckerSimplifier.simplify(transformation.transform(points.toLineString(false)),
+                            MVTTileRenderer.SIMPLIFICATION_TOLERANCE);
+                    assertEquals(2, g.getNumPoints(), "zoom " + zoom + ", " + points);
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.graphhopper.resources;
 
 // JUnit 5 imports
+import com.codahale.metrics.MetricRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,6 +11,8 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -22,7 +25,10 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.http.AdmissionController;
+import com.graphhopper.http.EndpointLimiter;
 import com.graphhopper.http.GHRequestTransformer;
+import com.graphhopper.http.RoutingMetrics;
 import com.graphhopper.jackson.MultiException;
 import com.graphhopper.storage.StorableProperties;
 import com.graphhopper.util.CustomModel;
@@ -33,6 +39,8 @@ import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
 
 // Jakarta imports (for HTTP responses)
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.servlet.http.HttpServletRequest;
@@ -72,6 +80,11 @@ public class RouteResourceMockTest {
     @Mock
     private StorableProperties mockStorableProperties; // Mock 6: GraphHopper properties
 
+    @Mock
+    private HttpHeaders mockHttpHeaders; // Mock 7: HTTP headers, no Accept header means JSON
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
     // --- Class under test ---
     private RouteResource routeResource;
 
@@ -109,10 +122,30 @@ public class RouteResourceMockTest {
                 mockGraphHopper,
                 mockProfileResolver,
                 mockGHRequestTransformer,
+                new RoutingMetrics(metricRegistry),
+                new AdmissionController(new GraphHopperConfig(), new EndpointLimiter(new GraphHopperConfig(), metricRegistry), metricRegistry),
                 false // hasElevation
         );
     }
 
+    /**
+     * Calls the asynchronous doPost and returns the response that it resumed or throws the exception that it resumed.
+     */
+    private Response doPost(GHRequest request) {
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        routeResource.doPost(asyncResponse, request, mockHttpServletRequest, mockHttpHeaders, null);
+        ArgumentCaptor<Throwable> exception = ArgumentCaptor.forClass(Throwable.class);
+        verify(asyncResponse, atMost(1)).resume(exception.capture());
+        if (!exception.getAllValues().isEmpty()) {
+            if (exception.getValue() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new AssertionError(exception.getValue());
+        }
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse).resume(response.capture());
+        return (Response) response.getValue();
+    }
+
     // --- Test Case 1: Happy Path Scenario ---
 
     @Test
@@ -136,13 +169,15 @@ public class RouteResourceMockTest {
         fakePath.setInstructions(instructions);
         
         fakeResponse.add(fakePath);
+        fakeResponse.setAlgorithm("astarbi|beeline");
+        fakeResponse.addTiming("snap", 1_000_000);
         
         // Define mock behaviors
         when(mockProfileResolver.resolveProfile(any())).thenReturn("car");
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
 
         // 2. ACT (execute the method under test)
-        Response httpResponse = routeResource.doPost(request, mockHttpServletRequest);
+        Response httpResponse = doPost(request);
 
         // 3. ASSERT (verify results)
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -151,6 +186,10 @@ public class RouteResourceMockTest {
         // Note: doPost returns a JSON object, not GHResponse
         // We need to verify response status and content type
         assertEquals(MediaType.APPLICATION_JSON, httpResponse.getMediaType().toString(), "Response type should be JSON");
+
+        // Verify that the phases were recorded per profile and algorithm
+        assertEquals(1, metricRegistry.timer("route.car.astarbi_beeline.snap").getCount());
+        assertEquals(1, metricRegistry.timer("route.car.astarbi_beeline.total").getCount());
     
         // Verify that route method was called exactly once
         verify(mockGraphHopper, times(1)).route(any(GHRequest.class));
@@ -193,7 +232,7 @@ public class RouteResourceMockTest {
         // 2. ACT & ASSERT (execute the method under test and verify exception)
         MultiException exception = org.junit.jupiter.api.Assertions.assertThrows(
                 MultiException.class,
-                () -> routeResource.doPost(request, mockHttpServletRequest),
+                () -> doPost(request),
                 "doPost should throw MultiException when response contains errors"
         );
 
@@ -262,7 +301,7 @@ public class RouteResourceMockTest {
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
         
         // 2. ACT (execute the method under test)
-        Response httpResponse = routeResource.doPost(originalRequest, mockHttpServletRequest);
+        Response httpResponse = doPost(originalRequest);
         
         // 3. ASSERT (verify results)
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -321,6 +360,8 @@ public class RouteResourceMockTest {
             mockGraphHopper,
             mockProfileResolver,
             mockGHRequestTransformer,
+            new RoutingMetrics(metricRegistry),
+            new AdmissionController(new GraphHopperConfig(), new EndpointLimiter(new GraphHopperConfig(), metricRegistry), metricRegistry),
             false // hasElevation
         );
         
@@ -347,7 +388,7 @@ public class RouteResourceMockTest {
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
         
         // 2. ACT (execute the method under test)
-        Response httpResponse = routeResource.doPost(request, mockHttpServletRequest);
+        Response httpResponse = doPost(request);
         
         // 3. ASSERT (verify results)
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -407,7 +448,7 @@ public class RouteResourceMockTest {
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
         
         // 2. ACT
-        Response httpResponse = routeResource.doPost(request, mockHttpServletRequest);
+        Response httpResponse = doPost(request);
         
         // 3. ASSERT
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -457,7 +498,7 @@ public class RouteResourceMockTest {
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
         
         // 2. ACT
-        Response httpResponse = routeResource.doPost(request, mockHttpServletRequest);
+        Response httpResponse = doPost(request);
         
         // 3. ASSERT
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -499,7 +540,7 @@ public class RouteResourceMockTest {
         // 2. ACT & ASSERT
         IllegalArgumentException exception = org.junit.jupiter.api.Assertions.assertThrows(
             IllegalArgumentException.class,
-            () -> routeResource.doPost(request, mockHttpServletRequest),
+            () -> doPost(request),
             "doPost should throw IllegalArgumentException when customModel is provided without profile"
         );
         
@@ -552,7 +593,7 @@ public class RouteResourceMockTest {
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
         
         // 2. ACT
-        Response httpResponse = routeResource.doPost(request, mockHttpServletRequest);
+        Response httpResponse = doPost(request);
         
         // 3. ASSERT
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -601,7 +642,7 @@ public class RouteResourceMockTest {
         when(mockGraphHopper.route(any(GHRequest.class))).thenReturn(fakeResponse);
         
         // 2. ACT
-        Response httpResponse = routeResource.doPost(request, mockHttpServletRequest);
+        Response httpResponse = doPost(request);
         
         // 3. ASSERT
         assertEquals(200, httpResponse.getStatus(), "HTTP response status should be 200 (OK)");
@@ -17,8 +17,11 @@
  */
 package com.graphhopper.application;
 
+import com.graphhopper.application.cli.ContainerCommand;
 import com.graphhopper.application.cli.ImportCommand;
+import com.graphhopper.application.cli.MVTCommand;
 import com.graphhopper.application.cli.MatchCommand;
+import com.graphhopper.application.cli.TravelTimesCommand;
 import com.graphhopper.application.resources.RootResource;
 import com.graphhopper.http.CORSFilter;
 import com.graphhopper.http.GraphHopperBundle;
@@ -42,6 +45,9 @@ public final class GraphHopperApplication extends Application<GraphHopperServerC
         bootstrap.addBundle(new GraphHopperBundle());
         bootstrap.addCommand(new ImportCommand());
         bootstrap.addCommand(new MatchCommand());
+        bootstrap.addCommand(new ContainerCommand());
+        bootstrap.addCommand(new MVTCommand());
+        bootstrap.addCommand(new TravelTimesCommand());
         bootstrap.addBundle(new AssetsBundle("/com/graphhopper/maps/", "/maps/", "index.html"));
         // see this link even though its outdated?! // https://www.webjars.org/documentation#dropwizard
         bootstrap.addBundle(new AssetsBundle("/META-INF/resources/webjars", "/webjars/", null, "webjars"));
@@ -0,0 +1,78 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.cli;
+
+import com.graphhopper.storage.GraphContainer;
+import com.graphhopper.util.Helper;
+import io.dropwizard.core.cli.Command;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.io.File;
+
+/**
+ * Converts a graph folder into a single graph container file and back. The container can be used as graph.location
+ * directly, see {@link GraphContainer}.
+ */
+public class ContainerCommand extends Command {
+
+    public ContainerCommand() {
+        super("container", "exports a graph folder into a single file, extracts or verifies such a file");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("action")
+                .choices("export", "extract", "verify")
+                .help("export: graph folder to container, extract: container to graph folder, verify: check the checksums of a container");
+        subparser.addArgument("source")
+                .type(File.class)
+                .help("the graph folder for export, otherwise the container file");
+        subparser.addArgument("target")
+                .type(File.class)
+                .nargs("?")
+                .help("the container file for export, the graph folder for extract");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) {
+        String action = namespace.getString("action");
+        File source = namespace.get("source");
+        File target = namespace.get("target");
+        if (!action.equals("verify") && target == null)
+            throw new IllegalArgumentException("The target is required for " + action);
+
+        long start = System.currentTimeMillis();
+        GraphContainer container;
+        switch (action) {
+            case "export":
+                container = GraphContainer.export(source, target);
+                break;
+            case "extract":
+                container = GraphContainer.open(source);
+                container.extract(target);
+                break;
+            default:
+                container = GraphContainer.open(source);
+                container.verify();
+        }
+        System.out.println(action + " of " + container + " finished in " + (System.currentTimeMillis() - start) + "ms, "
+                + Helper.nf(container.getFile().length()) + " bytes");
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.cli;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.http.MVTTileCache;
+import com.graphhopper.http.MVTTileRenderer;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
+import io.dropwizard.core.cli.ConfiguredCommand;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders the vector tiles of a bbox into the disk tier of the {@link MVTTileCache} so that the server can return
+ * them without rendering. Tiles that already exist for the current graph are skipped, i.e. an aborted run can be
+ * continued.
+ */
+public class MVTCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
+
+    public MVTCommand() {
+        super("mvt", "pre-renders the vector tiles of an area into the tile cache at mvt.cache.location");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--bbox")
+                .type(String.class)
+                .required(true)
+                .help("the area to render as minLon,maxLon,minLat,maxLat");
+        subparser.addArgument("--min_zoom")
+                .type(Integer.class)
+                .setDefault(10);
+        subparser.addArgument("--max_zoom")
+                .type(Integer.class)
+                .setDefault(14);
+        subparser.addArgument("--render_all")
+                .action(Arguments.storeTrue())
+                .help("render the tiles for the render_all parameter");
+        subparser.addArgument("--threads")
+                .type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace args, GraphHopperServerConfiguration configuration) throws Exception {
+        GraphHopperConfig graphHopperConfiguration = configuration.getGraphHopperConfiguration();
+        String location = graphHopperConfiguration.getString("mvt.cache.location", "");
+        if (location.isEmpty())
+            throw new IllegalArgumentException("Configure mvt.cache.location to pre-render tiles");
+        BBox bbox = BBox.parseBBoxString(args.getString("bbox"));
+        int minZoom = args.getInt("min_zoom");
+        int maxZoom = args.getInt("max_zoom");
+        // no memory tier as every tile is rendered only once
+        MVTTileCache tileCache = new MVTTileCache(new File(location), 0, maxZoom);
+        boolean renderAll = args.getBoolean("render_all");
+
+        GraphHopper hopper = new GraphHopper().init(graphHopperConfiguration);
+        if (!hopper.load())
+            throw new IllegalArgumentException("There is no graph at " + hopper.getGraphHopperLocation() + ", run the import first");
+        String graphVersion = MVTTileCache.calcGraphVersion(hopper);
+        // the tiles are already rendered in parallel
+        MVTTileRenderer renderer = new MVTTileRenderer(1);
+
+        StopWatch sw = new StopWatch().start();
+        AtomicLong rendered = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        ExecutorService executorService = Executors.newFixedThreadPool(args.getInt("threads"));
+        try {
+            for (int z = minZoom; z <= maxZoom; z++) {
+                final int zoom = z;
+                int minY = MVTTileRenderer.lat2TileY(bbox.maxLat, z), maxY = MVTTileRenderer.lat2TileY(bbox.minLat, z);
+                // one task per column, the tiles of a zoom level can be too many to submit them one by one
+                List<Future<?>> futures = new ArrayList<>();
+                for (int x = MVTTileRenderer.lon2TileX(bbox.minLon, z); x <= MVTTileRenderer.lon2TileX(bbox.maxLon, z); x++) {
+                    final int column = x;
+                    futures.add(executorService.submit(() -> {
+                        for (int y = minY; y <= maxY; y++) {
+                            String key = MVTTileCache.createKey(graphVersion, zoom, column, y, renderAll);
+                            if (tileCache.containsOnDisk(key)) {
+                                skipped.incrementAndGet();
+                                continue;
+                            }
+                            tileCache.putDisk(key, renderer.render(hopper, zoom, column, y, renderAll));
+                            rendered.incrementAndGet();
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                System.out.println("zoom " + z + " finished after " + sw.getCurrentSeconds() + "s, rendered tiles: "
+                        + Helper.nf(rendered.get()) + ", skipped existing tiles: " + Helper.nf(skipped.get()));
+            }
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Rendering tiles failed", ex.getCause());
+        } finally {
+            executorService.shutdownNow();
+            hopper.close();
+        }
+        System.out.println("rendered " + Helper.nf(rendered.get()) + " tiles for graph version " + graphVersion
+                + " into " + location + " in " + sw.stop().getSeconds() + "s");
+    }
+}
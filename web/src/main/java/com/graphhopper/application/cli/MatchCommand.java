@@ -25,9 +25,9 @@ import com.graphhopper.ResponsePath;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
+import com.graphhopper.matching.BatchMapMatching;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
-import com.graphhopper.matching.Observation;
 import com.graphhopper.util.*;
 import io.dropwizard.core.cli.ConfiguredCommand;
 import io.dropwizard.core.setup.Bootstrap;
@@ -35,12 +35,12 @@ import net.sourceforge.argparse4j.inf.Argument;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import java.io.*;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
 
@@ -75,6 +75,11 @@ public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfigurati
                 .type(Double.class)
                 .required(false)
                 .setDefault(2.0);
+        subparser.addArgument("--threads")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(1)
+                .help("number of gpx files that are matched in parallel");
     }
 
     @Override
@@ -96,60 +101,75 @@ public class MatchCommand extends ConfiguredCommand<GraphHopperServerConfigurati
 
         PMap hints = new PMap();
         hints.putObject("profile", args.get("profile"));
-        MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
-        mapMatching.setTransitionProbabilityBeta(args.getDouble("transition_probability_beta"));
-        mapMatching.setMeasurementErrorSigma(args.getInt("gps_accuracy"));
-
-        StopWatch importSW = new StopWatch();
-        StopWatch matchSW = new StopWatch();
+        Supplier<MapMatching> mapMatchingFactory = () -> {
+            MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
+            mapMatching.setTransitionProbabilityBeta(args.getDouble("transition_probability_beta"));
+            mapMatching.setMeasurementErrorSigma(args.getInt("gps_accuracy"));
+            return mapMatching;
+        };
 
         Translation tr = new TranslationMap().doImport().getWithFallBack(Helper.getLocale(args.getString("instructions")));
         final boolean withRoute = !args.getString("instructions").isEmpty();
         XmlMapper xmlMapper = new XmlMapper();
 
-        for (File gpxFile : args.<File>getList("gpx")) {
+        List<GpxFile> gpxFiles = args.<File>getList("gpx").stream().map(GpxFile::new).collect(Collectors.toList());
+        BatchMapMatching batch = new BatchMapMatching(mapMatchingFactory, args.getInt("threads"));
+        BatchMapMatching.Report report = batch.match(gpxFiles.iterator(), gpxFile -> {
             try {
-                importSW.start();
-                Gpx gpx = xmlMapper.readValue(gpxFile, Gpx.class);
-                if (gpx.trk == null) {
-                    throw new IllegalArgumentException("No tracks found in GPX document. Are you using waypoints or routes instead?");
-                }
-                if (gpx.trk.size() > 1) {
-                    throw new IllegalArgumentException("GPX documents with multiple tracks not supported yet.");
-                }
-                List<Observation> measurements = GpxConversions.getEntries(gpx.trk.get(0));
-                importSW.stop();
-                matchSW.start();
-                MatchResult mr = mapMatching.match(measurements);
-                matchSW.stop();
-                System.out.println(gpxFile);
-                System.out.println("\tmatches:\t" + mr.getEdgeMatches().size() + ", gps entries:" + measurements.size());
-                System.out.println("\tgpx length:\t" + (float) mr.getGpxEntriesLength() + " vs " + (float) mr.getMatchLength());
-
-                String outFile = gpxFile.getAbsolutePath() + ".res.gpx";
-                System.out.println("\texport results to:" + outFile);
-
-                ResponsePath responsePath = new PathMerger(mr.getGraph(), mr.getWeighting()).
-                        doWork(PointList.EMPTY, Collections.singletonList(mr.getMergedPath()), hopper.getEncodingManager(), tr);
-                if (responsePath.hasErrors()) {
-                    System.err.println("Problem with file " + gpxFile + ", " + responsePath.getErrors());
-                    continue;
-                }
-
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
-                    long time = gpx.trk.get(0).getStartTime()
-                            .map(Date::getTime)
-                            .orElse(System.currentTimeMillis());
-                    writer.append(GpxConversions.createGPX(responsePath.getInstructions(), gpx.trk.get(0).name != null ? gpx.trk.get(0).name : "", time, hopper.hasElevation(), withRoute, true, false, Constants.VERSION, tr));
-                }
-            } catch (Exception ex) {
-                importSW.stop();
-                matchSW.stop();
-                System.err.println("Problem with file " + gpxFile);
-                ex.printStackTrace(System.err);
+                gpxFile.gpx = xmlMapper.readValue(gpxFile.file, Gpx.class);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
             }
-        }
-        System.out.println("gps import took:" + importSW.getSeconds() + "s, match took: " + matchSW.getSeconds());
+            if (gpxFile.gpx.trk == null) {
+                throw new IllegalArgumentException("No tracks found in GPX document. Are you using waypoints or routes instead?");
+            }
+            if (gpxFile.gpx.trk.size() > 1) {
+                throw new IllegalArgumentException("GPX documents with multiple tracks not supported yet.");
+            }
+            return GpxConversions.getEntries(gpxFile.gpx.trk.get(0));
+        }, result -> {
+            File gpxFile = result.getTrack().file;
+            if (result.hasError()) {
+                StringWriter stackTrace = new StringWriter();
+                result.getError().printStackTrace(new PrintWriter(stackTrace));
+                System.err.print("Problem with file " + gpxFile + "\n" + stackTrace);
+                return;
+            }
+            MatchResult mr = result.getMatchResult();
+            String outFile = gpxFile.getAbsolutePath() + ".res.gpx";
+            // the results of several threads must not be interleaved, so we print every result at once
+            System.out.print(gpxFile + "\n"
+                    + "\tmatches:\t" + mr.getEdgeMatches().size() + ", gps entries:" + result.getObservations() + "\n"
+                    + "\tgpx length:\t" + (float) mr.getGpxEntriesLength() + " vs " + (float) mr.getMatchLength() + "\n"
+                    + "\texport results to:" + outFile + "\n");
+
+            ResponsePath responsePath = new PathMerger(mr.getGraph(), mr.getWeighting()).
+                    doWork(PointList.EMPTY, Collections.singletonList(mr.getMergedPath()), hopper.getEncodingManager(), tr);
+            if (responsePath.hasErrors()) {
+                System.err.println("Problem with file " + gpxFile + ", " + responsePath.getErrors());
+                return;
+            }
+
+            Gpx gpx = result.getTrack().gpx;
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outFile))) {
+                long time = gpx.trk.get(0).getStartTime()
+                        .map(Date::getTime)
+                        .orElse(System.currentTimeMillis());
+                writer.append(GpxConversions.createGPX(responsePath.getInstructions(), gpx.trk.get(0).name != null ? gpx.trk.get(0).name : "", time, hopper.hasElevation(), withRoute, true, false, Constants.VERSION, tr));
+            } catch (IOException ex) {
+                System.err.println("Problem writing " + outFile + ", " + ex.getMessage());
+            }
+        });
+        System.out.println(report);
     }
 
+    private static class GpxFile {
+        final File file;
+        // set by the thread that matches this file
+        Gpx gpx;
+
+        GpxFile(File file) {
+            this.file = file;
+        }
+    }
 }
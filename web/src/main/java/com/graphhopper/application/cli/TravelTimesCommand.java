@@ -0,0 +1,154 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.cli;
+
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.config.Profile;
+import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.gtfs.TravelTimeGrids;
+import com.graphhopper.gtfs.TravelTimeSurface;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.core.cli.ConfiguredCommand;
+import io.dropwizard.core.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TravelTimesCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
+
+    public TravelTimesCommand() {
+        super("pt-travel-times", "calculates public transit travel time grids for many origins");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--origins")
+                .type(File.class)
+                .required(true)
+                .help("CSV file with one origin per line: id,lat,lon");
+        subparser.addArgument("--output")
+                .type(File.class)
+                .required(true)
+                .help("folder for the grids, one <id>.grid file per origin");
+        subparser.addArgument("--bbox")
+                .type(String.class)
+                .required(true)
+                .help("the grid area: minLon,maxLon,minLat,maxLat");
+        subparser.addArgument("--cell_size")
+                .type(Double.class)
+                .required(false)
+                .setDefault(0.001)
+                .help("cell size of the grid in degrees");
+        subparser.addArgument("--departure_time")
+                .type(String.class)
+                .required(true)
+                .help("start of the departure time window, e.g. 2007-01-01T07:00:00-08:00");
+        subparser.addArgument("--window")
+                .type(String.class)
+                .required(false)
+                .setDefault("PT1H")
+                .help("length of the departure time window");
+        subparser.addArgument("--step")
+                .type(String.class)
+                .required(false)
+                .setDefault("PT1M")
+                .help("time between two departure times of the window");
+        subparser.addArgument("--percentile")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(50)
+                .help("percentile of the travel times over the departure times");
+        subparser.addArgument("--max_walk_seconds")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(15 * 60)
+                .help("longest walk to and from a stop");
+        subparser.addArgument("--max_rounds")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(8)
+                .help("maximum number of trips of a journey");
+        subparser.addArgument("--profile")
+                .type(String.class)
+                .required(false)
+                .setDefault("foot")
+                .help("profile of the walks to, from and between the stops");
+        subparser.addArgument("--walk_speed")
+                .type(Double.class)
+                .required(false)
+                .setDefault(5.0)
+                .help("walk speed in km/h from a cell to its street node");
+        subparser.addArgument("--threads")
+                .type(Integer.class)
+                .required(false)
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .help("number of origins that are calculated in parallel");
+    }
+
+    @Override
+    protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace args, GraphHopperServerConfiguration configuration) {
+        GraphHopperConfig graphHopperConfiguration = configuration.getGraphHopperConfiguration();
+        GraphHopperGtfs hopper = new GraphHopperGtfs(graphHopperConfiguration);
+        hopper.init(graphHopperConfiguration);
+        hopper.importOrLoad();
+        try {
+            Profile walkProfile = hopper.getProfile(args.getString("profile"));
+            if (walkProfile == null)
+                throw new IllegalArgumentException("The profile '" + args.getString("profile") + "' does not exist");
+            TravelTimeSurface.Factory factory = new TravelTimeSurface.Factory(hopper.getGtfsStorage(), hopper.getBaseGraph(), hopper.getLocationIndex(),
+                    hopper.getEncodingManager(), walkProfile, args.getInt("max_walk_seconds"), args.getInt("max_rounds"));
+            TravelTimeGrids.Grid grid = TravelTimeGrids.Grid.fromBBox(BBox.parseBBoxString(args.getString("bbox")), args.getDouble("cell_size"));
+            TravelTimeGrids grids = new TravelTimeGrids(factory, grid, args.getDouble("walk_speed"), args.getInt("threads"));
+            Instant windowStart = OffsetDateTime.parse(args.getString("departure_time")).toInstant();
+            TravelTimeGrids.Report report = grids.compute(readOrigins(args.get("origins")).iterator(), windowStart,
+                    Duration.parse(args.getString("window")), Duration.parse(args.getString("step")), args.getInt("percentile"), args.get("output"));
+            System.out.println(report);
+        } finally {
+            hopper.close();
+        }
+    }
+
+    private static List<TravelTimeGrids.Origin> readOrigins(File file) {
+        try {
+            return Files.readAllLines(file.toPath()).stream()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .map(line -> {
+                        String[] columns = line.split(",");
+                        if (columns.length != 3)
+                            throw new IllegalArgumentException("Expected id,lat,lon but was: " + line);
+                        return new TravelTimeGrids.Origin(columns[0].trim(), new GHPoint(Double.parseDouble(columns[1]), Double.parseDouble(columns[2])));
+                    })
+                    .collect(Collectors.toList());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.jackson.Gpx;
+import com.graphhopper.matching.*;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.application.MapMatchingTest.fetchStreets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchMapMatchingTest {
+    private static final String GH_LOCATION = "../target/batchmapmatchingtest-gh";
+    private static GraphHopper hopper;
+
+    @BeforeAll
+    public static void setup() {
+        Helper.removeDir(new File(GH_LOCATION));
+        hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/issue-70.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.importOrLoad();
+    }
+
+    @AfterAll
+    public static void clean() {
+        hopper.close();
+        Helper.removeDir(new File(GH_LOCATION));
+    }
+
+    @Test
+    public void matchInParallel() throws IOException {
+        List<Observation> observations = GpxConversions.getEntries(new XmlMapper().readValue(getClass().getResourceAsStream("/issue-70.gpx"), Gpx.class).trk.get(0));
+        List<String> expectedStreets = fetchStreets(createMapMatching().match(observations).getEdgeMatches());
+
+        // every track is a part of the gpx track, the track with id -1 is far away from the road network and cannot be matched
+        List<Integer> tracks = new ArrayList<>();
+        for (int i = -1; i < 100; i++) {
+            tracks.add(i);
+        }
+        Map<Integer, BatchMapMatching.Result<Integer>> results = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        BatchMapMatching batch = new BatchMapMatching(this::createMapMatching, 4);
+        BatchMapMatching.Report report = batch.match(tracks.iterator(),
+                id -> id < 0 ? Collections.singletonList(new Observation(new GHPoint(0, 0))) : observations.subList(0, observations.size() - id % 3),
+                result -> {
+                    threads.add(Thread.currentThread().getName());
+                    assertNull(results.put(result.getTrack(), result));
+                });
+
+        assertEquals(101, results.size());
+        assertTrue(threads.size() > 1, threads.toString());
+        assertTrue(results.get(-1).hasError());
+        for (int id = 0; id < 100; id++) {
+            BatchMapMatching.Result<Integer> result = results.get(id);
+            assertFalse(result.hasError(), id + ": " + result.getError());
+            assertEquals(observations.size() - id % 3, result.getObservations());
+            if (id % 3 == 0)
+                assertEquals(expectedStreets, fetchStreets(result.getMatchResult().getEdgeMatches()));
+            assertTrue(((Number) result.getStatistics().get("visitedNodes")).longValue() > 0);
+        }
+
+        assertEquals(4, report.getThreads());
+        assertEquals(101, report.getTracks());
+        assertEquals(1, report.getFailedTracks());
+        assertEquals(results.values().stream().mapToLong(BatchMapMatching.Result::getObservations).sum(), report.getObservations());
+        assertEquals(results.values().stream().filter(r -> !r.hasError()).mapToLong(r -> ((Number) r.getStatistics().get("visitedNodes")).longValue()).sum(),
+                report.getVisitedNodes());
+        assertTrue(report.getTracksPerSecond() > 0);
+    }
+
+    @Test
+    public void sharedExecutor() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            AtomicInteger mapMatchings = new AtomicInteger();
+            BatchMapMatching batch = new BatchMapMatching(() -> {
+                mapMatchings.incrementAndGet();
+                return createMapMatching();
+            }, pool, 2);
+            Callable<BatchMapMatching.Report> task = () -> batch.match(IntStream.range(0, 20).iterator(),
+                    id -> List.of(new Observation(new GHPoint(0, 0))), result -> {
+                    });
+            // two concurrent batches on the same pool
+            ExecutorService clients = Executors.newFixedThreadPool(2);
+            List<Future<BatchMapMatching.Report>> reports = clients.invokeAll(List.of(task, task));
+            clients.shutdown();
+            for (Future<BatchMapMatching.Report> report : reports)
+                assertEquals(20, report.get().getTracks());
+            // the instances are reused, every batch needs at most one per thread of the pool
+            assertTrue(mapMatchings.get() <= 2 * 2, "" + mapMatchings.get());
+            assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void handlerException() {
+        BatchMapMatching batch = new BatchMapMatching(this::createMapMatching, 2);
+        List<Integer> tracks = Arrays.asList(1, 2, 3);
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> batch.match(tracks.iterator(), id -> Collections.emptyList(), result -> {
+            throw new IllegalStateException("cannot handle " + result.getTrack());
+        }));
+        assertTrue(ex.getMessage().startsWith("cannot handle"), ex.getMessage());
+    }
+
+    private MapMatching createMapMatching() {
+        return MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"));
+    }
+}
@@ -19,6 +19,7 @@ package com.graphhopper.application;
 
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
@@ -27,9 +28,12 @@ import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
 import com.graphhopper.matching.State;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.TurnCostsConfig;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -37,6 +41,7 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import static com.graphhopper.application.MapMatchingTest.fetchStreets;
 import static org.junit.jupiter.api.Assertions.*;
@@ -127,6 +132,40 @@ public class MapMatching2Test {
         assertEquals(0, mr.getMatchMillis(), 50);
     }
 
+    @Test
+    public void testEdgeBasedCH() throws IOException {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/issue-70.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car").setTurnCostsConfig(TurnCostsConfig.car()));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("my_profile"));
+        hopper.importOrLoad();
+        assertTrue(hopper.getCHGraphs().get("my_profile").isEdgeBased());
+
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-70.gpx"), Gpx.class);
+        MapMatching chMapMatching = MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"));
+        MatchResult chResult = chMapMatching.match(GpxConversions.getEntries(gpx.trk.get(0)));
+        MapMatching flexMapMatching = MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile").putObject(Parameters.CH.DISABLE, true));
+        MatchResult flexResult = flexMapMatching.match(GpxConversions.getEntries(gpx.trk.get(0)));
+
+        assertEquals(fetchStreets(flexResult.getEdgeMatches()), fetchStreets(chResult.getEdgeMatches()));
+        assertEquals(flexResult.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdgeKey()).collect(Collectors.toList()),
+                chResult.getEdgeMatches().stream().map(em -> em.getEdgeState().getEdgeKey()).collect(Collectors.toList()));
+        assertEquals(flexResult.getMatchLength(), chResult.getMatchLength(), 1.e-3);
+        assertEquals(flexResult.getMatchMillis(), chResult.getMatchMillis());
+        for (EdgeMatch edgeMatch : chResult.getEdgeMatches()) {
+            validateEdgeMatch(edgeMatch);
+        }
+
+        // hints that change the weighting cannot use the CH preparation
+        Weighting chWeighting = hopper.getCHGraphs().get("my_profile").getWeighting();
+        assertSame(chWeighting, MapMatching.routerFromGraphHopper(hopper, new PMap().putObject("profile", "my_profile")).getWeighting());
+        MapMatching.Router uTurnRouter = MapMatching.routerFromGraphHopper(hopper, new PMap().putObject("profile", "my_profile").
+                putObject(Parameters.Routing.U_TURN_COSTS, 10));
+        assertNotSame(chWeighting, uTurnRouter.getWeighting());
+    }
+
     private void validateEdgeMatch(EdgeMatch edgeMatch) {
         for (State state : edgeMatch.getStates()) {
             if (state.getSnap().getSnappedPosition() == Snap.Position.TOWER) {
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.jackson.Gpx;
+import com.graphhopper.matching.*;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.graphhopper.application.MapMatchingTest.fetchStreets;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingMapMatchingTest {
+    private static final String GH_LOCATION = "../target/streamingmapmatchingtest-gh";
+    private static GraphHopper hopper;
+    private final XmlMapper xmlMapper = new XmlMapper();
+
+    @BeforeAll
+    public static void setup() {
+        Helper.removeDir(new File(GH_LOCATION));
+        hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/issue-70.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.importOrLoad();
+    }
+
+    @AfterAll
+    public static void clean() {
+        hopper.close();
+        Helper.removeDir(new File(GH_LOCATION));
+    }
+
+    @Test
+    public void sameResultAsCompleteTrack() throws IOException {
+        List<Observation> observations = readObservations();
+        MatchResult mr = createMapMatching().match(readObservations());
+
+        // with a lag that is larger than the track nothing is decided before the end
+        StreamingMapMatching streaming = new StreamingMapMatching(createMapMatching(), 1000);
+        for (Observation observation : observations) {
+            assertTrue(streaming.add(observation).isEmpty());
+        }
+        List<EdgeMatch> edgeMatches = streaming.finish();
+        assertEquals(toEdgeKeys(mr.getEdgeMatches()), toEdgeKeys(edgeMatches));
+        assertEquals(fetchStreets(mr.getEdgeMatches()), fetchStreets(edgeMatches));
+    }
+
+    @Test
+    public void decideWithLag() throws IOException {
+        List<Observation> observations = readObservations();
+        MatchResult mr = createMapMatching().match(readObservations());
+
+        StreamingMapMatching streaming = new StreamingMapMatching(createMapMatching(), 3);
+        List<EdgeMatch> edgeMatches = new ArrayList<>();
+        for (Observation observation : observations) {
+            edgeMatches.addAll(streaming.add(observation));
+        }
+        int decidedBeforeFinish = edgeMatches.size();
+        assertTrue(decidedBeforeFinish > 0);
+        edgeMatches.addAll(streaming.finish());
+        assertTrue(edgeMatches.size() > decidedBeforeFinish);
+
+        assertEquals(fetchStreets(mr.getEdgeMatches()), fetchStreets(edgeMatches));
+        int edgeCount = hopper.getBaseGraph().getAllEdges().length();
+        for (int i = 0; i < edgeMatches.size(); i++) {
+            assertTrue(edgeMatches.get(i).getEdgeState().getEdge() < edgeCount, "result contains virtual edges");
+            if (i > 0)
+                assertEquals(edgeMatches.get(i - 1).getEdgeState().getAdjNode(), edgeMatches.get(i).getEdgeState().getBaseNode(), "edges are not connected");
+        }
+        // every observation that was not skipped belongs to exactly one edge match
+        int states = edgeMatches.stream().mapToInt(em -> em.getStates().size()).sum();
+        assertTrue(states > 0 && states <= observations.size());
+    }
+
+    @Test
+    public void reuseForNextTrack() throws IOException {
+        List<Observation> observations = readObservations();
+        StreamingMapMatching streaming = new StreamingMapMatching(createMapMatching(), 0);
+        List<String> streets = null;
+        for (int run = 0; run < 2; run++) {
+            List<EdgeMatch> edgeMatches = new ArrayList<>();
+            for (Observation observation : observations) {
+                edgeMatches.addAll(streaming.add(observation));
+            }
+            edgeMatches.addAll(streaming.finish());
+            assertFalse(edgeMatches.isEmpty());
+            if (streets != null)
+                assertEquals(streets, fetchStreets(edgeMatches));
+            streets = fetchStreets(edgeMatches);
+        }
+    }
+
+    private MapMatching createMapMatching() {
+        return MapMatching.fromGraphHopper(hopper, new PMap().putObject("profile", "my_profile"));
+    }
+
+    private List<Observation> readObservations() throws IOException {
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-70.gpx"), Gpx.class);
+        return GpxConversions.getEntries(gpx.trk.get(0));
+    }
+
+    private static List<Integer> toEdgeKeys(List<EdgeMatch> edgeMatches) {
+        return edgeMatches.stream().map(em -> em.getEdgeState().getEdgeKey()).collect(Collectors.toList());
+    }
+}
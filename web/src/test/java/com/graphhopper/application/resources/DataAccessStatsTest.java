@@ -0,0 +1,82 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class DataAccessStatsTest {
+    private static final String dir = "./target/andorra-da-stats-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", dir).
+                putObject("graph.dataaccess.default_type", "MMAP").
+                putObject("import.osm.ignored_highways", "").
+                setProfiles(List.of(TestProfiles.constantSpeed("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(dir));
+    }
+
+    @Test
+    public void testStats() {
+        JsonNode json = app.client().target("http://localhost:" + app.getAdminPort() + "/data-access").request().get(JsonNode.class);
+        Map<String, JsonNode> stats = new HashMap<>();
+        json.forEach(node -> stats.put(node.get("name").asText(), node));
+        assertTrue(stats.containsKey("nodes"), stats.keySet().toString());
+        assertTrue(stats.containsKey("edges"), stats.keySet().toString());
+        assertTrue(stats.containsKey("location_index"), stats.keySet().toString());
+        JsonNode edges = stats.get("edges");
+        assertEquals("MMAP_STORE", edges.get("type").asText());
+        assertTrue(edges.get("capacity").asLong() > 0);
+        assertEquals(edges.get("capacity").asLong(), edges.get("mapped_bytes").asLong());
+        assertTrue(edges.get("resident_bytes").asLong() <= edges.get("capacity").asLong());
+
+        String table = app.client().target("http://localhost:" + app.getAdminPort() + "/data-access?type=text").request().get(String.class);
+        assertTrue(table.contains("resident"), table);
+
+        JsonNode metrics = app.client().target("http://localhost:" + app.getAdminPort() + "/metrics").request().get(JsonNode.class);
+        assertEquals(edges.get("capacity").asLong(), metrics.get("gauges").get("graphhopper.data_access.edges.capacity").get("value").asLong());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class GraphHopperReloadTest {
+    private static final String dir = "./target/andorra-reload-gh/";
+    private static final String newDir = "./target/andorra-reload-new-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", dir).
+                putObject("import.osm.ignored_highways", "").
+                setProfiles(List.of(TestProfiles.constantSpeed("car")));
+        return config;
+    }
+
+    @BeforeAll
+    public static void setUp() {
+        cleanUp();
+        GraphHopperConfig newConfig = new GraphHopperConfig(createConfig().getGraphHopperConfiguration()).
+                putObject("graph.location", newDir);
+        new GraphHopper().init(newConfig).importAndClose();
+    }
+
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(dir));
+        Helper.removeDir(new File(newDir));
+    }
+
+    @Test
+    public void testReload() {
+        JsonNode before = route();
+        assertEquals(8737, before.get("paths").get(0).get("distance").asDouble(), 10);
+
+        Response response = app.client().target("http://localhost:" + app.getAdminPort() + "/tasks/reload-graph").
+                queryParam("graph.location", newDir).request().post(Entity.text(""));
+        assertEquals(200, response.getStatus());
+        assertTrue(response.readEntity(String.class).contains("andorra-reload-new-gh"));
+
+        JsonNode after = route();
+        assertEquals(before.get("paths").get(0).get("distance").asDouble(), after.get("paths").get(0).get("distance").asDouble(), 1.e-6);
+        // the isochrone triangulation must use the new instance, too
+        assertEquals(200, clientTarget(app, "/isochrone?profile=car&point=42.531073,1.573792&time_limit=300").request().get().getStatus());
+    }
+
+    @Test
+    public void testReloadMissingGraph() {
+        Response response = app.client().target("http://localhost:" + app.getAdminPort() + "/tasks/reload-graph").
+                queryParam("graph.location", "./target/does-not-exist-gh").request().post(Entity.text(""));
+        assertEquals(500, response.getStatus());
+        assertEquals(200, clientTarget(app, "/route?profile=car&point=42.554851,1.536198&point=42.510071,1.548128").request().get().getStatus());
+    }
+
+    private static JsonNode route() {
+        Response response = clientTarget(app, "/route?profile=car&point=42.554851,1.536198&point=42.510071,1.548128").request().get();
+        assertEquals(200, response.getStatus());
+        return response.readEntity(JsonNode.class);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
+import com.graphhopper.http.GraphHopperWarmUp;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class GraphHopperWarmUpTest {
+    private static final String dir = "./target/andorra-warmup-gh/";
+    private static final String hopperDir = "./target/andorra-warmup-hopper-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", dir).
+                putObject("import.osm.ignored_highways", "").
+                putObject("warmup.iterations", 20).
+                putObject("warmup.prefault", true).
+                putObject("routing.preparations.lazy_load", true).
+                setProfiles(List.of(TestProfiles.constantSpeed("car"), TestProfiles.constantSpeed("foot"), TestProfiles.constantSpeed("bike"))).
+                setCHProfiles(List.of(new CHProfile("car"))).
+                setLMProfiles(List.of(new LMProfile("foot")));
+        return config;
+    }
+
+    private static GraphHopperConfig createHopperConfig() {
+        return new GraphHopperConfig(createConfig().getGraphHopperConfiguration()).putObject("graph.location", hopperDir);
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(dir));
+        Helper.removeDir(new File(hopperDir));
+    }
+
+    @Test
+    public void testHealthyAfterWarmUp() throws InterruptedException {
+        JsonNode health = null;
+        for (int i = 0; i < 600; i++) {
+            health = healthCheck();
+            if (health.get("graphhopper").get("healthy").asBoolean())
+                break;
+            assertEquals("GraphHopper is warming up.", health.get("graphhopper").get("message").asText());
+            Thread.sleep(100);
+        }
+        assertTrue(health.get("graphhopper").get("healthy").asBoolean(), health.toString());
+
+        JsonNode json = clientTarget(app, "/route?profile=car&point=42.554851,1.536198&point=42.510071,1.548128").
+                request().get(JsonNode.class);
+        assertTrue(json.get("paths").get(0).get("distance").asDouble() > 0, json.toString());
+    }
+
+    @Test
+    public void testPrefaultAndSyntheticRequests() {
+        GraphHopperConfig config = createHopperConfig();
+        // the preparations are only loaded lazily if the graph is loaded after the import
+        GraphHopper importer = new GraphHopper().init(config);
+        importer.importOrLoad();
+        importer.close();
+        GraphHopper hopper = new GraphHopper().init(config);
+        assertTrue(hopper.load());
+        try {
+            assertFalse(hopper.getPreparationCache().isCHLoaded("car"));
+            assertFalse(hopper.getPreparationCache().isLMLoaded("foot"));
+            long fileBytes = Stream.of(new File(hopperDir).listFiles()).mapToLong(File::length).sum();
+
+            GraphHopperWarmUp.Result result = new GraphHopperWarmUp(config).run(hopper);
+            // the files of the lazy preparations are read although they were not loaded yet
+            assertTrue(result.prefaultedBytes() > 0.9 * fileBytes, result.prefaultedBytes() + " vs. " + fileBytes);
+            assertTrue(result.requests() > 20, result.toString());
+            // a few of the random start and target nodes are not connected or too far apart for max_visited_nodes
+            assertTrue(result.failedRequests() < result.requests() / 20, result.toString());
+            assertTrue(hopper.getPreparationCache().isCHLoaded("car"));
+            assertTrue(hopper.getPreparationCache().isLMLoaded("foot"));
+        } finally {
+            hopper.close();
+        }
+    }
+
+    @Test
+    public void testFailWhenAllRequestsFail() {
+        GraphHopperConfig config = createHopperConfig();
+        AtomicBoolean broken = new AtomicBoolean();
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            public GHResponse route(GHRequest request) {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public LocationIndex getLocationIndex() {
+                // breaks the isochrones
+                if (broken.get())
+                    throw new IllegalStateException("broken");
+                return super.getLocationIndex();
+            }
+        }.init(config);
+        hopper.importOrLoad();
+        broken.set(true);
+        try {
+            IllegalStateException ex = assertThrows(IllegalStateException.class, () -> new GraphHopperWarmUp(config).run(hopper));
+            assertTrue(ex.getMessage().startsWith("All "), ex.getMessage());
+        } finally {
+            hopper.close();
+        }
+    }
+
+    private JsonNode healthCheck() {
+        Response response = app.client().target("http://localhost:" + app.getAdminPort() + "/healthcheck").request().get();
+        return response.readEntity(JsonNode.class);
+    }
+}
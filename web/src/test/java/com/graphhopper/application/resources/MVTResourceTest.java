@@ -17,13 +17,18 @@
  */
 package com.graphhopper.application.resources;
 
+import com.graphhopper.GraphHopper;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.http.MVTTileCache;
+import com.graphhopper.http.MVTTileRenderer;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Response;
 import no.ecc.vectortile.VectorTileDecoder;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -35,6 +40,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -42,7 +48,7 @@ import java.util.Map;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static com.graphhopper.util.Parameters.Details.STREET_NAME;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -50,6 +56,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @ExtendWith(DropwizardExtensionsSupport.class)
 public class MVTResourceTest {
     private static final String DIR = "./target/andorra-gh/";
+    private static final String CACHE_DIR = "./target/andorra-mvt-cache/";
     private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
 
     private static GraphHopperServerConfiguration createConfig() {
@@ -60,6 +67,7 @@ public class MVTResourceTest {
                 putObject("datareader.file", "../core/files/andorra.osm.pbf").
                 putObject("import.osm.ignored_highways", "").
                 putObject("graph.location", DIR).
+                putObject("mvt.cache.location", CACHE_DIR).
                 setProfiles(List.of(TestProfiles.constantSpeed("car")));
         return config;
     }
@@ -68,6 +76,7 @@ public class MVTResourceTest {
     @AfterAll
     public static void cleanUp() {
         Helper.removeDir(new File(DIR));
+        Helper.removeDir(new File(CACHE_DIR));
     }
 
     @Test
@@ -96,6 +105,109 @@ public class MVTResourceTest {
         assertEquals("primary", feature.getAttributes().get("road_class"));
     }
 
+    @Test
+    public void testCacheAndETag() throws IOException {
+        Response response = clientTarget(app, "/mvt/15/16523/12102.mvt").request().get();
+        assertEquals(200, response.getStatus());
+        EntityTag eTag = response.getEntityTag();
+        assertNotNull(eTag);
+        byte[] bytes = readInputStream(response.readEntity(InputStream.class));
+        assertTrue(new File(CACHE_DIR, eTag.getValue() + ".mvt").exists());
+
+        response = clientTarget(app, "/mvt/15/16523/12102.mvt").request().header("If-None-Match", eTag.toString()).get();
+        assertEquals(304, response.getStatus());
+
+        response = clientTarget(app, "/mvt/15/16523/12102.mvt").request().get();
+        assertEquals(eTag, response.getEntityTag());
+        assertArrayEquals(bytes, readInputStream(response.readEntity(InputStream.class)));
+
+        // render_all is cached separately
+        response = clientTarget(app, "/mvt/15/16523/12102.mvt?render_all=true").request().header("If-None-Match", eTag.toString()).get();
+        assertEquals(200, response.getStatus());
+        assertNotEquals(eTag, response.getEntityTag());
+    }
+
+    @Test
+    public void testEmptyTilesNotOnDisk() {
+        // outside of Andorra
+        Response response = clientTarget(app, "/mvt/15/100/100.mvt").request().get();
+        assertEquals(200, response.getStatus());
+        assertEquals(0, response.readEntity(byte[].class).length);
+        assertFalse(new File(CACHE_DIR, response.getEntityTag().getValue() + ".mvt").exists());
+
+        response = clientTarget(app, "/mvt/9/258/189.mvt").request().get();
+        assertEquals(200, response.getStatus());
+        assertFalse(new File(CACHE_DIR, response.getEntityTag().getValue() + ".mvt").exists());
+    }
+
+    @Test
+    public void testInvalidTile() {
+        assertEquals(400, clientTarget(app, "/mvt/2/4/0.mvt").request().get().getStatus());
+        assertEquals(400, clientTarget(app, "/mvt/2/0/-1.mvt").request().get().getStatus());
+        assertEquals(400, clientTarget(app, "/mvt/23/0/0.mvt").request().get().getStatus());
+        assertEquals(400, clientTarget(app, "/mvt/-1/0/0.mvt").request().get().getStatus());
+        assertEquals(200, clientTarget(app, "/mvt/2/3/3.mvt").request().get().getStatus());
+    }
+
+    @Test
+    public void testLowZoom() throws IOException {
+        InputStream is = clientTarget(app, "/mvt/12/2065/1512.mvt").request().get(InputStream.class);
+        List<VectorTileDecoder.Feature> features = new VectorTileDecoder().decode(readInputStream(is)).asList();
+        assertFalse(features.isEmpty());
+        for (VectorTileDecoder.Feature feature : features) {
+            assertTrue(List.of("motorway", "trunk", "primary", "secondary").contains((String) feature.getAttributes().get("road_class")),
+                    "unexpected " + feature.getAttributes().get("road_class"));
+        }
+
+        is = clientTarget(app, "/mvt/12/2065/1512.mvt?render_all=true").request().get(InputStream.class);
+        List<VectorTileDecoder.Feature> allFeatures = new VectorTileDecoder().decode(readInputStream(is)).asList();
+        assertTrue(allFeatures.size() > 2 * features.size(), features.size() + " vs. " + allFeatures.size());
+    }
+
+    @Test
+    public void testParallelEncoding() {
+        GraphHopper hopper = new GraphHopper().init(createConfig().getGraphHopperConfiguration());
+        hopper.importOrLoad();
+        try {
+            // renders a few thousand edges, i.e. they are split into several tasks
+            byte[] expected = new MVTTileRenderer(1).render(hopper, 11, 1032, 756, true);
+            MVTTileRenderer parallelRenderer = new MVTTileRenderer(4);
+            assertArrayEquals(expected, parallelRenderer.render(hopper, 11, 1032, 756, true));
+            parallelRenderer.stop();
+
+            // the geometries are simplified below zoom 14, so a tile has fewer points than its four children together
+            MVTTileRenderer renderer = new MVTTileRenderer(1);
+            int simplified = countCoordinates(renderer.render(hopper, 13, 4131, 3024, true));
+            int full = 0;
+            for (int x = 8262; x <= 8263; x++) {
+                for (int y = 6048; y <= 6049; y++) {
+                    full += countCoordinates(renderer.render(hopper, 14, x, y, true));
+                }
+            }
+            assertTrue(simplified < 0.7 * full, simplified + " vs. " + full);
+
+            // the graph version is calculated only once per graph
+            MVTTileCache cache = new MVTTileCache(null, 0, 0);
+            String graphVersion = cache.getGraphVersion(hopper);
+            assertEquals(MVTTileCache.calcGraphVersion(hopper), graphVersion);
+            assertSame(graphVersion, cache.getGraphVersion(hopper));
+        } finally {
+            hopper.close();
+        }
+    }
+
+    private static int countCoordinates(byte[] tile) {
+        try {
+            int count = 0;
+            for (VectorTileDecoder.Feature feature : new VectorTileDecoder().decode(tile)) {
+                count += feature.getGeometry().getNumPoints();
+            }
+            return count;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
     private static byte[] readInputStream(InputStream is) throws IOException {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         int nRead;
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.gpx.GpxConversions;
+import com.graphhopper.jackson.Gpx;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MapMatchingBatchResourceTest {
+
+    private static final String DIR = "../target/mapmatchingbatchtest";
+    private static final String NDJSON = "application/x-ndjson";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    public static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../map-matching/files/issue-70.osm.gz").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                putObject("map_matching.batch.threads", 3).
+                // the tests fail if a batch does not release its permit
+                putObject("endpoint_limit.enabled", true).
+                putObject("endpoint_limit.match.permits", 1).
+                putObject("endpoint_limit.max_wait_ms", 1000).
+                setProfiles(Collections.singletonList(TestProfiles.accessAndSpeed("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void matchBatch() throws IOException {
+        Gpx gpx = new XmlMapper().readValue(getClass().getResourceAsStream("/issue-70.gpx"), Gpx.class);
+        List<Observation> observations = GpxConversions.getEntries(gpx.trk.get(0));
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            StringBuilder points = new StringBuilder();
+            for (Observation o : observations) {
+                points.append(points.length() == 0 ? "" : ",").append("[").append(o.getPoint().lon).append(",").append(o.getPoint().lat).append("]");
+            }
+            body.append("{\"id\":\"track").append(i).append("\",\"points\":[").append(points).append("]}\n");
+        }
+        body.append("{\"id\":\"broken\"}\n");
+
+        try (Response response = clientTarget(app, "/match/batch?profile=car&traversal_keys=true").request()
+                .post(Entity.entity(body.toString(), NDJSON))) {
+            assertEquals(200, response.getStatus());
+            assertEquals(NDJSON, response.getMediaType().toString());
+            String[] lines = response.readEntity(String.class).split("\n");
+            assertEquals(22, lines.length);
+
+            Set<String> ids = new HashSet<>();
+            JsonNode first = null;
+            for (int i = 0; i < 21; i++) {
+                JsonNode json = objectMapper.readTree(lines[i]);
+                String id = json.get("id").asText();
+                assertTrue(ids.add(id), id);
+                if (id.equals("broken")) {
+                    assertTrue(json.get("message").asText().contains("points"), json.toString());
+                    continue;
+                }
+                assertEquals(observations.size(), json.get("observations").asInt());
+                assertTrue(json.get("distance").asDouble() > 500, json.toString());
+                assertFalse(json.get("points").asText().isEmpty());
+                if (first == null)
+                    first = json;
+                // all tracks are the same, so the results must be the same
+                assertEquals(first.get("traversal_keys"), json.get("traversal_keys"));
+                assertEquals(first.get("distance").asDouble(), json.get("distance").asDouble(), 1.e-6);
+            }
+            assertEquals(21, ids.size());
+            assertTrue(first.get("traversal_keys").size() > 0);
+
+            JsonNode report = objectMapper.readTree(lines[21]).get("report");
+            assertEquals(21, report.get("tracks").asInt());
+            assertEquals(1, report.get("failed_tracks").asInt());
+            assertEquals(3, report.get("threads").asInt());
+            assertEquals(20 * observations.size(), report.get("observations").asInt());
+        }
+    }
+
+    @Test
+    public void unknownProfile() {
+        try (Response response = clientTarget(app, "/match/batch?profile=xyz").request()
+                .post(Entity.entity("{\"points\":[[19.707,45.244]]}\n", NDJSON))) {
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("xyz"));
+        }
+    }
+}
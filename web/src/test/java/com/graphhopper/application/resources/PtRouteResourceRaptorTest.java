@@ -0,0 +1,124 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import jakarta.ws.rs.core.Response;
+import java.io.File;
+import java.util.Collections;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the entire app with the raptor router, which is selected per request with pt.algorithm=raptor.
+ */
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class PtRouteResourceRaptorTest {
+    private static final String DIR = "./target/gtfs-app-raptor-gh/";
+    public static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../reader-gtfs/files/beatty.osm").
+                putObject("gtfs.file", "../reader-gtfs/files/sample-feed").
+                putObject("graph.location", DIR).
+                putObject("import.osm.ignored_highways", "").
+                setProfiles(Collections.singletonList(TestProfiles.accessSpeedAndPriority("foot")))
+                .putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testStationStationQuery() {
+        final Response response = clientTarget(app, "/route").queryParam("pt.algorithm", "raptor")
+                .queryParam("point", "Stop(NADAV)")
+                .queryParam("point", "Stop(NANAA)")
+                .queryParam("profile", "pt")
+                .queryParam("pt.earliest_departure_time", "2007-01-01T15:44:00Z")
+                .request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        JsonNode jsonNode = response.readEntity(JsonNode.class);
+        assertEquals(1, jsonNode.at("/paths/0/legs").size());
+        assertEquals("NADAV", jsonNode.at("/paths/0/legs/0/stops/0/stop_id").asText());
+        assertTrue(jsonNode.at("/hints/raptor.scanned_routes").asInt() > 0);
+    }
+
+    @Test
+    public void testPointPointQuery() {
+        final Response response = clientTarget(app, "/route").queryParam("pt.algorithm", "raptor")
+                .queryParam("point", "36.914893,-116.76821") // NADAV stop
+                .queryParam("point", "36.914944,-116.761472") //NANAA stop
+                .queryParam("profile", "pt")
+                .queryParam("pt.earliest_departure_time", "2007-01-01T15:44:00Z")
+                .request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        JsonNode jsonNode = response.readEntity(JsonNode.class);
+        assertEquals(1, jsonNode.at("/paths/0/legs").size());
+    }
+
+    @Test
+    public void testProfileQuery() {
+        final Response response = clientTarget(app, "/route").queryParam("pt.algorithm", "raptor")
+                .queryParam("point", "36.91311729030539,-116.76769495010377")
+                .queryParam("point", "36.91260259593356,-116.76149368286134")
+                .queryParam("profile", "pt")
+                .queryParam("pt.earliest_departure_time", "2007-01-01T06:40:00-08:00")
+                .queryParam("pt.profile", true)
+                .queryParam("pt.profile_duration", "PT180M")
+                .request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertTrue(json.at("/paths").size() > 1);
+    }
+
+    @Test
+    public void testArriveByIsNotSupported() {
+        final Response response = clientTarget(app, "/route").queryParam("pt.algorithm", "raptor")
+                .queryParam("point", "Stop(NADAV)")
+                .queryParam("point", "Stop(NANAA)")
+                .queryParam("profile", "pt")
+                .queryParam("pt.earliest_departure_time", "2007-01-01T15:44:00Z")
+                .queryParam("pt.arrive_by", true)
+                .request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertEquals(0, json.at("/paths").size());
+    }
+
+}
@@ -98,9 +98,9 @@ public class RouteResourceLeipzigTest {
         {
             // for a short timeout the route calculation fails, for CH we need to use a negative number, because it is too fast
             BodyAndStatus response = getWithStatus(clientTarget(app, "/route?timeout_ms=" + timeout + "&profile=my_car&point=51.319685,12.335525&point=51.367294,12.434745&" + args));
-            assertEquals(400, response.getStatus());
+            assertEquals(503, response.getStatus());
             JsonNode jsonNode = response.getBody();
-            assertTrue(jsonNode.get("message").asText().contains("Connection between locations not found"), jsonNode.get("message").asText());
+            assertTrue(jsonNode.get("message").asText().contains("time budget of the request was used up"), jsonNode.get("message").asText());
         }
     }
 
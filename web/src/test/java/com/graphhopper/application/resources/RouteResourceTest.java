@@ -26,6 +26,9 @@ import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.jackson.ResponsePathDeserializerHelper;
+import com.graphhopper.protobuf.ResponsePathProtobuf;
+import com.graphhopper.resources.RouteResource;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.routing.ev.RoadClass;
 import com.graphhopper.routing.ev.RoadClassLink;
@@ -36,6 +39,7 @@ import com.graphhopper.util.Helper;
 import com.graphhopper.util.InstructionList;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.exceptions.DeadlineExceededException;
 import com.graphhopper.util.exceptions.PointOutOfBoundsException;
 import com.graphhopper.util.shapes.GHPoint;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
@@ -93,6 +97,9 @@ public class RouteResourceTest {
                 // adding this so the corresponding check is not just skipped...
                 putObject(MAX_NON_CH_POINT_DISTANCE, 10e6).
                 putObject("routing.snap_preventions_default", "tunnel, bridge, ferry").
+                // run all requests asynchronously in the expensive lane of the admission control
+                putObject("admission.enabled", true).
+                putObject("admission.expensive_cost", 0).
                 putObject("graph.encoded_values", "road_class, surface, road_environment, max_speed, country, " +
                         "car_access, car_average_speed, " +
                         "foot_access, foot_priority, foot_average_speed").
@@ -121,6 +128,81 @@ public class RouteResourceTest {
         assertTrue(distance < 9500, "distance wasn't correct:" + distance);
     }
 
+    @Test
+    public void testProtobuf() {
+        String query = "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128&points_encoded_multiplier=1e6";
+        JsonNode json = clientTarget(app, query).request().get(JsonNode.class);
+
+        Response response = clientTarget(app, query).request(ResponsePathProtobuf.MEDIA_TYPE).get();
+        assertEquals(200, response.getStatus());
+        assertEquals(ResponsePathProtobuf.MEDIA_TYPE, response.getMediaType().toString());
+        byte[] bytes = response.readEntity(byte[].class);
+        GHResponse rsp = ResponsePathProtobuf.read(bytes, new GHResponse(), true);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        ResponsePath path = rsp.getBest();
+        assertEquals(json.at("/paths/0/distance").asDouble(), path.getDistance(), 1e-3);
+        assertEquals(json.at("/paths/0/time").asLong(), path.getTime());
+        assertEquals(json.at("/paths/0/instructions").size(), path.getInstructions().size());
+        assertEquals(path.getPoints(), ResponsePathDeserializerHelper.decodePolyline(json.at("/paths/0/points").asText(), 10, false, 1e6));
+        assertTrue(bytes.length < json.toString().length() * 0.8, bytes.length + " vs. " + json.toString().length());
+
+        // the same via the type parameter, POST and a wildcard still returns JSON
+        response = clientTarget(app, query + "&type=protobuf").request().get();
+        assertEquals(ResponsePathProtobuf.MEDIA_TYPE, response.getMediaType().toString());
+        String jsonStr = "{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }";
+        response = clientTarget(app, "/route").request(ResponsePathProtobuf.MEDIA_TYPE).post(Entity.json(jsonStr));
+        assertEquals(ResponsePathProtobuf.MEDIA_TYPE, response.getMediaType().toString());
+        assertEquals(path.getDistance(), ResponsePathProtobuf.read(response.readEntity(byte[].class), new GHResponse(), true).getBest().getDistance(), 1e-3);
+        response = clientTarget(app, query).request("*/*").get();
+        assertEquals(MediaType.APPLICATION_JSON, response.getMediaType().toString());
+
+        // errors are protobuf too
+        response = clientTarget(app, "/route").request(ResponsePathProtobuf.MEDIA_TYPE).post(Entity.json("{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [10, 10]] }"));
+        assertEquals(400, response.getStatus());
+        assertEquals(ResponsePathProtobuf.MEDIA_TYPE, response.getMediaType().toString());
+        rsp = ResponsePathProtobuf.read(response.readEntity(byte[].class), new GHResponse(), true);
+        assertInstanceOf(PointOutOfBoundsException.class, rsp.getErrors().get(0));
+        // but only for clients that requested protobuf
+        response = clientTarget(app, "/route").request().post(Entity.json("{ \"profile\": \"my_car\", \"points\": [[1.536198,42.554851], [10, 10]] }"));
+        assertEquals(400, response.getStatus());
+        assertEquals(MediaType.APPLICATION_JSON, response.getMediaType().toString());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("out of bounds"));
+    }
+
+    @Test
+    public void testTimings() {
+        JsonNode json = clientTarget(app, "/route?profile=my_car&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        assertFalse(json.get("info").has("timings"));
+
+        json = clientTarget(app, "/route?profile=my_car&timings=true&" +
+                "point=42.554851,1.536198&point=42.510071,1.548128").request().get(JsonNode.class);
+        JsonNode timings = json.at("/info/timings");
+        for (String phase : List.of("snap", "query_graph", "algorithm", "path_extraction", "instructions", "points"))
+            assertTrue(timings.get(phase).asDouble() >= 0, phase + " missing in " + timings);
+    }
+
+    @Test
+    public void testDeadline() {
+        String query = "/route?profile=my_car&point=42.554851,1.536198&point=42.510071,1.548128";
+        Response response = clientTarget(app, query).request().header(RouteResource.TIMEOUT_HEADER, -1).get();
+        assertEquals(503, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertTrue(json.get("message").asText().contains("time budget"), json.toString());
+        assertEquals(DeadlineExceededException.class.getName(), json.at("/hints/0/details").asText());
+
+        response = clientTarget(app, query).request().header(RouteResource.TIMEOUT_HEADER, 10_000).get();
+        assertEquals(200, response.getStatus());
+
+        String jsonStr = "{ \"profile\": \"my_car\", \"timeout_ms\": -1, \"points\": [[1.536198,42.554851], [1.548128, 42.510071]] }";
+        response = clientTarget(app, "/route").request().post(Entity.json(jsonStr));
+        assertEquals(503, response.getStatus());
+        // the client maps the error to the same exception
+        GHResponse rsp = ResponsePathProtobuf.read(clientTarget(app, "/route").request(ResponsePathProtobuf.MEDIA_TYPE).
+                post(Entity.json(jsonStr)).readEntity(byte[].class), new GHResponse(), true);
+        assertInstanceOf(DeadlineExceededException.class, rsp.getErrors().get(0));
+    }
+
     @Test
     public void testBasicQuerySamePoint() {
         JsonNode json = clientTarget(app, "/route?profile=my_car&" +